@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.WebSocketServerSession;
+import org.kurento.jsonrpc.message.SerializedNotification;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Fan-out of an onEvent notification of the media server to the WebSocket
+ * sessions subscribed to it, as done by the control server. Messages are
+ * written to WebSocket sessions that discard them.
+ *
+ * <ul>
+ * <li>perSessionSerialization: the notification is serialized for each
+ * session.</li>
+ * <li>serializedOnce: the notification is serialized once and the same text
+ * is written to all the sessions.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventFanOutBenchmark {
+
+	@Param({ "1", "50", "500" })
+	private int subscribers;
+
+	private Session[] sessions;
+
+	private JsonObject eventParams;
+
+	private long writtenChars;
+
+	@Setup
+	public void setup() {
+
+		eventParams = JsonUtils.fromJsonRequest(
+				JsonUtilsBenchmark.ON_EVENT_JSON, JsonObject.class).getParams();
+
+		SessionsManager sessionsManager = new SessionsManager();
+
+		sessions = new Session[subscribers];
+		for (int i = 0; i < subscribers; i++) {
+			sessions[i] = new WebSocketServerSession("session" + i, null,
+					sessionsManager, createWebSocketSession("ws" + i));
+		}
+	}
+
+	@Benchmark
+	public long perSessionSerialization() throws IOException {
+		for (Session session : sessions) {
+			session.sendNotification("onEvent", eventParams);
+		}
+		return writtenChars;
+	}
+
+	@Benchmark
+	public long serializedOnce() throws IOException {
+		SerializedNotification notification = new SerializedNotification(
+				"onEvent", eventParams);
+		for (Session session : sessions) {
+			session.sendNotification(notification);
+		}
+		return writtenChars;
+	}
+
+	private WebSocketSession createWebSocketSession(final String id) {
+
+		final Map<String, Object> attributes = new HashMap<>();
+
+		return (WebSocketSession) Proxy.newProxyInstance(
+				EventFanOutBenchmark.class.getClassLoader(),
+				new Class<?>[] { WebSocketSession.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "getId":
+							return id;
+						case "getAttributes":
+							return attributes;
+						case "isOpen":
+							return true;
+						case "sendMessage":
+							writtenChars += ((TextMessage) args[0])
+									.getPayloadLength();
+							return null;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Request/response round trips through {@link JsonRpcClientLocal}, which
+ * serializes and deserializes every message as if it was sent through the
+ * network. No media server is needed: requests are answered by a local
+ * handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonRpcClientLocalBenchmark {
+
+	private static final String ENDPOINT_REF = "a1b2c3d4_MediaPipeline/e5f6_WebRtcEndpoint";
+
+	/**
+	 * Answers echo requests with their params and ROM invocations with a
+	 * fixed value, as the media server does for getters.
+	 */
+	static class LocalServerHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final JsonObject invokeResult = new JsonObject();
+
+		LocalServerHandler() {
+			invokeResult.addProperty("value",
+					"http://files.kurento.org/video/fiwarecut.webm");
+		}
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("invoke".equals(request.getMethod())) {
+				transaction.sendResponse(invokeResult);
+			} else {
+				transaction.sendResponse(request.getParams());
+			}
+		}
+	}
+
+	private JsonRpcClient client;
+	private RomClientJsonRpcClient romClient;
+	private JsonObject echoParams;
+
+	@Setup
+	public void setup() {
+
+		client = new JsonRpcClientLocal(new LocalServerHandler());
+		romClient = new RomClientJsonRpcClient(new JsonRpcClientLocal(
+				new LocalServerHandler()));
+
+		echoParams = new JsonObject();
+		echoParams.addProperty("object", ENDPOINT_REF);
+		echoParams.addProperty("operation", "getUri");
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		client.close();
+		romClient.destroy();
+	}
+
+	@Benchmark
+	public JsonElement echoRoundTrip() throws IOException {
+		return client.sendRequest("echo", echoParams);
+	}
+
+	@Benchmark
+	public String romInvokeRoundTrip() {
+		return romClient.invoke(ENDPOINT_REF, "getUri", new Props(),
+				String.class);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Serialization and deserialization of the messages exchanged with the media
+ * server: invoke requests and their responses, and onEvent notifications.
+ * The tree* benchmarks decode the messages parsing them first to a
+ * {@link JsonObject}, as it was done before {@link JsonUtils#fromJsonMessage}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+	static final String INVOKE_JSON = "{\"id\":12,\"method\":\"invoke\","
+			+ "\"params\":{\"object\":\"a1b2c3d4_MediaPipeline/e5f6_WebRtcEndpoint\","
+			+ "\"operation\":\"processOffer\",\"operationParams\":{\"offer\":"
+			+ "\"v=0\\r\\no=- 0 0 IN IP4 0.0.0.0\\r\\ns=Kurento\\r\\nc=IN IP4 0.0.0.0\\r\\nt=0 0\\r\\n\"},"
+			+ "\"sessionId\":\"7c2e4b0a-9d3f-4e8b-a2c1-5f6d7e8f9a0b\"},\"jsonrpc\":\"2.0\"}";
+
+	static final String INVOKE_RESPONSE_JSON = "{\"id\":12,\"result\":"
+			+ "{\"value\":\"v=0\\r\\no=- 0 0 IN IP4 0.0.0.0\\r\\ns=Kurento\\r\\n\","
+			+ "\"sessionId\":\"7c2e4b0a-9d3f-4e8b-a2c1-5f6d7e8f9a0b\"},\"jsonrpc\":\"2.0\"}";
+
+	static final String ON_EVENT_JSON = "{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\","
+			+ "\"params\":{\"value\":{\"data\":{\"source\":\"a1b2c3d4_MediaPipeline/e5f6_WebRtcEndpoint\","
+			+ "\"type\":\"OnIceCandidate\",\"candidate\":{\"candidate\":"
+			+ "\"candidate:1 1 UDP 2013266431 192.168.1.10 45678 typ host\","
+			+ "\"sdpMid\":\"audio\",\"sdpMLineIndex\":0}},"
+			+ "\"object\":\"a1b2c3d4_MediaPipeline/e5f6_WebRtcEndpoint\","
+			+ "\"type\":\"OnIceCandidate\"}}}";
+
+	private Request<JsonObject> invokeRequest;
+
+	@Setup
+	public void setup() {
+		invokeRequest = JsonUtils.fromJsonRequest(INVOKE_JSON, JsonObject.class);
+	}
+
+	@Benchmark
+	public Request<JsonObject> fromJsonRequestInvoke() {
+		return JsonUtils.fromJsonRequest(INVOKE_JSON, JsonObject.class);
+	}
+
+	@Benchmark
+	public Response<JsonElement> fromJsonResponseInvoke() {
+		return JsonUtils.fromJsonResponse(INVOKE_RESPONSE_JSON,
+				JsonElement.class);
+	}
+
+	@Benchmark
+	public Message fromJsonMessageInvoke() {
+		return JsonUtils.fromJsonMessage(INVOKE_JSON);
+	}
+
+	@Benchmark
+	public Message fromJsonMessageOnEvent() {
+		return JsonUtils.fromJsonMessage(ON_EVENT_JSON);
+	}
+
+	@Benchmark
+	public Request<JsonElement> treeDecodeInvoke() {
+		return JsonUtils.fromJsonRequest(
+				JsonUtils.fromJson(INVOKE_JSON, JsonObject.class),
+				JsonElement.class);
+	}
+
+	@Benchmark
+	public Request<JsonElement> treeDecodeOnEvent() {
+		return JsonUtils.fromJsonRequest(
+				JsonUtils.fromJson(ON_EVENT_JSON, JsonObject.class),
+				JsonElement.class);
+	}
+
+	@Benchmark
+	public String toJsonInvoke() {
+		return JsonUtils.toJson(invokeRequest);
+	}
+
+	@Benchmark
+	public String toJsonMessageInvoke() {
+		// Injects the session id in params
+		return JsonUtils.toJsonMessage(invokeRequest);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.server.Param;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Flattening of the params of an operation before sending it to the media
+ * server (client side) and unflattening them to Java objects (server side).
+ * Events received by the client are unflattened the same way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParamsFlattenerBenchmark {
+
+	public enum SampleState {
+		CONNECTED, DISCONNECTED
+	}
+
+	public static class SampleRegister {
+
+		private final String name;
+		private final int width;
+		private final SampleState state;
+
+		public SampleRegister(@Param("name") String name,
+				@Param("width") int width, @Param("state") SampleState state) {
+			this.name = name;
+			this.width = width;
+			this.state = state;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public SampleState getState() {
+			return state;
+		}
+	}
+
+	/**
+	 * Event with a register, like the events of new ICE candidates.
+	 */
+	public static class SampleEvent {
+
+		private final SampleRegister register;
+		private final String type;
+
+		public SampleEvent(@Param("register") SampleRegister register,
+				@Param("type") String type) {
+			this.register = register;
+			this.type = type;
+		}
+
+		public SampleRegister getRegister() {
+			return register;
+		}
+
+		public String getType() {
+			return type;
+		}
+	}
+
+	public interface SampleOperations {
+
+		void operation(@Param("uri") String uri,
+				@Param("enabled") boolean enabled,
+				@Param("state") SampleState state,
+				@Param("tags") List<String> tags,
+				@Param("register") SampleRegister register);
+	}
+
+	private final ParamsFlattener flattener = ParamsFlattener.getInstance();
+
+	private Props params;
+	private Props flatParams;
+	private Props eventData;
+	private Annotation[][] paramAnnotations;
+	private Type[] paramTypes;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+
+		params = new Props()
+				.add("uri", "http://files.kurento.org/video/fiwarecut.webm")
+				.add("enabled", Boolean.TRUE)
+				.add("state", SampleState.CONNECTED)
+				.add("tags", Arrays.asList("tag1", "tag2", "tag3"))
+				.add("register",
+						new SampleRegister("register", 640,
+								SampleState.DISCONNECTED));
+
+		flatParams = flattener.flattenParams(params);
+
+		eventData = new Props().add("register",
+				flatParams.getProp("register")).add("type", "SampleEvent");
+
+		Method method = SampleOperations.class.getMethod("operation",
+				String.class, boolean.class, SampleState.class, List.class,
+				SampleRegister.class);
+
+		paramAnnotations = method.getParameterAnnotations();
+		paramTypes = method.getGenericParameterTypes();
+	}
+
+	@Benchmark
+	public Props flattenParams() {
+		return flattener.flattenParams(params);
+	}
+
+	@Benchmark
+	public Object[] unflattenParams() {
+		// No remote objects in params, so no ObjectRefsManager is needed
+		return flattener.unflattenParams(paramAnnotations, paramTypes,
+				flatParams, null);
+	}
+
+	@Benchmark
+	public Object unflattenEvent() {
+		Object[] constParams = flattener.unflattenConstructorParams(
+				SampleEvent.class, eventData, null);
+		return flattener.newInstance(SampleEvent.class, constParams);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.benchmarks.JsonRpcClientLocalBenchmark.LocalServerHandler;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.Param;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synchronous invocations of operations through the proxies of remote
+ * objects, answered by a {@link JsonRpcClientLocal}. Compared with
+ * {@link JsonRpcClientLocalBenchmark#romInvokeRoundTrip()}, it measures the
+ * cost added by the proxy.
+ *
+ * <ul>
+ * <li>connect: an operation with a remote object as param, like
+ * <code>WebRtcEndpoint.connect(sink)</code>.</li>
+ * <li>getMediaState: an operation without params returning a value.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoteObjectInvocationBenchmark {
+
+	private static final String PIPELINE_REF = "a1b2c3d4_MediaPipeline";
+
+	/**
+	 * Same shape as the operations of the generated
+	 * <code>WebRtcEndpoint</code>, without depending on the modules of the
+	 * media server.
+	 */
+	public interface Endpoint extends KurentoObject {
+
+		void connect(@Param("sink") Endpoint sink);
+
+		String getMediaState();
+	}
+
+	private RomManager manager;
+	private Endpoint source;
+	private Endpoint sink;
+
+	@Setup
+	public void setup() {
+
+		manager = new RomManager(new RomClientJsonRpcClient(
+				new JsonRpcClientLocal(new LocalServerHandler())));
+
+		source = createEndpoint(PIPELINE_REF + "/e5f6_WebRtcEndpoint");
+		sink = createEndpoint(PIPELINE_REF + "/a7b8_WebRtcEndpoint");
+	}
+
+	private Endpoint createEndpoint(String objectRef) {
+		return RemoteObjectInvocationHandler.newProxy(new RemoteObject(
+				objectRef, "WebRtcEndpoint", manager), manager, Endpoint.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		manager.destroy();
+	}
+
+	@Benchmark
+	public void connect() {
+		source.connect(sink);
+	}
+
+	@Benchmark
+	public String getMediaState() {
+		return source.getMediaState();
+	}
+}
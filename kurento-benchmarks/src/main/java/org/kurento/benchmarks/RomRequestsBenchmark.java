@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.kurento.control.server.TransactionManager;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Creation of ROM requests in the client and rewriting of the object
+ * references created in a transaction ("newref:N") in the control server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RomRequestsBenchmark {
+
+	private static final String PIPELINE_REF = "a1b2c3d4_MediaPipeline";
+
+	private static final String ENDPOINT_REF = PIPELINE_REF
+			+ "/e5f6_WebRtcEndpoint";
+
+	// Only request creation is measured, so no JsonRpcClient is needed
+	private final RomClientJsonRpcClient romClient = new RomClientJsonRpcClient(
+			null);
+
+	private Props operationParams;
+	private Props txOperationParams;
+	private TransactionManager txManager;
+	private Request<JsonObject> resolvedRequest;
+
+	@Setup
+	public void setup() {
+
+		operationParams = new Props().add("sink", ENDPOINT_REF).add(
+				"mediaType", "VIDEO");
+
+		txOperationParams = new Props().add("sink", "newref:0").add(
+				"mediaType", "VIDEO");
+
+		txManager = new TransactionManager();
+
+		txManager.updateRequest(romClient.createCreateRequest("MediaPipeline",
+				null, true).request);
+
+		JsonObject createResult = new JsonObject();
+		createResult.addProperty("value", PIPELINE_REF);
+		txManager.updateResponse(new Response<JsonElement>(0, createResult));
+
+		resolvedRequest = romClient.createInvokeRequest(ENDPOINT_REF,
+				"connect", operationParams, Void.class, false).request;
+	}
+
+	@Benchmark
+	public RequestAndResponseType createInvokeRequest() {
+		return romClient.createInvokeRequest(ENDPOINT_REF, "connect",
+				operationParams, Void.class, false);
+	}
+
+	@Benchmark
+	public Request<JsonObject> updateRequest() {
+		// No new references in the request, only the traversal is measured
+		txManager.updateRequest(resolvedRequest);
+		return resolvedRequest;
+	}
+
+	@Benchmark
+	public Request<JsonObject> createAndUpdateTxRequest() {
+		// Includes the cost of createInvokeRequest, as updateRequest
+		// modifies the request
+		Request<JsonObject> request = romClient.createInvokeRequest(
+				"newref:0", "connect", txOperationParams, Void.class, true).request;
+		txManager.updateRequest(request);
+		return request;
+	}
+}
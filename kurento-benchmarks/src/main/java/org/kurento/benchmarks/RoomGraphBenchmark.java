@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.AbstractBuilder;
+import org.kurento.client.Continuation;
+import org.kurento.client.FutureContinuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Creation of the media graph of a room from one thread: a pipeline, an
+ * endpoint per participant and a connection from each endpoint to the next
+ * one. Responses of the media server are delayed to simulate the latency of
+ * the network.
+ *
+ * <ul>
+ * <li>syncApi: each operation waits for the response of the previous
+ * one.</li>
+ * <li>futureApi: the endpoints are created at the same time, and then
+ * connected at the same time, joining the futures of each step.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomGraphBenchmark {
+
+	public interface Pipeline extends KurentoObject {
+	}
+
+	public interface Endpoint extends KurentoObject {
+
+		void connect(
+				@org.kurento.client.internal.server.Param("sink") Endpoint sink);
+
+		void connect(
+				@org.kurento.client.internal.server.Param("sink") Endpoint sink,
+				Continuation<Void> cont);
+	}
+
+	public static class EndpointBuilder extends AbstractBuilder<Endpoint> {
+
+		public EndpointBuilder(Pipeline pipeline) {
+			super(Endpoint.class, pipeline);
+			props.add("mediaPipeline", pipeline);
+		}
+	}
+
+	/**
+	 * Answers creations with a new object ref and invocations with no value.
+	 */
+	static class MediaServerHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final AtomicInteger objects = new AtomicInteger();
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			JsonObject result = new JsonObject();
+			if ("create".equals(request.getMethod())) {
+				result.addProperty("value",
+						"object" + objects.incrementAndGet());
+			}
+			transaction.sendResponse(result);
+		}
+	}
+
+	/**
+	 * Delays the responses of a local client.
+	 */
+	static class DelayedJsonRpcClient extends JsonRpcClient {
+
+		private final JsonRpcClient client;
+		private final long latencyMicros;
+		private final ScheduledExecutorService responses;
+
+		DelayedJsonRpcClient(JsonRpcClient client, long latencyMicros) {
+			this.client = client;
+			this.latencyMicros = latencyMicros;
+			this.responses = Executors.newSingleThreadScheduledExecutor();
+		}
+
+		@Override
+		public <R> R sendRequest(String method, Object params,
+				Class<R> resultClass) throws IOException {
+			try {
+				TimeUnit.MICROSECONDS.sleep(latencyMicros);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return client.sendRequest(method, params, resultClass);
+		}
+
+		@Override
+		public void sendRequest(final String method, final JsonObject params,
+				final org.kurento.jsonrpc.client.Continuation<JsonElement> continuation) {
+			responses.schedule(new Runnable() {
+				@Override
+				public void run() {
+					client.sendRequest(method, params, continuation);
+				}
+			}, latencyMicros, TimeUnit.MICROSECONDS);
+		}
+
+		@Override
+		public void close() throws IOException {
+			responses.shutdownNow();
+			client.close();
+		}
+
+		@Override
+		public void connect() throws IOException {
+		}
+	}
+
+	@Param({ "100" })
+	private int participants;
+
+	@Param({ "0", "1000" })
+	private long latencyMicros;
+
+	private RomManager manager;
+
+	@Setup
+	public void setup() {
+		manager = new RomManager(new RomClientJsonRpcClient(
+				new DelayedJsonRpcClient(new JsonRpcClientLocal(
+						new MediaServerHandler()), latencyMicros)));
+	}
+
+	@TearDown
+	public void tearDown() {
+		manager.destroy();
+	}
+
+	@Benchmark
+	public List<Endpoint> syncApi() {
+
+		Pipeline pipeline = new AbstractBuilder<Pipeline>(Pipeline.class,
+				manager).build();
+
+		List<Endpoint> endpoints = new ArrayList<>(participants);
+		for (int i = 0; i < participants; i++) {
+			endpoints.add(new EndpointBuilder(pipeline).build());
+		}
+
+		for (int i = 0; i < participants; i++) {
+			endpoints.get(i).connect(endpoints.get((i + 1) % participants));
+		}
+
+		return endpoints;
+	}
+
+	@Benchmark
+	public List<Endpoint> futureApi() throws InterruptedException,
+			ExecutionException {
+
+		Pipeline pipeline = new AbstractBuilder<Pipeline>(Pipeline.class,
+				manager).buildAsync().get();
+
+		List<ListenableFuture<Endpoint>> created = new ArrayList<>(
+				participants);
+		for (int i = 0; i < participants; i++) {
+			created.add(new EndpointBuilder(pipeline).buildAsync());
+		}
+
+		List<Endpoint> endpoints = Futures.allAsList(created).get();
+
+		List<ListenableFuture<Void>> connected = new ArrayList<>(participants);
+		for (int i = 0; i < participants; i++) {
+			FutureContinuation<Void> future = new FutureContinuation<>();
+			endpoints.get(i).connect(endpoints.get((i + 1) % participants),
+					future);
+			connected.add(future);
+		}
+
+		Futures.allAsList(connected).get();
+
+		return endpoints;
+	}
+}
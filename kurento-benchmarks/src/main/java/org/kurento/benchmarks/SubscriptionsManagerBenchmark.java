@@ -0,0 +1,175 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.kurento.control.server.SubscriptionsManager;
+import org.kurento.jsonrpc.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Subscription registry of the control server with 50k subscriptions (5k
+ * sessions with 10 subscriptions each, spread over 10k object/type pairs).
+ *
+ * <ul>
+ * <li>sessionChurn: a session disconnects and a new one subscribes to the
+ * same events, as fast as possible.</li>
+ * <li>fanOutUnderChurn: event fan-out lookups while another thread churns
+ * 1k sessions per second.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionsManagerBenchmark {
+
+	private static final int NUM_SESSIONS = 5000;
+
+	private static final int SUBSCRIPTIONS_PER_SESSION = 10;
+
+	private static final int NUM_OBJECTS_AND_TYPES = 10000;
+
+	private static final long CHURN_INTERVAL_NANOS = TimeUnit.SECONDS
+			.toNanos(1) / 1000;
+
+	@State(Scope.Group)
+	public static class Registry {
+
+		private SubscriptionsManager subsManager;
+
+		private AtomicReferenceArray<Session> sessions;
+
+		private final AtomicInteger nextSession = new AtomicInteger();
+		private final AtomicInteger subscriptionCounter = new AtomicInteger();
+
+		private long nextChurnTime;
+
+		@Setup
+		public void setup() {
+
+			subsManager = new SubscriptionsManager();
+			sessions = new AtomicReferenceArray<>(NUM_SESSIONS);
+
+			for (int i = 0; i < NUM_SESSIONS; i++) {
+				Session session = createSession();
+				sessions.set(i, session);
+				subscribe(i, session);
+			}
+
+			nextChurnTime = System.nanoTime();
+		}
+
+		private void subscribe(int sessionIndex, Session session) {
+			for (int j = 0; j < SUBSCRIPTIONS_PER_SESSION; j++) {
+				subsManager.addSubscription(
+						"subscription" + subscriptionCounter.incrementAndGet(),
+						getObjectAndType(sessionIndex * SUBSCRIPTIONS_PER_SESSION
+								+ j), session);
+			}
+		}
+
+		private int churn() {
+			int index = Math.abs(nextSession.getAndIncrement() % NUM_SESSIONS);
+			subsManager.removeSession(sessions.get(index));
+			Session session = createSession();
+			sessions.set(index, session);
+			subscribe(index, session);
+			return subsManager.getSubscriptionsCount(session);
+		}
+	}
+
+	@Benchmark
+	@Group("churn")
+	public int sessionChurn(Registry registry) {
+		return registry.churn();
+	}
+
+	@Benchmark
+	@Group("fanOutUnderChurn")
+	@GroupThreads(1)
+	public int churn1kPerSecond(Registry registry) {
+
+		registry.nextChurnTime += CHURN_INTERVAL_NANOS;
+		long wait = registry.nextChurnTime - System.nanoTime();
+		if (wait > 0) {
+			LockSupport.parkNanos(wait);
+		}
+
+		return registry.churn();
+	}
+
+	@Benchmark
+	@Group("fanOutUnderChurn")
+	@GroupThreads(3)
+	public int fanOut(Registry registry) {
+
+		Collection<Session> sessions = registry.subsManager
+				.getSessionsByObjAndType(getObjectAndType(ThreadLocalRandom
+						.current().nextInt(NUM_OBJECTS_AND_TYPES)));
+
+		int count = 0;
+		for (Session session : sessions) {
+			if (session != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static String getObjectAndType(int index) {
+		return "object" + (index % NUM_OBJECTS_AND_TYPES) + "/EndOfStream";
+	}
+
+	private static Session createSession() {
+		return (Session) Proxy.newProxyInstance(
+				SubscriptionsManagerBenchmark.class.getClassLoader(),
+				new Class<?>[] { Session.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					}
+				});
+	}
+}
@@ -11,6 +11,8 @@ import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.jsonrpc.Props;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Kurento Media Builder base interface
  *
@@ -101,4 +103,18 @@ public class AbstractBuilder<T> {
 
 	}
 
+	/**
+	 * Builds an object asynchronously using the builder design pattern.
+	 *
+	 * @return a future completed with the object when it is ready, or with
+	 *         the cause of the failure
+	 *
+	 **/
+	public ListenableFuture<T> buildAsync() {
+
+		FutureContinuation<T> future = new FutureContinuation<>();
+		buildAsync(future);
+		return future;
+	}
+
 }
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.client;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A {@link Continuation} that is also a {@link ListenableFuture}, completed
+ * with the result or the cause of the failure of the operation. It can be
+ * passed to any asynchronous method of the media objects, so their results
+ * can be composed and joined with the utilities of
+ * {@link com.google.common.util.concurrent.Futures} instead of nesting
+ * callbacks:
+ *
+ * <pre>
+ * FutureContinuation&lt;Void&gt; connected = new FutureContinuation&lt;&gt;();
+ * webRtcEndpoint.connect(sink, connected);
+ * </pre>
+ *
+ * @param <F>
+ *            The data type of the result of the operation
+ *
+ * @since 5.1.1
+ */
+public class FutureContinuation<F> extends AbstractFuture<F> implements
+		Continuation<F> {
+
+	@Override
+	public void onSuccess(F result) {
+		set(result);
+	}
+
+	@Override
+	public void onError(Throwable cause) {
+		setException(cause);
+	}
+}
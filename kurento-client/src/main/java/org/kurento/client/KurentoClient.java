@@ -19,6 +19,7 @@ import java.io.IOException;
 import javax.annotation.PreDestroy;
 
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.PropertyCache;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.commons.exception.KurentoException;
@@ -27,6 +28,8 @@ import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Factory to create {@link MediaPipeline} in the media server.
  *
@@ -88,6 +91,17 @@ public class KurentoClient {
 				.buildAsync(cont);
 	}
 
+	/**
+	 * Creates a new {@link MediaPipeline} in the media server without
+	 * blocking
+	 *
+	 * @return A future completed with the media pipeline
+	 */
+	public ListenableFuture<MediaPipeline> createMediaPipelineAsync() {
+		return new AbstractBuilder<MediaPipeline>(MediaPipeline.class, manager)
+				.buildAsync();
+	}
+
 	public MediaPipeline createMediaPipeline(Transaction tx) {
 		return new AbstractBuilder<MediaPipeline>(MediaPipeline.class, manager)
 				.build(tx);
@@ -107,4 +121,14 @@ public class KurentoClient {
 		return new TransactionImpl(manager);
 	}
 
+	/**
+	 * Returns the cache of properties of the media objects created with this
+	 * client. Nothing is cached unless the getters to cache are configured.
+	 *
+	 * @return The property cache
+	 */
+	public PropertyCache getPropertyCache() {
+		return manager.getPropertyCache();
+	}
+
 }
@@ -0,0 +1,196 @@
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.EventSubscription;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Everything needed to invoke a method of a remote object proxy, obtained
+ * by reflection the first time the method is invoked.
+ */
+final class InvocationDescriptor {
+
+	enum Kind {
+		REMOTE_OBJECT_METHOD, RELEASE, ADD_LISTENER, REMOVE_LISTENER, INVOKE
+	}
+
+	private static final Set<String> REMOTE_OBJECT_METHODS = ImmutableSet.of(
+			"isCommited", "waitCommited", "whenCommited", "beginTransaction");
+
+	private static final ConcurrentMap<Method, InvocationDescriptor> descriptors = new ConcurrentHashMap<>();
+
+	private final Kind kind;
+	private final String methodName;
+	private final List<String> paramNames;
+	private final boolean continuation;
+	private final boolean transaction;
+	private final Type returnType;
+	private final Class<? extends Event> eventClass;
+	private final String eventName;
+
+	public static InvocationDescriptor get(Method method) {
+
+		InvocationDescriptor descriptor = descriptors.get(method);
+
+		if (descriptor == null) {
+			descriptor = new InvocationDescriptor(method);
+			InvocationDescriptor previous = descriptors.putIfAbsent(method,
+					descriptor);
+			if (previous != null) {
+				descriptor = previous;
+			}
+		}
+
+		return descriptor;
+	}
+
+	private InvocationDescriptor(Method method) {
+
+		this.methodName = method.getName();
+
+		Type[] paramTypes = method.getGenericParameterTypes();
+		Class<?>[] paramClasses = method.getParameterTypes();
+		int numParams = paramClasses.length;
+
+		this.continuation = numParams > 0
+				&& Continuation.class
+						.isAssignableFrom(paramClasses[numParams - 1]);
+
+		this.transaction = !continuation && numParams > 0
+				&& Transaction.class.isAssignableFrom(paramClasses[0]);
+
+		List<String> names = Collections.emptyList();
+		if (numParams > 0) {
+			names = ParamAnnotationUtils.getParamNames(method);
+			if (continuation) {
+				names = names.subList(0, names.size() - 1);
+			} else if (transaction) {
+				names = names.subList(1, names.size());
+			}
+		}
+		// Names can be null if a param is not annotated
+		this.paramNames = Collections.unmodifiableList(names);
+
+		if (continuation) {
+
+			Type contType = paramTypes[numParams - 1];
+			if (contType instanceof ParameterizedType) {
+				this.returnType = ((ParameterizedType) contType)
+						.getActualTypeArguments()[0];
+			} else {
+				this.returnType = Object.class;
+			}
+
+		} else if (transaction) {
+
+			Type genericReturnType = method.getGenericReturnType();
+			if (genericReturnType instanceof ParameterizedType) {
+				this.returnType = ((ParameterizedType) genericReturnType)
+						.getActualTypeArguments()[0];
+			} else {
+				this.returnType = Void.class;
+			}
+
+		} else {
+			this.returnType = method.getGenericReturnType();
+		}
+
+		EventSubscription eventSubscription = method
+				.getAnnotation(EventSubscription.class);
+
+		if (REMOTE_OBJECT_METHODS.contains(methodName)) {
+
+			this.kind = Kind.REMOTE_OBJECT_METHOD;
+			this.eventClass = null;
+			this.eventName = null;
+
+		} else if (methodName.equals("release")) {
+
+			this.kind = Kind.RELEASE;
+			this.eventClass = null;
+			this.eventName = null;
+
+		} else if (eventSubscription != null) {
+
+			if (methodName.startsWith("add")) {
+				this.kind = Kind.ADD_LISTENER;
+			} else if (methodName.startsWith("remove")) {
+				this.kind = Kind.REMOVE_LISTENER;
+			} else {
+				throw new IllegalStateException("Method " + methodName
+						+ " undefined for events");
+			}
+
+			this.eventClass = eventSubscription.value();
+			String simpleName = eventClass.getSimpleName();
+			this.eventName = simpleName.substring(0, simpleName.length()
+					- "Event".length());
+
+		} else {
+
+			this.kind = Kind.INVOKE;
+			this.eventClass = null;
+			this.eventName = null;
+		}
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * Returns the names of the params sent to the media server, without the
+	 * continuation or the transaction.
+	 */
+	public List<String> getParamNames() {
+		return paramNames;
+	}
+
+	/**
+	 * Returns true if the last param is a continuation.
+	 */
+	public boolean hasContinuation() {
+		return continuation;
+	}
+
+	/**
+	 * Returns true if the first param is a transaction.
+	 */
+	public boolean hasTransaction() {
+		return transaction;
+	}
+
+	/**
+	 * Returns the type of the result of the remote invocation: the type of
+	 * the continuation, the type of the future returned in a transaction or
+	 * the return type of the method.
+	 */
+	public Type getReturnType() {
+		return returnType;
+	}
+
+	public Class<? extends Event> getEventClass() {
+		return eventClass;
+	}
+
+	public String getEventName() {
+		return eventName;
+	}
+}
@@ -0,0 +1,94 @@
+package org.kurento.client.internal.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configuration and statistics of the cache of properties of the remote
+ * objects of a {@link RomManager}. Caching is opt-in: only getters
+ * configured here are cached, and nothing is cached by default.
+ *
+ * <ul>
+ * <li>Immutable properties are requested once to the media server and
+ * cached until the object is released.</li>
+ * <li>Properties invalidated by events are cached until one of the events is
+ * received. The first time the property is cached in an object, the object
+ * is subscribed to the events.</li>
+ * </ul>
+ *
+ * Properties are identified by the name of their getter (for example
+ * <code>getMediaPipeline</code>), and only getters without params are
+ * cached.
+ */
+public class PropertyCache {
+
+	private final ConcurrentMap<String, List<String>> cachedOperations = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Caches the value of the property until the object is released.
+	 */
+	public void setImmutable(String operationName) {
+		cachedOperations.put(operationName, Collections.<String> emptyList());
+	}
+
+	/**
+	 * Caches the value of the property until an event of any of the types is
+	 * received or the object is released.
+	 */
+	public void setInvalidatedBy(String operationName, String... eventTypes) {
+		cachedOperations.put(operationName, Collections
+				.unmodifiableList(Arrays.asList(eventTypes.clone())));
+	}
+
+	/**
+	 * Stops caching the property. Values already cached in objects are used
+	 * until they are invalidated.
+	 */
+	public void remove(String operationName) {
+		cachedOperations.remove(operationName);
+	}
+
+	public boolean isEnabled() {
+		return !cachedOperations.isEmpty();
+	}
+
+	public boolean isCached(String operationName) {
+		return cachedOperations.containsKey(operationName);
+	}
+
+	/**
+	 * Returns the types of the events that invalidate the property, empty if
+	 * it is immutable or null if it is not cached.
+	 */
+	public List<String> getInvalidatingEvents(String operationName) {
+		return cachedOperations.get(operationName);
+	}
+
+	void hit() {
+		hitCount.incrementAndGet();
+	}
+
+	void miss() {
+		missCount.incrementAndGet();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public void resetStats() {
+		hitCount.set(0);
+		missCount.set(0);
+	}
+}
@@ -1,10 +1,17 @@
 package org.kurento.client.internal.client;
 
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.FutureContinuation;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.TFuture;
 import org.kurento.client.Transaction;
@@ -21,9 +28,7 @@ import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class RemoteObject {
 	
@@ -35,6 +40,14 @@ public class RemoteObject {
 	
 	private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 	
+	// Listener of the subscriptions done only to invalidate cached properties
+	private static final RemoteObjectEventListener INVALIDATION_LISTENER =
+			new RemoteObjectEventListener() {
+				@Override
+				public void onEvent(String eventType, Props data) {
+				}
+			};
+	
 	private String objectRef;
 	private final String type;
 	private ObjectStatus objectStatus;
@@ -46,9 +59,24 @@ public class RemoteObject {
 	private Continuation<Object> whenContinuation;
 	private Executor executor;
 	
-	private final Multimap<String, RemoteObjectEventListener> listeners =
-			Multimaps.synchronizedMultimap(ArrayListMultimap
-					.<String, RemoteObjectEventListener>create());
+	// Events are fired on a snapshot of the listeners, so adding or removing
+	// listeners doesn't wait for the listeners being executed
+	private final ConcurrentMap<String, List<ListenerSubscriptionImpl>> listeners =
+			new ConcurrentHashMap<>();
+	
+	// Values of the properties cached by getter name, see PropertyCache
+	private final ConcurrentMap<String, Object> cachedProperties =
+			new ConcurrentHashMap<>();
+	
+	// Incremented when cached properties are invalidated, so values obtained
+	// before the invalidation are not cached
+	private final AtomicInteger cachedPropertiesVersion = new AtomicInteger();
+	
+	// Subscription whose events invalidate the cached properties, by event
+	// type. It is the subscription of a listener if there is one, so the
+	// media server doesn't send the same events twice.
+	private final ConcurrentMap<String, ListenerSubscriptionImpl> invalidationSubscriptions =
+			new ConcurrentHashMap<>();
 	
 	private TransactionExecutionException transactionException;
 	
@@ -147,25 +175,37 @@ public class RemoteObject {
 	
 	@SuppressWarnings("unchecked")
 	public <E> E invoke(String method, Props params, Class<E> clazz) {
-		
-		checkCreated();
-		
-		Type flattenType = FLATTENER.calculateFlattenType(clazz);
-		
-		Object obj = invoke(method, params, flattenType);
-		
-		return (E) FLATTENER.unflattenValue("return", clazz, obj, manager);
+		return (E) invoke(method, params, (Type) clazz);
 	}
 	
 	public Object invoke(String method, Props params, Type type) {
 		
 		checkCreated();
 		
+		boolean cacheable = isCacheable(method, params);
+		if (cacheable) {
+			
+			Object value = getCachedProperty(method);
+			if (value != null) {
+				return value;
+			}
+			
+			cacheable = subscribeForInvalidation(method);
+		}
+		
+		int version = cachedPropertiesVersion.get();
+		
 		Type flattenType = FLATTENER.calculateFlattenType(type);
 		
 		Object obj = manager.invoke(objectRef, method, params, flattenType);
 		
-		return FLATTENER.unflattenValue("return", type, obj, manager);
+		Object value = FLATTENER.unflattenValue("return", type, obj, manager);
+		
+		if (cacheable) {
+			cacheProperty(method, value, version);
+		}
+		
+		return value;
 	}
 	
 	public TFuture<Object> invoke(String method, Props params, Type type,
@@ -179,11 +219,33 @@ public class RemoteObject {
 	}
 	
 	@SuppressWarnings("rawtypes")
-	public void invoke(String method, Props params, final Type type,
+	public void invoke(final String method, Props params, final Type type,
 			final Continuation cont) {
 		
 		checkCreated();
 		
+		// Subscriptions to invalidate the property are not done here to
+		// avoid blocking, so it is only cached if they were done before
+		final boolean cacheable =
+				isCacheable(method, params)
+						&& isSubscribedForInvalidation(method);
+		if (cacheable) {
+			
+			Object value = getCachedProperty(method);
+			if (value != null) {
+				try {
+					cont.onSuccess(value);
+				} catch (Exception e) {
+					LOG.warn(
+							"[Continuation] error invoking onSuccess implemented by client",
+							e);
+				}
+				return;
+			}
+		}
+		
+		final int version = cachedPropertiesVersion.get();
+		
 		Type flattenType = FLATTENER.calculateFlattenType(type);
 		
 		manager.invoke(objectRef, method, params, flattenType,
@@ -192,8 +254,13 @@ public class RemoteObject {
 					@Override
 					public void onSuccess(Object result) {
 						try {
-							cont.onSuccess(FLATTENER.unflattenValue("return",
-									type, result, manager));
+							Object value =
+									FLATTENER.unflattenValue("return", type,
+											result, manager);
+							if (cacheable) {
+								cacheProperty(method, value, version);
+							}
+							cont.onSuccess(value);
 						} catch (Exception e) {
 							log.warn(
 									"[Continuation] error invoking onSuccess implemented by client",
@@ -203,11 +270,25 @@ public class RemoteObject {
 				});
 	}
 	
+	/**
+	 * Invokes the operation without blocking.
+	 *
+	 * @return a future completed with the unflattened result
+	 */
+	public ListenableFuture<Object> invokeAsync(String method, Props params,
+			Type type) {
+		FutureContinuation<Object> future = new FutureContinuation<>();
+		invoke(method, params, type, future);
+		return future;
+	}
+	
 	public void release() {
 		
 		checkCreated();
 		
 		manager.release(objectRef);
+		
+		invalidateProperties();
 	}
 	
 	public void release(Transaction tx) {
@@ -222,6 +303,7 @@ public class RemoteObject {
 		manager.release(objectRef, new DefaultContinuation<Void>(cont) {
 			@Override
 			public void onSuccess(Void result) {
+				invalidateProperties();
 				try {
 					cont.onSuccess(null);
 				} catch (Exception e) {
@@ -233,6 +315,17 @@ public class RemoteObject {
 		});
 	}
 	
+	/**
+	 * Releases the object without blocking.
+	 *
+	 * @return a future completed when the object is released
+	 */
+	public ListenableFuture<Void> releaseAsync() {
+		FutureContinuation<Void> future = new FutureContinuation<>();
+		release(future);
+		return future;
+	}
+	
 	public ListenerSubscriptionImpl addEventListener(String eventType,
 			RemoteObjectEventListener listener) {
 		
@@ -240,9 +333,12 @@ public class RemoteObject {
 		
 		String subscription = manager.subscribe(objectRef, eventType);
 		
-		listeners.put(eventType, listener);
+		ListenerSubscriptionImpl listenerSubscription =
+				new ListenerSubscriptionImpl(subscription, eventType, listener);
+		
+		addListener(listenerSubscription);
 		
-		return new ListenerSubscriptionImpl(subscription, eventType, listener);
+		return listenerSubscription;
 	}
 	
 	public ListenerSubscriptionImpl addEventListener(String eventType,
@@ -265,10 +361,12 @@ public class RemoteObject {
 				new DefaultContinuation<String>(cont) {
 					@Override
 					public void onSuccess(String subscription) {
-						listeners.put(eventType, listener);
+						ListenerSubscriptionImpl listenerSubscription =
+								new ListenerSubscriptionImpl(subscription,
+										eventType, listener);
+						addListener(listenerSubscription);
 						try {
-							cont.onSuccess(new ListenerSubscriptionImpl(
-									subscription, eventType, listener));
+							cont.onSuccess(listenerSubscription);
 						} catch (Exception e) {
 							log.warn(
 									"[Continuation] error invoking onSuccess implemented by client",
@@ -285,7 +383,7 @@ public class RemoteObject {
 		
 		manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
 		
-		listeners.remove(listenerSubscription.getType(), listenerSubscription);
+		removeListener(listenerSubscription);
 	}
 	
 	public void removeEventListener(
@@ -308,8 +406,7 @@ public class RemoteObject {
 				new DefaultContinuation<Void>(cont) {
 					@Override
 					public void onSuccess(Void result) {
-						listeners.remove(listenerSubscription.getType(),
-								listenerSubscription);
+						removeListener(listenerSubscription);
 						try {
 							cont.onSuccess(result);
 						} catch (Exception e) {
@@ -322,16 +419,320 @@ public class RemoteObject {
 				});
 	}
 	
+	/**
+	 * Adds the listener of a subscription done in the media server, for
+	 * example in a transaction.
+	 */
+	public void addSubscribedListener(
+			ListenerSubscriptionImpl listenerSubscription) {
+		addListener(listenerSubscription);
+	}
+	
+	/**
+	 * Removes the listener of a subscription cancelled in the media server,
+	 * for example in a transaction.
+	 */
+	public void removeSubscribedListener(
+			ListenerSubscriptionImpl listenerSubscription) {
+		removeListener(listenerSubscription);
+	}
+	
+	private void addListener(ListenerSubscriptionImpl listenerSubscription) {
+		
+		final String eventType = listenerSubscription.getType();
+		
+		List<ListenerSubscriptionImpl> typeListeners =
+				listeners.get(eventType);
+		
+		if (typeListeners == null) {
+			typeListeners = new CopyOnWriteArrayList<>();
+			List<ListenerSubscriptionImpl> previous =
+					listeners.putIfAbsent(eventType, typeListeners);
+			if (previous != null) {
+				typeListeners = previous;
+			}
+		}
+		
+		typeListeners.add(listenerSubscription);
+		
+		if (listenerSubscription.getListener() == INVALIDATION_LISTENER) {
+			return;
+		}
+		
+		// The subscription done only to invalidate properties is not needed
+		// anymore
+		ListenerSubscriptionImpl invalidationSubscription;
+		synchronized (invalidationSubscriptions) {
+			invalidationSubscription = invalidationSubscriptions.get(eventType);
+			if (invalidationSubscription == null
+					|| invalidationSubscription.getListener() != INVALIDATION_LISTENER) {
+				return;
+			}
+			invalidationSubscriptions.put(eventType, listenerSubscription);
+			typeListeners.remove(invalidationSubscription);
+		}
+		
+		manager.unsubscribe(objectRef,
+				invalidationSubscription.getSubscriptionId(),
+				new Continuation<Void>() {
+					@Override
+					public void onSuccess(Void result) {
+					}
+					
+					@Override
+					public void onError(Throwable cause) {
+						LOG.warn("Exception unsubscribing from event "
+								+ eventType, cause);
+					}
+				});
+	}
+	
+	private void removeListener(ListenerSubscriptionImpl listenerSubscription) {
+		
+		String eventType = listenerSubscription.getType();
+		
+		List<ListenerSubscriptionImpl> typeListeners = listeners.get(eventType);
+		
+		if (typeListeners != null) {
+			typeListeners.remove(listenerSubscription);
+		}
+		
+		synchronized (invalidationSubscriptions) {
+			
+			if (invalidationSubscriptions.get(eventType) != listenerSubscription) {
+				return;
+			}
+			
+			// Another listener of the type keeps receiving the events
+			ListenerSubscriptionImpl other = getSubscription(eventType);
+			if (other != null) {
+				invalidationSubscriptions.put(eventType, other);
+				return;
+			}
+			
+			// Properties are subscribed again the next time they are cached
+			invalidateProperties(eventType);
+			invalidationSubscriptions.remove(eventType);
+		}
+	}
+	
+	/**
+	 * Executes the listeners subscribed to the event type. Listeners of the
+	 * event class receive the same instance of the event, which is created
+	 * only once.
+	 */
 	public void fireEvent(String type, Props data) {
-		for (RemoteObjectEventListener eventListener : this.listeners.get(type)) {
+		fireEvent(null, type, data);
+	}
+	
+	/**
+	 * Executes the listeners of the subscription, or all the listeners of the
+	 * event type if the media server doesn't send the subscription. Each
+	 * subscription receives its own copy of the events from the media server.
+	 */
+	public void fireEvent(String subscription, String type, Props data) {
+		
+		// Before the listeners, so they get the new values
+		invalidateProperties(type);
+		
+		List<ListenerSubscriptionImpl> typeListeners = listeners.get(type);
+		if (typeListeners == null) {
+			return;
+		}
+		
+		boolean allSubscriptions =
+				subscription == null || subscription.isEmpty();
+		
+		Class<? extends Event> eventClass = null;
+		Event event = null;
+		
+		for (ListenerSubscriptionImpl listenerSubscription : typeListeners) {
+			
+			if (!allSubscriptions
+					&& !subscription.equals(listenerSubscription
+							.getSubscriptionId())) {
+				continue;
+			}
+			
+			RemoteObjectEventListener eventListener =
+					listenerSubscription.getListener();
+			
 			try {
-				eventListener.onEvent(type, data);
+				
+				if (eventListener instanceof TypedRemoteObjectEventListener) {
+					
+					TypedRemoteObjectEventListener typedListener =
+							(TypedRemoteObjectEventListener) eventListener;
+					
+					if (typedListener.getEventClass() != eventClass) {
+						eventClass = typedListener.getEventClass();
+						event = createEvent(eventClass, data);
+					}
+					
+					if (event != null) {
+						typedListener.onEvent(event);
+					}
+					
+				} else {
+					eventListener.onEvent(type, data);
+				}
+				
 			} catch (Exception e) {
 				LOG.error("Exception executing event listener", e);
 			}
 		}
 	}
 	
+	private Event createEvent(Class<? extends Event> eventClass, Props data) {
+		
+		try {
+			
+			Object[] params =
+					FLATTENER.unflattenConstructorParams(eventClass, data,
+							manager);
+			
+			// The source of the event is this object
+			params[0] = kurentoObject;
+			
+			return (Event) FLATTENER.newInstance(eventClass, params);
+			
+		} catch (Exception e) {
+			LOG.error(
+					"Exception while processing event '"
+							+ eventClass.getSimpleName() + "' with params '"
+							+ data + "'", e);
+			return null;
+		}
+	}
+	
+	private boolean isCacheable(String operationName, Props params) {
+		return params == null && manager.getPropertyCache().isCached(operationName);
+	}
+	
+	private Object getCachedProperty(String operationName) {
+		
+		Object value = cachedProperties.get(operationName);
+		
+		if (value != null) {
+			manager.getPropertyCache().hit();
+		} else {
+			manager.getPropertyCache().miss();
+		}
+		
+		return value;
+	}
+	
+	private void cacheProperty(String operationName, Object value, int version) {
+		
+		if (value == null || cachedPropertiesVersion.get() != version) {
+			return;
+		}
+		
+		cachedProperties.put(operationName, value);
+		
+		// Invalidated while it was being cached
+		if (cachedPropertiesVersion.get() != version) {
+			cachedProperties.remove(operationName);
+		}
+	}
+	
+	private boolean isSubscribedForInvalidation(String operationName) {
+		
+		List<String> eventTypes =
+				manager.getPropertyCache().getInvalidatingEvents(operationName);
+		
+		return eventTypes != null
+				&& invalidationSubscriptions.keySet().containsAll(eventTypes);
+	}
+	
+	/**
+	 * Subscribes to the events invalidating the property, if not done yet.
+	 * The subscription of a listener of the same event type is reused.
+	 * Returns false if the property can't be cached.
+	 */
+	private boolean subscribeForInvalidation(String operationName) {
+		
+		List<String> eventTypes =
+				manager.getPropertyCache().getInvalidatingEvents(operationName);
+		
+		if (eventTypes == null) {
+			return false;
+		}
+		
+		for (String eventType : eventTypes) {
+			
+			if (invalidationSubscriptions.containsKey(eventType)) {
+				continue;
+			}
+			
+			synchronized (invalidationSubscriptions) {
+				
+				if (invalidationSubscriptions.containsKey(eventType)) {
+					continue;
+				}
+				
+				ListenerSubscriptionImpl listenerSubscription =
+						getSubscription(eventType);
+				if (listenerSubscription != null) {
+					invalidationSubscriptions.put(eventType,
+							listenerSubscription);
+					continue;
+				}
+				
+				try {
+					// Events are received by fireEvent, that invalidates the
+					// properties before executing the listeners
+					invalidationSubscriptions.put(eventType,
+							addEventListener(eventType, INVALIDATION_LISTENER));
+					
+				} catch (Exception e) {
+					LOG.warn("Exception subscribing to event " + eventType
+							+ " to cache property " + operationName, e);
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	private ListenerSubscriptionImpl getSubscription(String eventType) {
+		
+		List<ListenerSubscriptionImpl> typeListeners = listeners.get(eventType);
+		if (typeListeners != null) {
+			for (ListenerSubscriptionImpl listenerSubscription : typeListeners) {
+				if (listenerSubscription.getSubscriptionId() != null) {
+					return listenerSubscription;
+				}
+			}
+		}
+		
+		return null;
+	}
+	
+	private void invalidateProperties(String eventType) {
+		
+		if (!invalidationSubscriptions.containsKey(eventType)) {
+			return;
+		}
+		
+		cachedPropertiesVersion.incrementAndGet();
+		
+		PropertyCache propertyCache = manager.getPropertyCache();
+		for (String operationName : cachedProperties.keySet()) {
+			List<String> eventTypes =
+					propertyCache.getInvalidatingEvents(operationName);
+			if (eventTypes == null || eventTypes.contains(eventType)) {
+				cachedProperties.remove(operationName);
+			}
+		}
+	}
+	
+	private void invalidateProperties() {
+		cachedPropertiesVersion.incrementAndGet();
+		cachedProperties.clear();
+	}
+	
 	public Transaction beginTransaction() {
 		return new TransactionImpl(manager);
 	}
@@ -1,14 +1,8 @@
 package org.kurento.client.internal.client;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.Event;
@@ -16,22 +10,17 @@ import org.kurento.client.EventListener;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.ParamAnnotationUtils;
-import org.kurento.client.internal.server.EventSubscription;
+import org.kurento.client.internal.client.InvocationDescriptor.Kind;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableSet;
-
 public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 	
 	private static final Logger LOG = LoggerFactory
 			.getLogger(RemoteObjectInvocationHandler.class);
 	
-	private static final Set<String> REMOTE_OBJECT_METHODS = ImmutableSet.of(
-			"isCommited", "waitCommited", "whenCommited", "beginTransaction");
-	
 	private RemoteObject remoteObject;
 	private final RomManager manager;
 	
@@ -66,10 +55,11 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 	public Object internalInvoke(final Object proxy, Method method,
 			Object[] args) throws Throwable {
 		
-		String methodName = method.getName();
-		if (REMOTE_OBJECT_METHODS.contains(methodName)) {
+		InvocationDescriptor descriptor = InvocationDescriptor.get(method);
+		
+		if (descriptor.getKind() == Kind.REMOTE_OBJECT_METHOD) {
 			Method remoteObjectMethod =
-					findMethod(remoteObject, methodName, args);
+					findMethod(remoteObject, method.getName(), args);
 			return remoteObjectMethod.invoke(remoteObject, args);
 		}
 		
@@ -77,85 +67,52 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 		
 		Continuation<?> cont = null;
 		Transaction tx = null;
-		List<String> paramNames = Collections.emptyList();
 		
-		if ((args != null) && (args.length > 0)) {
+		if (descriptor.hasContinuation()) {
 			
-			paramNames = ParamAnnotationUtils.getParamNames(method);
+			cont = (Continuation<?>) args[args.length - 1];
+			args = Arrays.copyOf(args, args.length - 1);
 			
-			if (args[args.length - 1] instanceof Continuation) {
-				
-				cont = (Continuation<?>) args[args.length - 1];
-				args = Arrays.copyOf(args, args.length - 1);
-				paramNames = paramNames.subList(0, paramNames.size() - 1);
-				
-			} else if ((args != null) && (args.length > 0)
-					&& (args[0] instanceof Transaction)) {
-				
-				tx = (Transaction) args[0];
-				args = Arrays.copyOfRange(args, 1, args.length);
-				paramNames = paramNames.subList(1, paramNames.size());
-			}
+		} else if (descriptor.hasTransaction()) {
+			
+			tx = (Transaction) args[0];
+			args = Arrays.copyOfRange(args, 1, args.length);
 		}
 		
-		if (methodName.equals("release")) {
-			
+		switch (descriptor.getKind()) {
+		case RELEASE:
 			return release(cont, tx);
-			
-		} else if (method.getAnnotation(EventSubscription.class) != null) {
-			
-			EventSubscription eventSubscription =
-					method.getAnnotation(EventSubscription.class);
-			
-			if (methodName.startsWith("add")) {
-				return subscribeEventListener(proxy, args, methodName,
-						eventSubscription.value(), cont, tx);
-			} else if (methodName.startsWith("remove")) {
-				return unsubscribeEventListener(proxy, args, methodName,
-						eventSubscription.value(), cont, tx);
-			} else {
-				throw new IllegalStateException("Method " + methodName
-						+ " undefined for events");
-			}
-			
-		} else {
-			
-			return invoke(method, paramNames, args, cont, tx);
+		case ADD_LISTENER:
+			return subscribeEventListener(proxy, args, descriptor, cont, tx);
+		case REMOVE_LISTENER:
+			return unsubscribeEventListener(args, cont, tx);
+		default:
+			return invoke(descriptor, args, cont, tx);
 		}
 	}
 	
-	private Object invoke(Method method, List<String> paramNames,
-			Object[] args, Continuation<?> cont, Transaction tx) {
+	private Object invoke(InvocationDescriptor descriptor, Object[] args,
+			Continuation<?> cont, Transaction tx) {
 		
-		Props props = ParamAnnotationUtils.extractProps(paramNames, args);
+		Props props =
+				ParamAnnotationUtils.extractProps(descriptor.getParamNames(),
+						args);
 		
 		if (cont != null) {
 			
-			Type[] paramTypes = method.getGenericParameterTypes();
-			ParameterizedType contType =
-					(ParameterizedType) paramTypes[paramTypes.length - 1];
-			Type returnType = contType.getActualTypeArguments()[0];
-			remoteObject.invoke(method.getName(), props, returnType, cont);
+			remoteObject.invoke(descriptor.getMethodName(), props,
+					descriptor.getReturnType(), cont);
 			return null;
 			
 		} else if (tx != null) {
 			
-			Type returnType = method.getGenericReturnType();
-			
-			if (returnType instanceof ParameterizedType) {
-				ParameterizedType futureType = (ParameterizedType) returnType;
-				Type methodReturnType = futureType.getActualTypeArguments()[0];
-				return remoteObject.invoke(method.getName(), props,
-						methodReturnType, tx);
-			} else {
-				return remoteObject.invoke(method.getName(), props, Void.class,
-						tx);
-			}
+			return remoteObject.invoke(descriptor.getMethodName(), props,
+					descriptor.getReturnType(), tx);
 			
 		} else {
 			
-			return remoteObject.invoke(method.getName(), props,
-					method.getGenericReturnType());
+			return remoteObject.invoke(descriptor.getMethodName(), props,
+					descriptor.getReturnType());
 		}
 	}
 	
@@ -173,21 +130,33 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 	
 	@SuppressWarnings("unchecked")
 	private Object subscribeEventListener(final Object proxy,
-			final Object[] args, String methodName,
-			final Class<? extends Event> eventClass, Continuation<?> cont,
-			Transaction tx) {
+			final Object[] args, InvocationDescriptor descriptor,
+			Continuation<?> cont, Transaction tx) {
 		
-		String eventName =
-				eventClass.getSimpleName().substring(0,
-						eventClass.getSimpleName().length() - "Event".length());
+		final Class<? extends Event> eventClass = descriptor.getEventClass();
+		String eventName = descriptor.getEventName();
 		
-		RemoteObjectEventListener listener = new RemoteObjectEventListener() {
-			@Override
-			public void onEvent(String eventType, Props data) {
-				propagateEventTo(proxy, eventClass, data,
-						(EventListener<?>) args[0]);
-			}
-		};
+		final EventListener<?> eventListener = (EventListener<?>) args[0];
+		
+		RemoteObjectEventListener listener =
+				new TypedRemoteObjectEventListener() {
+					
+					@Override
+					public Class<? extends Event> getEventClass() {
+						return eventClass;
+					}
+					
+					@SuppressWarnings({"unchecked", "rawtypes"})
+					@Override
+					public void onEvent(Event event) {
+						((EventListener) eventListener).onEvent(event);
+					}
+					
+					@Override
+					public void onEvent(String eventType, Props data) {
+						propagateEventTo(proxy, eventClass, data, eventListener);
+					}
+				};
 		
 		if (cont != null) {
 			remoteObject.addEventListener(eventName, listener,
@@ -201,10 +170,8 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 	}
 	
 	@SuppressWarnings("unchecked")
-	private Object unsubscribeEventListener(final Object proxy,
-			final Object[] args, String methodName,
-			final Class<? extends Event> eventClass, Continuation<?> cont,
-			Transaction tx) {
+	private Object unsubscribeEventListener(final Object[] args,
+			Continuation<?> cont, Transaction tx) {
 		
 		ListenerSubscriptionImpl listenerSubscription =
 				(ListenerSubscriptionImpl) args[0];
@@ -225,19 +192,16 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 			Class<? extends Event> eventClass, Props data,
 			EventListener<?> listener) {
 		
-		// TODO Optimize this to create only one event for all listeners
-		
 		try {
 			
-			Constructor<?> constructor = eventClass.getConstructors()[0];
+			ParamsFlattener flattener = ParamsFlattener.getInstance();
 
-			Object[] params = ParamsFlattener.getInstance().unflattenParams(
-					constructor.getParameterAnnotations(),
-					constructor.getGenericParameterTypes(), data, manager);
+			Object[] params = flattener.unflattenConstructorParams(eventClass,
+					data, manager);
 
 			params[0] = object;
 			
-			Event e = (Event) constructor.newInstance(params);
+			Event e = (Event) flattener.newInstance(eventClass, params);
 			
 			((EventListener) listener).onEvent(e);
 			
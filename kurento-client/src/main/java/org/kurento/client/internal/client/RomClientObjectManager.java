@@ -39,7 +39,7 @@ public class RomClientObjectManager implements RomEventHandler,
 			return;
 		}
 
-		object.fireEvent(type, data);
+		object.fireEvent(subscription, type, data);
 	}
 
 	public void registerObject(String objectRef, RemoteObject remoteObject) {
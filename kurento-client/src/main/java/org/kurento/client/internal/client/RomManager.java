@@ -4,6 +4,7 @@ import java.lang.reflect.Type;
 import java.util.List;
 
 import org.kurento.client.Continuation;
+import org.kurento.client.FutureContinuation;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.TransactionImpl;
 import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
@@ -13,6 +14,8 @@ import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public class RomManager implements ObjectRefsManager {
 	
 	private static final Logger log = LoggerFactory.getLogger(RomManager.class);
@@ -20,6 +23,8 @@ public class RomManager implements ObjectRefsManager {
 	private final RomClientObjectManager manager;
 	private final RomClient client;
 	
+	private final PropertyCache propertyCache = new PropertyCache();
+	
 	public RomManager(RomClient client) {
 		this.client = client;
 		this.manager = new RomClientObjectManager(client);
@@ -91,6 +96,13 @@ public class RomManager implements ObjectRefsManager {
 		create(remoteClassName, null, cont);
 	}
 	
+	public ListenableFuture<RemoteObject> createAsync(String remoteClassName,
+			Props constructorParams) {
+		FutureContinuation<RemoteObject> future = new FutureContinuation<>();
+		create(remoteClassName, constructorParams, future);
+		return future;
+	}
+	
 	public void destroy() {
 		this.client.destroy();
 	}
@@ -194,6 +206,14 @@ public class RomManager implements ObjectRefsManager {
 		});
 	}
 	
+	/**
+	 * Returns the configuration of the properties cached in remote objects
+	 * and the hits and misses of the cache.
+	 */
+	public PropertyCache getPropertyCache() {
+		return propertyCache;
+	}
+	
 	public RomClient getRomClient() {
 		return client;
 	}
@@ -0,0 +1,16 @@
+package org.kurento.client.internal.client;
+
+import org.kurento.client.Event;
+
+/**
+ * Listener of the events of a remote object that receives them as instances
+ * of its event class. When an event is fired, the instance is created only
+ * once for all the listeners of the same event class.
+ */
+public interface TypedRemoteObjectEventListener extends
+		RemoteObjectEventListener {
+
+	public Class<? extends Event> getEventClass();
+
+	public void onEvent(Event event);
+}
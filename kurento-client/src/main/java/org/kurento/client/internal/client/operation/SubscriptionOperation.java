@@ -10,14 +10,12 @@ public class SubscriptionOperation extends Operation {
 
 	private KurentoObject kurentoObject;
 	private String eventType;
-	private RemoteObjectEventListener listener;
 	private ListenerSubscriptionImpl listenerSubscription;
 
 	public SubscriptionOperation(KurentoObject object, String eventType,
 			RemoteObjectEventListener listener) {
 		this.kurentoObject = object;
 		this.eventType = eventType;
-		this.listener = listener;
 		this.listenerSubscription = new ListenerSubscriptionImpl(eventType,
 				listener);
 	}
@@ -38,7 +36,8 @@ public class SubscriptionOperation extends Operation {
 	public void processResponse(Object response) {
 
 		listenerSubscription.setSubscription((String) response);
-		getRemoteObject(kurentoObject).addEventListener(eventType, listener);
+		getRemoteObject(kurentoObject).addSubscribedListener(
+				listenerSubscription);
 	}
 
 	@Override
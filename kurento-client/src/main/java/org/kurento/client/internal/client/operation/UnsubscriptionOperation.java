@@ -35,7 +35,8 @@ public class UnsubscriptionOperation extends Operation {
 	
 	@Override
 	public void processResponse(Object response) {
-		// There is nothing to do here.
+		getRemoteObject(kurentoObject).removeSubscribedListener(
+				listenerSubscription);
 	}
 	
 	@Override
@@ -0,0 +1,191 @@
+package org.kurento.client.internal.transport.serialization;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.ProtocolException;
+
+/**
+ * Accessors of the complex types (registers and events) flattened and
+ * unflattened by {@link ParamsFlattener}. They are obtained by reflection
+ * once per class, instead of each time an object is serialized.
+ */
+class BeanAccessors {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType GETTER_TYPE = MethodType.methodType(
+			Object.class, Object.class);
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType
+			.methodType(Object.class, Object[].class);
+
+	/**
+	 * Getter of a bean property: <code>getX()</code> or <code>isX()</code>.
+	 */
+	static class Property {
+
+		private final String name;
+		private final Method method;
+		private final MethodHandle handle;
+
+		private Property(String name, Method method) {
+			this.name = name;
+			this.method = method;
+			this.handle = toHandle(method);
+		}
+
+		private static MethodHandle toHandle(Method method) {
+			try {
+				method.setAccessible(true);
+				return LOOKUP.unreflect(method).asType(GETTER_TYPE);
+			} catch (Exception e) {
+				// Invoked by reflection, failing the same way as before
+				return null;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Object get(Object bean) throws Exception {
+			if (handle == null) {
+				return method.invoke(bean);
+			}
+			try {
+				return (Object) handle.invokeExact(bean);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new UndeclaredThrowableException(t);
+			}
+		}
+	}
+
+	/**
+	 * First public constructor of a class, with the names and types of its
+	 * params.
+	 */
+	static class Creator {
+
+		private final Constructor<?> constructor;
+		private final List<String> paramNames;
+		private final Class<?>[] paramClasses;
+		private final Type[] paramTypes;
+		private final MethodHandle handle;
+
+		private Creator(Class<?> clazz) {
+
+			Constructor<?>[] constructors = clazz.getConstructors();
+			if (constructors.length == 0) {
+				throw new ProtocolException("Class '" + clazz.getSimpleName()
+						+ "' has no public constructor");
+			}
+
+			this.constructor = constructors[0];
+			this.paramNames = Collections.unmodifiableList(ParamAnnotationUtils
+					.getParamNames(constructor));
+			this.paramClasses = constructor.getParameterTypes();
+			this.paramTypes = constructor.getGenericParameterTypes();
+
+			MethodHandle handle;
+			try {
+				handle = LOOKUP.unreflectConstructor(constructor)
+						.asSpreader(Object[].class, paramClasses.length)
+						.asType(CONSTRUCTOR_TYPE);
+			} catch (Exception e) {
+				handle = null;
+			}
+			this.handle = handle;
+		}
+
+		public List<String> getParamNames() {
+			return paramNames;
+		}
+
+		public Type getParamType(int index) {
+			return paramTypes[index];
+		}
+
+		public int getParamCount() {
+			return paramClasses.length;
+		}
+
+		public Object newInstance(Object[] params) throws Exception {
+			if (handle == null) {
+				return constructor.newInstance(params);
+			}
+			try {
+				return (Object) handle.invokeExact(params);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new UndeclaredThrowableException(t);
+			}
+		}
+	}
+
+	private static final ClassValue<List<Property>> properties = new ClassValue<List<Property>>() {
+		@Override
+		protected List<Property> computeValue(Class<?> clazz) {
+			return createProperties(clazz);
+		}
+	};
+
+	private static final ClassValue<Creator> creators = new ClassValue<Creator>() {
+		@Override
+		protected Creator computeValue(Class<?> clazz) {
+			return new Creator(clazz);
+		}
+	};
+
+	public static List<Property> getProperties(Class<?> clazz) {
+		return properties.get(clazz);
+	}
+
+	public static Creator getCreator(Class<?> clazz) {
+		return creators.get(clazz);
+	}
+
+	private static List<Property> createProperties(Class<?> clazz) {
+
+		List<Property> props = new ArrayList<>();
+
+		for (Method method : clazz.getMethods()) {
+
+			if (method.getParameterTypes().length > 0
+					|| Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+
+			String propName = null;
+
+			String methodName = method.getName();
+			if (methodName.startsWith("is")) {
+				propName = methodName.substring(2, methodName.length());
+			} else if (methodName.startsWith("get")
+					&& !methodName.equals("getClass")) {
+				propName = methodName.substring(3, methodName.length());
+			}
+
+			if (propName != null && !propName.isEmpty()) {
+				propName = Character.toLowerCase(propName.charAt(0))
+						+ propName.substring(1);
+				props.add(new Property(propName, method));
+			}
+		}
+
+		return Collections.unmodifiableList(props);
+	}
+}
@@ -1,9 +1,7 @@
 package org.kurento.client.internal.transport.serialization;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
@@ -20,6 +18,8 @@ import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.server.ProtocolException;
 import org.kurento.client.internal.server.RemoteObjectManager;
+import org.kurento.client.internal.transport.serialization.BeanAccessors.Creator;
+import org.kurento.client.internal.transport.serialization.BeanAccessors.Property;
 import org.kurento.jsonrpc.Prop;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
@@ -212,30 +212,15 @@ public class ParamsFlattener {
 			RemoteObjectManager manager) {
 
 		Map<String, Object> propsMap = new HashMap<>();
-		for (Method method : result.getClass().getMethods()) {
-
-			String propName = null;
-
-			String methodName = method.getName();
-			if (methodName.startsWith("is")) {
-				propName = methodName.substring(2, methodName.length());
-			} else if (methodName.startsWith("get")
-					&& !methodName.equals("getClass")) {
-				propName = methodName.substring(3, methodName.length());
-			}
-
-			if (propName != null) {
-				try {
-					propName = Character.toLowerCase(propName.charAt(0))
-							+ propName.substring(1);
-					Object value = flattenResult(method.invoke(result), manager);
-					propsMap.put(propName, value);
-
-				} catch (Exception e) {
-					log.warn(
-							"Exception while accessing prop '{}' in param object: {}",
-							propName, result, e);
-				}
+		for (Property property : BeanAccessors.getProperties(result.getClass())) {
+			try {
+				Object value = flattenResult(property.get(result), manager);
+				propsMap.put(property.getName(), value);
+
+			} catch (Exception e) {
+				log.warn(
+						"Exception while accessing prop '{}' in param object: {}",
+						property.getName(), result, e);
 			}
 		}
 
@@ -263,30 +248,15 @@ public class ParamsFlattener {
 	private Object extractParamAsProps(Object param, boolean inTx) {
 
 		Map<String, Object> propsMap = new HashMap<>();
-		for (Method method : param.getClass().getMethods()) {
-
-			String propName = null;
-
-			String methodName = method.getName();
-			if (methodName.startsWith("is")) {
-				propName = methodName.substring(2, methodName.length());
-			} else if (methodName.startsWith("get")
-					&& !methodName.equals("getClass")) {
-				propName = methodName.substring(3, methodName.length());
-			}
-
-			if (propName != null) {
-				try {
-					propName = Character.toLowerCase(propName.charAt(0))
-							+ propName.substring(1);
-					Object value = flattenParam(method.invoke(param), inTx);
-					propsMap.put(propName, value);
-
-				} catch (Exception e) {
-					log.warn(
-							"Exception while accessing prop '{}' in param object: {}",
-							propName, param, e);
-				}
+		for (Property property : BeanAccessors.getProperties(param.getClass())) {
+			try {
+				Object value = flattenParam(property.get(param), inTx);
+				propsMap.put(property.getName(), value);
+
+			} catch (Exception e) {
+				log.warn(
+						"Exception while accessing prop '{}' in param object: {}",
+						property.getName(), param, e);
 			}
 		}
 
@@ -365,25 +335,44 @@ public class ParamsFlattener {
 				|| clazz == Void.class;
 	}
 
-	private Object unflattedComplexType(Class<?> clazz, Props props,
+	/**
+	 * Unflatten the params of the first public constructor of the class. The
+	 * constructor and the names of its params are obtained only the first time
+	 * a class is unflattened.
+	 *
+	 * @param clazz
+	 * @param params
+	 * @param manager
+	 * @return the params to create an instance with
+	 *         {@link #newInstance(Class, Object[])}
+	 */
+	public Object[] unflattenConstructorParams(Class<?> clazz, Props params,
 			ObjectRefsManager manager) {
 
-		Constructor<?> constructor = clazz.getConstructors()[0];
-
-		Object[] constParams = new Object[constructor.getParameterTypes().length];
+		Creator creator = BeanAccessors.getCreator(clazz);
 
-		List<String> paramNames = ParamAnnotationUtils
-				.getParamNames(constructor);
-		Class<?>[] constClasses = constructor.getParameterTypes();
+		Object[] constParams = new Object[creator.getParamCount()];
 
 		for (int i = 0; i < constParams.length; i++) {
-			String paramName = paramNames.get(i);
-			constParams[i] = unflattenValue(paramName, constClasses[i],
-					props.getProp(paramName), manager);
+			String paramName = creator.getParamNames().get(i);
+			constParams[i] = unflattenValue(paramName,
+					creator.getParamType(i), params.getProp(paramName),
+					manager);
 		}
 
+		return constParams;
+	}
+
+	/**
+	 * Create an instance of the class with its first public constructor.
+	 *
+	 * @param clazz
+	 * @param constParams
+	 * @return the new instance
+	 */
+	public Object newInstance(Class<?> clazz, Object[] constParams) {
 		try {
-			return constructor.newInstance(constParams);
+			return BeanAccessors.getCreator(clazz).newInstance(constParams);
 		} catch (Exception e) {
 			throw new ProtocolException(
 					"Exception while creating an object for the class '"
@@ -391,6 +380,13 @@ public class ParamsFlattener {
 		}
 	}
 
+	private Object unflattedComplexType(Class<?> clazz, Props props,
+			ObjectRefsManager manager) {
+
+		return newInstance(clazz,
+				unflattenConstructorParams(clazz, props, manager));
+	}
+
 	private Object unflattenList(String paramName, List<?> value, Type type,
 			ObjectRefsManager manager) {
 
@@ -2,19 +2,42 @@ package org.kurento.client.internal.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.After;
 import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.EventListener;
+import org.kurento.client.FutureContinuation;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.client.PropertyCache;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.client.internal.test.model.ChangedEvent;
+import org.kurento.client.internal.test.model.SampleRemoteClass;
 import org.kurento.client.internal.test.model.client.ComplexParam;
 import org.kurento.client.internal.test.model.client.SampleClass;
 import org.kurento.client.internal.test.model.client.SampleEnum;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Props;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +46,46 @@ public abstract class AbstractRomTest {
 
 	private static Logger LOG = LoggerFactory.getLogger(AbstractRomTest.class);
 
+	protected static class RecordingListener implements
+			EventListener<ChangedEvent> {
+
+		protected final List<ChangedEvent> events = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void onEvent(ChangedEvent event) {
+			events.add(event);
+		}
+	}
+
+	/**
+	 * Counts the subscriptions requested to the server.
+	 */
+	protected static class CountingRomClient extends RomClientJsonRpcClient {
+
+		protected final AtomicInteger subscriptions = new AtomicInteger();
+		protected final AtomicInteger unsubscriptions = new AtomicInteger();
+
+		public CountingRomClient(JsonRpcClient client) {
+			super(client);
+		}
+
+		@Override
+		public String subscribe(String objectRef, String eventType,
+				Continuation<String> cont) {
+			subscriptions.incrementAndGet();
+			return super.subscribe(objectRef, eventType, cont);
+		}
+
+		@Override
+		public void unsubscribe(String objectRef,
+				String listenerSubscription, Continuation<Void> cont) {
+			unsubscriptions.incrementAndGet();
+			super.unsubscribe(objectRef, listenerSubscription, cont);
+		}
+	}
+
+	private JsonRpcClient sampleRemoteClient;
+
 	@Test
 	public void test() throws IOException {
 
@@ -45,6 +108,319 @@ public abstract class AbstractRomTest {
 		destroyJsonRpcServer();
 	}
 
+	@Test
+	public void proxyInvocationsTest() throws Exception {
+
+		RomManager manager = new RomManager(new RomClientJsonRpcClient(
+				startSampleRemoteServer()));
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		assertEquals("sync", obj.methodParamString("sync"));
+
+		FutureContinuation<String> cont = new FutureContinuation<>();
+		obj.methodParamString("continuation", cont);
+		assertEquals("continuation", cont.get(10, TimeUnit.SECONDS));
+
+		// The object created in the transaction is referenced before the
+		// transaction is committed
+		Transaction tx = obj.beginTransaction();
+		TFuture<String> result = obj.methodParamString(tx, "transaction");
+		SampleRemoteClass created = new SampleRemoteClass.Builder(manager)
+				.build(tx);
+		TFuture<String> createdResult = created.methodParamString(tx,
+				"created");
+		assertFalse(created.isCommited());
+
+		tx.commit();
+
+		assertEquals("transaction", result.get());
+		assertEquals("created", createdResult.get());
+		assertTrue(created.isCommited());
+		assertEquals("XXXX", created.methodReturnsString());
+	}
+
+	@Test
+	public void asyncApiTest() throws Exception {
+
+		RomManager manager = new RomManager(new RomClientJsonRpcClient(
+				startSampleRemoteServer()));
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager)
+				.buildAsync().get(10, TimeUnit.SECONDS);
+		assertTrue(obj.isCommited());
+
+		RemoteObject remoteObject = RemoteObjectInvocationHandler.getFor(obj)
+				.getRemoteObject();
+
+		assertEquals(
+				"async",
+				remoteObject.invokeAsync("methodParamString",
+						new Props("param", "async"), String.class).get(10,
+						TimeUnit.SECONDS));
+
+		try {
+			remoteObject.invokeAsync("unknownMethod", null, String.class).get(
+					10, TimeUnit.SECONDS);
+			fail("Unknown method invoked");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof JsonRpcErrorException);
+		}
+
+		remoteObject.releaseAsync().get(10, TimeUnit.SECONDS);
+
+		try {
+			obj.methodReturnsString();
+			fail("Released object invoked");
+		} catch (KurentoServerException e) {
+		}
+	}
+
+	@Test
+	public void proxyEventSubscriptionsTest() throws Exception {
+
+		RomManager manager = new RomManager(new RomClientJsonRpcClient(
+				startSampleRemoteServer()));
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		RecordingListener syncListener = new RecordingListener();
+		ListenerSubscription syncSubscription = obj
+				.addChangedListener(syncListener);
+
+		RecordingListener contListener = new RecordingListener();
+		FutureContinuation<ListenerSubscription> cont = new FutureContinuation<>();
+		obj.addChangedListener(contListener, cont);
+		ListenerSubscription contSubscription = cont.get(10, TimeUnit.SECONDS);
+
+		RecordingListener txListener = new RecordingListener();
+		Transaction tx = obj.beginTransaction();
+		ListenerSubscription txSubscription = obj.addChangedListener(tx,
+				txListener);
+		tx.commit();
+
+		assertTrue(syncSubscription.getSubscriptionId() != null);
+		assertTrue(contSubscription.getSubscriptionId() != null);
+		assertTrue(txSubscription.getSubscriptionId() != null);
+
+		// Sent without subscription, so all the listeners receive it
+		fireChangedEvent(manager, obj, "", "value1");
+
+		for (RecordingListener listener : Arrays.asList(syncListener,
+				contListener, txListener)) {
+			assertEquals(1, listener.events.size());
+			assertEquals("value1", listener.events.get(0).getValue());
+			assertSame(obj, listener.events.get(0).getSource());
+		}
+
+		obj.removeChangedListener(syncSubscription);
+		fireChangedEvent(manager, obj, "", "value2");
+
+		assertEquals(1, syncListener.events.size());
+		assertEquals(2, contListener.events.size());
+		assertEquals(2, txListener.events.size());
+	}
+
+	@Test
+	public void listenersShareEventTest() throws Exception {
+
+		RomManager manager = new RomManager(new RomClientJsonRpcClient(
+				startSampleRemoteServer()));
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		RecordingListener listener1 = new RecordingListener();
+		ListenerSubscription subscription1 = obj
+				.addChangedListener(listener1);
+
+		RecordingListener listener2 = new RecordingListener();
+		ListenerSubscription subscription2 = obj
+				.addChangedListener(listener2);
+
+		fireChangedEvent(manager, obj, "", "value1");
+
+		assertEquals(1, listener1.events.size());
+		assertEquals(1, listener2.events.size());
+		assertSame(listener1.events.get(0), listener2.events.get(0));
+
+		obj.removeChangedListener(subscription1);
+		fireChangedEvent(manager, obj, "", "value2");
+
+		assertEquals(1, listener1.events.size());
+		assertEquals(2, listener2.events.size());
+		assertEquals("value2", listener2.events.get(1).getValue());
+
+		obj.removeChangedListener(subscription2);
+		fireChangedEvent(manager, obj, "", "value3");
+
+		assertEquals(1, listener1.events.size());
+		assertEquals(2, listener2.events.size());
+	}
+
+	@Test
+	public void propertyCacheTest() throws Exception {
+
+		CountingRomClient client = new CountingRomClient(
+				startSampleRemoteServer());
+		RomManager manager = new RomManager(client);
+
+		PropertyCache cache = manager.getPropertyCache();
+		cache.setInvalidatedBy("methodReturnsString", "Changed");
+		cache.setImmutable("methodReturnsInt");
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		assertEquals("XXXX", obj.methodReturnsString());
+		assertEquals("XXXX", obj.methodReturnsString());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, client.subscriptions.get());
+
+		assertEquals(0, obj.methodReturnsInt());
+		assertEquals(0, obj.methodReturnsInt());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.getHitCount());
+
+		fireChangedEvent(manager, obj, "", "value");
+
+		assertEquals("XXXX", obj.methodReturnsString());
+		assertEquals(0, obj.methodReturnsInt());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, client.subscriptions.get());
+
+		obj.release();
+
+		// The cached values are not used for released objects
+		try {
+			obj.methodReturnsInt();
+			fail("Released object invoked");
+		} catch (KurentoServerException e) {
+		}
+		assertEquals(4, cache.getMissCount());
+	}
+
+	@Test
+	public void propertyCacheReusesSubscriptionsTest() throws Exception {
+
+		CountingRomClient client = new CountingRomClient(
+				startSampleRemoteServer());
+		RomManager manager = new RomManager(client);
+
+		PropertyCache cache = manager.getPropertyCache();
+		cache.setInvalidatedBy("methodReturnsString", "Changed");
+
+		// The listener subscription is used to invalidate the property
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		RecordingListener listener = new RecordingListener();
+		ListenerSubscription subscription = obj.addChangedListener(listener);
+		obj.methodReturnsString();
+		assertEquals(1, client.subscriptions.get());
+
+		fireChangedEvent(manager, obj, subscription.getSubscriptionId(),
+				"value");
+		assertEquals(1, listener.events.size());
+
+		obj.methodReturnsString();
+		assertEquals(2, cache.getMissCount());
+
+		// The subscription done to invalidate the property is replaced by the
+		// one of the listener
+		SampleRemoteClass obj2 = new SampleRemoteClass.Builder(manager)
+				.build();
+
+		obj2.methodReturnsString();
+		assertEquals(2, client.subscriptions.get());
+
+		RecordingListener listener2 = new RecordingListener();
+		ListenerSubscription subscription2 = obj2
+				.addChangedListener(listener2);
+		assertEquals(3, client.subscriptions.get());
+		assertEquals(1, client.unsubscriptions.get());
+
+		fireChangedEvent(manager, obj2, subscription2.getSubscriptionId(),
+				"value");
+		assertEquals(1, listener2.events.size());
+
+		obj2.methodReturnsString();
+		assertEquals(4, cache.getMissCount());
+
+		// When the listener is removed, the property is not cached anymore
+		// until it is subscribed again
+		obj2.removeChangedListener(subscription2);
+		obj2.methodReturnsString();
+		assertEquals(5, cache.getMissCount());
+		assertEquals(4, client.subscriptions.get());
+	}
+
+	@Test
+	public void listenerReceivesEachEventOnceTest() throws Exception {
+
+		CountingRomClient client = new CountingRomClient(
+				startSampleRemoteServer());
+		RomManager manager = new RomManager(client);
+
+		SampleRemoteClass obj = new SampleRemoteClass.Builder(manager).build();
+
+		RecordingListener listener1 = new RecordingListener();
+		ListenerSubscription subscription1 = obj
+				.addChangedListener(listener1);
+
+		RecordingListener listener2 = new RecordingListener();
+		Transaction tx = obj.beginTransaction();
+		ListenerSubscription subscription2 = obj.addChangedListener(tx,
+				listener2);
+		tx.commit();
+
+		// Only the subscription out of the transaction is requested alone
+		assertEquals(1, client.subscriptions.get());
+
+		// The media server sends the event once per subscription
+		fireChangedEvent(manager, obj, subscription1.getSubscriptionId(),
+				"value");
+		fireChangedEvent(manager, obj, subscription2.getSubscriptionId(),
+				"value");
+
+		assertEquals(1, listener1.events.size());
+		assertEquals(1, listener2.events.size());
+	}
+
+	/**
+	 * Starts a {@link SampleRomServerJsonRpcHandler} with the objects of the
+	 * package of {@link SampleRemoteClass}, that is stopped after the test.
+	 */
+	protected JsonRpcClient startSampleRemoteServer() {
+
+		startJsonRpcServer(new SampleRomServerJsonRpcHandler(
+				SampleRemoteClass.class.getPackage().getName(), "Impl"));
+
+		sampleRemoteClient = createJsonRpcClient();
+		return sampleRemoteClient;
+	}
+
+	@After
+	public void stopSampleRemoteServer() throws IOException {
+		if (sampleRemoteClient != null) {
+			sampleRemoteClient.close();
+			sampleRemoteClient = null;
+			destroyJsonRpcServer();
+		}
+	}
+
+	/**
+	 * Delivers an event to the client, as if it was sent by the server.
+	 */
+	protected void fireChangedEvent(RomManager manager, KurentoObject object,
+			String subscription, String value) {
+
+		String objectRef = RemoteObjectInvocationHandler.getFor(object)
+				.getRemoteObject().getObjectRef();
+
+		manager.getObjectManager().processEvent(objectRef, subscription,
+				"Changed", new Props("source", objectRef).add("value", value));
+	}
+
 	protected abstract void destroyJsonRpcServer();
 
 	protected abstract JsonRpcClient createJsonRpcClient();
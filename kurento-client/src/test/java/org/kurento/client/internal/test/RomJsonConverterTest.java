@@ -3,6 +3,7 @@ package org.kurento.client.internal.test;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -12,7 +13,9 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 
+import org.kurento.client.internal.test.model.client.ComplexListParam;
 import org.kurento.client.internal.test.model.client.ComplexParam;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.Props;
 
@@ -312,4 +315,33 @@ public class RomJsonConverterTest {
 		assertEquals(jsonObject.get("prop4").getAsFloat(), 5.5f, 0.01);
 
 	}
+
+	@Test
+	public void complexTypeFlattenRoundTrip() {
+
+		ComplexParam param1 = new ComplexParam("XXX", 33);
+		ComplexParam param2 = new ComplexParam("YYY", 44);
+
+		ParamsFlattener flattener = ParamsFlattener.getInstance();
+
+		Props props = flattener.flattenParams(new Props("param",
+				new ComplexListParam("ZZZ", true, Arrays.asList(param1,
+						param2))));
+
+		Props flatParam = (Props) props.getProp("param");
+		assertEquals(flatParam.getProp("name"), "ZZZ");
+		assertEquals(flatParam.getProp("enabled"), true);
+		assertEquals(((List<?>) flatParam.getProp("params")).size(), 2);
+
+		ComplexListParam param = (ComplexListParam) flattener.unflattenValue(
+				"param", ComplexListParam.class, flatParam, null);
+
+		assertEquals(param.getName(), "ZZZ");
+		assertEquals(param.isEnabled(), true);
+		assertEquals(param.getParams().size(), 2);
+		assertEquals(param.getParams().get(0).getProp1(), "XXX");
+		assertEquals(param.getParams().get(0).getProp2(), 33);
+		assertEquals(param.getParams().get(1).getProp1(), "YYY");
+		assertEquals(param.getParams().get(1).getProp2(), 44);
+	}
 }
@@ -0,0 +1,216 @@
+package org.kurento.client.internal.test;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_NAME;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_METHOD;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.server.RomServer;
+import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * ROM server used by the tests of the proxies. Besides the requests handled
+ * by {@link RomServerJsonRpcHandler}, it answers transaction, subscribe and
+ * unsubscribe requests, and releases are answered, so every invocation kind
+ * of the proxies can be tested.
+ */
+public class SampleRomServerJsonRpcHandler extends RomServerJsonRpcHandler {
+
+	private static Logger LOG = LoggerFactory
+			.getLogger(SampleRomServerJsonRpcHandler.class);
+
+	private static final String NEW_REF_PREFIX = "newref:";
+
+	private final RomServer server;
+
+	public SampleRomServerJsonRpcHandler(String packageName,
+			String classSuffix) {
+		super(packageName, classSuffix);
+		server = new RomServer(packageName, classSuffix);
+	}
+
+	@Override
+	public void handleRequest(Transaction transaction,
+			Request<JsonObject> request) throws Exception {
+
+		String method = request.getMethod();
+
+		try {
+			switch (method) {
+			case TRANSACTION_METHOD:
+				handleTransactionCommand(transaction, request.getParams()
+						.getAsJsonArray(TRANSACTION_OPERATIONS));
+				break;
+			case CREATE_METHOD:
+			case INVOKE_METHOD:
+			case RELEASE_METHOD:
+			case SUBSCRIBE_METHOD:
+			case UNSUBSCRIBE_METHOD:
+				transaction.sendResponse(execute(method, request.getParams()));
+				break;
+			default:
+				super.handleRequest(transaction, request);
+			}
+		} catch (ProtocolException e) {
+			try {
+				transaction.sendError(e);
+			} catch (IOException ex) {
+				LOG.warn("Exception while sending a response", e);
+			}
+		} catch (IOException e) {
+			LOG.warn("Exception while sending a response", e);
+		}
+	}
+
+	private Object execute(String method, JsonObject params) {
+
+		switch (method) {
+		case INVOKE_METHOD:
+			return server.invoke(
+					getAsString(params, INVOKE_OBJECT, "object reference"),
+					getAsString(params, INVOKE_OPERATION_NAME,
+							"method to be invoked"), JsonUtils.fromJson(
+							params.getAsJsonObject(INVOKE_OPERATION_PARAMS),
+							Props.class), Object.class);
+
+		case RELEASE_METHOD:
+			server.release(getAsString(params, RELEASE_OBJECT,
+					"object reference to be released"));
+			return null;
+
+		case CREATE_METHOD:
+			return server.create(getAsString(params, CREATE_TYPE,
+					"RemoteClass of the object to be created"), JsonUtils
+					.fromJson(params.getAsJsonObject(CREATE_CONSTRUCTOR_PARAMS),
+							Props.class));
+
+		case SUBSCRIBE_METHOD:
+			getAsString(params, SUBSCRIBE_OBJECT,
+					"object reference to subscribe to");
+			// Events are not generated by the sample objects
+			return UUID.randomUUID().toString();
+
+		case UNSUBSCRIBE_METHOD:
+			return null;
+
+		default:
+			throw new ProtocolException("Unknown operation '" + method
+					+ "' in transaction");
+		}
+	}
+
+	/**
+	 * Executes the operations in order. References to the objects created in
+	 * the transaction ("newref:N", the N-th object created) are replaced by
+	 * the references returned by the server.
+	 */
+	private void handleTransactionCommand(Transaction transaction,
+			JsonArray operations) throws IOException {
+
+		if (operations == null) {
+			throw new ProtocolException("It is necessary a property '"
+					+ TRANSACTION_OPERATIONS
+					+ "' with the operations of the transaction");
+		}
+
+		List<String> createdObjects = new ArrayList<>();
+		List<Response<Object>> responses = new ArrayList<>();
+
+		for (JsonElement operationJson : operations) {
+
+			Request<JsonObject> operation = JsonUtils.fromJsonRequest(
+					(JsonObject) operationJson, JsonObject.class);
+
+			JsonObject params = (JsonObject) resolveNewRefs(
+					operation.getParams(), createdObjects);
+
+			Object result = execute(operation.getMethod(), params);
+
+			if (CREATE_METHOD.equals(operation.getMethod())) {
+				createdObjects.add((String) result);
+			}
+			responses.add(new Response<>(operation.getId(), result));
+		}
+
+		transaction.sendResponse(responses);
+	}
+
+	private JsonElement resolveNewRefs(JsonElement value,
+			List<String> createdObjects) {
+
+		if (value instanceof JsonPrimitive) {
+
+			JsonPrimitive primitive = (JsonPrimitive) value;
+			if (primitive.isString()
+					&& primitive.getAsString().startsWith(NEW_REF_PREFIX)) {
+				int index = Integer.parseInt(primitive.getAsString().substring(
+						NEW_REF_PREFIX.length()));
+				return new JsonPrimitive(createdObjects.get(index));
+			}
+
+		} else if (value instanceof JsonObject) {
+
+			JsonObject resolved = new JsonObject();
+			for (Entry<String, JsonElement> prop : ((JsonObject) value)
+					.entrySet()) {
+				resolved.add(prop.getKey(),
+						resolveNewRefs(prop.getValue(), createdObjects));
+			}
+			return resolved;
+
+		} else if (value instanceof JsonArray) {
+
+			JsonArray resolved = new JsonArray();
+			for (JsonElement arrayValue : (JsonArray) value) {
+				resolved.add(resolveNewRefs(arrayValue, createdObjects));
+			}
+			return resolved;
+		}
+
+		return value;
+	}
+
+	private String getAsString(JsonObject jsonObject, String propName,
+			String propertyDescription) {
+
+		if (jsonObject == null) {
+			throw new ProtocolException("There are no params in the request");
+		}
+
+		JsonElement element = jsonObject.get(propName);
+		if (element == null) {
+			throw new ProtocolException("It is necessary a property '"
+					+ propName + "' with " + propertyDescription);
+		}
+		return element.getAsString();
+	}
+}
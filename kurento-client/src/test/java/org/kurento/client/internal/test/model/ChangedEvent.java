@@ -0,0 +1,24 @@
+package org.kurento.client.internal.test.model;
+
+import org.kurento.client.Event;
+import org.kurento.client.internal.server.Param;
+
+public class ChangedEvent implements Event {
+
+	private SampleRemoteClass source;
+	private String value;
+
+	public ChangedEvent(@Param("source") SampleRemoteClass source,
+			@Param("value") String value) {
+		this.source = source;
+		this.value = value;
+	}
+
+	public SampleRemoteClass getSource() {
+		return source;
+	}
+
+	public String getValue() {
+		return value;
+	}
+}
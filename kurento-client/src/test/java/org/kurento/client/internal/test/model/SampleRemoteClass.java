@@ -3,9 +3,15 @@ package org.kurento.client.internal.test.model;
 import java.util.List;
 
 import org.kurento.client.AbstractBuilder;
+import org.kurento.client.Continuation;
+import org.kurento.client.EventListener;
 import org.kurento.client.KurentoObject;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.TFuture;
+import org.kurento.client.Transaction;
 import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.server.EventSubscription;
 import org.kurento.client.internal.server.Param;
 
 @RemoteClass
@@ -37,6 +43,29 @@ public interface SampleRemoteClass extends KurentoObject {
 
 	public int methodParamInt(@Param("param") int param);
 
+	public void methodParamString(@Param("param") String param,
+			Continuation<String> cont);
+
+	public TFuture<String> methodParamString(Transaction tx,
+			@Param("param") String param);
+
+	public Transaction beginTransaction();
+
+	@EventSubscription(ChangedEvent.class)
+	public ListenerSubscription addChangedListener(
+			EventListener<ChangedEvent> listener);
+
+	@EventSubscription(ChangedEvent.class)
+	public void addChangedListener(EventListener<ChangedEvent> listener,
+			Continuation<ListenerSubscription> cont);
+
+	@EventSubscription(ChangedEvent.class)
+	public ListenerSubscription addChangedListener(Transaction tx,
+			EventListener<ChangedEvent> listener);
+
+	@EventSubscription(ChangedEvent.class)
+	public void removeChangedListener(ListenerSubscription listenerSubscription);
+
 	public static class Builder extends AbstractBuilder<SampleRemoteClass> {
 
 		public Builder(RomManager manager) {
@@ -0,0 +1,33 @@
+package org.kurento.client.internal.test.model.client;
+
+import java.util.List;
+
+import org.kurento.client.internal.server.Param;
+
+public class ComplexListParam {
+
+	private String name;
+	private boolean enabled;
+	private List<ComplexParam> params;
+
+	public ComplexListParam(@Param("name") String name,
+			@Param("enabled") boolean enabled,
+			@Param("params") List<ComplexParam> params) {
+		this.name = name;
+		this.enabled = enabled;
+		this.params = params;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public List<ComplexParam> getParams() {
+		return params;
+	}
+
+}
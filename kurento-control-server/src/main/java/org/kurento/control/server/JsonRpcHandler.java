@@ -15,7 +15,6 @@
 package org.kurento.control.server;
 
 import java.io.IOException;
-import java.net.ConnectException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -28,15 +27,14 @@ import org.kurento.control.server.exceptions.KurentoControlServerTransportExcept
 import org.kurento.control.server.exceptions.ResponsePropagationException;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcErrorException;
-import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.KeepAliveManager;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.Transaction;
 import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
-import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.SerializedNotification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -59,13 +57,15 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 	private static final String VALUE_PROPERTY = "value";
 
 	private static final String SUBSCRIBE_METHOD = "subscribe";
+	private static final String UNSUBSCRIBE_METHOD = "unsubscribe";
 	private static final String TRANSACTION_METHOD = "transaction";
+	private static final String ONEVENT_METHOD = "onEvent";
 
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcHandler.class);
 
 	@Autowired
-	private JsonRpcClient client;
+	private MediaServerPool mediaServers;
 
 	private final SubscriptionsManager subsManager = new SubscriptionsManager();
 
@@ -73,20 +73,21 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
 	@PostConstruct
 	public void init() {
-		client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
-
-			@Override
-			public void handleRequest(Transaction transaction,
-					Request<JsonObject> request) throws Exception {
-				internalEventJsonRpc(request);
-			}
-		});
+		mediaServers
+				.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
+
+					@Override
+					public void handleRequest(Transaction transaction,
+							Request<JsonObject> request) throws Exception {
+						internalEventJsonRpc(request);
+					}
+				});
 	}
 
 	@PreDestroy
 	private void destroy() throws IOException {
-		if (client != null) {
-			client.close();
+		if (mediaServers != null) {
+			mediaServers.close();
 		}
 	}
 
@@ -122,7 +123,7 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
 		} else {
 			try {
-				sendRequest(transaction, request, true);
+				sendRequest(transaction, request);
 			} catch (KurentoControlServerTransportException e) {
 				throw new TransportException(e);
 			}
@@ -130,30 +131,34 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 	}
 
 	private void sendRequest(final Transaction transaction,
-			final Request<JsonObject> request, final boolean retry) {
+			final Request<JsonObject> request) {
 
 		try {
 
-			client.sendRequest(request.getMethod(), request.getParams(),
-					new Continuation<JsonElement>() {
+			mediaServers.sendRequest(new Request<JsonObject>(
+					request.getMethod(), request.getParams()),
+					new Continuation<Response<JsonElement>>() {
 
 						@Override
-						public void onSuccess(JsonElement result) {
+						public void onSuccess(Response<JsonElement> response) {
 							if (request.getId() != null) {
-								processIfSubscribeResponse(
-										transaction.getSession(), request,
-										result);
-								requestOnComplete(result, transaction);
+								if (response.isError()) {
+									requestOnError(new JsonRpcErrorException(
+											response.getError()), transaction);
+								} else {
+									processIfSubscribeResponse(
+											transaction.getSession(), request,
+											response.getResult());
+									requestOnComplete(response.getResult(),
+											transaction);
+								}
 							}
 						}
 
 						@Override
 						public void onError(Throwable cause) {
-
 							log.error("Error sending request " + request, cause);
-							if (retry && cause instanceof ConnectException) {
-								sendRequest(transaction, request, false);
-							} else {
+							if (request.getId() != null) {
 								requestOnError(cause, transaction);
 							}
 						}
@@ -182,6 +187,14 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 				log.error("Error getting subscription on response {}", result,
 						e);
 			}
+
+		} else if (request.getMethod().equals(UNSUBSCRIBE_METHOD)) {
+
+			JsonElement subscription = request.getParams().get(
+					SUBSCRIPTION_PROPERTY);
+			if (subscription != null) {
+				subsManager.removeSubscription(subscription.getAsString());
+			}
 		}
 	}
 
@@ -255,8 +268,11 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 			}
 
 			if (!sessions.isEmpty()) {
+				// Serialized once for all the sessions
+				SerializedNotification notification = new SerializedNotification(
+						ONEVENT_METHOD, request.getParams());
 				for (Session session : sessions) {
-					sendNotificationToClient(request, session);
+					sendNotificationToClient(notification, session);
 				}
 			} else {
 				log.error("Received event but no client interested in it: {}",
@@ -269,17 +285,17 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 		}
 	}
 
-	private void sendNotificationToClient(Request<JsonObject> request,
+	private void sendNotificationToClient(SerializedNotification notification,
 			Session session) {
 
 		try {
-			session.sendNotification("onEvent", request.getParams());
+			session.sendNotification(notification);
 		} catch (IOException e) {
 			log.error("Exception while sending event from KMS to the client", e);
 		}
 	}
 
-	private void processTransactionRequest(Transaction transaction,
+	private void processTransactionRequest(final Transaction transaction,
 			Request<JsonObject> request) {
 
 		List<JsonElement> operations = new ArrayList<>();
@@ -288,79 +304,36 @@ public final class JsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 			operations.add(operation);
 		}
 
-		processTransactionOperations(transaction, operations,
-				new ArrayList<Response<JsonElement>>(),
-				new TransactionManager());
-	}
-
-	private void processTransactionOperations(final Transaction transaction,
-			final List<JsonElement> operations,
-			final List<Response<JsonElement>> responses,
-			final TransactionManager txManager) {
-
-		if (operations.isEmpty()) {
-
-			try {
-				transaction.sendResponse(responses);
-			} catch (IOException e) {
-				throw new ResponsePropagationException(
-						"Could not send response to client", e);
-			}
-
-		} else {
-
-			JsonElement atomicRequestJson = operations.remove(0);
-
-			final Request<JsonObject> atomicRequest = JsonUtils
-					.fromJsonRequest((JsonObject) atomicRequestJson,
-							JsonObject.class);
-
-			txManager.updateRequest(atomicRequest);
-
-			final Integer origId = atomicRequest.getId();
-			atomicRequest.setId(null);
-
-			try {
-
-				client.sendRequest(atomicRequest,
-						new Continuation<Response<JsonElement>>() {
-
-							@Override
-							public void onSuccess(Response<JsonElement> response) {
-								txManager.updateResponse(response);
-								processIfSubscribeResponse(
-										transaction.getSession(),
-										atomicRequest, response.getResult());
-
-								response.setId(origId);
-								responses.add(response);
-								processTransactionOperations(transaction,
-										operations, responses, txManager);
-							}
-
-							@Override
-							public void onError(Throwable cause) {
-								// TODO Add retry
-								try {
-									transaction.sendError(cause);
-								} catch (IOException e) {
-									log.error(
-											"Could not send response to client",
-											e);
-								}
-							}
-						});
-
-			} catch (IOException e) {
-				try {
-					transaction.sendError(e);
-				} catch (IOException e1) {
-					throw new ResponsePropagationException(
-							"Could not notify client that an exception was "
-									+ "produced getting the result from a media server response",
-							e1);
-				}
-			}
-		}
+		new TransactionExecutor(mediaServers, operations, new TransactionManager(),
+				new TransactionExecutor.Listener() {
+
+					@Override
+					public void operationCompleted(
+							Request<JsonObject> atomicRequest,
+							Response<JsonElement> response) {
+						processIfSubscribeResponse(transaction.getSession(),
+								atomicRequest, response.getResult());
+					}
+
+					@Override
+					public void transactionCompleted(
+							List<Response<JsonElement>> responses) {
+						try {
+							transaction.sendResponse(responses);
+						} catch (IOException e) {
+							throw new ResponsePropagationException(
+									"Could not send response to client", e);
+						}
+					}
+
+					@Override
+					public void transactionFailed(Throwable cause) {
+						try {
+							transaction.sendError(cause);
+						} catch (IOException e) {
+							log.error("Could not send response to client", e);
+						}
+					}
+				}).execute();
 	}
 }
@@ -3,6 +3,9 @@ package org.kurento.control.server;
 import static org.kurento.commons.PropertiesManager.getProperty;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
@@ -14,6 +17,7 @@ public class KmsConnectionHelper {
 	public static final String KMS_WEBSOCKETS_HOST_PROPERTY = "mediaServer.net.websocket.address";
 	public static final String KMS_WEBSOCKETS_PORT_PROPERTY = "mediaServer.net.websocket.port";
 	public static final String KMS_WEBSOCKETS_PATH_PROPERTY = "mediaServer.net.websocket.path";
+	public static final String KMS_WEBSOCKETS_URIS_PROPERTY = "mediaServer.net.websocket.uris";
 
 	public static final String KMS_WEBSOCKETS_HOST_DEFAULT = "localhost";
 	public static final String KMS_WEBSOCKETS_PORT_DEFAULT = "8888";
@@ -34,6 +38,34 @@ public class KmsConnectionHelper {
 	private static final Logger log = LoggerFactory
 			.getLogger(KmsConnectionHelper.class);
 
+	/**
+	 * Creates the connections to the media servers. When the property
+	 * {@value #KMS_WEBSOCKETS_URIS_PROPERTY} is set, with a comma separated
+	 * list of ws uris, a connection to each one is created. Otherwise, a
+	 * single connection is created as in {@link #createJsonRpcClient()}.
+	 */
+	public static List<JsonRpcClient> createJsonRpcClients() {
+
+		String wsUris = getProperty(KMS_WEBSOCKETS_URIS_PROPERTY);
+		if (wsUris == null || getProperty(RABBITMQ_HOST_PROPERTY) != null) {
+			return Collections.singletonList(createJsonRpcClient());
+		}
+
+		List<JsonRpcClient> clients = new ArrayList<>();
+		for (String wsUri : wsUris.split(",")) {
+			wsUri = wsUri.trim();
+			if (!wsUri.isEmpty()) {
+				log.info("KMS ws uri: " + wsUri);
+				clients.add(new JsonRpcClientWebSocket(wsUri));
+			}
+		}
+
+		log.info("Kurento Control Server using ws to communicate with "
+				+ clients.size() + " Kurento Media Servers.");
+
+		return clients;
+	}
+
 	public static JsonRpcClient createJsonRpcClient() {
 
 		String rabbitMqHost = getProperty(RABBITMQ_HOST_PROPERTY);
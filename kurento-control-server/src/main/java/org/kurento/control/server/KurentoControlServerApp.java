@@ -4,6 +4,7 @@ import static org.kurento.commons.PropertiesManager.getProperty;
 import static org.kurento.commons.PropertiesManager.getPropertyOrException;
 
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.Properties;
 
 import org.apache.catalina.connector.Connector;
@@ -62,12 +63,13 @@ public class KurentoControlServerApp implements JsonRpcConfigurer {
 	}
 
 	@Bean
-	public JsonRpcClient client() {
+	public MediaServerPool mediaServerPool() {
 
 		if (client != null) {
-			return client;
+			return new MediaServerPool(Collections.singletonList(client));
 		} else {
-			return KmsConnectionHelper.createJsonRpcClient();
+			return new MediaServerPool(
+					KmsConnectionHelper.createJsonRpcClients());
 		}
 	}
 
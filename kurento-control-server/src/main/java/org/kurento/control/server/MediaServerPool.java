@@ -0,0 +1,304 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.control.server;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Connections to the media servers managed by the control server.
+ *
+ * Media pipelines are created in the media server with less pipelines. The
+ * rest of requests are sent to the media server owning the object they
+ * reference, found by the object ref or its prefix (the id of the pipeline,
+ * in refs like <code>pipeline/element</code>). Requests not referencing any
+ * known object are sent to the first media server.
+ *
+ * Objects are forgotten when they are released, or when the media server
+ * answers a request on them with an object not found error. They are not
+ * forgotten when the client session that created them is closed, as other
+ * sessions can go on using them.
+ *
+ * Events of all media servers are handled by the same handler.
+ */
+public class MediaServerPool {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(MediaServerPool.class);
+
+	private static final String MEDIA_PIPELINE_TYPE = "MediaPipeline";
+
+	private static final char REF_SEPARATOR = '/';
+
+	/**
+	 * Error code of the media server when the object referenced by a request
+	 * doesn't exist.
+	 */
+	private static final int MEDIA_OBJECT_NOT_FOUND = 40101;
+
+	private static class MediaServer {
+
+		private final JsonRpcClient client;
+		private final RequestForwarder forwarder;
+		private final AtomicInteger pipelines = new AtomicInteger();
+
+		public MediaServer(JsonRpcClient client) {
+			this.client = client;
+			this.forwarder = new RequestForwarder(client);
+		}
+	}
+
+	private final List<MediaServer> mediaServers = new ArrayList<>();
+
+	private final ConcurrentMap<String, MediaServer> pipelines = new ConcurrentHashMap<>();
+
+	/**
+	 * Objects whose ref doesn't have the id of its pipeline as prefix.
+	 */
+	private final ConcurrentMap<String, MediaServer> objects = new ConcurrentHashMap<>();
+
+	public MediaServerPool(List<JsonRpcClient> clients) {
+
+		if (clients.isEmpty()) {
+			throw new IllegalArgumentException(
+					"At least one media server is needed");
+		}
+
+		for (JsonRpcClient client : clients) {
+			mediaServers.add(new MediaServer(client));
+		}
+	}
+
+	public void setServerRequestHandler(JsonRpcHandler<?> handler) {
+		for (MediaServer mediaServer : mediaServers) {
+			mediaServer.client.setServerRequestHandler(handler);
+		}
+	}
+
+	/**
+	 * Sends the request to the media server owning the objects it references.
+	 * See {@link RequestForwarder#sendRequest(Request, Continuation)}.
+	 */
+	public void sendRequest(final Request<JsonObject> request,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		MediaServer owner = getOwner(request);
+
+		final boolean newPipeline = owner == null;
+		if (newPipeline) {
+			owner = getLeastLoaded();
+			// Counted before creating it, so creations in a row are balanced
+			owner.pipelines.incrementAndGet();
+		}
+
+		final MediaServer mediaServer = owner;
+
+		mediaServer.forwarder.sendRequest(request,
+				new Continuation<Response<JsonElement>>() {
+
+					@Override
+					public void onSuccess(Response<JsonElement> response) {
+						try {
+							updateOwners(mediaServer, request, response,
+									newPipeline);
+						} catch (Exception e) {
+							log.warn("Exception updating owner of objects", e);
+						}
+						continuation.onSuccess(response);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						if (newPipeline) {
+							mediaServer.pipelines.decrementAndGet();
+						}
+						continuation.onError(cause);
+					}
+				});
+	}
+
+	/**
+	 * Returns the media server of the objects referenced by the request, or
+	 * null if it creates a new media pipeline.
+	 */
+	private MediaServer getOwner(Request<JsonObject> request) {
+
+		JsonObject params = request.getParams();
+
+		if (CREATE_METHOD.equals(request.getMethod())) {
+
+			JsonElement constructorParams = params != null ? params
+					.get(CREATE_CONSTRUCTOR_PARAMS) : null;
+
+			if (constructorParams != null && constructorParams.isJsonObject()) {
+				for (Entry<String, JsonElement> param : ((JsonObject) constructorParams)
+						.entrySet()) {
+					MediaServer owner = getOwner(param.getValue());
+					if (owner != null) {
+						return owner;
+					}
+				}
+			}
+
+			JsonElement type = params != null ? params.get(CREATE_TYPE) : null;
+			if (type != null && MEDIA_PIPELINE_TYPE.equals(type.getAsString())) {
+				return null;
+			}
+
+			return mediaServers.get(0);
+		}
+
+		MediaServer owner = null;
+		if (params != null) {
+			// All the operations on objects use the same param
+			owner = getOwner(params.get(INVOKE_OBJECT));
+		}
+
+		return owner != null ? owner : mediaServers.get(0);
+	}
+
+	private MediaServer getOwner(JsonElement ref) {
+
+		if (ref == null || !ref.isJsonPrimitive()
+				|| !ref.getAsJsonPrimitive().isString()) {
+			return null;
+		}
+
+		String objectRef = ref.getAsString();
+
+		MediaServer owner = pipelines.get(objectRef);
+		if (owner != null) {
+			return owner;
+		}
+
+		int separator = objectRef.indexOf(REF_SEPARATOR);
+		if (separator > 0) {
+			owner = pipelines.get(objectRef.substring(0, separator));
+			if (owner != null) {
+				return owner;
+			}
+		}
+
+		return objects.get(objectRef);
+	}
+
+	private MediaServer getLeastLoaded() {
+
+		MediaServer leastLoaded = mediaServers.get(0);
+		for (MediaServer mediaServer : mediaServers) {
+			if (mediaServer.pipelines.get() < leastLoaded.pipelines.get()) {
+				leastLoaded = mediaServer;
+			}
+		}
+		return leastLoaded;
+	}
+
+	private void updateOwners(MediaServer mediaServer,
+			Request<JsonObject> request, Response<JsonElement> response,
+			boolean newPipeline) {
+
+		if (CREATE_METHOD.equals(request.getMethod())) {
+
+			if (response.isError() || response.getResult() == null) {
+				if (newPipeline) {
+					mediaServer.pipelines.decrementAndGet();
+				}
+				return;
+			}
+
+			String objectRef = response.getResult().getAsString();
+
+			if (newPipeline) {
+				pipelines.put(objectRef, mediaServer);
+			} else if (getOwner(response.getResult()) != mediaServer) {
+				objects.put(objectRef, mediaServer);
+			}
+
+			return;
+		}
+
+		JsonElement ref = request.getParams() != null ? request.getParams()
+				.get(INVOKE_OBJECT) : null;
+		if (ref == null || !ref.isJsonPrimitive()) {
+			return;
+		}
+
+		if (response.isError()) {
+			if (response.getError().getCode() == MEDIA_OBJECT_NOT_FOUND) {
+				log.debug("Forgetting object {} unknown by the media server",
+						ref.getAsString());
+				forget(ref.getAsString());
+			}
+		} else if (RELEASE_METHOD.equals(request.getMethod())) {
+			forget(ref.getAsString());
+		}
+	}
+
+	private void forget(String objectRef) {
+		MediaServer owner = pipelines.remove(objectRef);
+		if (owner != null) {
+			owner.pipelines.decrementAndGet();
+		}
+		objects.remove(objectRef);
+	}
+
+	public int getMediaServersCount() {
+		return mediaServers.size();
+	}
+
+	/**
+	 * Returns the number of pipelines created through this pool in each media
+	 * server, in the order of the connections.
+	 */
+	public List<Integer> getPipelinesCount() {
+		List<Integer> counts = new ArrayList<>();
+		for (MediaServer mediaServer : mediaServers) {
+			counts.add(mediaServer.pipelines.get());
+		}
+		return counts;
+	}
+
+	public void close() throws IOException {
+		for (MediaServer mediaServer : mediaServers) {
+			try {
+				mediaServer.client.close();
+			} catch (IOException e) {
+				log.warn("Exception closing connection to media server", e);
+			}
+		}
+	}
+}
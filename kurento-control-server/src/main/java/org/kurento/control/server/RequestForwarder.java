@@ -0,0 +1,389 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.control.server;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_NAME;
+import static org.kurento.commons.PropertiesManager.getProperty;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Forwards requests of the clients to a media server connection, limiting
+ * how many of them can be waiting for a response.
+ *
+ * <ul>
+ * <li>Up to maxInFlight requests are sent at the same time. The rest wait in
+ * a queue of maxQueued requests, and new requests are rejected with an
+ * {@link org.kurento.jsonrpc.internal.JsonRpcConstants#ERROR_SERVER_OVERLOADED}
+ * error when it is full.</li>
+ * <li>Each request has a deadline, counted from the moment it is forwarded,
+ * including the time queued and the retries. A request that doesn't complete
+ * before its deadline fails. If it was queued it leaves the queue; if it was
+ * sent it keeps its place until the media server answers or the connection
+ * fails, as it still loads the media server, and the response is
+ * discarded.</li>
+ * <li>Requests failing because of a transport error are retried only if they
+ * are idempotent (invocations of getters). Objects are never created
+ * twice.</li>
+ * </ul>
+ */
+public class RequestForwarder {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RequestForwarder.class);
+
+	public static final String MAX_IN_FLIGHT_PROPERTY = "controlServer.kms.maxInFlightRequests";
+	public static final int MAX_IN_FLIGHT_DEFAULT = 1000;
+
+	public static final String MAX_QUEUED_PROPERTY = "controlServer.kms.maxQueuedRequests";
+	public static final int MAX_QUEUED_DEFAULT = 10000;
+
+	public static final String REQUEST_TIMEOUT_PROPERTY = "controlServer.kms.requestTimeout";
+	public static final int REQUEST_TIMEOUT_DEFAULT = 30000;
+
+	public static final String MAX_RETRIES_PROPERTY = "controlServer.kms.maxRetries";
+	public static final int MAX_RETRIES_DEFAULT = 2;
+
+	private static final String GETTER_PREFIX = "get";
+
+	private static final ScheduledThreadPoolExecutor deadlineScheduler = new ScheduledThreadPoolExecutor(
+			1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "control-server-kms-deadline");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		// Most requests complete before their deadline
+		deadlineScheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	private class Forward {
+
+		private final Request<JsonObject> request;
+		private final Continuation<Response<JsonElement>> continuation;
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		private volatile ScheduledFuture<?> deadline;
+		// Guarded by lock
+		private boolean inFlight;
+		private volatile int retries;
+
+		public Forward(Request<JsonObject> request,
+				Continuation<Response<JsonElement>> continuation) {
+			this.request = request;
+			this.continuation = continuation;
+		}
+
+		private boolean complete() {
+
+			if (!completed.compareAndSet(false, true)) {
+				return false;
+			}
+
+			ScheduledFuture<?> deadline = this.deadline;
+			if (deadline != null) {
+				deadline.cancel(false);
+			}
+
+			return true;
+		}
+
+		/**
+		 * Leaves the place of the request to the next queued one. Invoked when
+		 * the media server has answered or the request can't be sent.
+		 */
+		private void release() {
+
+			boolean release;
+			synchronized (lock) {
+				release = inFlight;
+				inFlight = false;
+			}
+			if (release) {
+				releaseAndSendNext();
+			}
+		}
+
+		public void onResponse(Response<JsonElement> response) {
+			boolean first = complete();
+			release();
+			if (first) {
+				continuation.onSuccess(response);
+			}
+		}
+
+		public void onError(Throwable cause) {
+			boolean first = complete();
+			release();
+			if (first) {
+				continuation.onError(cause);
+			}
+		}
+
+		public void onDeadline() {
+
+			if (!complete()) {
+				return;
+			}
+
+			// A sent request keeps its place until the media server answers
+			synchronized (lock) {
+				if (!inFlight) {
+					queue.remove(this);
+				}
+			}
+
+			timedOutCount.incrementAndGet();
+			continuation.onError(new TransportException("Timeout of "
+					+ requestTimeout + "ms waiting for the response of the "
+					+ "media server to " + request.getMethod()));
+		}
+	}
+
+	private final JsonRpcClient client;
+
+	private final int maxInFlight;
+	private final int maxQueued;
+	private final long requestTimeout;
+	private final int maxRetries;
+
+	private final Object lock = new Object();
+
+	// Guarded by lock
+	private final Queue<Forward> queue = new ArrayDeque<>();
+	private int inFlight;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong timedOutCount = new AtomicLong();
+	private final AtomicLong retriedCount = new AtomicLong();
+
+	public RequestForwarder(JsonRpcClient client) {
+		this(client, getProperty(MAX_IN_FLIGHT_PROPERTY, MAX_IN_FLIGHT_DEFAULT),
+				getProperty(MAX_QUEUED_PROPERTY, MAX_QUEUED_DEFAULT),
+				getProperty(REQUEST_TIMEOUT_PROPERTY, REQUEST_TIMEOUT_DEFAULT),
+				getProperty(MAX_RETRIES_PROPERTY, MAX_RETRIES_DEFAULT));
+	}
+
+	public RequestForwarder(JsonRpcClient client, int maxInFlight,
+			int maxQueued, long requestTimeout, int maxRetries) {
+		this.client = client;
+		this.maxInFlight = maxInFlight;
+		this.maxQueued = maxQueued;
+		this.requestTimeout = requestTimeout;
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * Forwards the request to the media server. The id of the request is
+	 * replaced by one of the connection. The continuation is invoked exactly
+	 * once, with the response (that can be an error response of the media
+	 * server) or with the cause of the failure.
+	 */
+	public void sendRequest(Request<JsonObject> request,
+			Continuation<Response<JsonElement>> continuation) {
+
+		final Forward forward = new Forward(request, continuation);
+		boolean sendNow = false;
+		boolean rejected = false;
+
+		synchronized (lock) {
+			if (inFlight < maxInFlight) {
+				inFlight++;
+				forward.inFlight = true;
+				sendNow = true;
+			} else if (queue.size() < maxQueued) {
+				queue.add(forward);
+			} else {
+				rejected = true;
+			}
+		}
+
+		if (rejected) {
+			rejectedCount.incrementAndGet();
+			continuation.onError(new JsonRpcErrorException(
+					ERROR_SERVER_OVERLOADED, "Too many requests waiting for "
+							+ "a response of the media server"));
+			return;
+		}
+
+		forward.deadline = deadlineScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				forward.onDeadline();
+			}
+		}, requestTimeout, TimeUnit.MILLISECONDS);
+
+		// It can complete before the deadline is assigned
+		if (forward.completed.get()) {
+			forward.deadline.cancel(false);
+		}
+
+		// Queued requests are sent when others complete
+		if (sendNow) {
+			send(forward);
+		}
+	}
+
+	private void releaseAndSendNext() {
+
+		Forward next = null;
+
+		synchronized (lock) {
+			while ((next = queue.poll()) != null) {
+				// Its deadline can expire before it is removed
+				if (!next.completed.get()) {
+					next.inFlight = true;
+					break;
+				}
+			}
+			if (next == null) {
+				inFlight--;
+			}
+		}
+
+		if (next != null) {
+			send(next);
+		}
+	}
+
+	private void send(final Forward forward) {
+
+		if (forward.completed.get()) {
+			forward.release();
+			return;
+		}
+
+		forward.request.setId(null);
+
+		Session session = client.getSession();
+		if (session != null) {
+			forward.request.setSessionId(session.getSessionId());
+		}
+
+		try {
+
+			client.sendRequest(forward.request,
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+							forward.onResponse(response);
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							retryOrFail(forward, cause);
+						}
+					});
+
+		} catch (Exception e) {
+			retryOrFail(forward, e);
+		}
+	}
+
+	private void retryOrFail(Forward forward, Throwable cause) {
+
+		// Errors of the media server are not transport errors
+		if (!(cause instanceof JsonRpcErrorException)
+				&& !forward.completed.get() && forward.retries < maxRetries
+				&& isIdempotent(forward.request)) {
+
+			forward.retries++;
+			retriedCount.incrementAndGet();
+
+			log.warn("Retrying request {} after error: {}", forward.request,
+					cause.getMessage());
+
+			send(forward);
+
+		} else {
+			forward.onError(cause);
+		}
+	}
+
+	/**
+	 * Returns true if sending the request more than once to the media server
+	 * has the same effect than sending it once.
+	 */
+	public static boolean isIdempotent(Request<JsonObject> request) {
+
+		if (!INVOKE_METHOD.equals(request.getMethod())
+				|| request.getParams() == null) {
+			return false;
+		}
+
+		JsonElement operation = request.getParams().get(INVOKE_OPERATION_NAME);
+
+		return operation != null && operation.isJsonPrimitive()
+				&& operation.getAsString().startsWith(GETTER_PREFIX);
+	}
+
+	/**
+	 * Returns the number of requests sent to the media server and waiting for
+	 * its response, including the ones whose deadline expired.
+	 */
+	public int getInFlightCount() {
+		synchronized (lock) {
+			return inFlight;
+		}
+	}
+
+	/**
+	 * Returns the number of requests waiting to be sent to the media server.
+	 */
+	public int getQueuedCount() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getTimedOutCount() {
+		return timedOutCount.get();
+	}
+
+	public long getRetriedCount() {
+		return retriedCount.get();
+	}
+}
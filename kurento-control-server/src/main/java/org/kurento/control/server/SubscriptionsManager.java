@@ -1,60 +1,300 @@
 package org.kurento.control.server;
 
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.ImmutableSet;
 
 import org.kurento.jsonrpc.Session;
 
+/**
+ * Registry of the subscriptions of client sessions to media server events.
+ *
+ * Subscriptions are indexed by id, by object and event type (used to fan out
+ * events) and by session (used to remove all the subscriptions of a session
+ * when it is closed without walking the rest of subscriptions).
+ *
+ * All changes of the subscriptions of a session are done holding the lock of
+ * its index entry, and changes of the sessions subscribed to an object and
+ * type holding the lock of its entry (always in this order). The sessions
+ * subscribed to an object and type are published as an immutable set, so
+ * events are fanned out without locking.
+ */
 public class SubscriptionsManager {
 
-	private final ConcurrentMap<String, Session> sessionsBySubsId = new ConcurrentHashMap<>();
+	private static class Subscription {
 
-	private final Multimap<String, Session> sessionsByObjAndType = Multimaps
-			.synchronizedSetMultimap(HashMultimap.<String, Session> create());
+		private final String objectAndType;
+		private final Session session;
 
-	public void removeSession(Session session) {
-		removeSessionFromIterator(sessionsByObjAndType.entries().iterator(),
-				session);
-		removeSessionFromIterator(sessionsBySubsId.entrySet().iterator(),
-				session);
+		public Subscription(String objectAndType, Session session) {
+			this.objectAndType = objectAndType;
+			this.session = session;
+		}
 	}
 
-	private void removeSessionFromIterator(Iterator<Entry<String, Session>> it,
-			Session session) {
-		while (it.hasNext()) {
-			Entry<String, Session> value = it.next();
-			if (value.getValue() == session) {
-				it.remove();
+	/**
+	 * Subscriptions of a session. Guarded by its monitor.
+	 */
+	private static class SessionSubscriptions {
+
+		private final Set<String> ids = new HashSet<>();
+		private boolean removed;
+	}
+
+	/**
+	 * Sessions subscribed to an object and event type. Guarded by its
+	 * monitor, except sessions, which is replaced on each change.
+	 */
+	private static class ObjectSubscriptions {
+
+		private final Map<Session, Integer> subscriptionsBySession = new HashMap<>();
+		private volatile Set<Session> sessions = Collections.emptySet();
+		private int subscriptions;
+		private boolean removed;
+	}
+
+	private final ConcurrentMap<String, Subscription> subscriptionsById = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Session, SessionSubscriptions> subscriptionsBySession = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, ObjectSubscriptions> subscriptionsByObjAndType = new ConcurrentHashMap<>();
+
+	public void removeSession(Session session) {
+
+		SessionSubscriptions sessionSubs = subscriptionsBySession
+				.remove(session);
+
+		if (sessionSubs == null) {
+			return;
+		}
+
+		synchronized (sessionSubs) {
+			sessionSubs.removed = true;
+			for (String id : sessionSubs.ids) {
+				Subscription subscription = subscriptionsById.remove(id);
+				if (subscription != null) {
+					removeFromObject(subscription);
+				}
 			}
+			sessionSubs.ids.clear();
 		}
 	}
 
 	public void addSubscription(String subscriptionId, String objectAndType,
 			Session session) {
 
-		sessionsBySubsId.put(subscriptionId, session);
-		sessionsByObjAndType.put(objectAndType, session);
+		Subscription subscription = new Subscription(objectAndType, session);
+
+		while (true) {
+
+			SessionSubscriptions sessionSubs = subscriptionsBySession
+					.get(session);
+
+			if (sessionSubs == null) {
+				SessionSubscriptions newSessionSubs = new SessionSubscriptions();
+				sessionSubs = subscriptionsBySession.putIfAbsent(session,
+						newSessionSubs);
+				if (sessionSubs == null) {
+					sessionSubs = newSessionSubs;
+				}
+			}
+
+			synchronized (sessionSubs) {
+
+				if (sessionSubs.removed) {
+					// Removed concurrently. Retry with a new entry
+					continue;
+				}
+
+				if (sessionSubs.ids.add(subscriptionId)) {
+					subscriptionsById.put(subscriptionId, subscription);
+					addToObject(subscription);
+				}
+				return;
+			}
+		}
 	}
 
+	public void removeSubscription(String subscriptionId) {
+
+		Subscription subscription = subscriptionsById.get(subscriptionId);
+		if (subscription == null) {
+			return;
+		}
+
+		SessionSubscriptions sessionSubs = subscriptionsBySession
+				.get(subscription.session);
+		if (sessionSubs == null) {
+			return;
+		}
+
+		synchronized (sessionSubs) {
+			if (sessionSubs.ids.remove(subscriptionId)) {
+				subscriptionsById.remove(subscriptionId);
+				removeFromObject(subscription);
+			}
+			if (sessionSubs.ids.isEmpty()) {
+				sessionSubs.removed = true;
+				subscriptionsBySession.remove(subscription.session, sessionSubs);
+			}
+		}
+	}
+
+	private void addToObject(Subscription subscription) {
+
+		while (true) {
+
+			ObjectSubscriptions objectSubs = subscriptionsByObjAndType
+					.get(subscription.objectAndType);
+
+			if (objectSubs == null) {
+				ObjectSubscriptions newObjectSubs = new ObjectSubscriptions();
+				objectSubs = subscriptionsByObjAndType.putIfAbsent(
+						subscription.objectAndType, newObjectSubs);
+				if (objectSubs == null) {
+					objectSubs = newObjectSubs;
+				}
+			}
+
+			synchronized (objectSubs) {
+
+				if (objectSubs.removed) {
+					continue;
+				}
+
+				Integer count = objectSubs.subscriptionsBySession
+						.get(subscription.session);
+
+				if (count == null) {
+					objectSubs.subscriptionsBySession.put(subscription.session,
+							1);
+					objectSubs.sessions = ImmutableSet.<Session> builder()
+							.addAll(objectSubs.sessions)
+							.add(subscription.session).build();
+				} else {
+					objectSubs.subscriptionsBySession.put(subscription.session,
+							count + 1);
+				}
+
+				objectSubs.subscriptions++;
+				return;
+			}
+		}
+	}
+
+	private void removeFromObject(Subscription subscription) {
+
+		ObjectSubscriptions objectSubs = subscriptionsByObjAndType
+				.get(subscription.objectAndType);
+
+		if (objectSubs == null) {
+			return;
+		}
+
+		synchronized (objectSubs) {
+
+			Integer count = objectSubs.subscriptionsBySession
+					.get(subscription.session);
+
+			if (count == null) {
+				return;
+			}
+
+			if (count == 1) {
+				objectSubs.subscriptionsBySession.remove(subscription.session);
+				objectSubs.sessions = ImmutableSet
+						.copyOf(objectSubs.subscriptionsBySession.keySet());
+			} else {
+				objectSubs.subscriptionsBySession.put(subscription.session,
+						count - 1);
+			}
+
+			objectSubs.subscriptions--;
+
+			if (objectSubs.subscriptions == 0) {
+				objectSubs.removed = true;
+				subscriptionsByObjAndType.remove(subscription.objectAndType,
+						objectSubs);
+			}
+		}
+	}
+
+	/**
+	 * Returns the sessions subscribed to the given object and event type. The
+	 * returned collection is an immutable snapshot.
+	 */
 	public Collection<Session> getSessionsByObjAndType(String objectAndType) {
-		return sessionsByObjAndType.get(objectAndType);
+
+		ObjectSubscriptions objectSubs = subscriptionsByObjAndType
+				.get(objectAndType);
+
+		if (objectSubs == null) {
+			return Collections.emptySet();
+		}
+		return objectSubs.sessions;
 	}
 
 	public Collection<Session> getSessionsBySubscription(String subscriptionId) {
-		Session session = sessionsBySubsId.get(subscriptionId);
-		if (session == null) {
+		Subscription subscription = subscriptionsById.get(subscriptionId);
+		if (subscription == null) {
 			return Collections.emptyList();
 		} else {
-			return Arrays.asList(session);
+			return Collections.singletonList(subscription.session);
 		}
 	}
+
+	/**
+	 * Returns the number of active subscriptions.
+	 */
+	public int getSubscriptionsCount() {
+		return subscriptionsById.size();
+	}
+
+	/**
+	 * Returns the number of active subscriptions of the given session.
+	 */
+	public int getSubscriptionsCount(Session session) {
+
+		SessionSubscriptions sessionSubs = subscriptionsBySession.get(session);
+
+		if (sessionSubs == null) {
+			return 0;
+		}
+
+		synchronized (sessionSubs) {
+			return sessionSubs.ids.size();
+		}
+	}
+
+	/**
+	 * Returns the number of active subscriptions to the given object and
+	 * event type (<code>object/type</code>).
+	 */
+	public int getSubscriptionsCount(String objectAndType) {
+
+		ObjectSubscriptions objectSubs = subscriptionsByObjAndType
+				.get(objectAndType);
+
+		if (objectSubs == null) {
+			return 0;
+		}
+
+		synchronized (objectSubs) {
+			return objectSubs.subscriptions;
+		}
+	}
+
+	/**
+	 * Returns the number of sessions with active subscriptions.
+	 */
+	public int getSessionsCount() {
+		return subscriptionsBySession.size();
+	}
 }
@@ -0,0 +1,363 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.control.server;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.CREATE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_PARAMS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Executes the operations of a client transaction in the media server,
+ * sending at the same time all the operations that don't depend on others.
+ *
+ * An operation depends on:
+ * <ul>
+ * <li>the operations that create the objects it references ("newref:N").</li>
+ * <li>the previous operation on the same object (invoke, release or
+ * subscribe), to keep their order.</li>
+ * <li>for an operation on an object, the previous operations that reference
+ * that object in their params (e.g. a connect with it as sink, or the
+ * creation of an element in a pipeline before releasing the pipeline).</li>
+ * </ul>
+ *
+ * Operations that only reference an object in their params don't depend on
+ * each other, so they are sent at the same time.
+ *
+ * Responses are returned in the order of the operations. The first error
+ * sending an operation fails the transaction (operations are retried by the
+ * {@link RequestForwarder} when it is safe). When the media server answers an
+ * operation with an error, the operations that depend on it (directly or
+ * not) are not sent, as they could reference an object that doesn't exist,
+ * and they are answered with an error.
+ */
+public class TransactionExecutor {
+
+	public interface Listener {
+
+		void operationCompleted(Request<JsonObject> request,
+				Response<JsonElement> response);
+
+		void transactionCompleted(List<Response<JsonElement>> responses);
+
+		void transactionFailed(Throwable cause);
+	}
+
+	private static class Operation {
+
+		private final int index;
+		private final Request<JsonObject> request;
+		private final Integer origId;
+		private final List<Operation> dependents = new ArrayList<>();
+		private final AtomicInteger pendingDependencies = new AtomicInteger();
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		public Operation(int index, Request<JsonObject> request) {
+			this.index = index;
+			this.request = request;
+			this.origId = request.getId();
+		}
+	}
+
+	private final MediaServerPool mediaServers;
+	private final TransactionManager txManager;
+	private final Listener listener;
+
+	private final List<Operation> operations = new ArrayList<>();
+	private final AtomicReferenceArray<Response<JsonElement>> responses;
+	private final AtomicInteger pendingOperations;
+	private final AtomicBoolean failed = new AtomicBoolean();
+
+	public TransactionExecutor(MediaServerPool mediaServers,
+			List<JsonElement> operationsJson, TransactionManager txManager,
+			Listener listener) {
+
+		this.mediaServers = mediaServers;
+		this.txManager = txManager;
+		this.listener = listener;
+
+		Map<String, Operation> lastOperationByObject = new HashMap<>();
+		Map<String, List<Operation>> referencesByObject = new HashMap<>();
+
+		for (JsonElement operationJson : operationsJson) {
+
+			Operation operation = new Operation(operations.size(),
+					JsonUtils.fromJsonRequest((JsonObject) operationJson,
+							JsonObject.class));
+
+			Set<Operation> dependencies = new LinkedHashSet<>();
+
+			for (Integer index : txManager
+					.getNewRefDependencies(operation.request)) {
+				if (index < operation.index) {
+					dependencies.add(operations.get(index));
+				}
+			}
+
+			String object = getTargetObject(operation.request);
+
+			for (String reference : getReferencedObjects(operation.request)) {
+				if (reference.equals(object)) {
+					continue;
+				}
+				Operation previous = lastOperationByObject.get(reference);
+				if (previous != null) {
+					dependencies.add(previous);
+				}
+				List<Operation> references = referencesByObject
+						.get(reference);
+				if (references == null) {
+					references = new ArrayList<>();
+					referencesByObject.put(reference, references);
+				}
+				references.add(operation);
+			}
+
+			if (object != null) {
+				Operation previous = lastOperationByObject.put(object,
+						operation);
+				if (previous != null) {
+					dependencies.add(previous);
+				}
+				List<Operation> references = referencesByObject
+						.remove(object);
+				if (references != null) {
+					dependencies.addAll(references);
+				}
+			}
+
+			for (Operation dependency : dependencies) {
+				dependency.dependents.add(operation);
+			}
+			operation.pendingDependencies.set(dependencies.size());
+
+			operations.add(operation);
+		}
+
+		this.responses = new AtomicReferenceArray<>(operations.size());
+		this.pendingOperations = new AtomicInteger(operations.size());
+	}
+
+	public void execute() {
+
+		if (operations.isEmpty()) {
+			listener.transactionCompleted(new ArrayList<Response<JsonElement>>());
+			return;
+		}
+
+		// Collected before sending, as dependencies can complete meanwhile
+		List<Operation> ready = new ArrayList<>();
+		for (Operation operation : operations) {
+			if (operation.pendingDependencies.get() == 0) {
+				ready.add(operation);
+			}
+		}
+
+		for (Operation operation : ready) {
+			send(operation);
+		}
+	}
+
+	private void send(final Operation operation) {
+
+		// Already answered with an error because a dependency failed
+		if (failed.get() || operation.completed.get()) {
+			return;
+		}
+
+		// All the objects it references have been created
+		txManager.updateRequest(operation.request);
+
+		mediaServers.sendRequest(operation.request,
+				new Continuation<Response<JsonElement>>() {
+
+					@Override
+					public void onSuccess(Response<JsonElement> response) {
+						operationCompleted(operation, response);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						fail(cause);
+					}
+				});
+	}
+
+	private void operationCompleted(Operation operation,
+			Response<JsonElement> response) {
+
+		if (failed.get() || !operation.completed.compareAndSet(false, true)) {
+			return;
+		}
+
+		txManager.updateResponse(operation.index, operation.request, response);
+		listener.operationCompleted(operation.request, response);
+
+		response.setId(operation.origId);
+		responses.set(operation.index, response);
+
+		if (response.isError()) {
+			for (Operation dependent : operation.dependents) {
+				skip(dependent, operation.index, response.getError());
+			}
+		} else {
+			for (Operation dependent : operation.dependents) {
+				if (dependent.pendingDependencies.decrementAndGet() == 0) {
+					send(dependent);
+				}
+			}
+		}
+
+		responseRegistered();
+	}
+
+	/**
+	 * Answers an operation that can't be sent because the operation with the
+	 * given index failed, and the operations that depend on it.
+	 */
+	private void skip(Operation operation, int failedIndex, ResponseError cause) {
+
+		if (failed.get() || !operation.completed.compareAndSet(false, true)) {
+			return;
+		}
+
+		responses.set(operation.index, new Response<JsonElement>(
+				operation.origId, new ResponseError(cause.getCode(),
+						"Operation not executed because operation "
+								+ failedIndex + " of the transaction failed: "
+								+ cause.getMessage())));
+
+		for (Operation dependent : operation.dependents) {
+			skip(dependent, failedIndex, cause);
+		}
+
+		responseRegistered();
+	}
+
+	private void responseRegistered() {
+
+		if (pendingOperations.decrementAndGet() == 0) {
+			List<Response<JsonElement>> result = new ArrayList<>(
+					responses.length());
+			for (int i = 0; i < responses.length(); i++) {
+				result.add(responses.get(i));
+			}
+			listener.transactionCompleted(result);
+		}
+	}
+
+	private void fail(Throwable cause) {
+		if (failed.compareAndSet(false, true)) {
+			listener.transactionFailed(cause);
+		}
+	}
+
+	private static String getTargetObject(Request<JsonObject> request) {
+
+		JsonObject params = request.getParams();
+		if (params == null) {
+			return null;
+		}
+
+		JsonElement object;
+		switch (request.getMethod()) {
+		case INVOKE_METHOD:
+			object = params.get(INVOKE_OBJECT);
+			break;
+		case RELEASE_METHOD:
+			object = params.get(RELEASE_OBJECT);
+			break;
+		case SUBSCRIBE_METHOD:
+			object = params.get(SUBSCRIBE_OBJECT);
+			break;
+		default:
+			return null;
+		}
+
+		return object != null && object.isJsonPrimitive() ? object
+				.getAsString() : null;
+	}
+
+	/**
+	 * Returns the strings found in the params of a create or invoke. Not all
+	 * of them are object references, but only those that are can match the
+	 * target object of another operation.
+	 */
+	private static Set<String> getReferencedObjects(Request<JsonObject> request) {
+
+		Set<String> references = new LinkedHashSet<>();
+
+		JsonObject params = request.getParams();
+		if (params == null) {
+			return references;
+		}
+
+		switch (request.getMethod()) {
+		case CREATE_METHOD:
+			collectStrings(params.get(CREATE_CONSTRUCTOR_PARAMS), references);
+			break;
+		case INVOKE_METHOD:
+			collectStrings(params.get(INVOKE_OPERATION_PARAMS), references);
+			break;
+		}
+
+		return references;
+	}
+
+	private static void collectStrings(JsonElement value, Set<String> strings) {
+
+		if (value instanceof JsonPrimitive) {
+			if (((JsonPrimitive) value).isString()) {
+				strings.add(value.getAsString());
+			}
+		} else if (value instanceof JsonObject) {
+			for (Entry<String, JsonElement> prop : ((JsonObject) value)
+					.entrySet()) {
+				collectStrings(prop.getValue(), strings);
+			}
+		} else if (value instanceof JsonArray) {
+			for (JsonElement arrayValue : (JsonArray) value) {
+				collectStrings(arrayValue, strings);
+			}
+		}
+	}
+}
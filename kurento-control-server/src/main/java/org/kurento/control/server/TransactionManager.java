@@ -10,9 +10,11 @@ import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.
 import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
 import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.kurento.client.internal.transport.jsonrpc.JsonResponseUtils;
 import org.kurento.jsonrpc.message.Request;
@@ -23,10 +25,20 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
+/**
+ * Replaces the references to objects created in the same transaction
+ * ("newref:N", where N is the index of the create operation) by the
+ * references returned by the media server.
+ *
+ * Responses can be registered in order ({@link #updateResponse(Response)}) or
+ * by operation index, when operations are executed concurrently.
+ */
 public class TransactionManager {
 
+	private static final String NEW_REF_PREFIX = "newref:";
+
 	private int numRequest = 0;
-	private Map<Integer, String> newObjectRefsByReqNum = new HashMap<Integer, String>();
+	private Map<Integer, String> newObjectRefsByReqNum = new ConcurrentHashMap<Integer, String>();
 	private boolean lastRequestIsCreate = false;
 
 	public void updateRequest(Request<JsonObject> request) {
@@ -57,14 +69,91 @@ public class TransactionManager {
 
 	public void updateResponse(Response<JsonElement> response) {
 		if (lastRequestIsCreate) {
-			newObjectRefsByReqNum.put(
-					numRequest,
-					JsonResponseUtils.<String> convertFromResult(
-							response.getResult(), String.class));
+			putNewObjectRef(numRequest, response);
 		}
 		numRequest++;
 	}
 
+	/**
+	 * Registers the response of the operation with the given index in the
+	 * transaction.
+	 */
+	public void updateResponse(int requestNum, Request<JsonObject> request,
+			Response<JsonElement> response) {
+		if (CREATE_METHOD.equals(request.getMethod())) {
+			putNewObjectRef(requestNum, response);
+		}
+	}
+
+	private void putNewObjectRef(int requestNum, Response<JsonElement> response) {
+		if (response.getResult() == null) {
+			// Error creating the object
+			return;
+		}
+		String ref = JsonResponseUtils.<String> convertFromResult(
+				response.getResult(), String.class);
+		if (ref != null) {
+			newObjectRefsByReqNum.put(requestNum, ref);
+		}
+	}
+
+	/**
+	 * Returns the indexes of the operations whose created objects are
+	 * referenced by the request, in the same params updated by
+	 * {@link #updateRequest(Request)}.
+	 */
+	public Set<Integer> getNewRefDependencies(Request<JsonObject> request) {
+
+		Set<Integer> dependencies = new TreeSet<>();
+		JsonObject params = request.getParams();
+
+		if (params == null) {
+			return dependencies;
+		}
+
+		switch (request.getMethod()) {
+		case CREATE_METHOD:
+			collectNewRefs(params.get(CREATE_CONSTRUCTOR_PARAMS), dependencies);
+			break;
+		case INVOKE_METHOD:
+			collectNewRefs(params.get(INVOKE_OPERATION_PARAMS), dependencies);
+			collectNewRefs(params.get(INVOKE_OBJECT), dependencies);
+			break;
+		case RELEASE_METHOD:
+			collectNewRefs(params.get(RELEASE_OBJECT), dependencies);
+			break;
+		case SUBSCRIBE_METHOD:
+			collectNewRefs(params.get(SUBSCRIBE_OBJECT), dependencies);
+			break;
+		}
+
+		return dependencies;
+	}
+
+	private void collectNewRefs(JsonElement value, Set<Integer> dependencies) {
+
+		if (value instanceof JsonPrimitive) {
+			JsonPrimitive primitive = (JsonPrimitive) value;
+			if (primitive.isString() && isNewRef(primitive.getAsString())) {
+				try {
+					dependencies.add(Integer.parseInt(primitive.getAsString()
+							.substring(NEW_REF_PREFIX.length())));
+				} catch (NumberFormatException e) {
+					// Not a reference
+				}
+			}
+		} else if (value instanceof JsonObject) {
+			for (Entry<String, JsonElement> prop : ((JsonObject) value)
+					.entrySet()) {
+				collectNewRefs(prop.getValue(), dependencies);
+			}
+		} else if (value instanceof JsonArray) {
+			for (JsonElement arrayValue : (JsonArray) value) {
+				collectNewRefs(arrayValue, dependencies);
+			}
+		}
+	}
+
 	private void updateSimple(JsonObject params, String propertyName) {
 		String param = params.get(propertyName).getAsString();
 		if (isNewRef(param)) {
@@ -74,7 +163,7 @@ public class TransactionManager {
 	}
 
 	private boolean isNewRef(String param) {
-		return param.startsWith("newref:");
+		return param.startsWith(NEW_REF_PREFIX);
 	}
 
 	private String convertValue(String param) {
@@ -126,7 +215,7 @@ public class TransactionManager {
 						}
 					}
 				} else {
-					updateRecursiveComplex(propValue);
+					updateRecursiveComplex(arrayValue);
 				}
 			}
 		}
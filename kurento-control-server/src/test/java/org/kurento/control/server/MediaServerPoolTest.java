@@ -0,0 +1,183 @@
+package org.kurento.control.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class MediaServerPoolTest {
+
+	private static class RecordingClient extends JsonRpcClient {
+
+		private final List<Request<JsonObject>> requests = new ArrayList<>();
+		private final List<Continuation<Response<JsonElement>>> continuations = new ArrayList<>();
+
+		@Override
+		public void sendRequest(Request<JsonObject> request,
+				Continuation<Response<JsonElement>> continuation) {
+			requests.add(request);
+			continuations.add(continuation);
+		}
+
+		public void respondLast(String result) {
+			JsonElement value = result != null ? new JsonPrimitive(result)
+					: null;
+			continuations.get(continuations.size() - 1).onSuccess(
+					new Response<JsonElement>(null, value));
+		}
+
+		public void respondLastError(int code, String message) {
+			continuations.get(continuations.size() - 1).onSuccess(
+					new Response<JsonElement>(null, new ResponseError(code,
+							message)));
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void connect() throws IOException {
+		}
+	}
+
+	private static final Continuation<Response<JsonElement>> IGNORE = new Continuation<Response<JsonElement>>() {
+
+		@Override
+		public void onSuccess(Response<JsonElement> result) {
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+		}
+	};
+
+	private final RomClientJsonRpcClient rom = new RomClientJsonRpcClient(null);
+
+	private final RecordingClient kms1 = new RecordingClient();
+	private final RecordingClient kms2 = new RecordingClient();
+
+	private final MediaServerPool pool = new MediaServerPool(
+			Arrays.<JsonRpcClient> asList(kms1, kms2));
+
+	@Test
+	public void pipelinesAreBalancedTest() {
+
+		createPipeline(kms1, "pipeline1");
+		createPipeline(kms2, "pipeline2");
+		createPipeline(kms1, "pipeline3");
+
+		assertThat(pool.getPipelinesCount(), is(Arrays.asList(2, 1)));
+
+		pool.sendRequest(rom.createReleaseRequest("pipeline1").request,
+				IGNORE);
+		kms1.respondLast(null);
+
+		assertThat(pool.getPipelinesCount(), is(Arrays.asList(1, 1)));
+
+		createPipeline(kms1, "pipeline4");
+	}
+
+	@Test
+	public void requestsAreRoutedToOwnerTest() {
+
+		createPipeline(kms1, "pipeline1");
+		createPipeline(kms2, "pipeline2");
+
+		pool.sendRequest(rom.createCreateRequest("WebRtcEndpoint",
+				new Props("mediaPipeline", "pipeline2"), false).request, IGNORE);
+		assertThat(kms2.requests.size(), is(2));
+		kms2.respondLast("pipeline2/endpoint");
+
+		// Routed by the prefix of the ref
+		pool.sendRequest(rom.createInvokeRequest("pipeline2/endpoint",
+				"getName", null, String.class, false).request, IGNORE);
+		assertThat(kms2.requests.size(), is(3));
+
+		pool.sendRequest(
+				rom.createSubscribeRequest("pipeline1", "Error").request,
+				IGNORE);
+		assertThat(kms1.requests.size(), is(2));
+
+		// Objects without the pipeline as prefix are remembered
+		pool.sendRequest(rom.createCreateRequest("PlayerEndpoint",
+				new Props("mediaPipeline", "pipeline2"), false).request, IGNORE);
+		kms2.respondLast("player");
+
+		pool.sendRequest(rom.createInvokeRequest("player", "play", null,
+				Void.class, false).request, IGNORE);
+		assertThat(kms2.requests.size(), is(5));
+		assertThat(kms1.requests.size(), is(2));
+	}
+
+	@Test
+	public void objectsAreForgottenWhenReleasedOrUnknownTest() {
+
+		createPipeline(kms1, "pipeline1");
+		createPipeline(kms2, "pipeline2");
+
+		pool.sendRequest(rom.createCreateRequest("PlayerEndpoint",
+				new Props("mediaPipeline", "pipeline2"), false).request, IGNORE);
+		kms2.respondLast("player");
+
+		// A failed release keeps the object
+		pool.sendRequest(rom.createReleaseRequest("pipeline1").request,
+				IGNORE);
+		kms1.respondLastError(40001, "Error releasing");
+		assertThat(pool.getPipelinesCount(), is(Arrays.asList(1, 1)));
+
+		// Other errors keep the object
+		pool.sendRequest(rom.createInvokeRequest("player", "play", null,
+				Void.class, false).request, IGNORE);
+		kms2.respondLastError(40001, "Error playing");
+
+		pool.sendRequest(rom.createInvokeRequest("player", "play", null,
+				Void.class, false).request, IGNORE);
+		assertThat(kms2.requests.size(), is(4));
+
+		// Objects unknown by the media server are forgotten
+		kms2.respondLastError(40101, "Object not found");
+
+		pool.sendRequest(rom.createInvokeRequest("player", "play", null,
+				Void.class, false).request, IGNORE);
+		assertThat(kms1.requests.size(), is(3));
+
+		pool.sendRequest(rom.createInvokeRequest("pipeline2", "getName",
+				null, String.class, false).request, IGNORE);
+		kms2.respondLastError(40101, "Object not found");
+		assertThat(pool.getPipelinesCount(), is(Arrays.asList(1, 0)));
+
+		pool.sendRequest(rom.createReleaseRequest("pipeline1").request,
+				IGNORE);
+		kms1.respondLast(null);
+		assertThat(pool.getPipelinesCount(), is(Arrays.asList(0, 0)));
+	}
+
+	private void createPipeline(RecordingClient expectedKms, String pipeline) {
+
+		int sent = expectedKms.requests.size();
+
+		pool.sendRequest(
+				rom.createCreateRequest("MediaPipeline", null, false).request,
+				IGNORE);
+
+		assertThat(expectedKms.requests.size(), is(sent + 1));
+		expectedKms.respondLast(pipeline);
+	}
+}
@@ -0,0 +1,221 @@
+package org.kurento.control.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class RequestForwarderTest {
+
+	private static class RecordingClient extends JsonRpcClient {
+
+		private final List<Continuation<Response<JsonElement>>> continuations = new ArrayList<>();
+
+		@Override
+		public synchronized void sendRequest(Request<JsonObject> request,
+				Continuation<Response<JsonElement>> continuation) {
+			continuations.add(continuation);
+		}
+
+		public void respond(int sentIndex) {
+			continuations(sentIndex).onSuccess(
+					new Response<JsonElement>(null, new JsonPrimitive("ok")));
+		}
+
+		public void fail(int sentIndex) {
+			continuations(sentIndex).onError(
+					new TransportException("Connection lost"));
+		}
+
+		private synchronized Continuation<Response<JsonElement>> continuations(
+				int sentIndex) {
+			return continuations.get(sentIndex);
+		}
+
+		public synchronized int getSentCount() {
+			return continuations.size();
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void connect() throws IOException {
+		}
+	}
+
+	private static class ResultContinuation implements
+			Continuation<Response<JsonElement>> {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Response<JsonElement> response;
+		private volatile Throwable error;
+
+		@Override
+		public void onSuccess(Response<JsonElement> response) {
+			this.response = response;
+			latch.countDown();
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+			this.error = cause;
+			latch.countDown();
+		}
+
+		public boolean isDone() {
+			return latch.getCount() == 0;
+		}
+	}
+
+	private final RomClientJsonRpcClient rom = new RomClientJsonRpcClient(null);
+
+	@Test
+	public void requestsOverLimitAreQueuedTest() {
+
+		RecordingClient client = new RecordingClient();
+		RequestForwarder forwarder = new RequestForwarder(client, 2, 1, 10000,
+				0);
+
+		ResultContinuation[] results = new ResultContinuation[4];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = new ResultContinuation();
+			forwarder.sendRequest(getter(), results[i]);
+		}
+
+		assertThat(client.getSentCount(), is(2));
+		assertThat(forwarder.getQueuedCount(), is(1));
+
+		// Fast fail when the queue is full
+		assertTrue(results[3].error instanceof JsonRpcErrorException);
+		assertThat(((JsonRpcErrorException) results[3].error).getCode(),
+				is(JsonRpcConstants.ERROR_SERVER_OVERLOADED));
+		assertThat(forwarder.getRejectedCount(), is(1L));
+
+		client.respond(0);
+		assertTrue(results[0].response != null);
+		assertThat(client.getSentCount(), is(3));
+		assertThat(forwarder.getQueuedCount(), is(0));
+
+		client.respond(1);
+		client.respond(2);
+		assertThat(forwarder.getInFlightCount(), is(0));
+	}
+
+	@Test
+	public void onlyIdempotentRequestsAreRetriedTest() {
+
+		RecordingClient client = new RecordingClient();
+		RequestForwarder forwarder = new RequestForwarder(client, 10, 10,
+				10000, 2);
+
+		ResultContinuation create = new ResultContinuation();
+		forwarder.sendRequest(
+				rom.createCreateRequest("MediaPipeline", null, false).request,
+				create);
+
+		ResultContinuation getter = new ResultContinuation();
+		forwarder.sendRequest(getter(), getter);
+
+		client.fail(0);
+		assertTrue(create.error instanceof TransportException);
+
+		client.fail(1);
+		assertThat(getter.isDone(), is(false));
+		client.fail(2);
+		assertThat(getter.isDone(), is(false));
+		client.respond(3);
+		assertTrue(getter.response != null);
+
+		assertThat(forwarder.getRetriedCount(), is(2L));
+		assertThat(forwarder.getInFlightCount(), is(0));
+	}
+
+	@Test
+	public void deadlineKeepsSlotUntilResponseTest() throws Exception {
+
+		RecordingClient client = new RecordingClient();
+		RequestForwarder forwarder = new RequestForwarder(client, 1, 10, 200,
+				0);
+
+		ResultContinuation stalled = new ResultContinuation();
+		forwarder.sendRequest(getter(), stalled);
+
+		assertTrue(stalled.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(stalled.error instanceof TransportException);
+
+		// The media server is still processing the stalled request
+		ResultContinuation next = new ResultContinuation();
+		forwarder.sendRequest(getter(), next);
+		assertThat(client.getSentCount(), is(1));
+		assertThat(forwarder.getInFlightCount(), is(1));
+		assertThat(forwarder.getQueuedCount(), is(1));
+
+		// Late response of the stalled request is discarded
+		client.respond(0);
+		assertThat(client.getSentCount(), is(2));
+		assertThat(forwarder.getInFlightCount(), is(1));
+
+		client.respond(1);
+		assertTrue(next.response != null);
+		assertThat(forwarder.getInFlightCount(), is(0));
+		assertThat(forwarder.getTimedOutCount(), is(1L));
+	}
+
+	@Test
+	public void expiredRequestsLeaveQueueTest() throws Exception {
+
+		RecordingClient client = new RecordingClient();
+		RequestForwarder forwarder = new RequestForwarder(client, 1, 1, 200,
+				0);
+
+		ResultContinuation stalled = new ResultContinuation();
+		forwarder.sendRequest(getter(), stalled);
+
+		ResultContinuation queued = new ResultContinuation();
+		forwarder.sendRequest(getter(), queued);
+		assertThat(forwarder.getQueuedCount(), is(1));
+
+		assertTrue(queued.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(queued.error instanceof TransportException);
+		assertThat(forwarder.getQueuedCount(), is(0));
+
+		// The expired request doesn't fill the queue
+		ResultContinuation next = new ResultContinuation();
+		forwarder.sendRequest(getter(), next);
+		assertThat(next.isDone(), is(false));
+		assertThat(forwarder.getQueuedCount(), is(1));
+		assertThat(forwarder.getRejectedCount(), is(0L));
+
+		client.respond(0);
+		assertThat(client.getSentCount(), is(2));
+
+		client.respond(1);
+		assertThat(forwarder.getInFlightCount(), is(0));
+	}
+
+	private Request<JsonObject> getter() {
+		return rom.createInvokeRequest("object", "getName", null,
+				String.class, false).request;
+	}
+}
@@ -0,0 +1,77 @@
+package org.kurento.control.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.Session;
+
+public class SubscriptionsManagerTest {
+
+	@Test
+	public void test() {
+
+		SubscriptionsManager subsManager = new SubscriptionsManager();
+
+		Session session1 = createSession();
+		Session session2 = createSession();
+
+		subsManager.addSubscription("s1", "obj1/EndOfStream", session1);
+		subsManager.addSubscription("s2", "obj1/EndOfStream", session1);
+		subsManager.addSubscription("s3", "obj1/EndOfStream", session2);
+		subsManager.addSubscription("s4", "obj2/Error", session2);
+
+		assertThat(subsManager.getSubscriptionsCount(), is(4));
+		assertThat(subsManager.getSubscriptionsCount(session1), is(2));
+		assertThat(subsManager.getSubscriptionsCount("obj1/EndOfStream"), is(3));
+		assertThat(subsManager.getSessionsByObjAndType("obj1/EndOfStream")
+				.size(), is(2));
+		assertThat(subsManager.getSessionsBySubscription("s4").iterator()
+				.next(), is(session2));
+
+		// Session is still subscribed with s2
+		subsManager.removeSubscription("s1");
+		assertThat(subsManager.getSessionsByObjAndType("obj1/EndOfStream")
+				.size(), is(2));
+		assertThat(subsManager.getSubscriptionsCount("obj1/EndOfStream"), is(2));
+
+		subsManager.removeSession(session2);
+
+		assertThat(subsManager.getSubscriptionsCount(), is(1));
+		assertThat(subsManager.getSubscriptionsCount(session2), is(0));
+		assertThat(subsManager.getSessionsByObjAndType("obj2/Error").isEmpty(),
+				is(true));
+		assertThat(subsManager.getSessionsBySubscription("s3").isEmpty(),
+				is(true));
+		assertThat(subsManager.getSessionsByObjAndType("obj1/EndOfStream")
+				.iterator().next(), is(session1));
+
+		subsManager.removeSession(session1);
+
+		assertThat(subsManager.getSubscriptionsCount(), is(0));
+		assertThat(subsManager.getSessionsCount(), is(0));
+		assertThat(subsManager.getSubscriptionsCount("obj1/EndOfStream"), is(0));
+	}
+
+	private Session createSession() {
+		return (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Session.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						default:
+							return null;
+						}
+					}
+				});
+	}
+}
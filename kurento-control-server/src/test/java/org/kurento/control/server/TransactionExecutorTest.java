@@ -0,0 +1,325 @@
+package org.kurento.control.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+public class TransactionExecutorTest {
+
+	private static class RecordingClient extends JsonRpcClient {
+
+		private final List<Request<JsonObject>> requests = new ArrayList<>();
+		private final List<Continuation<Response<JsonElement>>> continuations = new ArrayList<>();
+
+		@Override
+		public void sendRequest(Request<JsonObject> request,
+				Continuation<Response<JsonElement>> continuation) {
+			requests.add(request);
+			continuations.add(continuation);
+		}
+
+		public void respond(int sentIndex, String result) {
+			continuations.get(sentIndex).onSuccess(
+					new Response<JsonElement>(null, new JsonPrimitive(result)));
+		}
+
+		public void respondError(int sentIndex, int code, String message) {
+			continuations.get(sentIndex).onSuccess(
+					new Response<JsonElement>(null, new ResponseError(code,
+							message)));
+		}
+
+		public void fail(int sentIndex, Throwable cause) {
+			continuations.get(sentIndex).onError(cause);
+		}
+
+		public String getParam(int sentIndex, String param) {
+			return requests.get(sentIndex).getParams().get(param)
+					.getAsString();
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void connect() throws IOException {
+		}
+	}
+
+	private static class RecordingListener implements
+			TransactionExecutor.Listener {
+
+		private final List<Request<JsonObject>> completedOperations = new ArrayList<>();
+		private final List<List<Response<JsonElement>>> results = new ArrayList<>();
+		private final List<Throwable> failures = new ArrayList<>();
+
+		@Override
+		public void operationCompleted(Request<JsonObject> request,
+				Response<JsonElement> response) {
+			completedOperations.add(request);
+		}
+
+		@Override
+		public void transactionCompleted(List<Response<JsonElement>> responses) {
+			results.add(responses);
+		}
+
+		@Override
+		public void transactionFailed(Throwable cause) {
+			failures.add(cause);
+		}
+	}
+
+	private final RomClientJsonRpcClient rom = new RomClientJsonRpcClient(null);
+
+	@Test
+	public void independentOperationsAreSentTogetherTest() {
+
+		List<JsonElement> operations = new ArrayList<>();
+		// 0
+		add(operations, rom.createCreateRequest("MediaPipeline", null, true).request);
+		// 1, 2
+		add(operations, rom.createCreateRequest("WebRtcEndpoint",
+				new Props("mediaPipeline", "newref:0"), true).request);
+		add(operations, rom.createCreateRequest("WebRtcEndpoint",
+				new Props("mediaPipeline", "newref:0"), true).request);
+		// 3
+		add(operations, rom.createInvokeRequest("newref:1", "connect",
+				new Props("sink", "newref:2"), Void.class, true).request);
+		// 4
+		add(operations, rom.createCreateRequest("PlayerEndpoint", new Props(
+				"mediaPipeline", "existingPipeline"), true).request);
+		// 5, 6
+		add(operations, rom.createInvokeRequest("existingElement", "play",
+				null, Void.class, true).request);
+		add(operations, rom.createInvokeRequest("existingElement", "stop",
+				null, Void.class, true).request);
+
+		RecordingClient client = new RecordingClient();
+		final List<List<Response<JsonElement>>> result = new ArrayList<>();
+
+		MediaServerPool mediaServers = new MediaServerPool(
+				Collections.<JsonRpcClient> singletonList(client));
+
+		new TransactionExecutor(mediaServers, operations,
+				new TransactionManager(), new TransactionExecutor.Listener() {
+
+					@Override
+					public void operationCompleted(Request<JsonObject> request,
+							Response<JsonElement> response) {
+					}
+
+					@Override
+					public void transactionCompleted(
+							List<Response<JsonElement>> responses) {
+						result.add(responses);
+					}
+
+					@Override
+					public void transactionFailed(Throwable cause) {
+						throw new AssertionError(cause);
+					}
+				}).execute();
+
+		// Pipeline, player and first invoke on the existing element
+		assertThat(client.requests.size(), is(3));
+
+		client.respond(0, "pipeline");
+
+		// Both endpoints, with the pipeline reference resolved
+		assertThat(client.requests.size(), is(5));
+		assertThat(client.requests.get(3).getParams()
+				.getAsJsonObject("constructorParams").get("mediaPipeline")
+				.getAsString(), is("pipeline"));
+
+		client.respond(3, "endpoint1");
+		assertThat(client.requests.size(), is(5));
+
+		client.respond(4, "endpoint2");
+		assertThat(client.requests.size(), is(6));
+		assertThat(client.getParam(5, "object"), is("endpoint1"));
+		assertThat(client.requests.get(5).getParams()
+				.getAsJsonObject("operationParams").get("sink").getAsString(),
+				is("endpoint2"));
+
+		client.respond(2, "played");
+		assertThat(client.requests.size(), is(7));
+		assertThat(client.getParam(6, "operation"), is("stop"));
+
+		client.respond(1, "player");
+		client.respond(5, "connected");
+		assertThat(result.isEmpty(), is(true));
+
+		client.respond(6, "stopped");
+
+		// Responses in the order of the operations
+		List<Response<JsonElement>> responses = result.get(0);
+		assertThat(responses.size(), is(7));
+		assertThat(responses.get(0).getResult().getAsString(), is("pipeline"));
+		assertThat(responses.get(4).getResult().getAsString(), is("player"));
+		assertThat(responses.get(6).getResult().getAsString(), is("stopped"));
+	}
+
+	@Test
+	public void operationsOnReferencedObjectsAreOrderedTest() {
+
+		List<JsonElement> operations = new ArrayList<>();
+		// 0, 1
+		add(operations, rom.createInvokeRequest("elementA", "connect",
+				new Props("sink", "elementB"), Void.class, true).request);
+		add(operations, rom.createInvokeRequest("elementC", "connect",
+				new Props("sink", "elementB"), Void.class, true).request);
+		// 2
+		add(operations, rom.createReleaseRequest("elementB").request);
+		// 3, 4
+		add(operations, rom.createCreateRequest("PlayerEndpoint", new Props(
+				"mediaPipeline", "pipeline"), true).request);
+		add(operations, rom.createReleaseRequest("pipeline").request);
+		// 5
+		add(operations, rom.createReleaseRequest("elementA").request);
+
+		RecordingClient client = new RecordingClient();
+		RecordingListener listener = execute(client, operations);
+
+		// Both connects and the player, as they only reference objects
+		assertThat(client.requests.size(), is(3));
+		assertThat(client.getParam(2, "type"), is("PlayerEndpoint"));
+
+		// Release of the source once connected
+		client.respond(0, "connected");
+		assertThat(client.requests.size(), is(4));
+		assertThat(client.getParam(3, "object"), is("elementA"));
+
+		// Release of the sink once both connects are done
+		client.respond(1, "connected");
+		assertThat(client.requests.size(), is(5));
+		assertThat(client.getParam(4, "object"), is("elementB"));
+
+		// Release of the pipeline once the player is created in it
+		client.respond(2, "player");
+		assertThat(client.requests.size(), is(6));
+		assertThat(client.getParam(5, "object"), is("pipeline"));
+
+		client.respond(3, "released");
+		client.respond(4, "released");
+		assertThat(listener.results.isEmpty(), is(true));
+
+		client.respond(5, "released");
+		assertThat(listener.results.size(), is(1));
+		assertThat(listener.results.get(0).size(), is(6));
+		assertThat(listener.results.get(0).get(3).getResult().getAsString(),
+				is("player"));
+	}
+
+	@Test
+	public void failedOperationFailsTransactionTest() {
+
+		List<JsonElement> operations = new ArrayList<>();
+		// 0, 1
+		add(operations, rom.createCreateRequest("MediaPipeline", null, true).request);
+		add(operations, rom.createCreateRequest("WebRtcEndpoint",
+				new Props("mediaPipeline", "newref:0"), true).request);
+		// 2
+		add(operations, rom.createInvokeRequest("existingElement", "play",
+				null, Void.class, true).request);
+
+		RecordingClient client = new RecordingClient();
+		RecordingListener listener = execute(client, operations);
+
+		assertThat(client.requests.size(), is(2));
+
+		IOException cause = new IOException("Media server error");
+		client.fail(0, cause);
+
+		assertThat(listener.failures.size(), is(1));
+		assertThat(listener.failures.get(0), is((Throwable) cause));
+
+		// Operations completed after the failure are ignored
+		client.respond(1, "played");
+		client.fail(1, new IOException("Late error"));
+
+		assertThat(client.requests.size(), is(2));
+		assertThat(listener.completedOperations.isEmpty(), is(true));
+		assertThat(listener.results.isEmpty(), is(true));
+		assertThat(listener.failures.size(), is(1));
+	}
+
+	@Test
+	public void errorResponseSkipsDependentsTest() {
+
+		List<JsonElement> operations = new ArrayList<>();
+		// 0, 1, 2
+		add(operations, rom.createCreateRequest("MediaPipeline", null, true).request);
+		add(operations, rom.createCreateRequest("WebRtcEndpoint",
+				new Props("mediaPipeline", "newref:0"), true).request);
+		add(operations, rom.createInvokeRequest("newref:1", "generateOffer",
+				null, String.class, true).request);
+		// 3
+		add(operations, rom.createInvokeRequest("existingElement", "play",
+				null, Void.class, true).request);
+
+		RecordingClient client = new RecordingClient();
+		RecordingListener listener = execute(client, operations);
+
+		assertThat(client.requests.size(), is(2));
+
+		client.respondError(0, 40001, "Pipeline not created");
+
+		// Operations depending on the failed creation are not sent
+		assertThat(client.requests.size(), is(2));
+		assertThat(listener.results.isEmpty(), is(true));
+
+		client.respond(1, "played");
+
+		assertThat(listener.failures.isEmpty(), is(true));
+		assertThat(listener.results.size(), is(1));
+
+		List<Response<JsonElement>> responses = listener.results.get(0);
+		assertThat(responses.size(), is(4));
+		assertThat(responses.get(0).getError().getMessage(),
+				is("Pipeline not created"));
+		for (int i = 1; i <= 2; i++) {
+			assertThat(responses.get(i).getId(), is(i));
+			assertThat(responses.get(i).getError().getCode(), is(40001));
+			assertThat(responses.get(i).getError().getMessage()
+					.contains("operation 0"), is(true));
+		}
+		assertThat(responses.get(3).getResult().getAsString(), is("played"));
+	}
+
+	private RecordingListener execute(RecordingClient client,
+			List<JsonElement> operations) {
+
+		MediaServerPool mediaServers = new MediaServerPool(
+				Collections.<JsonRpcClient> singletonList(client));
+
+		RecordingListener listener = new RecordingListener();
+		new TransactionExecutor(mediaServers, operations,
+				new TransactionManager(), listener).execute();
+		return listener;
+	}
+
+	private void add(List<JsonElement> operations, Request<JsonObject> request) {
+		request.setId(operations.size());
+		operations.add(new JsonParser().parse(request.toString()));
+	}
+}
@@ -0,0 +1,121 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Sends a lot of concurrent asynchronous requests to a handler that takes some
+ * time to respond. With a blocking implementation (one thread per request in
+ * flight), requests are executed in groups of the size of the thread pool.
+ * 
+ * Before: 1000 requests with 10 threads and 200ms per request ~ 20s.
+ * 
+ * After: all requests in flight at the same time ~ 200ms plus transport.
+ */
+public class AsyncClientConcurrencyTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(AsyncClientConcurrencyTest.class);
+
+	private static final int NUM_REQUESTS = 1000;
+
+	private static final long RESPONSE_DELAY_MILLIS = 200;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private ScheduledExecutorService scheduler = Executors
+				.newScheduledThreadPool(1);
+
+		@Override
+		public void handleRequest(final Transaction transaction,
+				final Request<JsonObject> request) throws Exception {
+
+			transaction.startAsync();
+
+			scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						transaction.sendResponse(request.getParams());
+					} catch (IOException e) {
+						log.warn("Exception sending response", e);
+					}
+				}
+			}, RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		JsonRpcClient client = createJsonRpcClient("/async_concurrency");
+
+		// Connect before measuring
+		client.sendRequest("echo");
+
+		final CountDownLatch responsesLatch = new CountDownLatch(NUM_REQUESTS);
+		final AtomicInteger errors = new AtomicInteger();
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+
+			JsonObject params = new JsonObject();
+			params.addProperty("num", i);
+
+			client.sendRequest("echo", params, new Continuation<JsonElement>() {
+
+				@Override
+				public void onSuccess(JsonElement result) {
+					responsesLatch.countDown();
+				}
+
+				@Override
+				public void onError(Throwable cause) {
+					log.warn("Error in request", cause);
+					errors.incrementAndGet();
+					responsesLatch.countDown();
+				}
+			});
+		}
+
+		Assert.assertTrue("Timeout waiting for responses",
+				responsesLatch.await(30, TimeUnit.SECONDS));
+
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+
+		log.info("{} concurrent async requests completed in {} ms",
+				NUM_REQUESTS, elapsedMillis);
+
+		Assert.assertEquals(0, errors.get());
+
+		// A blocking implementation with 10 threads would need at least
+		// NUM_REQUESTS / 10 * RESPONSE_DELAY_MILLIS
+		Assert.assertTrue(
+				"Requests are not executed concurrently. Elapsed time: "
+						+ elapsedMillis,
+				elapsedMillis < NUM_REQUESTS / 10 * RESPONSE_DELAY_MILLIS / 2);
+
+		client.close();
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class BatchTest extends JsonRpcConnectorBaseTest {
+
+	private static final int NUM_REQUESTS = 30;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			// Responses of parallel requests arrive in any order
+			Thread.sleep((long) (Math.random() * 50));
+
+			transaction.sendResponse(request.getParams());
+		}
+
+		@Override
+		public boolean isParallelBatchSafe() {
+			return true;
+		}
+	}
+
+	@Test
+	public void test() throws IOException {
+
+		JsonRpcClient client = createJsonRpcClient("/batch");
+
+		List<Request<JsonObject>> requests = new ArrayList<>();
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			JsonObject params = new JsonObject();
+			params.addProperty("num", i);
+			requests.add(new Request<>("echo", params));
+		}
+
+		List<Response<JsonElement>> responses = client.sendBatch(requests);
+
+		Assert.assertEquals(NUM_REQUESTS, responses.size());
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+			Response<JsonElement> response = responses.get(i);
+			Assert.assertEquals(requests.get(i).getId(), response.getId());
+			Assert.assertEquals(i, response.getResult().getAsJsonObject()
+					.get("num").getAsInt());
+		}
+
+		client.close();
+	}
+
+}
@@ -15,6 +15,8 @@ import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.client.JsonRpcClientLocal;
 import org.kurento.jsonrpc.message.Request;
 
+import com.google.gson.JsonObject;
+
 public class KeepAliveManagerTest {
 
 	private static final int NUM_KEEP_ALIVES = 3;
@@ -153,4 +155,46 @@ public class KeepAliveManagerTest {
 
 		keepAliveManager.stop();
 	}
+
+	@Test
+	public void removeIdsWithErrorsTest() throws InterruptedException {
+
+		JsonRpcClient client = new JsonRpcClientLocal(
+				new DefaultJsonRpcHandler<JsonObject>() {
+					@Override
+					public void handleRequest(Transaction transaction,
+							Request<JsonObject> request) throws Exception {
+
+						String id = request.getParams().get("object")
+								.getAsString();
+
+						if (id.startsWith("released")) {
+							transaction.sendError(40101, "Object '" + id
+									+ "' not found", null);
+						} else {
+							transaction.sendResponse(new JsonObject());
+						}
+					}
+				});
+
+		KeepAliveManager keepAliveManager = new KeepAliveManager(client,
+				KEEPALIVE_INTERVAL_TIME,
+				KeepAliveManager.Mode.PER_ID_AS_MEDIAPIPELINE, 2, 2);
+
+		for (int i = 0; i < 5; i++) {
+			keepAliveManager.addId("pipeline" + i);
+			keepAliveManager.addId("released" + i);
+		}
+
+		keepAliveManager.start();
+
+		Thread.sleep(KEEPALIVE_INTERVAL_TIME * 3);
+
+		keepAliveManager.stop();
+
+		Assert.assertEquals(5, keepAliveManager.getIdsCount());
+		Assert.assertEquals(5, keepAliveManager.getDroppedIdCount());
+		Assert.assertTrue("At least one cycle should be finished",
+				keepAliveManager.getCycleCount() >= 1);
+	}
 }
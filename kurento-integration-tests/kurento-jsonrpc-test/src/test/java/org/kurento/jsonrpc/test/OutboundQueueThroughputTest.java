@@ -0,0 +1,99 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the messages per second sent through one connection by 32
+ * producer threads.
+ */
+public class OutboundQueueThroughputTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutboundQueueThroughputTest.class);
+
+	private static final int NUM_PRODUCERS = 32;
+
+	private static final int MESSAGES_PER_PRODUCER = 2000;
+
+	private static CountDownLatch receivedLatch;
+
+	public static class Handler extends DefaultJsonRpcHandler<Integer> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<Integer> request) throws Exception {
+			receivedLatch.countDown();
+		}
+	}
+
+	@Test
+	public void test() throws IOException, InterruptedException {
+
+		receivedLatch = new CountDownLatch(NUM_PRODUCERS
+				* MESSAGES_PER_PRODUCER);
+
+		final JsonRpcClient client = createJsonRpcClient("/outbound_throughput");
+		client.connect();
+
+		final AtomicInteger errors = new AtomicInteger();
+		ExecutorService producers = Executors
+				.newFixedThreadPool(NUM_PRODUCERS);
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_PRODUCERS; i++) {
+			producers.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < MESSAGES_PER_PRODUCER; j++) {
+						try {
+							client.sendNotification("count", j);
+						} catch (Exception e) {
+							log.warn("Exception sending notification", e);
+							errors.incrementAndGet();
+						}
+					}
+				}
+			});
+		}
+
+		Assert.assertTrue("Not all the messages have been received",
+				receivedLatch.await(60, TimeUnit.SECONDS));
+
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start);
+
+		log.info("{} messages sent by {} threads in {} ms: {} msgs/sec",
+				NUM_PRODUCERS * MESSAGES_PER_PRODUCER, NUM_PRODUCERS,
+				elapsedMillis, NUM_PRODUCERS * MESSAGES_PER_PRODUCER * 1000L
+						/ Math.max(1, elapsedMillis));
+
+		if (client instanceof JsonRpcClientWebSocket) {
+			JsonRpcClientWebSocket wsClient = (JsonRpcClientWebSocket) client;
+			log.info("Frames written: {}", wsClient.getOutboundQueue()
+					.getSentFrames());
+		}
+
+		Assert.assertEquals(0, errors.get());
+
+		producers.shutdown();
+		client.close();
+	}
+
+}
@@ -0,0 +1,159 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Sends requests at 500 req/s while the server is stopped and started again.
+ * Requests sent while the server is down are buffered by the client and sent
+ * when the connection is recovered.
+ */
+public class ReconnectionLoadTest extends JsonRpcConnectorBaseTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ReconnectionLoadTest.class);
+
+	private static final int NUM_REQUESTS = 4000;
+
+	private static final long REQUEST_INTERVAL_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(2);
+
+	private static final int STOP_SERVER_AT_REQUEST = 1000;
+
+	public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	@Test
+	public void test() throws Exception {
+
+		System.setProperty(
+				JsonRpcClientWebSocket.RECONNECT_BUFFER_SIZE_PROPERTY,
+				Integer.toString(NUM_REQUESTS));
+		System.setProperty(JsonRpcClientWebSocket.RECONNECT_MAX_TIME_PROPERTY,
+				"30000");
+
+		JsonRpcClient client = createJsonRpcClient("/reconnection_load");
+
+		// Properties are read when the client is created
+		System.clearProperty(JsonRpcClientWebSocket.RECONNECT_BUFFER_SIZE_PROPERTY);
+		System.clearProperty(JsonRpcClientWebSocket.RECONNECT_MAX_TIME_PROPERTY);
+
+		if (!(client instanceof JsonRpcClientWebSocket)) {
+			client.close();
+			return;
+		}
+
+		client.sendRequest("echo");
+
+		final CountDownLatch responsesLatch = new CountDownLatch(NUM_REQUESTS);
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicInteger outageResponses = new AtomicInteger();
+		final AtomicBoolean serverDown = new AtomicBoolean();
+
+		Thread restarter = null;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < NUM_REQUESTS; i++) {
+
+			if (i == STOP_SERVER_AT_REQUEST) {
+				restarter = new Thread() {
+					@Override
+					public void run() {
+						try {
+							log.info("Stopping server");
+							serverDown.set(true);
+							stop();
+							Thread.sleep(1000);
+							start();
+							log.info("Server started again");
+						} catch (Exception e) {
+							log.error("Exception restarting server", e);
+						} finally {
+							serverDown.set(false);
+						}
+					}
+				};
+				restarter.start();
+			}
+
+			final boolean sentInOutage = serverDown.get();
+
+			JsonObject params = new JsonObject();
+			params.addProperty("num", i);
+
+			client.sendRequest("echo", params, new Continuation<JsonElement>() {
+
+				@Override
+				public void onSuccess(JsonElement result) {
+					if (sentInOutage) {
+						outageResponses.incrementAndGet();
+					}
+					responsesLatch.countDown();
+				}
+
+				@Override
+				public void onError(Throwable cause) {
+					log.debug("Error in request", cause);
+					errors.incrementAndGet();
+					responsesLatch.countDown();
+				}
+			});
+
+			long next = start + (i + 1) * REQUEST_INTERVAL_NANOS;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+
+		restarter.join();
+
+		Assert.assertTrue("Timeout waiting for responses",
+				responsesLatch.await(60, TimeUnit.SECONDS));
+
+		log.info("{} requests sent: {} errors, {} responses to requests "
+				+ "sent while the server was down", NUM_REQUESTS,
+				errors.get(), outageResponses.get());
+
+		// Only requests in flight when the server was stopped can be lost
+		Assert.assertTrue("Too many failed requests: " + errors.get(),
+				errors.get() < NUM_REQUESTS / 20);
+
+		Assert.assertTrue("Requests sent while the server was down"
+				+ " were not replayed", outageResponses.get() > 0);
+
+		Assert.assertEquals("echo", client.sendRequest("echo",
+				params("echo"), JsonObject.class).get("value").getAsString());
+
+		client.close();
+	}
+
+	private JsonObject params(String value) {
+		JsonObject params = new JsonObject();
+		params.addProperty("value", value);
+		return params;
+	}
+}
@@ -3,7 +3,9 @@ package org.kurento.jsonrpc.test.base;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
+import org.kurento.jsonrpc.test.AsyncClientConcurrencyTest;
 import org.kurento.jsonrpc.test.AsyncServerTest;
+import org.kurento.jsonrpc.test.BatchTest;
 import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
@@ -12,6 +14,8 @@ import org.kurento.jsonrpc.test.ErrorServerTest;
 import org.kurento.jsonrpc.test.MultipleSessionsTest;
 import org.kurento.jsonrpc.test.NewSessionTest;
 import org.kurento.jsonrpc.test.NotificationTest;
+import org.kurento.jsonrpc.test.OutboundQueueThroughputTest;
+import org.kurento.jsonrpc.test.ReconnectionLoadTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
 import org.kurento.jsonrpc.test.handler.EchoJsonRpcHandler;
@@ -40,8 +44,13 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
 		registry.addHandler(new AsyncServerTest.Handler(), "/async_handler");
 
+		registry.addHandler(new AsyncClientConcurrencyTest.Handler(),
+				"/async_concurrency");
+
 		registry.addHandler(new ErrorServerTest.Handler(), "/error_handler");
 
+		registry.addHandler(new BatchTest.Handler(), "/batch");
+
 		registry.addPerSessionHandler(MultipleSessionsTest.Handler.class,
 				"/jsonrpc_multiple");
 
@@ -56,11 +65,17 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
 		registry.addHandler(new ReconnectionTest.Handler(), "/reconnection");
 
+		registry.addHandler(new ReconnectionLoadTest.Handler(),
+				"/reconnection_load");
+
 		registry.addHandler(new ConnectionListenerTest.Handler(),
 				"/connectionlistener");
 
 		registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+		registry.addHandler(new OutboundQueueThroughputTest.Handler(),
+				"/outbound_throughput");
+
 	}
 
 	@Bean
@@ -47,4 +47,15 @@ public abstract class DefaultJsonRpcHandler<P> implements JsonRpcHandler<P> {
 	public Class<?> getHandlerType() {
 		return this.getClass();
 	}
+
+	/**
+	 * Returns true if the requests of a JSON-RPC batch can be processed in
+	 * parallel, that is, if {@link #handleRequest(Transaction,
+	 * org.kurento.jsonrpc.message.Request)} can be invoked concurrently and
+	 * the requests of a batch don't depend on each other. Handlers not
+	 * extending this class always process batches sequentially.
+	 */
+	public boolean isParallelBatchSafe() {
+		return false;
+	}
 }
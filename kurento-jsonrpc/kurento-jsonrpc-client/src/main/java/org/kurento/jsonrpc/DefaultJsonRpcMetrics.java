@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+
+import com.google.gson.JsonObject;
+
+/**
+ * In-memory {@link JsonRpcMetrics}. For every method, it counts the requests,
+ * the errors and the requests in flight, and keeps histograms of the latency
+ * (in microseconds) and of the size of the requests and responses, when it is
+ * known.
+ *
+ * Methods are created on demand. To bound the memory used when peers send
+ * arbitrary method names, requests of methods beyond
+ * {@link #DEFAULT_MAX_METHODS} are accounted as {@link #OTHER_METHODS}.
+ *
+ * @since 5.1.1
+ */
+public class DefaultJsonRpcMetrics implements JsonRpcMetrics {
+
+	public static final int DEFAULT_MAX_METHODS = 1000;
+
+	public static final String OTHER_METHODS = "other";
+
+	/**
+	 * Metrics of the requests of a method.
+	 */
+	public static class MethodMetrics {
+
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final LatencyHistogram requestSize = new LatencyHistogram();
+		private final LatencyHistogram responseSize = new LatencyHistogram();
+
+		/**
+		 * Returns the number of completed requests.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getErrorCount() {
+			return errors.get();
+		}
+
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Returns the histogram of the latency, in microseconds.
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		public LatencyHistogram getRequestSize() {
+			return requestSize;
+		}
+
+		public LatencyHistogram getResponseSize() {
+			return responseSize;
+		}
+
+		private void reset() {
+			count.set(0);
+			errors.set(0);
+			latency.reset();
+			requestSize.reset();
+			responseSize.reset();
+		}
+
+		private JsonObject toJson(double elapsedSeconds) {
+
+			JsonObject json = new JsonObject();
+			json.addProperty("count", getCount());
+			json.addProperty("errors", getErrorCount());
+			json.addProperty("inFlight", getInFlight());
+			json.addProperty("throughput", elapsedSeconds > 0 ? getCount()
+					/ elapsedSeconds : 0);
+			json.add("latencyMicros", histogramToJson(latency));
+			json.add("requestSize", histogramToJson(requestSize));
+			json.add("responseSize", histogramToJson(responseSize));
+			return json;
+		}
+
+		private static JsonObject histogramToJson(LatencyHistogram histogram) {
+
+			JsonObject json = new JsonObject();
+			json.addProperty("mean", histogram.getMean());
+			json.addProperty("p50", histogram.getValueAtPercentile(50));
+			json.addProperty("p90", histogram.getValueAtPercentile(90));
+			json.addProperty("p99", histogram.getValueAtPercentile(99));
+			json.addProperty("p99.9", histogram.getValueAtPercentile(99.9));
+			json.addProperty("max", histogram.getMax());
+			return json;
+		}
+	}
+
+	private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+	private final int maxMethods;
+
+	private volatile long startTime = System.nanoTime();
+
+	public DefaultJsonRpcMetrics() {
+		this(DEFAULT_MAX_METHODS);
+	}
+
+	public DefaultJsonRpcMetrics(int maxMethods) {
+		this.maxMethods = maxMethods;
+	}
+
+	@Override
+	public void requestStarted(String method, int requestSize) {
+		MethodMetrics metrics = getOrCreate(method);
+		metrics.inFlight.incrementAndGet();
+		if (requestSize > 0) {
+			metrics.requestSize.record(requestSize);
+		}
+	}
+
+	@Override
+	public void requestCompleted(String method, long latencyNanos,
+			boolean error) {
+
+		MethodMetrics metrics = getOrCreate(method);
+		metrics.inFlight.decrementAndGet();
+		metrics.count.incrementAndGet();
+		if (error) {
+			metrics.errors.incrementAndGet();
+		}
+		metrics.latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+	}
+
+	@Override
+	public void responseSent(String method, int responseSize) {
+		if (responseSize > 0) {
+			getOrCreate(method).responseSize.record(responseSize);
+		}
+	}
+
+	/**
+	 * Returns the metrics of the method, or null if no request of that method
+	 * has been accounted.
+	 */
+	public MethodMetrics getMethodMetrics(String method) {
+		return methods.get(method);
+	}
+
+	public Set<String> getMethods() {
+		return methods.keySet();
+	}
+
+	/**
+	 * Resets counters and histograms. Requests in flight are kept, as they
+	 * will be completed later.
+	 */
+	public void reset() {
+		for (MethodMetrics metrics : methods.values()) {
+			metrics.reset();
+		}
+		startTime = System.nanoTime();
+	}
+
+	@Override
+	public JsonObject getSnapshot() {
+
+		long elapsedNanos = System.nanoTime() - startTime;
+		double elapsedSeconds = elapsedNanos
+				/ (double) TimeUnit.SECONDS.toNanos(1);
+
+		JsonObject methodsJson = new JsonObject();
+		for (Entry<String, MethodMetrics> entry : methods.entrySet()) {
+			methodsJson.add(entry.getKey(),
+					entry.getValue().toJson(elapsedSeconds));
+		}
+
+		JsonObject snapshot = new JsonObject();
+		snapshot.addProperty("elapsedMillis",
+				TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+		snapshot.add("methods", methodsJson);
+		return snapshot;
+	}
+
+	private MethodMetrics getOrCreate(String method) {
+
+		if (method == null) {
+			method = OTHER_METHODS;
+		}
+
+		MethodMetrics metrics = methods.get(method);
+		if (metrics != null) {
+			return metrics;
+		}
+
+		if (methods.size() >= maxMethods) {
+			method = OTHER_METHODS;
+		}
+
+		metrics = new MethodMetrics();
+		MethodMetrics oldMetrics = methods.putIfAbsent(method, metrics);
+		return oldMetrics != null ? oldMetrics : metrics;
+	}
+}
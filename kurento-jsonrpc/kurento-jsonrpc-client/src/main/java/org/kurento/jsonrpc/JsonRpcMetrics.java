@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Registry of per-method metrics of the JSON-RPC requests, both the ones
+ * handled by a server and the ones sent by a client. Implementations can
+ * aggregate them in memory (as {@link DefaultJsonRpcMetrics} does) or export
+ * them to an external monitoring system.
+ *
+ * Methods are invoked in the threads that process the requests, so they must
+ * be thread-safe and fast.
+ *
+ * @since 5.1.1
+ */
+public interface JsonRpcMetrics {
+
+	/**
+	 * Invoked when a request is received (server) or sent (client).
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param requestSize
+	 *            the length of the JSON text of the request as received, in
+	 *            characters, or 0 if it is not known (requests sent by a
+	 *            client and requests in batches)
+	 */
+	void requestStarted(String method, int requestSize);
+
+	/**
+	 * Invoked once for every started request, when it is responded or fails.
+	 * Notifications are completed when they have been handled (server) or
+	 * sent (client).
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param latencyNanos
+	 *            time elapsed since the request was started
+	 * @param error
+	 *            true if the response is an error or the request failed
+	 */
+	void requestCompleted(String method, long latencyNanos, boolean error);
+
+	/**
+	 * Invoked after {@link #requestCompleted(String, long, boolean)} when the
+	 * response is sent by a server transport that knows the length of its
+	 * JSON text (WebSocket). It is not invoked for the responses of batches,
+	 * of the other transports and of the requests sent by a client.
+	 *
+	 * @param method
+	 *            the method of the request
+	 * @param responseSize
+	 *            the length of the JSON text of the response, in characters
+	 */
+	void responseSent(String method, int responseSize);
+
+	/**
+	 * Returns the current values of the metrics, as returned to the clients
+	 * invoking the
+	 * {@link org.kurento.jsonrpc.internal.JsonRpcConstants#METHOD_METRICS}
+	 * method.
+	 */
+	JsonObject getSnapshot();
+}
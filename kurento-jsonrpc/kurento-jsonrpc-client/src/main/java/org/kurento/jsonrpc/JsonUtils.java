@@ -24,6 +24,8 @@ import static org.kurento.jsonrpc.internal.JsonRpcConstants.PARAMS_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RESULT_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.SESSION_ID_PROPERTY;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
@@ -33,6 +35,7 @@ import java.util.Map;
 
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
@@ -51,6 +54,8 @@ import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.internal.$Gson$Types;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  *
@@ -87,9 +92,20 @@ public class JsonUtils {
 			Class<T> paramsClass) {
 
 		if (INJECT_SESSION_ID) {
-			// TODO Optimise this implementation if possible
-			return fromJsonRequestInject(fromJson(json, JsonObject.class),
-					paramsClass);
+
+			Message message = fromJsonMessage(json);
+			if (!(message instanceof Request)) {
+				throw new JsonRpcException("Json '" + json
+						+ "' is not a JSON-RPC request");
+			}
+
+			@SuppressWarnings("unchecked")
+			Request<JsonElement> request = (Request<JsonElement>) message;
+
+			@SuppressWarnings("unchecked")
+			Request<T> requestT = (Request<T>) (Request<?>) request;
+			requestT.setParams(convertParams(request.getParams(), paramsClass));
+			return requestT;
 		}
 
 		return getGson().fromJson(
@@ -102,9 +118,28 @@ public class JsonUtils {
 			Class<T> resultClass) {
 
 		if (INJECT_SESSION_ID) {
-			// TODO Optimise this implementation if possible
-			return fromJsonResponseInject(fromJson(json, JsonObject.class),
-					resultClass);
+
+			Message message = fromJsonMessage(json);
+			if (!(message instanceof Response)) {
+				throw new JsonRpcException("Json '" + json
+						+ "' is not a JSON-RPC response");
+			}
+
+			@SuppressWarnings("unchecked")
+			Response<JsonElement> response = (Response<JsonElement>) message;
+
+			try {
+				@SuppressWarnings("unchecked")
+				Response<T> responseT = (Response<T>) (Response<?>) response;
+				responseT.setResult(convertParams(response.getResult(),
+						resultClass));
+				return responseT;
+			} catch (JsonSyntaxException e) {
+				throw new JsonRpcException("Exception converting Json '"
+						+ json
+						+ "' to a JSON-RPC response with params as class "
+						+ resultClass.getName(), e);
+			}
 		}
 		try {
 			return getGson().fromJson(
@@ -194,9 +229,193 @@ public class JsonUtils {
 		return request;
 	}
 
+	/**
+	 * Decodes a JSON-RPC message in a single pass over the text with a
+	 * {@link JsonReader}, instead of parsing the whole message to a
+	 * {@link JsonObject} and deserializing it again. The envelope fields (id,
+	 * method, jsonrpc) are read directly from the stream and only params,
+	 * result and error are read as a {@link JsonElement} subtree. Converting
+	 * params or result to a typed object is left to the consumer of the
+	 * message (see {@link org.kurento.jsonrpc.message.MessageUtils}), so it
+	 * is only done by the handler that needs it.
+	 *
+	 * @param json
+	 *            Text of the message
+	 * @return A {@link Request} or {@link Response} with params or result as
+	 *         {@link JsonElement}, or a {@link MessageBatch} of them if the
+	 *         message is a JSON array
+	 */
+	public static Message fromJsonMessage(String json) {
+
+		try {
+
+			JsonReader reader = new JsonReader(new StringReader(json));
+			reader.setLenient(true);
+
+			Message message;
+			if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+				message = readMessageBatch(reader);
+			} else {
+				message = readMessage(reader);
+			}
+
+			if (reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonRpcException(
+						"Unexpected content after JSON-RPC message '" + json
+								+ "'");
+			}
+
+			return message;
+
+		} catch (IOException | IllegalStateException | NumberFormatException
+				| JsonParseException e) {
+			throw new JsonRpcException("Exception decoding JSON-RPC message '"
+					+ json + "'", e);
+		}
+	}
+
+	private static MessageBatch readMessageBatch(JsonReader reader)
+			throws IOException {
+
+		List<Message> messages = new ArrayList<>();
+		int invalidMessages = 0;
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+				messages.add(readMessage(reader));
+			} else {
+				reader.skipValue();
+				invalidMessages++;
+			}
+		}
+		reader.endArray();
+
+		return new MessageBatch(messages, invalidMessages);
+	}
+
+	private static Message readMessage(JsonReader reader) throws IOException {
+
+		String version = null;
+		Integer id = null;
+		String method = null;
+		JsonElement params = null;
+		JsonElement result = null;
+		ResponseError error = null;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+
+			String name = reader.nextName();
+
+			switch (name) {
+			case JSON_RPC_PROPERTY:
+				version = readStringOrNull(reader);
+				break;
+			case ID_PROPERTY:
+				if (reader.peek() == JsonToken.NULL) {
+					reader.nextNull();
+				} else {
+					id = Integer.valueOf(reader.nextInt());
+				}
+				break;
+			case METHOD_PROPERTY:
+				method = readStringOrNull(reader);
+				break;
+			case PARAMS_PROPERTY:
+				params = readJsonElement(reader);
+				break;
+			case RESULT_PROPERTY:
+				result = readJsonElement(reader);
+				break;
+			case ERROR_PROPERTY:
+				error = getGson().fromJson(
+						readJsonElement(reader),
+						ResponseError.class);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (method != null) {
+
+			Request<JsonElement> request = new Request<>(id, method, params);
+			request.setSessionId(extractSessionId(params));
+			return request;
+		}
+
+		if (!JSON_RPC_VERSION.equals(version)) {
+			throw new JsonParseException(
+					"Invalid JsonRpc response lacking version '"
+							+ JSON_RPC_PROPERTY + "' field");
+		}
+
+		if (result != null) {
+
+			if (id == null) {
+				throw new JsonParseException(
+						"Invalid JsonRpc response. It lacks a valid '"
+								+ ID_PROPERTY + "' field");
+			}
+
+			Response<JsonElement> response = new Response<>(id, result);
+			response.setSessionId(extractSessionId(result));
+			return response;
+
+		} else if (error != null) {
+
+			return new Response<>(id, error);
+
+		} else {
+
+			throw new JsonParseException(
+					"Invalid JsonRpc response. It lacks a valid '"
+							+ RESULT_PROPERTY + "' or '" + ERROR_PROPERTY
+							+ "' field");
+		}
+	}
+
+	private static JsonElement readJsonElement(JsonReader reader)
+			throws IOException {
+		return getGson().getAdapter(JsonElement.class).read(reader);
+	}
+
+	private static String readStringOrNull(JsonReader reader)
+			throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static <T> T convertParams(JsonElement params, Class<T> clazz) {
+
+		if (params == null || clazz == null) {
+			@SuppressWarnings("unchecked")
+			T paramsT = (T) params;
+			return paramsT;
+		}
+
+		if (clazz == Void.class) {
+			return null;
+		}
+
+		if (clazz.isInstance(params)) {
+			return clazz.cast(params);
+		}
+
+		return getGson().fromJson(params, clazz);
+	}
+
 	private static String extractSessionId(JsonObject jsonObject,
 			String memberName) {
-		JsonElement responseJson = jsonObject.get(memberName);
+		return extractSessionId(jsonObject.get(memberName));
+	}
+
+	private static String extractSessionId(JsonElement responseJson) {
 
 		if (responseJson != null && responseJson.isJsonObject()) {
 
@@ -1,27 +1,61 @@
 package org.kurento.jsonrpc;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.message.Request;
-
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+/**
+ * Sends keepAlive requests periodically to the server.
+ *
+ * In the modes with ids, a keepAlive is sent for each id. KeepAlives are
+ * packed in JSON-RPC batches of keepAliveBatchSize requests, and up to
+ * keepAliveMaxInFlightBatches batches are waiting for their responses at the
+ * same time, so a slow response doesn't delay the rest. Ids whose keepAlive
+ * is answered with an error are removed. If the keepAlives of a cycle have
+ * not been answered when the next cycle starts, the next cycle is skipped,
+ * unless they have been waiting for more than
+ * {@value #MAX_SKIPPED_CYCLES} cycles. In that case, the pending cycle is
+ * abandoned and a new one is started.
+ */
 public class KeepAliveManager {
 
 	public static final String KEEP_ALIVE_INTERVAL_TIME_PROPERTY = "keepAliveIntervalTime";
 
+	public static final String KEEP_ALIVE_BATCH_SIZE_PROPERTY = "keepAliveBatchSize";
+
+	public static final String KEEP_ALIVE_MAX_IN_FLIGHT_BATCHES_PROPERTY = "keepAliveMaxInFlightBatches";
+
 	private static final int KEEP_ALIVE_TIME_DEFAULT_VALUE = 120000;
 
+	private static final int KEEP_ALIVE_BATCH_SIZE_DEFAULT_VALUE = 100;
+
+	private static final int KEEP_ALIVE_MAX_IN_FLIGHT_BATCHES_DEFAULT_VALUE = 10;
+
+	private static final int MAX_SKIPPED_CYCLES = 3;
+
 	private static final Object DUMMY_OBJECT_FOR_MAP = new Object();
 
 	private static Logger log = LoggerFactory.getLogger(KeepAliveManager.class);
@@ -33,13 +67,25 @@ public class KeepAliveManager {
 	private JsonRpcClient client;
 	private long keepAliveIntervalTime;
 	private Mode mode;
+	private final int batchSize;
+	private final int maxInFlightBatches;
 
 	private ConcurrentHashMap<String, Object> ids = new ConcurrentHashMap<String, Object>();
 
-	// TODO Is single thread executor the best choice?
+	// Sends the first batches of each cycle and the next ones when a batch
+	// is answered, so the thread is never blocked waiting for responses
 	private ScheduledExecutorService executor = Executors
 			.newSingleThreadScheduledExecutor();
 
+	private final AtomicReference<KeepAliveCycle> currentCycle = new AtomicReference<>();
+
+	private final AtomicLong cycles = new AtomicLong();
+	private final AtomicLong skippedCycles = new AtomicLong();
+	private final AtomicLong droppedIds = new AtomicLong();
+	private volatile long lastCycleDuration;
+	private volatile long maxCycleDuration;
+	private volatile int lastCycleKeepAlives;
+
 	public KeepAliveManager(JsonRpcClient client, long keepAliveIntervalTime) {
 		this(client, keepAliveIntervalTime, Mode.PER_CLIENT);
 	}
@@ -50,9 +96,20 @@ public class KeepAliveManager {
 
 	public KeepAliveManager(JsonRpcClient client, long keepAliveIntervalTime,
 			Mode mode) {
+		this(client, keepAliveIntervalTime, mode, PropertiesManager
+				.getProperty(KEEP_ALIVE_BATCH_SIZE_PROPERTY,
+						KEEP_ALIVE_BATCH_SIZE_DEFAULT_VALUE), PropertiesManager
+				.getProperty(KEEP_ALIVE_MAX_IN_FLIGHT_BATCHES_PROPERTY,
+						KEEP_ALIVE_MAX_IN_FLIGHT_BATCHES_DEFAULT_VALUE));
+	}
+
+	public KeepAliveManager(JsonRpcClient client, long keepAliveIntervalTime,
+			Mode mode, int batchSize, int maxInFlightBatches) {
 
 		this.client = client;
 		this.mode = mode;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
 
 		if (keepAliveIntervalTime != -1) {
 			this.keepAliveIntervalTime = keepAliveIntervalTime;
@@ -82,43 +139,33 @@ public class KeepAliveManager {
 
 	protected void sendKeepAlives() {
 
-		if (mode == Mode.PER_ID_AS_SESSION) {
-
-			for (String id : ids.keySet()) {
-
-				JsonObject params = new JsonObject();
-				params.addProperty("object", id);
-				try {
-					client.sendRequest("keepAlive", params);
-				} catch (IOException e) {
-					log.error(
-							"Exception while sending keepAlive from mediaPipeline "
-									+ id, e);
+		if (mode == Mode.PER_ID_AS_SESSION
+				|| mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
+
+			KeepAliveCycle pendingCycle = currentCycle.get();
+			if (pendingCycle != null) {
+				if (pendingCycle.getElapsedTime() < keepAliveIntervalTime
+						* MAX_SKIPPED_CYCLES) {
+					skippedCycles.incrementAndGet();
+					log.warn("KeepAlives of the previous cycle have not been "
+							+ "answered yet. Skipping this cycle");
+					return;
 				}
+				log.warn("KeepAlives of a cycle have not been answered in {} "
+						+ "millis. Starting a new cycle", pendingCycle
+						.getElapsedTime());
 			}
 
-		} else if (mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
-
-			for (String id : ids.keySet()) {
-
-				JsonObject params = new JsonObject();
-				params.addProperty("object", id);
-				try {
-					client.sendRequest(new Request<JsonObject>(id, null,
-							"keepAlive", params));
-				} catch (JsonRpcErrorException e) {
-					log.warn(
-							"Error while sending keepAlive for MediaPipeline '{}':"
-									+ " {}. Removing this MediaPipeline from keepAlive list.",
-							id, e.getMessage());
-
-				} catch (IOException e) {
-					log.error(
-							"Exception while sending keepAlive from mediaPipeline "
-									+ id, e);
-				}
+			List<String> cycleIds = new ArrayList<>(ids.keySet());
+			if (cycleIds.isEmpty()) {
+				currentCycle.set(null);
+				return;
 			}
 
+			KeepAliveCycle cycle = new KeepAliveCycle(cycleIds);
+			currentCycle.set(cycle);
+			cycle.start();
+
 		} else if (mode == Mode.PER_CLIENT) {
 
 			try {
@@ -129,11 +176,154 @@ public class KeepAliveManager {
 								+ client.getSession().getSessionId());
 			}
 
+			log.debug("Finish sending keepAlives");
+
 		} else {
 			throw new KurentoException("Unrecognized keepAlive mode = " + mode);
 		}
+	}
+
+	private class KeepAliveCycle {
+
+		private final long startTime = System.nanoTime();
+		private final int numIds;
+		private final List<List<String>> batches;
+		private final AtomicInteger nextBatch = new AtomicInteger();
+		private final AtomicInteger pendingBatches;
+
+		public KeepAliveCycle(List<String> cycleIds) {
+			this.numIds = cycleIds.size();
+			this.batches = Lists.partition(cycleIds, batchSize);
+			this.pendingBatches = new AtomicInteger(batches.size());
+		}
+
+		public void start() {
+			int initialBatches = Math.min(maxInFlightBatches, batches.size());
+			for (int i = 0; i < initialBatches; i++) {
+				sendNextBatch();
+			}
+		}
+
+		public long getElapsedTime() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		}
+
+		private void sendNextBatch() {
+
+			int index = nextBatch.getAndIncrement();
+			if (index >= batches.size()) {
+				return;
+			}
+
+			final List<String> batchIds = batches.get(index);
+
+			List<Request<JsonObject>> requests = new ArrayList<>(
+					batchIds.size());
+			for (String id : batchIds) {
+				requests.add(createKeepAlive(id));
+			}
+
+			try {
+
+				client.sendBatch(requests,
+						new Continuation<List<Response<JsonElement>>>() {
+
+							@Override
+							public void onSuccess(
+									List<Response<JsonElement>> responses) {
+								for (int i = 0; i < responses.size(); i++) {
+									Response<JsonElement> response = responses
+											.get(i);
+									if (response != null && response.isError()) {
+										dropId(batchIds.get(i),
+												response.getError());
+									}
+								}
+								batchCompleted();
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								log.error("Exception while sending keepAlives for "
+										+ batchIds.size() + " ids", cause);
+								batchCompleted();
+							}
+						});
+
+			} catch (Exception e) {
+				log.error("Exception while sending keepAlives for "
+						+ batchIds.size() + " ids", e);
+				batchCompleted();
+			}
+		}
 
-		log.debug("Finish sending keepAlives");
+		private void batchCompleted() {
+
+			if (nextBatch.get() < batches.size()) {
+				try {
+					// Sent from the executor, as responses can be received in
+					// the thread sending the request
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							sendNextBatch();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					log.debug("KeepAliveManager stopped in the middle of a cycle");
+				}
+			}
+
+			if (pendingBatches.decrementAndGet() == 0) {
+				finish();
+			}
+		}
+
+		private void finish() {
+
+			long duration = getElapsedTime();
+
+			lastCycleDuration = duration;
+			lastCycleKeepAlives = numIds;
+			if (duration > maxCycleDuration) {
+				maxCycleDuration = duration;
+			}
+			cycles.incrementAndGet();
+
+			// An abandoned cycle doesn't finish the one that replaced it
+			currentCycle.compareAndSet(this, null);
+
+			log.debug("Finish sending {} keepAlives in {} millis", numIds,
+					duration);
+
+			if (duration > keepAliveIntervalTime) {
+				log.warn("Sending {} keepAlives took {} millis, more than the "
+						+ "keepAlive interval of {} millis", numIds, duration,
+						keepAliveIntervalTime);
+			}
+		}
+	}
+
+	private Request<JsonObject> createKeepAlive(String id) {
+
+		JsonObject params = new JsonObject();
+		params.addProperty("object", id);
+
+		if (mode == Mode.PER_ID_AS_MEDIAPIPELINE) {
+			return new Request<JsonObject>(id, null, "keepAlive", params);
+		} else {
+			return new Request<JsonObject>("keepAlive", params);
+		}
+	}
+
+	private void dropId(String id, ResponseError error) {
+
+		if (ids.remove(id) != null) {
+			droppedIds.incrementAndGet();
+			log.warn("Error while sending keepAlive for id '{}': {}. "
+					+ "Removing this id from keepAlive list.", id,
+					error.getMessage());
+		}
 	}
 
 	public void addId(String id) {
@@ -144,6 +334,49 @@ public class KeepAliveManager {
 		ids.remove(id);
 	}
 
+	public int getIdsCount() {
+		return ids.size();
+	}
+
+	/**
+	 * Returns the number of cycles whose keepAlives have all been answered.
+	 */
+	public long getCycleCount() {
+		return cycles.get();
+	}
+
+	/**
+	 * Returns the number of cycles not started because the keepAlives of the
+	 * previous one were not answered yet.
+	 */
+	public long getSkippedCycleCount() {
+		return skippedCycles.get();
+	}
+
+	/**
+	 * Returns the number of ids removed because their keepAlive was answered
+	 * with an error.
+	 */
+	public long getDroppedIdCount() {
+		return droppedIds.get();
+	}
+
+	/**
+	 * Returns the time in millis from the start of the last cycle until all
+	 * of its keepAlives were answered.
+	 */
+	public long getLastCycleDuration() {
+		return lastCycleDuration;
+	}
+
+	public long getMaxCycleDuration() {
+		return maxCycleDuration;
+	}
+
+	public int getLastCycleKeepAlives() {
+		return lastCycleKeepAlives;
+	}
+
 	public void stop() {
 		this.executor.shutdown();
 	}
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.Map;
 
 import org.kurento.jsonrpc.internal.JsonRpcRequestSender;
+import org.kurento.jsonrpc.message.SerializedNotification;
 
 public interface Session extends JsonRpcRequestSender {
 
@@ -33,4 +34,11 @@ public interface Session extends JsonRpcRequestSender {
 
 	public Map<String, Object> getAttributes();
 
+	/**
+	 * Sends a notification already serialized, to send the same notification
+	 * to many sessions without serializing it for each one.
+	 */
+	public void sendNotification(SerializedNotification notification)
+			throws IOException;
+
 }
@@ -16,8 +16,10 @@ package org.kurento.jsonrpc.client;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcMetrics;
 import org.kurento.jsonrpc.KeepAliveManager;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
@@ -126,6 +128,21 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		rsHelper.sendRequest(request, continuation);
 	}
 
+	/**
+	 * Sends the requests in a JSON-RPC batch and waits for the responses,
+	 * returned in the same order than requests.
+	 */
+	public List<Response<JsonElement>> sendBatch(
+			List<? extends Request<? extends Object>> requests)
+			throws IOException {
+		return rsHelper.sendBatch(requests);
+	}
+
+	public void sendBatch(List<? extends Request<? extends Object>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+		rsHelper.sendBatch(requests, continuation);
+	}
+
 	public Session getSession() {
 		return session;
 	}
@@ -135,6 +152,20 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 		this.session.setSessionId(sessionId);
 	}
 
+	/**
+	 * Sets the registry where the metrics of the requests sent to the server,
+	 * and of the requests received from it, are reported. Null disables
+	 * metrics.
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.rsHelper.setMetrics(metrics);
+		this.handlerManager.setMetrics(metrics);
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return rsHelper.getMetrics();
+	}
+
 	public KeepAliveManager getKeepAliveManager() {
 		return keepAliveManager;
 	}
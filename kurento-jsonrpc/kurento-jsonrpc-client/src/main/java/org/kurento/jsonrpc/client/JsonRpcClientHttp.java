@@ -19,10 +19,30 @@ import static org.kurento.jsonrpc.JsonUtils.toJson;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.HttpResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
@@ -36,8 +56,29 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
+/**
+ * JSON-RPC client over HTTP. Requests are sent through a pool of persistent
+ * (keep-alive) connections. Requests from the server are received with long
+ * polling: the server holds each poll request until it has requests for the
+ * client or its poll timeout expires.
+ */
 public class JsonRpcClientHttp extends JsonRpcClient {
 
+	/**
+	 * Maximum number of connections opened to the server. One of them is
+	 * used by the long polling.
+	 */
+	public static final String MAX_CONNECTIONS_PROPERTY = "jsonRpcClientHttp.maxConnections";
+
+	private static final int MAX_CONNECTIONS_DEFAULT_VALUE = 20;
+
+	private static final int CONNECTION_TIMEOUT = 15000;
+
+	// Greater than the time the server holds a poll request
+	private static final int SOCKET_TIMEOUT = 60000;
+
+	private static final long POLL_RETRY_DELAY = 1000;
+
 	private final Logger log = LoggerFactory.getLogger(JsonRpcClient.class);
 
 	private Thread longPoolingThread;
@@ -45,9 +86,34 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 	private HttpResponseSender rs;
 
+	private final CloseableHttpClient httpClient;
+
+	private final ExecutorService sendExecutor;
+
+	private volatile boolean closed;
+
 	public JsonRpcClientHttp(String url) {
 		this.url = url;
 		this.rs = new HttpResponseSender();
+
+		int maxConnections = PropertiesManager.getProperty(
+				MAX_CONNECTIONS_PROPERTY, MAX_CONNECTIONS_DEFAULT_VALUE);
+
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+		this.httpClient = HttpClients
+				.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(
+						RequestConfig.custom()
+								.setConnectTimeout(CONNECTION_TIMEOUT)
+								.setSocketTimeout(SOCKET_TIMEOUT).build())
+				.build();
+
+		this.sendExecutor = createSendExecutor(maxConnections);
+
 		this.rsHelper = new JsonRpcRequestSenderHelper() {
 			@Override
 			public <P, R> Response<R> internalSendRequest(Request<P> request,
@@ -57,15 +123,42 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 			@Override
 			protected void internalSendRequest(
-					Request<? extends Object> request,
-					Class<JsonElement> class1,
-					Continuation<Response<JsonElement>> continuation) {
-				throw new UnsupportedOperationException(
-						"Async client int local is unavailable");
+					final Request<? extends Object> request,
+					final Class<JsonElement> resultClass,
+					final Continuation<Response<JsonElement>> continuation) {
+				internalSendRequestHttp(request, resultClass, continuation);
 			}
 		};
 	}
 
+	/**
+	 * Creates the pool where asynchronous requests are sent. Each of its
+	 * threads blocks during a whole HTTP round trip, so there is one per
+	 * connection not used by the long polling; more threads would only wait
+	 * for a free connection.
+	 */
+	private static ExecutorService createSendExecutor(int maxConnections) {
+
+		int threads = Math.max(1, maxConnections - 1);
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+				threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+					private final AtomicInteger counter = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "jsonrpc-client-http-"
+								+ counter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	private void updateSession(Response<?> response) {
 
 		String sessionId = response.getSessionId();
@@ -89,30 +182,22 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 			}
 		};
 
+		this.longPoolingThread.setDaemon(true);
 		this.longPoolingThread.start();
 	}
 
 	private void longPooling() {
 
-		while (true) {
-
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.debug("Long polling thread interrupted", e);
-			}
-
-			if (Thread.interrupted()) {
-				break;
-			}
+		while (!closed && !Thread.currentThread().isInterrupted()) {
 
 			try {
 
+				// Returns as soon as the server has any request for us
 				JsonElement requestsListJsonObject = this.sendRequest(
 						Request.POLL_METHOD_NAME, rs.getResponseListToSend(),
 						JsonElement.class);
 
-				log.info("Response from pool: {}", requestsListJsonObject);
+				log.debug("Response from pool: {}", requestsListJsonObject);
 
 				Type collectionType = new TypeToken<List<Request<JsonElement>>>() {
 				}.getType();
@@ -120,18 +205,29 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 				List<Request<JsonElement>> requestList = JsonUtils.fromJson(
 						requestsListJsonObject, collectionType);
 
-				processServerRequests(requestList);
+				if (requestList != null) {
+					processServerRequests(requestList);
+				}
 
 			} catch (IOException e) {
-				// TODO Decide what to do in this case. If the net connection is
-				// lost, this will retry indefinitely
+
+				if (closed) {
+					break;
+				}
+
 				log.error(
 						"Exception when waiting for events (long-polling). Retry",
 						e);
+
+				try {
+					Thread.sleep(POLL_RETRY_DELAY);
+				} catch (InterruptedException ie) {
+					log.debug("Long polling thread interrupted", ie);
+					break;
+				}
 			}
 		}
 	}
-
 	private void processServerRequests(List<Request<JsonElement>> requestList) {
 		for (Request<JsonElement> request : requestList) {
 			try {
@@ -147,9 +243,7 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 	private <P, R> Response<R> internalSendRequestHttp(Request<P> request,
 			Class<R> resultClass) throws IOException {
 
-		String resultJson = org.apache.http.client.fluent.Request.Post(url)
-				.bodyString(toJson(request), ContentType.APPLICATION_JSON)
-				.execute().returnContent().asString();
+		String resultJson = post(toJson(request));
 
 		if (resultJson == null || resultJson.trim().isEmpty()) {
 			return new Response<>(request.getId(), new ResponseError(3,
@@ -163,12 +257,79 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 		return response;
 	}
 
+	/**
+	 * Sends the request in the pool of this client, so blocking round trips
+	 * never hold the threads that dispatch events and responses.
+	 */
+	private void internalSendRequestHttp(
+			final Request<? extends Object> request,
+			final Class<JsonElement> resultClass,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		Runnable send = new Runnable() {
+			@Override
+			public void run() {
+
+				Response<JsonElement> response;
+				try {
+					response = internalSendRequestHttp(request, resultClass);
+				} catch (Exception e) {
+					continuation.onError(e);
+					return;
+				}
+
+				try {
+					continuation.onSuccess(request.getId() == null ? null
+							: response);
+				} catch (Exception e) {
+					log.error("Exception while processing response", e);
+				}
+			}
+		};
+
+		try {
+			sendExecutor.execute(send);
+		} catch (RejectedExecutionException e) {
+			continuation.onError(new IOException("Client closed", e));
+		}
+	}
+
+	private String post(String body) throws IOException {
+
+		HttpPost post = new HttpPost(url);
+		post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+
+		try (CloseableHttpResponse response = httpClient.execute(post)) {
+
+			HttpEntity entity = response.getEntity();
+			StatusLine statusLine = response.getStatusLine();
+
+			if (statusLine.getStatusCode() >= 300) {
+				EntityUtils.consume(entity);
+				throw new HttpResponseException(statusLine.getStatusCode(),
+						statusLine.getReasonPhrase());
+			}
+
+			// Reading the whole entity releases the connection to the pool
+			return entity == null ? null : EntityUtils.toString(entity,
+					StandardCharsets.UTF_8);
+		}
+	}
+
 	@Override
 	public void close() {
+		closed = true;
+		sendExecutor.shutdown();
 		if (this.longPoolingThread != null) {
 			log.info("Interrupted!!!");
 			this.longPoolingThread.interrupt();
 		}
+		try {
+			// Aborts the poll request held by the server
+			httpClient.close();
+		} catch (IOException e) {
+			log.warn("Exception closing HTTP connections", e);
+		}
 		handlerManager.afterConnectionClosed(session,
 				"Client closed connection");
 		session = null;
@@ -179,8 +340,7 @@ public class JsonRpcClientHttp extends JsonRpcClient {
 
 		try {
 
-			org.apache.http.client.fluent.Request.Post(url)
-					.bodyString("", ContentType.APPLICATION_JSON).execute();
+			post("");
 
 		} catch (ClientProtocolException e) {
 			// Silence http connection exception. This indicate that server is
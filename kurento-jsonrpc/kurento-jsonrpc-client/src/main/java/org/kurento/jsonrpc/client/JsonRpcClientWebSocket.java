@@ -13,19 +13,25 @@
  */
 package org.kurento.jsonrpc.client;
 
-import static org.kurento.jsonrpc.JsonUtils.fromJson;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
-import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
+import static org.kurento.jsonrpc.JsonUtils.fromJsonMessage;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
@@ -34,39 +40,68 @@ import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
 import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.BatchResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
 import org.kurento.jsonrpc.internal.client.ClientWebSocketResponseSender;
+import org.kurento.jsonrpc.internal.client.EventDispatcher;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
 import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 
 public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 	@WebSocket(maxTextMessageSize = 64 * 1024)
 	public class SimpleEchoSocket {
 
+		private final CountDownLatch connectedLatch = new CountDownLatch(1);
+
+		private volatile Session socketSession;
+
 		@OnWebSocketClose
 		public void onClose(int statusCode, String closeReason) {
+			if (socketSession != null && socketSession != wsSession) {
+				log.debug("Ignoring close of a previous WebSocket session");
+				return;
+			}
 			handleReconnectDisconnection(statusCode, closeReason);
 		}
 
 		@OnWebSocketConnect
-		public void onConnect(Session session) {
+		public void onConnect(final Session session) {
+			socketSession = session;
 			wsSession = session;
-			rs = new ClientWebSocketResponseSender(wsSession);
-			latch.countDown();
+			outboundQueue = new OutboundMessageQueue(
+					new OutboundMessageQueue.MessageWriter() {
+						@Override
+						public void write(String message) throws IOException {
+							session.getRemote().sendString(message);
+						}
+					}, PropertiesManager.getProperty(
+							OUTBOUND_QUEUE_SIZE_PROPERTY,
+							OutboundMessageQueue.DEFAULT_MAX_QUEUE_SIZE),
+					OutboundMessageQueue.DEFAULT_SEND_TIMEOUT_MILLIS,
+					PropertiesManager.getProperty(
+							BATCH_OUTBOUND_MESSAGES_PROPERTY, false),
+					OutboundMessageQueue.DEFAULT_MAX_BATCH_SIZE);
+			rs = new ClientWebSocketResponseSender(outboundQueue);
+			connectedLatch.countDown();
 			if (connectionListener != null) {
 				connectionListener.connected();
 			}
@@ -82,25 +117,159 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		}
 	}
 
+	private enum ConnectionState {
+		DISCONNECTED, CONNECTED, RECONNECTING, CLOSED
+	}
+
+	private class ResponseContinuation implements
+			Continuation<Response<JsonElement>> {
+
+		private final Continuation<Response<JsonElement>> continuation;
+
+		public ResponseContinuation(
+				Continuation<Response<JsonElement>> continuation) {
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void onSuccess(final Response<JsonElement> responseJson) {
+
+			log.debug("<-Res {}", responseJson);
+
+			if (responseJson.getSessionId() != null) {
+				session.setSessionId(responseJson.getSessionId());
+			}
+
+			// The response is received in the WebSocket reading thread.
+			// Continuation is executed in other thread to allow it to send
+			// new requests synchronously without blocking the reception of
+			// their responses.
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						continuation.onSuccess(responseJson);
+					} catch (Exception e) {
+						log.error("Exception while processing response", e);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void onError(final Throwable cause) {
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					continuation.onError(cause);
+				}
+			});
+		}
+
+		private void dispatch(Runnable task) {
+			if (!eventDispatcher.dispatch((String) null, task)) {
+				try {
+					continuation.onError(new JsonRpcException(
+							"Client overloaded: too many responses waiting "
+									+ "to be processed"));
+				} catch (Exception e) {
+					log.error("Exception while processing overload error", e);
+				}
+			}
+		}
+	}
+
+	public static final String MAX_PENDING_REQUESTS_PROPERTY = "jsonRpcClientWebSocket.maxPendingRequests";
+
+	private static final int MAX_PENDING_REQUESTS_DEFAULT_VALUE = 10000;
+
+	public static final String OUTBOUND_QUEUE_SIZE_PROPERTY = "jsonRpcClientWebSocket.outboundQueueSize";
+
+	/**
+	 * If true, messages waiting to be sent are written in a single frame as a
+	 * JSON-RPC batch. The server must support batches.
+	 */
+	public static final String BATCH_OUTBOUND_MESSAGES_PROPERTY = "jsonRpcClientWebSocket.batchOutboundMessages";
+
+	/**
+	 * How requests from the server and continuations are dispatched: one of
+	 * the {@link EventDispatcher.Mode} values. KEYED_SERIAL by default.
+	 */
+	public static final String EVENT_DISPATCH_MODE_PROPERTY = "jsonRpcClientWebSocket.eventDispatchMode";
+
+	/**
+	 * Maximum number of requests sent while reconnecting that are kept to be
+	 * sent when the connection is recovered.
+	 */
+	public static final String RECONNECT_BUFFER_SIZE_PROPERTY = "jsonRpcClientWebSocket.reconnectBufferSize";
+
+	private static final int RECONNECT_BUFFER_SIZE_DEFAULT_VALUE = 1000;
+
+	/**
+	 * Maximum time, in milliseconds, trying to reconnect after an unexpected
+	 * disconnection.
+	 */
+	public static final String RECONNECT_MAX_TIME_PROPERTY = "jsonRpcClientWebSocket.reconnectMaxTime";
+
+	private static final int RECONNECT_MAX_TIME_DEFAULT_VALUE = 10000;
+
+	/**
+	 * Number of threads, shared by all the clients, making reconnection
+	 * attempts. They are not used for anything else, so reconnections can't
+	 * be starved by busy event handlers.
+	 */
+	public static final String RECONNECT_THREADS_PROPERTY = "jsonRpcClientWebSocket.reconnectThreads";
+
+	private static final int RECONNECT_THREADS_DEFAULT_VALUE = 2;
+
+	private static final long INITIAL_RECONNECT_DELAY = 100;
+
+	private static final long MAX_RECONNECT_DELAY = 5000;
+
+	private static final long CONNECTION_TIMEOUT = 15000;
+
+	private static final int INVALID_SESSION_ERROR_CODE = 40007;
+
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcClientWebSocket.class);
 
-	private CountDownLatch latch = new CountDownLatch(1);
+	private static volatile WebSocketClient sharedClient;
+
+	private static volatile ScheduledExecutorService reconnectScheduler;
 
-	private ExecutorService execService = Executors.newFixedThreadPool(10);
+	private volatile EventDispatcher eventDispatcher = new EventDispatcher(
+			EventDispatcher.getDefaultMode(EVENT_DISPATCH_MODE_PROPERTY));
 
 	private String url;
 	private volatile Session wsSession;
-	private final PendingRequests pendingRequests = new PendingRequests();
+	private final PendingRequests pendingRequests = new PendingRequests(
+			PropertiesManager.getProperty(MAX_PENDING_REQUESTS_PROPERTY,
+					MAX_PENDING_REQUESTS_DEFAULT_VALUE));
+	private volatile OutboundMessageQueue outboundQueue;
 	private ResponseSender rs;
 
 	private JsonRpcWSConnectionListener connectionListener;
 
-	private boolean clientClose = false;
+	private volatile boolean clientClose = false;
 
 	private static final long TIMEOUT = 60000;
 
-	private WebSocketClient client;
+	private long requestTimeout = TIMEOUT;
+
+	private final Object connectLock = new Object();
+
+	// Guards state transitions and reconnectBuffer
+	private final Object stateLock = new Object();
+
+	private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+
+	private final Queue<Request<? extends Object>> reconnectBuffer = new ArrayDeque<>();
+
+	private final int reconnectBufferSize = PropertiesManager.getProperty(
+			RECONNECT_BUFFER_SIZE_PROPERTY, RECONNECT_BUFFER_SIZE_DEFAULT_VALUE);
+
+	private final long reconnectMaxTime = PropertiesManager.getProperty(
+			RECONNECT_MAX_TIME_PROPERTY, RECONNECT_MAX_TIME_DEFAULT_VALUE);
 
 	public JsonRpcClientWebSocket(String url) {
 		this(url, null);
@@ -128,16 +297,76 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 				return internalSendRequestWebSocket(request, resultClass);
 			}
+
+			@Override
+			protected void internalSendBatch(
+					List<Request<? extends Object>> requests,
+					Continuation<Response<JsonElement>> continuation) {
+
+				internalSendBatchWebSocket(requests, continuation);
+			}
 		};
 	}
 
 	@Override
 	public void close() throws IOException {
+
+		clientClose = true;
+
+		List<Request<? extends Object>> bufferedRequests;
+		synchronized (stateLock) {
+			state = ConnectionState.CLOSED;
+			bufferedRequests = drainReconnectBuffer();
+		}
+
 		if (wsSession != null) {
-			clientClose = true;
 			wsSession.close();
-			client.destroy();
 		}
+
+		TransportException cause = new TransportException(
+				"Client closed before receiving the response");
+		cancelRequests(bufferedRequests, cause);
+		pendingRequests.closeAllPendingRequests(cause);
+	}
+
+	/**
+	 * Sets the time to wait for the response of a request, in milliseconds.
+	 * It is applied both to synchronous and asynchronous requests.
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Returns the table of requests sent to the server waiting for their
+	 * response, with its timeout and late response counters.
+	 */
+	public PendingRequests getPendingRequests() {
+		return pendingRequests;
+	}
+
+	/**
+	 * Returns the queue of messages waiting to be written in the current
+	 * WebSocket connection, or null if it has not been established.
+	 */
+	public OutboundMessageQueue getOutboundQueue() {
+		return outboundQueue;
+	}
+
+	/**
+	 * Sets the dispatcher used to execute the requests received from the
+	 * server and the continuations of asynchronous requests.
+	 */
+	public void setEventDispatcher(EventDispatcher eventDispatcher) {
+		this.eventDispatcher = eventDispatcher;
+	}
+
+	public EventDispatcher getEventDispatcher() {
+		return eventDispatcher;
 	}
 
 	public void closeNativeSession() {
@@ -149,77 +378,342 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		connectIfNecessary();
 	}
 
-	public synchronized void connectIfNecessary() throws IOException {
+	/**
+	 * Connects to the server if the client has not been connected yet or if
+	 * it gave up reconnecting. While reconnecting, it returns immediately:
+	 * requests are buffered until the connection is recovered.
+	 */
+	public void connectIfNecessary() throws IOException {
+
+		ConnectionState currentState = state;
+		if (currentState == ConnectionState.CONNECTED
+				|| currentState == ConnectionState.RECONNECTING) {
+			return;
+		}
 
-		if ((wsSession == null) || !wsSession.isOpen()) {
+		synchronized (connectLock) {
 
-			try {
+			if (state == ConnectionState.CONNECTED
+					|| state == ConnectionState.RECONNECTING) {
+				return;
+			}
 
-				client = new WebSocketClient();
-				SimpleEchoSocket socket = new SimpleEchoSocket();
+			openWebSocketSession();
 
-				client.start();
+			if (session == null) {
+				session = new ClientSession(null, null,
+						JsonRpcClientWebSocket.this);
+				handlerManager.afterConnectionEstablished(session);
+			} else {
+				reconnectSession();
+			}
 
-				ClientUpgradeRequest request = new ClientUpgradeRequest();
-				// FIXME Give the client some time, otherwise the exception is
-				// not thrown if the server is down.
-				Thread.sleep(100);
-				wsSession = client.connect(socket, new URI(url), request).get();
+			synchronized (stateLock) {
+				state = ConnectionState.CONNECTED;
+			}
+		}
+	}
 
-			} catch (Exception e) {
-				throw new KurentoException(
-						"Exception connecting to WebSocket server", e);
+	private void openWebSocketSession() {
+
+		SimpleEchoSocket socket = new SimpleEchoSocket();
+
+		try {
+
+			getWebSocketClient().connect(socket, new URI(url),
+					new ClientUpgradeRequest()).get(CONNECTION_TIMEOUT,
+					TimeUnit.MILLISECONDS);
+
+			if (!socket.connectedLatch.await(CONNECTION_TIMEOUT,
+					TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException();
 			}
 
-			try {
-				// FIXME: Make this configurable
-				if (!latch.await(15, TimeUnit.SECONDS)) {
-					if (connectionListener != null) {
-						connectionListener.connectionTimeout();
+		} catch (TimeoutException e) {
+			if (connectionListener != null) {
+				connectionListener.connectionTimeout();
+			}
+			throw new KurentoException("Timeout of " + CONNECTION_TIMEOUT
+					+ "ms when waiting to connect to Websocket server");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KurentoException(
+					"Interrupted while connecting to WebSocket server", e);
+		} catch (Exception e) {
+			throw new KurentoException(
+					"Exception connecting to WebSocket server", e);
+		}
+	}
+
+	/**
+	 * Recovers the session in the server after establishing a new
+	 * connection. If the server doesn't know the session, the client
+	 * continues with a new one.
+	 */
+	private void reconnectSession() throws IOException {
+
+		try {
+
+			String result = rsHelper.sendRequest(
+					JsonRpcConstants.METHOD_RECONNECT, String.class);
+
+			log.info("Reconnected to the same server: {}", result);
+
+		} catch (JsonRpcErrorException e) {
+
+			setSessionId(null);
+
+			if (e.getCode() == INVALID_SESSION_ERROR_CODE) {
+
+				String result = rsHelper.sendRequest(
+						JsonRpcConstants.METHOD_RECONNECT, String.class);
+
+				log.info("Reconnected to a new Kurento server: {}", result);
+
+			} else {
+				log.warn("Session not recovered after reconnection ({})."
+						+ " Continuing with a new session", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Tries to reconnect with jittered exponential backoff until
+	 * {@value #RECONNECT_MAX_TIME_PROPERTY} milliseconds have elapsed since
+	 * the disconnection.
+	 */
+	private void scheduleReconnect(final int attempt, final long startTime) {
+
+		long delay = attempt == 0 ? 0 : getReconnectDelay(attempt);
+
+		// Connecting blocks, so attempts are made in the dedicated threads of
+		// the scheduler and not in the event dispatch pool
+		getReconnectScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				reconnect(attempt, startTime);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void reconnect(int attempt, long startTime) {
+
+		if (clientClose) {
+			return;
+		}
+
+		try {
+
+			synchronized (connectLock) {
+				openWebSocketSession();
+				reconnectSession();
+			}
+
+			replayBufferedRequests();
+
+			log.info("Reconnected to {} after {} attempts", url, attempt + 1);
+
+		} catch (Exception e) {
+
+			Session failedSession = wsSession;
+			if (failedSession != null && failedSession.isOpen()) {
+				failedSession.close();
+			}
+
+			long elapsed = System.currentTimeMillis() - startTime;
+			if (elapsed < reconnectMaxTime && !clientClose) {
+				log.debug("Reconnection attempt {} to {} failed", attempt + 1,
+						url, e);
+				scheduleReconnect(attempt + 1, startTime);
+			} else {
+				giveUpReconnecting(e);
+			}
+		}
+	}
+
+	private long getReconnectDelay(int attempt) {
+		long maxDelay = Math.min(MAX_RECONNECT_DELAY,
+				INITIAL_RECONNECT_DELAY << Math.min(attempt - 1, 16));
+		// Half fixed, half random to avoid reconnecting all the clients at
+		// the same time
+		return maxDelay / 2
+				+ ThreadLocalRandom.current().nextLong(maxDelay / 2 + 1);
+	}
+
+	/**
+	 * Sends the requests buffered while reconnecting, in order. New requests
+	 * are buffered until the buffer is empty to keep the order.
+	 */
+	private void replayBufferedRequests() {
+
+		while (true) {
+
+			List<Request<? extends Object>> requests;
+			synchronized (stateLock) {
+				if (state == ConnectionState.CLOSED) {
+					return;
+				}
+				if (reconnectBuffer.isEmpty()) {
+					state = ConnectionState.CONNECTED;
+					return;
+				}
+				requests = drainReconnectBuffer();
+			}
+
+			log.debug("Replaying {} requests after reconnection",
+					requests.size());
+
+			for (Request<? extends Object> request : requests) {
+
+				// Request expired while reconnecting
+				if (request.getId() != null
+						&& !pendingRequests.isPending(request.getId())) {
+					continue;
+				}
+
+				// Session could have changed
+				request.setSessionId(rsHelper.getSessionId());
+
+				try {
+					sendMessage(request);
+				} catch (IOException e) {
+					if (request.getId() != null) {
+						pendingRequests.cancel(request.getId(), e);
 					}
-					throw new KurentoException(
-							"Timeout of 15s when waiting to connect to Websocket server");
 				}
+			}
+		}
+	}
 
-				if (session == null) {
+	private void giveUpReconnecting(Exception cause) {
 
-					session =
-							new ClientSession(null, null,
-									JsonRpcClientWebSocket.this);
-					handlerManager.afterConnectionEstablished(session);
+		log.warn("Giving up reconnecting to {}", url, cause);
 
-				} else {
+		List<Request<? extends Object>> bufferedRequests;
+		synchronized (stateLock) {
+			if (state == ConnectionState.RECONNECTING) {
+				state = ConnectionState.DISCONNECTED;
+			}
+			bufferedRequests = drainReconnectBuffer();
+		}
 
-					try {
-						String result =
-								rsHelper.sendRequest(
-										JsonRpcConstants.METHOD_RECONNECT,
-										String.class);
+		cancelRequests(bufferedRequests, new TransportException(
+				"Connection lost and reconnection failed", cause));
 
-						log.info("Reconnection result: {}", result);
+		handlerManager.afterConnectionClosed(session, "Reconnection failed");
 
-						log.info("Reconnected to the same Kurento server");
+		wsSession = null;
 
-					} catch (JsonRpcErrorException e) {
-						if (e.getCode() == 40007) { // Invalid session exception
+		if (connectionListener != null) {
+			connectionListener.disconnected();
+		}
+	}
 
-							rsHelper.setSessionId(null);
-							String result =
-									rsHelper.sendRequest(
-											JsonRpcConstants.METHOD_RECONNECT,
-											String.class);
+	/**
+	 * Buffers the request if the client is reconnecting. Returns false if it
+	 * is not reconnecting.
+	 */
+	private boolean bufferIfReconnecting(Request<? extends Object> request) {
 
-							log.info("Reconnection result: {}", result);
+		if (state != ConnectionState.RECONNECTING) {
+			return false;
+		}
 
-							log.info("Reconnected to a new Kurento server");
-						}
-					}
+		synchronized (stateLock) {
+
+			if (state != ConnectionState.RECONNECTING) {
+				return false;
+			}
+
+			if (reconnectBuffer.size() >= reconnectBufferSize) {
+				throw new TransportException("Can not send request while"
+						+ " reconnecting. There are already "
+						+ reconnectBufferSize + " requests waiting");
+			}
+
+			reconnectBuffer.add(request);
+			return true;
+		}
+	}
+
+	private void sendOrBuffer(Request<? extends Object> request)
+			throws IOException {
+
+		if (bufferIfReconnecting(request)) {
+			return;
+		}
+
+		try {
+			sendMessage(request);
+		} catch (IOException e) {
+			// Connection could have been lost while sending
+			if (!bufferIfReconnecting(request)) {
+				throw e;
+			}
+		}
+	}
+
+	private List<Request<? extends Object>> drainReconnectBuffer() {
+		List<Request<? extends Object>> requests = new ArrayList<>(
+				reconnectBuffer);
+		reconnectBuffer.clear();
+		return requests;
+	}
+
+	private void cancelRequests(List<Request<? extends Object>> requests,
+			Throwable cause) {
+		for (Request<? extends Object> request : requests) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), cause);
+			}
+		}
+	}
+
+	private static WebSocketClient getWebSocketClient() throws Exception {
+		if (sharedClient == null) {
+			synchronized (JsonRpcClientWebSocket.class) {
+				if (sharedClient == null) {
+					WebSocketClient client = new WebSocketClient();
+					client.setDaemon(true);
+					client.start();
+					sharedClient = client;
 				}
+			}
+		}
+		return sharedClient;
+	}
 
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
+	private static ScheduledExecutorService getReconnectScheduler() {
+		if (reconnectScheduler == null) {
+			synchronized (JsonRpcClientWebSocket.class) {
+				if (reconnectScheduler == null) {
+
+					int threads = PropertiesManager.getProperty(
+							RECONNECT_THREADS_PROPERTY,
+							RECONNECT_THREADS_DEFAULT_VALUE);
+
+					ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+							threads, new ThreadFactory() {
+
+								private final AtomicInteger counter = new AtomicInteger();
+
+								@Override
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+											"jsonrpc-client-reconnect-"
+													+ counter.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+
+					scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+					scheduler.allowCoreThreadTimeOut(true);
+					reconnectScheduler = scheduler;
+				}
 			}
 		}
+		return reconnectScheduler;
 	}
 
 	public Session getWebSocketSession() {
@@ -231,28 +725,18 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 
 		if (!clientClose) {
 
-			execService.execute(new Runnable() {
-				@Override
-				public void run() {
-					try {
-						connectIfNecessary();
-					} catch (KurentoException e) {
-
-						handlerManager.afterConnectionClosed(session,
-								closeReason);
+			synchronized (stateLock) {
+				if (state != ConnectionState.CONNECTED) {
+					// Not connected yet or already reconnecting
+					return;
+				}
+				state = ConnectionState.RECONNECTING;
+			}
 
-						log.debug("WebSocket closed due to: {}", closeReason);
-						wsSession = null;
+			log.info("WebSocket closed unexpectedly ({}: {}). Reconnecting",
+					statusCode, closeReason);
 
-						if (connectionListener != null) {
-							connectionListener.disconnected();
-						}
-
-					} catch (IOException e) {
-						log.warn("Exception trying to reconnect", e);
-					}
-				}
-			});
+			scheduleReconnect(0, System.currentTimeMillis());
 
 		} else {
 
@@ -264,47 +748,107 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		}
 	}
 
-	private void handleRequestFromServer(final JsonObject message)
+	private void handleRequestFromServer(final Request<JsonElement> request)
 			throws IOException {
 
-		// TODO: Think better ways to do this:
-		// handleWebSocketTextMessage seems to be sequential. That is, the
-		// message waits to be processed until previous message is being
-		// processed. This behavior doesn't allow making a new request in the
-		// handler of an event. To avoid this problem, we have decided to
-		// process requests from server in a new thread (reused from
-		// ExecutorService).
-		execService.submit(new Runnable() {
+		// handleWebSocketTextMessage is sequential. That is, the message
+		// waits to be processed until previous message is being processed.
+		// This behavior doesn't allow making a new request in the handler of
+		// an event, so requests from server are processed by the event
+		// dispatcher (in order for the same object in KEYED_SERIAL mode).
+		boolean dispatched = eventDispatcher.dispatch(request, new Runnable() {
 			@Override
 			public void run() {
 				try {
-					handlerManager.handleRequest(session,
-							fromJsonRequest(message, JsonElement.class), rs);
+					handlerManager.handleRequest(session, request, rs);
 				} catch (IOException e) {
-					log.warn("Exception processing request " + message, e);
+					log.warn("Exception processing request " + request, e);
 				}
 			}
 		});
+
+		if (!dispatched) {
+			rejectOverloaded(Collections.singletonList(request), rs);
+		}
 	}
 
-	private void handleResponseFromServer(JsonObject message) {
+	private void rejectOverloaded(List<Request<JsonElement>> requests,
+			ResponseSender responseSender) throws IOException {
 
-		Response<JsonElement> response =
-				fromJsonResponse(message, JsonElement.class);
+		log.warn("Discarding {} requests from server because the event "
+				+ "dispatcher is overloaded", requests.size());
+
+		for (Request<JsonElement> request : requests) {
+			if (request.getId() != null) {
+				responseSender.sendResponse(new Response<>(request.getId(),
+						new ResponseError(
+								JsonRpcConstants.ERROR_SERVER_OVERLOADED,
+								"Client overloaded: too many requests "
+										+ "waiting to be processed")));
+			}
+		}
+	}
+
+	private void handleResponseFromServer(Response<JsonElement> response) {
 
 		setSessionId(response.getSessionId());
 
 		pendingRequests.handleResponse(response);
 	}
 
+	@SuppressWarnings("unchecked")
 	private void handleWebSocketTextMessage(String message) throws IOException {
 
-		JsonObject jsonMessage = fromJson(message, JsonObject.class);
+		Message jsonMessage = fromJsonMessage(message);
 
-		if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
-			handleRequestFromServer(jsonMessage);
+		if (jsonMessage instanceof MessageBatch) {
+			handleBatchFromServer((MessageBatch) jsonMessage);
+		} else if (jsonMessage instanceof Request) {
+			handleRequestFromServer((Request<JsonElement>) jsonMessage);
 		} else {
-			handleResponseFromServer(jsonMessage);
+			handleResponseFromServer((Response<JsonElement>) jsonMessage);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void handleBatchFromServer(MessageBatch batch) {
+
+		final List<Request<JsonElement>> requests = new ArrayList<>();
+
+		for (Message message : batch.getMessages()) {
+			if (message instanceof Request) {
+				requests.add((Request<JsonElement>) message);
+			} else {
+				handleResponseFromServer((Response<JsonElement>) message);
+			}
+		}
+
+		if (!requests.isEmpty()) {
+
+			final BatchResponseSender batchRs = new BatchResponseSender(rs,
+					BatchResponseSender.countExpectedResponses(requests));
+
+			boolean dispatched = eventDispatcher.dispatch((String) null,
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								handlerManager.handleBatch(session, requests,
+										batchRs);
+							} catch (IOException e) {
+								log.warn("Exception processing batch "
+										+ requests, e);
+							}
+						}
+					});
+
+			if (!dispatched) {
+				try {
+					rejectOverloaded(requests, batchRs);
+				} catch (IOException e) {
+					log.warn("Exception rejecting batch " + requests, e);
+				}
+			}
 		}
 	}
 
@@ -313,40 +857,121 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result =
-							internalSendRequestWebSocket(request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						log.error("Exception while processing response", e);
-					}
-				} catch (Exception e) {
-					continuation.onError(e);
+		try {
+			connectIfNecessary();
+		} catch (Exception e) {
+			continuation.onError(e);
+			return;
+		}
+
+		if (request.getId() != null) {
+			try {
+				pendingRequests.prepareResponse(request.getId(),
+						requestTimeout, new ResponseContinuation(continuation));
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
+			}
+		}
+
+		try {
+			sendOrBuffer(request);
+		} catch (Exception e) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			} else {
+				continuation.onError(e);
+			}
+			return;
+		}
+
+		if (request.getId() == null) {
+			continuation.onSuccess(null);
+		}
+	}
+
+	protected void internalSendBatchWebSocket(
+			List<Request<? extends Object>> requests,
+			Continuation<Response<JsonElement>> continuation) {
+
+		try {
+			connectIfNecessary();
+		} catch (Exception e) {
+			continuation.onError(e);
+			return;
+		}
+
+		ResponseContinuation responseContinuation = new ResponseContinuation(
+				continuation);
+
+		List<Integer> registeredIds = new ArrayList<>();
+		try {
+			for (Request<? extends Object> request : requests) {
+				pendingRequests.prepareResponse(request.getId(),
+						requestTimeout, responseContinuation);
+				registeredIds.add(request.getId());
+			}
+
+			if (state == ConnectionState.RECONNECTING) {
+				// Sent one by one when the connection is recovered
+				for (Request<? extends Object> request : requests) {
+					sendOrBuffer(request);
 				}
+			} else {
+				String jsonMessage = new MessageBatch(requests).toString();
+				log.debug("Req-> {}", jsonMessage);
+				outboundQueue.send(jsonMessage);
 			}
-		});
+
+		} catch (Exception e) {
+			if (registeredIds.isEmpty()) {
+				continuation.onError(e);
+			}
+			for (Integer id : registeredIds) {
+				pendingRequests.cancel(id, e);
+			}
+		}
+	}
+
+	private void sendMessage(Request<? extends Object> request)
+			throws IOException {
+
+		String jsonMessage = request.toString();
+		log.debug("Req-> {}", jsonMessage.trim());
+		outboundQueue.send(jsonMessage);
 	}
 
 	private <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
 			Class<R> resultClass) throws IOException {
 
-		connectIfNecessary();
+		// The reconnection request is sent in the new connection while the
+		// rest of requests are buffered
+		boolean reconnectRequest = JsonRpcConstants.METHOD_RECONNECT
+				.equals(request.getMethod());
+
+		if (!reconnectRequest) {
+			connectIfNecessary();
+		}
 
 		Future<Response<JsonElement>> responseFuture = null;
 
 		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					reconnectRequest ? Math.min(requestTimeout,
+							CONNECTION_TIMEOUT) : requestTimeout);
 		}
 
-		String jsonMessage = request.toString();
-		log.debug("Req-> {}", jsonMessage.trim());
-		synchronized (wsSession) {
-			wsSession.getRemote().sendString(jsonMessage);
+		try {
+			if (reconnectRequest) {
+				sendMessage(request);
+			} else {
+				sendOrBuffer(request);
+			}
+		} catch (IOException e) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			}
+			throw e;
 		}
 
 		if (responseFuture == null) {
@@ -356,7 +981,7 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 		Response<JsonElement> responseJson;
 		try {
 
-			responseJson = responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			responseJson = responseFuture.get();
 
 			log.debug("<-Res {}", responseJson.toString());
 
@@ -374,12 +999,12 @@ public class JsonRpcClientWebSocket extends JsonRpcClient {
 			throw new KurentoException(
 					"Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TransportException) {
+				// Timeout or connection closed while waiting for response
+				throw (TransportException) e.getCause();
+			}
 			// TODO Is there a better way to handle this?
 			throw new KurentoException("This exception shouldn't be thrown", e);
-		} catch (TimeoutException e) {
-			throw new TransportException("Timeout of " + TIMEOUT
-					+ " milliseconds waiting from response to request with id:"
-					+ request.getId(), e);
 		}
 	}
 }
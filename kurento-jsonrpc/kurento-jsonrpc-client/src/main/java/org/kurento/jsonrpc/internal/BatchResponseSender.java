@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.Request;
+
+/**
+ * Collects the responses to the requests of a JSON-RPC batch and sends them
+ * all together in a single {@link MessageBatch} when the last one is
+ * available. Responses can be sent from different threads (when requests are
+ * processed in parallel or asynchronously).
+ */
+public class BatchResponseSender implements ResponseSender {
+
+	private final ResponseSender responseSender;
+	private final List<Message> responses;
+	private int pendingResponses;
+
+	/**
+	 * @param responseSender
+	 *            Sender used to send the batch of responses
+	 * @param expectedResponses
+	 *            Number of responses of the batch (requests with id)
+	 */
+	public BatchResponseSender(ResponseSender responseSender,
+			int expectedResponses) {
+		this.responseSender = responseSender;
+		this.responses = new ArrayList<>(expectedResponses);
+		this.pendingResponses = expectedResponses;
+	}
+
+	/**
+	 * Returns the number of responses expected for the requests of a batch,
+	 * that is, the number of requests with id.
+	 */
+	public static int countExpectedResponses(
+			List<? extends Request<? extends Object>> requests) {
+
+		int expectedResponses = 0;
+		for (Request<? extends Object> request : requests) {
+			if (request.getId() != null) {
+				expectedResponses++;
+			}
+		}
+		return expectedResponses;
+	}
+
+	@Override
+	public void sendResponse(Message message) throws IOException {
+
+		MessageBatch batch = null;
+
+		synchronized (this) {
+			responses.add(message);
+			pendingResponses--;
+			if (pendingResponses == 0) {
+				batch = new MessageBatch(responses);
+			}
+		}
+
+		if (batch != null) {
+			responseSender.sendResponse(batch);
+		}
+	}
+}
@@ -0,0 +1,379 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timer optimized for a big number of timeouts that are usually cancelled
+ * before expiring (request timeouts, session close timeouts...).
+ *
+ * Timeouts are stored in a circular array of buckets (the wheel). A worker
+ * thread advances one bucket per tick and expires the timeouts of the bucket
+ * whose deadline has been reached. Scheduling and cancelling a timeout are
+ * O(1) operations, and cancelled timeouts are removed from the wheel in the
+ * next tick instead of being kept until their deadline. The price to pay is
+ * that timeouts are fired with a precision of one tick.
+ *
+ * Tasks are executed in the worker thread, unless an executor is given. In
+ * that case, the worker thread only hands them to the executor, so a slow
+ * task doesn't delay the rest of timeouts.
+ */
+public class HashedWheelTimer {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HashedWheelTimer.class);
+
+	private static final int ST_INIT = 0;
+	private static final int ST_CANCELLED = 1;
+	private static final int ST_EXPIRED = 2;
+
+	public interface Timeout {
+
+		/**
+		 * Cancels the timeout. Returns false if it has already been expired or
+		 * cancelled.
+		 */
+		boolean cancel();
+
+		boolean isExpired();
+
+		boolean isCancelled();
+	}
+
+	private final class WheelTimeout implements Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+		private long remainingRounds;
+		private Bucket bucket;
+		private WheelTimeout next;
+		private WheelTimeout prev;
+
+		private WheelTimeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+				return false;
+			}
+			cancelledCount.incrementAndGet();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		@Override
+		public boolean isExpired() {
+			return state.get() == ST_EXPIRED;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return state.get() == ST_CANCELLED;
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+				return;
+			}
+			pendingTimeouts.decrementAndGet();
+			expiredCount.incrementAndGet();
+
+			if (taskExecutor == null) {
+				run();
+			} else {
+				try {
+					taskExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							WheelTimeout.this.run();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					log.warn("Timeout task rejected by the executor", e);
+				}
+			}
+		}
+
+		private void run() {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.warn("Exception executing timeout task", t);
+			}
+		}
+	}
+
+	/**
+	 * Double linked list of timeouts. Only accessed from the worker thread.
+	 */
+	private static final class Bucket {
+
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		private void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private void remove(WheelTimeout timeout) {
+			WheelTimeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+
+		private void expireTimeouts(long deadline) {
+			WheelTimeout timeout = head;
+			while (timeout != null) {
+				WheelTimeout next = timeout.next;
+				if (timeout.remainingRounds <= 0) {
+					if (timeout.deadline <= deadline) {
+						remove(timeout);
+						timeout.expire();
+					}
+				} else {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+	}
+
+	private final class Worker implements Runnable {
+
+		private long tick;
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				long deadline = waitForNextTick();
+				if (deadline > 0) {
+					removeCancelledTimeouts();
+					transferNewTimeouts();
+					wheel[(int) (tick & mask)].expireTimeouts(deadline);
+					tick++;
+				}
+			}
+		}
+
+		private void transferNewTimeouts() {
+			WheelTimeout timeout;
+			while ((timeout = newTimeouts.poll()) != null) {
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long calculated = timeout.deadline / tickDuration;
+				timeout.remainingRounds = (calculated - tick) / wheel.length;
+				long ticks = Math.max(calculated, tick);
+				wheel[(int) (ticks & mask)].add(timeout);
+			}
+		}
+
+		private void removeCancelledTimeouts() {
+			WheelTimeout timeout;
+			while ((timeout = cancelledTimeouts.poll()) != null) {
+				pendingTimeouts.decrementAndGet();
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		private long waitForNextTick() {
+			long deadline = tickDuration * (tick + 1);
+			while (true) {
+				long currentTime = System.nanoTime() - startTime;
+				long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+				if (sleepTimeMs <= 0) {
+					return currentTime;
+				}
+				try {
+					Thread.sleep(sleepTimeMs);
+				} catch (InterruptedException e) {
+					if (stopped) {
+						return -1;
+					}
+				}
+			}
+		}
+	}
+
+	private final long tickDuration;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long startTime;
+
+	private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingTimeouts = new AtomicInteger();
+
+	private final AtomicLong scheduledCount = new AtomicLong();
+	private final AtomicLong expiredCount = new AtomicLong();
+	private final AtomicLong cancelledCount = new AtomicLong();
+
+	private final Executor taskExecutor;
+
+	private final Thread workerThread;
+	private volatile boolean stopped;
+
+	/**
+	 * @param name
+	 *            Name of the worker thread
+	 * @param tickDuration
+	 *            Duration between ticks. It is the precision of the timer
+	 * @param unit
+	 *            Time unit of tickDuration
+	 * @param ticksPerWheel
+	 *            Number of buckets of the wheel. It is rounded up to a power
+	 *            of two
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit,
+			int ticksPerWheel) {
+		this(name, tickDuration, unit, ticksPerWheel, null);
+	}
+
+	/**
+	 * @param name
+	 *            Name of the worker thread
+	 * @param tickDuration
+	 *            Duration between ticks. It is the precision of the timer
+	 * @param unit
+	 *            Time unit of tickDuration
+	 * @param ticksPerWheel
+	 *            Number of buckets of the wheel. It is rounded up to a power
+	 *            of two
+	 * @param taskExecutor
+	 *            Executor of the tasks of expired timeouts. If null, they are
+	 *            executed in the worker thread
+	 */
+	public HashedWheelTimer(String name, long tickDuration, TimeUnit unit,
+			int ticksPerWheel, Executor taskExecutor) {
+
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException(
+					"tickDuration must be greater than 0: " + tickDuration);
+		}
+
+		if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+			throw new IllegalArgumentException(
+					"ticksPerWheel must be between 1 and 2^30: "
+							+ ticksPerWheel);
+		}
+
+		int normalizedTicksPerWheel = 1;
+		while (normalizedTicksPerWheel < ticksPerWheel) {
+			normalizedTicksPerWheel <<= 1;
+		}
+
+		this.wheel = new Bucket[normalizedTicksPerWheel];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+
+		this.mask = wheel.length - 1;
+		this.taskExecutor = taskExecutor;
+		this.tickDuration = unit.toNanos(tickDuration);
+		this.startTime = System.nanoTime();
+
+		this.workerThread = new Thread(new Worker(), name);
+		this.workerThread.setDaemon(true);
+		this.workerThread.start();
+	}
+
+	/**
+	 * Schedules the task to be executed after the given delay. The task is
+	 * executed in the worker thread of the timer, so it should not block.
+	 */
+	public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+
+		if (stopped) {
+			throw new IllegalStateException("Timer is stopped");
+		}
+
+		long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+
+		WheelTimeout timeout = new WheelTimeout(task, deadline);
+		pendingTimeouts.incrementAndGet();
+		scheduledCount.incrementAndGet();
+		newTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Returns the number of timeouts scheduled that have been neither expired
+	 * nor cancelled.
+	 */
+	public int getPendingTimeouts() {
+		return pendingTimeouts.get();
+	}
+
+	/**
+	 * Returns the number of timeouts scheduled since the timer was created.
+	 */
+	public long getScheduledCount() {
+		return scheduledCount.get();
+	}
+
+	/**
+	 * Returns the number of timeouts whose task has been executed (or handed
+	 * to the executor).
+	 */
+	public long getExpiredCount() {
+		return expiredCount.get();
+	}
+
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+
+	public void stop() {
+		stopped = true;
+		workerThread.interrupt();
+	}
+}
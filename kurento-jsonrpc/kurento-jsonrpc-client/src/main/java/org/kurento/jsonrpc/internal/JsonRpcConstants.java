@@ -52,6 +52,8 @@ public class JsonRpcConstants {
 
 	public static final String METHOD_RECONNECT = "connect";
 
+	public static final String METHOD_METRICS = "metrics";
+
 	public static final String EVENT_SESSION_TERMINATED = "sessionTerminated";
 
 	public static final String EVENT_SESSION_ERROR = "sessionError";
@@ -76,4 +78,6 @@ public class JsonRpcConstants {
 
 	public static final int ERROR_SERVER_ERROR = -32000;
 
+	public static final int ERROR_SERVER_OVERLOADED = -32001;
+
 }
@@ -14,16 +14,30 @@
  */
 package org.kurento.jsonrpc.internal;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_METRICS;
+
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcMetrics;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
@@ -38,8 +52,36 @@ public class JsonRpcHandlerManager {
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcHandlerManager.class);
 
+	private static final ResponseSender DISCARD_RESPONSE_SENDER = new ResponseSender() {
+		@Override
+		public void sendResponse(Message message) throws IOException {
+			log.debug("Discarding response to notification in batch: {}",
+					message);
+		}
+	};
+
+	/**
+	 * Number of threads processing the requests of batches in parallel.
+	 */
+	public static final String BATCH_THREADS_PROPERTY = "jsonRpc.batchThreads";
+
+	/**
+	 * Maximum number of requests of batches waiting for a thread. When full,
+	 * new requests are answered with an overload error.
+	 */
+	public static final String BATCH_QUEUE_SIZE_PROPERTY = "jsonRpc.batchQueueSize";
+
+	private static final int BATCH_THREADS_DEFAULT_VALUE = Math.max(4, Runtime
+			.getRuntime().availableProcessors() * 2);
+
+	private static final int BATCH_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+	private static volatile Executor batchExecutor;
+
 	private JsonRpcHandler<?> handler;
 
+	private volatile JsonRpcMetrics metrics;
+
 	public JsonRpcHandlerManager(JsonRpcHandler<?> handler) {
 		this.handler = handler;
 	}
@@ -57,6 +99,20 @@ public class JsonRpcHandlerManager {
 		this.handler = handler;
 	}
 
+	/**
+	 * Sets the registry where the metrics of the handled requests are
+	 * reported. When set, requests of the
+	 * {@link JsonRpcConstants#METHOD_METRICS} method are answered with its
+	 * snapshot instead of being passed to the handler. Null disables metrics.
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
 	public void afterConnectionClosed(Session session, String reason) {
 		if (handler != null) {
 			try {
@@ -89,9 +145,65 @@ public class JsonRpcHandlerManager {
 		}
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void handleRequest(Session session, Request<JsonElement> request,
 			ResponseSender rs) throws IOException {
+		handleRequest(session, request, 0, rs);
+	}
+
+	/**
+	 * Handles the request, reporting it to the metrics if they are enabled.
+	 *
+	 * @param requestSize
+	 *            length of the JSON text the request was read from, or 0 if
+	 *            it is not known
+	 */
+	public void handleRequest(Session session, Request<JsonElement> request,
+			int requestSize, final ResponseSender rs) throws IOException {
+
+		JsonRpcMetrics metrics = this.metrics;
+
+		if (metrics == null) {
+			internalHandleRequest(session, request, rs);
+			return;
+		}
+
+		if (METHOD_METRICS.equals(request.getMethod())) {
+			if (request.getId() != null) {
+				rs.sendResponse(new Response<>(request.getId(), metrics
+						.getSnapshot()));
+			}
+			return;
+		}
+
+		final RequestMeasurement measurement = new RequestMeasurement(metrics,
+				request, requestSize);
+
+		try {
+
+			internalHandleRequest(session, request, new ResponseSender() {
+				@Override
+				public void sendResponse(Message message) throws IOException {
+					measurement.completed(message);
+					if (rs instanceof MeasuredResponseSender) {
+						measurement.responseSent(((MeasuredResponseSender) rs)
+								.sendMeasuredResponse(message));
+					} else {
+						rs.sendResponse(message);
+					}
+				}
+			});
+
+		} finally {
+			// Notifications are not responded, unless they fail
+			if (request.getId() == null) {
+				measurement.completed(null);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void internalHandleRequest(Session session,
+			Request<JsonElement> request, ResponseSender rs) throws IOException {
 
 		try {
 
@@ -154,6 +266,102 @@ public class JsonRpcHandlerManager {
 		}
 	}
 
+	/**
+	 * Processes the requests of a JSON-RPC batch. The responses to the
+	 * requests with id are sent to the given {@link BatchResponseSender},
+	 * which must be expecting them (see
+	 * {@link BatchResponseSender#countExpectedResponses(List)}) and sends
+	 * them together when all of them are available. Notifications are not
+	 * responded. If the handler declares that it is safe (
+	 * {@link DefaultJsonRpcHandler#isParallelBatchSafe()}), requests are
+	 * processed in parallel.
+	 */
+	public void handleBatch(final Session session,
+			List<Request<JsonElement>> requests,
+			final BatchResponseSender batchRs) throws IOException {
+
+		boolean parallel = handler instanceof DefaultJsonRpcHandler
+				&& ((DefaultJsonRpcHandler<?>) handler).isParallelBatchSafe()
+				&& requests.size() > 1;
+
+		for (final Request<JsonElement> request : requests) {
+
+			final ResponseSender requestRs = request.getId() != null ? batchRs
+					: DISCARD_RESPONSE_SENDER;
+
+			if (parallel) {
+				try {
+					getBatchExecutor().execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								handleRequest(session, request, requestRs);
+							} catch (IOException e) {
+								log.warn("Exception processing request "
+										+ request, e);
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					log.warn("Rejecting request {} of batch because the batch "
+							+ "queue is full", request.getId());
+					if (request.getId() != null) {
+						requestRs.sendResponse(new Response<>(request.getId(),
+								new ResponseError(ERROR_SERVER_OVERLOADED,
+										"Server overloaded: too many batch "
+												+ "requests waiting to be "
+												+ "processed")));
+					}
+				}
+			} else {
+				handleRequest(session, request, requestRs);
+			}
+		}
+	}
+
+	/**
+	 * Returns the executor of the requests of batches processed in parallel,
+	 * shared by all the handlers. It has a fixed number of threads, so a big
+	 * batch is queued instead of creating a thread per request, and a bounded
+	 * queue.
+	 */
+	private static Executor getBatchExecutor() {
+		if (batchExecutor == null) {
+			synchronized (JsonRpcHandlerManager.class) {
+				if (batchExecutor == null) {
+
+					int threads = PropertiesManager.getProperty(
+							BATCH_THREADS_PROPERTY, BATCH_THREADS_DEFAULT_VALUE);
+
+					int queueSize = PropertiesManager.getProperty(
+							BATCH_QUEUE_SIZE_PROPERTY,
+							BATCH_QUEUE_SIZE_DEFAULT_VALUE);
+
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(
+							threads, threads, 60, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(queueSize),
+							new ThreadFactory() {
+
+								private final AtomicInteger counter = new AtomicInteger();
+
+								@Override
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+											"jsonrpc-batch-"
+													+ counter.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+
+					executor.allowCoreThreadTimeOut(true);
+					batchExecutor = executor;
+				}
+			}
+		}
+		return batchExecutor;
+	}
+
 	// TODO Improve this way to obtain the generic parameters in class
 	// hierarchies
 	public static Class<?> getParamsType(Class<?> handlerClass) {
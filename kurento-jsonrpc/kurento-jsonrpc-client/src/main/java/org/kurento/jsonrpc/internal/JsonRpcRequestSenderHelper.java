@@ -17,13 +17,22 @@ package org.kurento.jsonrpc.internal;
 import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonRpcMetrics;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -33,6 +42,8 @@ public abstract class JsonRpcRequestSenderHelper implements
 	protected AtomicInteger id = new AtomicInteger();
 	protected String sessionId;
 
+	private volatile JsonRpcMetrics metrics;
+
 	public JsonRpcRequestSenderHelper() {
 	}
 
@@ -48,6 +59,18 @@ public abstract class JsonRpcRequestSenderHelper implements
 		this.sessionId = sessionId;
 	}
 
+	/**
+	 * Sets the registry where the metrics of the sent requests are reported.
+	 * Null disables metrics.
+	 */
+	public void setMetrics(JsonRpcMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public JsonRpcMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public <R> R sendRequest(String method, Class<R> resultClass)
 			throws IOException {
@@ -72,7 +95,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 	public <P, R> R sendRequest(Request<P> request, Class<R> resultClass)
 			throws JsonRpcErrorException, IOException {
 
-		Response<R> response = internalSendRequest(request, resultClass);
+		Response<R> response = measuredSendRequest(request, resultClass);
 
 		if (response == null) {
 			return null;
@@ -111,7 +134,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 			request.setSessionId(sessionId);
 		}
 
-		internalSendRequest(request, JsonElement.class,
+		measuredSendRequest(request,
 				new Continuation<Response<JsonElement>>() {
 
 					@Override
@@ -171,7 +194,7 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		return internalSendRequest(request, JsonElement.class);
+		return measuredSendRequest(request, JsonElement.class);
 	}
 
 	private void setIdIfNecessary(Request<? extends Object> request) {
@@ -185,7 +208,281 @@ public abstract class JsonRpcRequestSenderHelper implements
 			throws IOException {
 
 		setIdIfNecessary(request);
-		internalSendRequest(request, JsonElement.class, continuation);
+		measuredSendRequest(request, continuation);
+	}
+
+	private <P, R> Response<R> measuredSendRequest(Request<P> request,
+			Class<R> resultClass) throws IOException {
+
+		JsonRpcMetrics metrics = this.metrics;
+
+		if (metrics == null) {
+			return internalSendRequest(request, resultClass);
+		}
+
+		RequestMeasurement measurement = new RequestMeasurement(metrics,
+				request);
+
+		boolean completed = false;
+		try {
+			Response<R> response = internalSendRequest(request, resultClass);
+			measurement.completed(response);
+			completed = true;
+			return response;
+		} finally {
+			if (!completed) {
+				measurement.failed();
+			}
+		}
+	}
+
+	private void measuredSendRequest(Request<? extends Object> request,
+			final Continuation<Response<JsonElement>> continuation) {
+
+		JsonRpcMetrics metrics = this.metrics;
+
+		if (metrics == null) {
+			internalSendRequest(request, JsonElement.class, continuation);
+			return;
+		}
+
+		final RequestMeasurement measurement = new RequestMeasurement(metrics,
+				request);
+
+		try {
+
+			internalSendRequest(request, JsonElement.class,
+					new Continuation<Response<JsonElement>>() {
+
+						@Override
+						public void onSuccess(Response<JsonElement> response) {
+							measurement.completed(response);
+							continuation.onSuccess(response);
+						}
+
+						@Override
+						public void onError(Throwable cause) {
+							measurement.failed();
+							continuation.onError(cause);
+						}
+					});
+
+		} catch (RuntimeException e) {
+			measurement.failed();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends the requests as a JSON-RPC batch and waits for all the responses.
+	 * Responses are returned in the same order than requests. Requests without
+	 * id are given one.
+	 */
+	public List<Response<JsonElement>> sendBatch(
+			List<? extends Request<? extends Object>> requests)
+			throws IOException {
+
+		final SettableFuture<List<Response<JsonElement>>> future = SettableFuture
+				.create();
+
+		sendBatch(requests, new Continuation<List<Response<JsonElement>>>() {
+			@Override
+			public void onSuccess(List<Response<JsonElement>> result) {
+				future.set(result);
+			}
+
+			@Override
+			public void onError(Throwable cause) {
+				future.setException(cause);
+			}
+		});
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JsonRpcException(
+					"Interrupted while waiting for batch responses", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new JsonRpcException(e.getCause());
+		}
+	}
+
+	/**
+	 * Sends the requests as a JSON-RPC batch. The continuation is invoked when
+	 * the responses to all the requests are received, in the same order than
+	 * requests.
+	 */
+	public void sendBatch(List<? extends Request<? extends Object>> requests,
+			Continuation<List<Response<JsonElement>>> continuation) {
+
+		for (Request<? extends Object> request : requests) {
+			setIdIfNecessary(request);
+			if (INJECT_SESSION_ID && request.getSessionId() == null) {
+				request.setSessionId(sessionId);
+			}
+		}
+
+		Continuation<Response<JsonElement>> collector = new BatchResponseCollector(
+				requests, continuation);
+
+		JsonRpcMetrics metrics = this.metrics;
+		if (metrics != null) {
+			collector = new MeasuredBatchContinuation(metrics, requests,
+					collector);
+		}
+
+		internalSendBatch(new ArrayList<Request<? extends Object>>(requests),
+				collector);
+	}
+
+	/**
+	 * Reports the metrics of every request of a batch when its response is
+	 * received. If the batch fails, pending requests are reported as failed.
+	 */
+	private static class MeasuredBatchContinuation implements
+			Continuation<Response<JsonElement>> {
+
+		private final Map<Integer, RequestMeasurement> measurements = new ConcurrentHashMap<>();
+		private final Continuation<Response<JsonElement>> continuation;
+
+		public MeasuredBatchContinuation(JsonRpcMetrics metrics,
+				List<? extends Request<? extends Object>> requests,
+				Continuation<Response<JsonElement>> continuation) {
+
+			for (Request<? extends Object> request : requests) {
+				measurements.put(request.getId(), new RequestMeasurement(
+						metrics, request));
+			}
+
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void onSuccess(Response<JsonElement> response) {
+
+			if (response.getId() != null) {
+				RequestMeasurement measurement = measurements.remove(response
+						.getId());
+				if (measurement != null) {
+					measurement.completed(response);
+				}
+			}
+
+			continuation.onSuccess(response);
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+
+			for (RequestMeasurement measurement : measurements.values()) {
+				measurement.failed();
+			}
+			measurements.clear();
+
+			continuation.onError(cause);
+		}
+	}
+
+	/**
+	 * Collects the responses to the requests of a batch. When all of them are
+	 * received, the continuation is invoked with the responses ordered as the
+	 * requests.
+	 */
+	protected class BatchResponseCollector implements
+			Continuation<Response<JsonElement>> {
+
+		private final Map<Integer, Integer> indexesById = new HashMap<>();
+		private final Response<JsonElement>[] responses;
+		private final Continuation<List<Response<JsonElement>>> continuation;
+		private int pendingResponses;
+		private boolean failed;
+
+		@SuppressWarnings("unchecked")
+		public BatchResponseCollector(
+				List<? extends Request<? extends Object>> requests,
+				Continuation<List<Response<JsonElement>>> continuation) {
+
+			for (int i = 0; i < requests.size(); i++) {
+				indexesById.put(requests.get(i).getId(), i);
+			}
+
+			this.responses = new Response[requests.size()];
+			this.pendingResponses = requests.size();
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void onSuccess(Response<JsonElement> response) {
+
+			List<Response<JsonElement>> result = null;
+
+			synchronized (this) {
+
+				if (failed) {
+					return;
+				}
+
+				Integer index = indexesById.get(response.getId());
+				if (index == null || responses[index] != null) {
+					return;
+				}
+
+				responses[index] = response;
+				pendingResponses--;
+
+				if (pendingResponses == 0) {
+					result = new ArrayList<>(responses.length);
+					for (Response<JsonElement> r : responses) {
+						result.add(r);
+					}
+				}
+			}
+
+			if (result != null) {
+				if (response.getSessionId() != null) {
+					sessionId = response.getSessionId();
+				}
+				continuation.onSuccess(result);
+			}
+		}
+
+		@Override
+		public void onError(Throwable cause) {
+
+			synchronized (this) {
+				if (failed || pendingResponses == 0) {
+					return;
+				}
+				failed = true;
+			}
+
+			continuation.onError(cause);
+		}
+	}
+
+	/**
+	 * Sends the requests of a batch, notifying every response to the
+	 * continuation. By default, requests are sent one by one asynchronously,
+	 * so the calling thread is not blocked waiting for their responses.
+	 * Transports able to send JSON-RPC batches should override this method.
+	 */
+	protected void internalSendBatch(List<Request<? extends Object>> requests,
+			Continuation<Response<JsonElement>> continuation) {
+
+		for (Request<? extends Object> request : requests) {
+			try {
+				internalSendRequest(request, JsonElement.class, continuation);
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
+			}
+		}
 	}
 
 	protected abstract <P, R> Response<R> internalSendRequest(
@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies (or any other non negative values) with a bounded
+ * relative error, in the style of HdrHistogram.
+ *
+ * Values are counted in log-linear buckets: each power of two is divided in
+ * {@value #SUB_BUCKETS_PER_POWER} buckets of the same width, so the error of
+ * the percentiles is lower than 1/{@value #SUB_BUCKETS_PER_POWER} of the
+ * value, whatever its magnitude. Recording is lock-free and doesn't allocate,
+ * so it can be done in the path of every request. The unit of the values is
+ * chosen by the caller.
+ *
+ * @since 5.1.1
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKETS_PER_POWER = 1 << SUB_BUCKET_BITS;
+
+	private static final int LINEAR_BUCKETS = SUB_BUCKETS_PER_POWER * 2;
+
+	private static final int NUM_BUCKETS = LINEAR_BUCKETS
+			+ (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS_PER_POWER;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalSum = new AtomicLong();
+	private final AtomicLong maxValue = new AtomicLong();
+
+	public void record(long value) {
+
+		if (value < 0) {
+			value = 0;
+		}
+
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.incrementAndGet();
+		totalSum.addAndGet(value);
+
+		long max;
+		while (value > (max = maxValue.get())) {
+			if (maxValue.compareAndSet(max, value)) {
+				break;
+			}
+		}
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalSum.get() / count;
+	}
+
+	/**
+	 * Returns the value under which the given percentage of the values have
+	 * been recorded, or 0 if the histogram is empty.
+	 *
+	 * @param percentile
+	 *            Percentage between 0 and 100
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		long countAtPercentile = Math.max(1,
+				(long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+
+		long accumulated = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			accumulated += counts.get(i);
+			if (accumulated >= countAtPercentile) {
+				return Math.min(highestValueInBucket(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalSum.set(0);
+		maxValue.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean="
+				+ String.format("%.1f", getMean()) + ", p50="
+				+ getValueAtPercentile(50) + ", p99="
+				+ getValueAtPercentile(99) + ", p99.9="
+				+ getValueAtPercentile(99.9) + ", max=" + getMax();
+	}
+
+	static int bucketIndex(long value) {
+
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+
+		// Values in [2^power, 2^(power+1)) are divided in sub-buckets of
+		// width 2^(power - SUB_BUCKET_BITS)
+		int power = 63 - Long.numberOfLeadingZeros(value);
+		int shift = power - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS_PER_POWER;
+
+		return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS_PER_POWER
+				+ subBucket;
+	}
+
+	static long highestValueInBucket(int index) {
+
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+
+		int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS_PER_POWER + 1;
+		int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS_PER_POWER;
+
+		long lowest = (long) (SUB_BUCKETS_PER_POWER + subBucket) << shift;
+		long highest = lowest + (1L << shift) - 1;
+
+		// Last buckets overflow
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.io.IOException;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+
+/**
+ * Sender of a transport that serializes each response on its own, so the
+ * size of the response can be reported to the metrics without serializing
+ * it again. This is the case of WebSocket.
+ *
+ * @since 5.1.1
+ */
+public interface MeasuredResponseSender extends ResponseSender {
+
+	/**
+	 * Sends the response as {@link #sendResponse(Message)} does.
+	 *
+	 * @return the length of the JSON text sent, in characters
+	 */
+	int sendMeasuredResponse(Message message) throws IOException;
+}
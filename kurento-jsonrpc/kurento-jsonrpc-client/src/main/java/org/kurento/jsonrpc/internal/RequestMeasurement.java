@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.kurento.jsonrpc.JsonRpcMetrics;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+/**
+ * Reports a request to a {@link JsonRpcMetrics}, guaranteeing that it is
+ * completed only once, even if it is responded and fails concurrently.
+ *
+ * @since 5.1.1
+ */
+class RequestMeasurement {
+
+	private final JsonRpcMetrics metrics;
+	private final String method;
+	private final long startTime;
+	private final AtomicBoolean completed = new AtomicBoolean();
+
+	RequestMeasurement(JsonRpcMetrics metrics, Request<?> request) {
+		this(metrics, request, 0);
+	}
+
+	/**
+	 * @param requestSize
+	 *            the length of the JSON text the request was read from, or 0
+	 *            if it is not known
+	 */
+	RequestMeasurement(JsonRpcMetrics metrics, Request<?> request,
+			int requestSize) {
+		this.metrics = metrics;
+		this.method = request.getMethod();
+		metrics.requestStarted(method, requestSize);
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * Completes the request with the response, or with no response if it is
+	 * null.
+	 */
+	void completed(Message response) {
+
+		if (!completed.compareAndSet(false, true)) {
+			return;
+		}
+
+		boolean error = response instanceof Response
+				&& ((Response<?>) response).getError() != null;
+
+		metrics.requestCompleted(method, System.nanoTime() - startTime, error);
+	}
+
+	/**
+	 * Reports the length of the JSON text of the response, once it has been
+	 * sent.
+	 */
+	void responseSent(int responseSize) {
+		metrics.responseSent(method, responseSize);
+	}
+
+	void failed() {
+
+		if (!completed.compareAndSet(false, true)) {
+			return;
+		}
+
+		metrics.requestCompleted(method, System.nanoTime() - startTime, true);
+	}
+}
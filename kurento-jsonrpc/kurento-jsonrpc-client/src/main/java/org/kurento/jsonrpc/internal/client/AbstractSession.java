@@ -14,7 +14,10 @@
  */
 package org.kurento.jsonrpc.internal.client;
 
+import java.io.IOException;
+
 import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.message.SerializedNotification;
 
 public abstract class AbstractSession implements Session {
 
@@ -54,4 +57,14 @@ public abstract class AbstractSession implements Session {
 		this.newSession = newSession;
 	}
 
+	/**
+	 * Sends the notification as any other. Sessions whose transport can send
+	 * text directly override it to reuse the serialized notification.
+	 */
+	@Override
+	public void sendNotification(SerializedNotification notification)
+			throws IOException {
+		sendNotification(notification.getMethod(), notification.getParams());
+	}
+
 }
@@ -0,0 +1,397 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.client;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+import org.kurento.jsonrpc.message.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Dispatches the requests received from the server (events) and the
+ * continuations of asynchronous requests out of the thread that reads the
+ * connection. Depending on the {@link Mode}, tasks are executed:
+ * <ul>
+ * <li>{@link Mode#KEYED_SERIAL}: in order for the same key (by default, the
+ * object reference the event belongs to) and in parallel for different keys.
+ * Tasks without key are executed as in SHARED_POOL.</li>
+ * <li>{@link Mode#SHARED_POOL}: in any order, in a pool shared by all the
+ * clients.</li>
+ * <li>{@link Mode#CALLER_THREAD}: in the thread that receives the message. It
+ * has the lowest latency, but handlers must not block or send synchronous
+ * requests, because responses can't be received until they return.</li>
+ * </ul>
+ *
+ * Unless an executor is given, tasks are executed in a pool shared by all the
+ * dispatchers of the process, whose threads are released when idle. Its queue
+ * is bounded: when it is full, new tasks are rejected and the caller is told
+ * so, instead of queueing without limit.
+ */
+public class EventDispatcher {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(EventDispatcher.class);
+
+	public enum Mode {
+		KEYED_SERIAL, SHARED_POOL, CALLER_THREAD
+	}
+
+	/**
+	 * Extracts the key used to order the execution of requests in
+	 * KEYED_SERIAL mode. Requests with the same key are executed in order.
+	 */
+	public interface KeyExtractor {
+
+		/**
+		 * Returns the key of the request, or null if it has no ordering
+		 * constraints.
+		 */
+		String getKey(Request<JsonElement> request);
+	}
+
+	/**
+	 * Uses the object reference of the request params. It is in
+	 * <code>params.object</code> in most requests and in
+	 * <code>params.value.object</code> in Kurento onEvent notifications.
+	 */
+	public static final KeyExtractor OBJECT_REF_KEY_EXTRACTOR = new KeyExtractor() {
+		@Override
+		public String getKey(Request<JsonElement> request) {
+
+			JsonElement params = request.getParams();
+			if (!(params instanceof JsonObject)) {
+				return null;
+			}
+
+			JsonObject paramsObject = (JsonObject) params;
+			JsonElement value = paramsObject.get("value");
+			if (value instanceof JsonObject) {
+				paramsObject = (JsonObject) value;
+			}
+
+			JsonElement object = paramsObject.get("object");
+			if (object != null && object.isJsonPrimitive()) {
+				return object.getAsString();
+			}
+			return null;
+		}
+	};
+
+	public static final String DISPATCH_THREADS_PROPERTY = "jsonRpcClient.eventDispatchThreads";
+
+	/**
+	 * Maximum number of tasks waiting for a thread in the shared pool.
+	 */
+	public static final String DISPATCH_QUEUE_SIZE_PROPERTY = "jsonRpcClient.eventDispatchQueueSize";
+
+	private static final int DISPATCH_THREADS_DEFAULT_VALUE = Math.max(4,
+			Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final int DISPATCH_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+	private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+	/**
+	 * Maximum number of tasks of a key executed before releasing the thread
+	 * to other keys.
+	 */
+	private static final int MAX_TASKS_PER_RUN = 32;
+
+	private static volatile ThreadPoolExecutor sharedExecutor;
+
+	private final Mode mode;
+	private final Executor executor;
+	private final KeyExtractor keyExtractor;
+
+	private final Map<String, SerialQueue> serialQueues = new HashMap<>();
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong rejectedTasks = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	private class DispatchedTask implements Runnable {
+
+		private final Runnable task;
+		private final long enqueueTime = System.nanoTime();
+
+		public DispatchedTask(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+
+			queueDepth.decrementAndGet();
+			latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime()
+					- enqueueTime));
+
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.error("Exception executing dispatched task", t);
+			}
+		}
+	}
+
+	/**
+	 * Tasks of a key. It is scheduled in the executor when it has tasks and
+	 * is removed from the map when it runs out of them. Guarded by
+	 * serialQueues monitor.
+	 */
+	private class SerialQueue implements Runnable {
+
+		private final String key;
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		private boolean scheduled;
+
+		public SerialQueue(String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void run() {
+
+			while (true) {
+
+				for (int i = 0; i < MAX_TASKS_PER_RUN; i++) {
+
+					Runnable task;
+					synchronized (serialQueues) {
+						task = tasks.poll();
+						if (task == null) {
+							scheduled = false;
+							serialQueues.remove(key);
+							return;
+						}
+					}
+
+					task.run();
+				}
+
+				// Let other keys use the thread. If the executor is full, the
+				// tasks already accepted go on executing in this thread
+				try {
+					executor.execute(this);
+					return;
+				} catch (RejectedExecutionException e) {
+					log.debug("Executor full. Going on with tasks of key {}",
+							key);
+				}
+			}
+		}
+	}
+
+	public EventDispatcher(Mode mode) {
+		this(mode, getSharedExecutor(), OBJECT_REF_KEY_EXTRACTOR);
+	}
+
+	/**
+	 * @param mode
+	 *            How tasks are dispatched
+	 * @param executor
+	 *            Executes the tasks in KEYED_SERIAL and SHARED_POOL modes
+	 * @param keyExtractor
+	 *            Key of the requests in KEYED_SERIAL mode
+	 */
+	public EventDispatcher(Mode mode, Executor executor,
+			KeyExtractor keyExtractor) {
+		this.mode = mode;
+		this.executor = executor;
+		this.keyExtractor = keyExtractor;
+	}
+
+	/**
+	 * Dispatches the handling of a request received from the server.
+	 *
+	 * @return false if the task has been rejected because the executor is
+	 *         full
+	 */
+	public boolean dispatch(Request<JsonElement> request, Runnable task) {
+		return dispatch(mode == Mode.KEYED_SERIAL ? keyExtractor
+				.getKey(request) : null, task);
+	}
+
+	/**
+	 * Dispatches a task. Tasks with the same non null key are executed in
+	 * order in KEYED_SERIAL mode.
+	 *
+	 * @return false if the task has been rejected because the executor is
+	 *         full. The task is not executed
+	 */
+	public boolean dispatch(String key, Runnable task) {
+
+		queueDepth.incrementAndGet();
+		DispatchedTask dispatchedTask = new DispatchedTask(task);
+
+		if (mode == Mode.CALLER_THREAD) {
+
+			dispatchedTask.run();
+
+		} else if (mode == Mode.KEYED_SERIAL && key != null) {
+
+			SerialQueue queue;
+			synchronized (serialQueues) {
+				queue = serialQueues.get(key);
+				if (queue == null) {
+					queue = new SerialQueue(key);
+					serialQueues.put(key, queue);
+				}
+				queue.tasks.add(dispatchedTask);
+				if (queue.scheduled) {
+					return true;
+				}
+				queue.scheduled = true;
+			}
+
+			try {
+				executor.execute(queue);
+			} catch (RejectedExecutionException e) {
+				// The queue was not scheduled, so it only has this task
+				synchronized (serialQueues) {
+					queue.tasks.remove(dispatchedTask);
+					queue.scheduled = false;
+					if (queue.tasks.isEmpty()) {
+						serialQueues.remove(key);
+					}
+				}
+				return rejected(e);
+			}
+
+		} else {
+			try {
+				executor.execute(dispatchedTask);
+			} catch (RejectedExecutionException e) {
+				return rejected(e);
+			}
+		}
+
+		return true;
+	}
+
+	private boolean rejected(RejectedExecutionException e) {
+		queueDepth.decrementAndGet();
+		rejectedTasks.incrementAndGet();
+		log.warn("Rejecting task because the dispatcher executor is full ({})",
+				e.getMessage());
+		return false;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the number of tasks waiting to be executed.
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Returns the number of tasks whose execution has started.
+	 */
+	public long getDispatchedTasks() {
+		return latency.getCount();
+	}
+
+	/**
+	 * Returns the number of tasks rejected because the executor was full.
+	 */
+	public long getRejectedTasks() {
+		return rejectedTasks.get();
+	}
+
+	/**
+	 * Returns the histogram of the time, in microseconds, between dispatching
+	 * a task and the start of its execution.
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public static Mode getDefaultMode(String modeProperty) {
+
+		String mode = PropertiesManager.getProperty(modeProperty,
+				Mode.KEYED_SERIAL.name());
+		try {
+			return Mode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			log.warn("Invalid value '{}' in property {}. Using {}", mode,
+					modeProperty, Mode.KEYED_SERIAL);
+			return Mode.KEYED_SERIAL;
+		}
+	}
+
+	/**
+	 * Returns the pool shared by all the dispatchers. Its size is configured
+	 * with the property {@value #DISPATCH_THREADS_PROPERTY} and the size of
+	 * its queue with {@value #DISPATCH_QUEUE_SIZE_PROPERTY}.
+	 */
+	public static Executor getSharedExecutor() {
+		if (sharedExecutor == null) {
+			synchronized (EventDispatcher.class) {
+				if (sharedExecutor == null) {
+
+					int threads = PropertiesManager.getProperty(
+							DISPATCH_THREADS_PROPERTY,
+							DISPATCH_THREADS_DEFAULT_VALUE);
+
+					int queueSize = PropertiesManager.getProperty(
+							DISPATCH_QUEUE_SIZE_PROPERTY,
+							DISPATCH_QUEUE_SIZE_DEFAULT_VALUE);
+
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(
+							threads, threads, IDLE_THREAD_KEEP_ALIVE_SECONDS,
+							TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(queueSize),
+							new ThreadFactory() {
+
+								private final AtomicInteger counter = new AtomicInteger();
+
+								@Override
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+											"jsonrpc-client-dispatcher-"
+													+ counter.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+
+					executor.allowCoreThreadTimeOut(true);
+					sharedExecutor = executor;
+				}
+			}
+		}
+		return sharedExecutor;
+	}
+}
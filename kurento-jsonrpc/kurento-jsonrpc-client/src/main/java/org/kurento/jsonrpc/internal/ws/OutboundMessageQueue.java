@@ -0,0 +1,268 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.ws;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.jsonrpc.TransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outbound queue of a WebSocket connection. Messages sent by concurrent
+ * threads are enqueued and written by only one of them at a time (the first
+ * one that finds the queue without writer), which drains the pending messages
+ * up to a maximum per call. Other senders don't serialize on the WebSocket
+ * session monitor: they wait until their own message has been written, taking
+ * over the writing if the previous writer has finished before reaching it.
+ * Every sender gets the outcome of its own message, even when it was written
+ * by other thread.
+ *
+ * The queue is bounded: when it is full, senders wait until there is room for
+ * their message or the send timeout expires (back-pressure).
+ *
+ * Optionally, several pending messages can be written in a single frame as a
+ * JSON array (JSON-RPC 2.0 batch). It must only be enabled when the peer
+ * accepts batches.
+ */
+public class OutboundMessageQueue {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OutboundMessageQueue.class);
+
+	public interface MessageWriter {
+		void write(String message) throws IOException;
+	}
+
+	/**
+	 * A message waiting in the queue, completed by the thread that writes it.
+	 */
+	private static class OutboundMessage {
+
+		private final String message;
+		private volatile boolean written;
+		private volatile IOException exception;
+
+		public OutboundMessage(String message) {
+			this.message = message;
+		}
+	}
+
+	public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+	public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 10000;
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+	public static final int DEFAULT_MAX_DRAINED_MESSAGES = 200;
+
+	private final MessageWriter writer;
+	private final BlockingQueue<OutboundMessage> queue;
+	private final AtomicBoolean writing = new AtomicBoolean();
+	private final Object writtenMonitor = new Object();
+
+	private final long sendTimeoutMillis;
+	private final boolean batchMessages;
+	private final int maxBatchSize;
+	private final int maxDrainedMessages;
+
+	private final AtomicLong sentMessages = new AtomicLong();
+	private final AtomicLong sentFrames = new AtomicLong();
+
+	public OutboundMessageQueue(MessageWriter writer) {
+		this(writer, DEFAULT_MAX_QUEUE_SIZE, DEFAULT_SEND_TIMEOUT_MILLIS,
+				false, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	public OutboundMessageQueue(MessageWriter writer, int maxQueueSize,
+			long sendTimeoutMillis, boolean batchMessages, int maxBatchSize) {
+		this(writer, maxQueueSize, sendTimeoutMillis, batchMessages,
+				maxBatchSize, DEFAULT_MAX_DRAINED_MESSAGES);
+	}
+
+	/**
+	 * @param writer
+	 *            Writes a frame in the underlying connection. Only one thread
+	 *            at a time invokes it
+	 * @param maxQueueSize
+	 *            Maximum number of messages waiting to be written
+	 * @param sendTimeoutMillis
+	 *            Maximum time a sender waits when the queue is full
+	 * @param batchMessages
+	 *            If true, pending messages are written together as a JSON
+	 *            array
+	 * @param maxBatchSize
+	 *            Maximum number of messages in a batch
+	 * @param maxDrainedMessages
+	 *            Maximum number of messages written by a sender each time it
+	 *            takes the writing, so it isn't kept writing messages of other
+	 *            threads indefinitely
+	 */
+	public OutboundMessageQueue(MessageWriter writer, int maxQueueSize,
+			long sendTimeoutMillis, boolean batchMessages, int maxBatchSize,
+			int maxDrainedMessages) {
+		this.writer = writer;
+		this.queue = new LinkedBlockingQueue<>(maxQueueSize);
+		this.sendTimeoutMillis = sendTimeoutMillis;
+		this.batchMessages = batchMessages;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDrainedMessages = Math.max(1, maxDrainedMessages);
+	}
+
+	/**
+	 * Enqueues the message and waits until it is written, writing the pending
+	 * messages if there is no other thread writing. An exception is thrown if
+	 * the message can't be enqueued or if writing it fails, whichever thread
+	 * wrote it.
+	 */
+	public void send(String message) throws IOException {
+
+		OutboundMessage outboundMessage = new OutboundMessage(message);
+
+		try {
+			if (!queue.offer(outboundMessage, sendTimeoutMillis,
+					TimeUnit.MILLISECONDS)) {
+				throw new TransportException("Timeout of " + sendTimeoutMillis
+						+ " milliseconds waiting for room in outbound queue ("
+						+ queue.size() + " pending messages)");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransportException(
+					"Interrupted while waiting for room in outbound queue", e);
+		}
+
+		boolean interrupted = false;
+		try {
+			while (!outboundMessage.written) {
+				if (writing.compareAndSet(false, true)) {
+					try {
+						drain();
+					} finally {
+						writing.set(false);
+						notifyWritten();
+					}
+				} else {
+					interrupted |= awaitWritten(outboundMessage);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (outboundMessage.exception != null) {
+			throw outboundMessage.exception;
+		}
+	}
+
+	private void drain() {
+
+		List<OutboundMessage> batch = new ArrayList<>();
+		int drained = 0;
+
+		while (drained < maxDrainedMessages
+				&& queue.drainTo(batch, Math.min(batchMessages ? maxBatchSize
+						: 1, maxDrainedMessages - drained)) > 0) {
+
+			IOException exception = null;
+			try {
+				writeFrame(batch);
+			} catch (IOException e) {
+				log.warn("Exception writing {} messages", batch.size(), e);
+				exception = e;
+			}
+
+			for (OutboundMessage outboundMessage : batch) {
+				outboundMessage.exception = exception;
+				outboundMessage.written = true;
+			}
+
+			drained += batch.size();
+			batch.clear();
+			notifyWritten();
+		}
+	}
+
+	/**
+	 * Waits while other thread is writing and the message has not been
+	 * written. The message is never left in the queue without a sender
+	 * waiting for it, so the wait is not interrupted; it returns whether the
+	 * thread was interrupted meanwhile.
+	 */
+	private boolean awaitWritten(OutboundMessage outboundMessage) {
+		boolean interrupted = false;
+		synchronized (writtenMonitor) {
+			while (!outboundMessage.written && writing.get()) {
+				try {
+					writtenMonitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		return interrupted;
+	}
+
+	private void notifyWritten() {
+		synchronized (writtenMonitor) {
+			writtenMonitor.notifyAll();
+		}
+	}
+
+	private void writeFrame(List<OutboundMessage> batch) throws IOException {
+
+		if (batch.size() == 1) {
+			writer.write(batch.get(0).message);
+		} else {
+			StringBuilder sb = new StringBuilder();
+			sb.append('[');
+			for (int i = 0; i < batch.size(); i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(batch.get(i).message);
+			}
+			sb.append(']');
+			writer.write(sb.toString());
+		}
+
+		sentMessages.addAndGet(batch.size());
+		sentFrames.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of messages waiting to be written.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getSentMessages() {
+		return sentMessages.get();
+	}
+
+	public long getSentFrames() {
+		return sentFrames.get();
+	}
+}
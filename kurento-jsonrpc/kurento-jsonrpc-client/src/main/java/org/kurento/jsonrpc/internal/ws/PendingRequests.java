@@ -17,49 +17,309 @@ package org.kurento.jsonrpc.internal.ws;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.concurrent.BasicFuture;
 import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
 import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.JsonElement;
 
+/**
+ * Table of requests sent through a transport whose responses have not arrived
+ * yet. Each entry is completed directly from the thread that receives the
+ * response, so no thread is blocked while a request is in flight.
+ *
+ * Entries with a deadline are expired by a {@link HashedWheelTimer}, shared by
+ * all the tables unless other timer is given, so arming and cancelling the
+ * timeout of a request is O(1).
+ * The ids of expired requests are remembered for some time to distinguish
+ * late responses from responses to unknown requests (orphans).
+ */
 public class PendingRequests {
 
 	private static final Logger log = LoggerFactory
 			.getLogger(PendingRequests.class);
 
-	private final ConcurrentMap<Integer, BasicFuture<Response<JsonElement>>> pendingRequests = new ConcurrentHashMap<>();
+	public static final int NO_LIMIT = -1;
+
+	private static final long TIMER_TICK_MILLIS = 100;
+
+	private static final int TIMER_TICKS_PER_WHEEL = 512;
+
+	private static final int MAX_EXPIRED_IDS = 10000;
+
+	private static final long EXPIRED_IDS_RETENTION_MINUTES = 10;
+
+	private static volatile HashedWheelTimer timer;
+
+	private final ConcurrentMap<Integer, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+	private final int maxPendingRequests;
+
+	private final HashedWheelTimer requestsTimer;
+
+	private final Cache<Integer, Boolean> expiredIds = CacheBuilder
+			.newBuilder().maximumSize(MAX_EXPIRED_IDS)
+			.expireAfterWrite(EXPIRED_IDS_RETENTION_MINUTES, TimeUnit.MINUTES)
+			.build();
+
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong lateResponses = new AtomicLong();
+	private final AtomicLong orphanResponses = new AtomicLong();
+
+	private static class PendingRequest {
+
+		private final Integer id;
+		private final Continuation<Response<JsonElement>> continuation;
+		private final AtomicBoolean completed = new AtomicBoolean();
+		private volatile Timeout timeout;
+
+		public PendingRequest(Integer id,
+				Continuation<Response<JsonElement>> continuation) {
+			this.id = id;
+			this.continuation = continuation;
+		}
+
+		public boolean complete() {
+			if (completed.compareAndSet(false, true)) {
+				if (timeout != null) {
+					timeout.cancel();
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public PendingRequests() {
+		this(NO_LIMIT);
+	}
+
+	public PendingRequests(int maxPendingRequests) {
+		this(maxPendingRequests, null);
+	}
+
+	/**
+	 * @param requestsTimer
+	 *            Timer used to expire the requests. If null, the timer shared
+	 *            by all the tables is used
+	 */
+	public PendingRequests(int maxPendingRequests,
+			HashedWheelTimer requestsTimer) {
+		this.maxPendingRequests = maxPendingRequests;
+		this.requestsTimer = requestsTimer;
+	}
 
 	public void handleResponse(Response<JsonElement> response) {
 
-		BasicFuture<Response<JsonElement>> responseFuture = pendingRequests
-				.remove(response.getId());
+		PendingRequest pendingRequest = response.getId() != null ? pendingRequests
+				.remove(response.getId()) : null;
 
-		if (responseFuture == null) {
-			// TODO It is necessary to do something else? Who is watching this?
-			log.error("Received response with an id not registered as pending request");
+		if (pendingRequest == null || !pendingRequest.complete()) {
+			Integer id = response.getId();
+			if (id != null && expiredIds.getIfPresent(id) != null) {
+				lateResponses.incrementAndGet();
+				log.warn(
+						"Received response to request with id {} after its timeout",
+						id);
+			} else {
+				orphanResponses.incrementAndGet();
+				log.error(
+						"Received response with an id not registered as pending request: {}",
+						id);
+			}
 		} else {
-			responseFuture.completed(response);
+			try {
+				pendingRequest.continuation.onSuccess(response);
+			} catch (Exception e) {
+				log.error("Exception while processing response", e);
+			}
 		}
 	}
 
 	public Future<Response<JsonElement>> prepareResponse(Integer id) {
+		return prepareResponse(id, 0);
+	}
 
-		Preconditions.checkNotNull(id, "The request id cannot be null");
+	/**
+	 * Registers a request whose response will be available in the returned
+	 * future. If no response arrives in <code>timeoutMillis</code> (when
+	 * greater than zero), the future fails with a {@link TransportException}.
+	 */
+	public Future<Response<JsonElement>> prepareResponse(Integer id,
+			long timeoutMillis) {
 
-		BasicFuture<Response<JsonElement>> responseFuture = new BasicFuture<>(
+		final BasicFuture<Response<JsonElement>> responseFuture = new BasicFuture<>(
 				null);
 
-		if (pendingRequests.putIfAbsent(id, responseFuture) != null) {
+		prepareResponse(id, timeoutMillis,
+				new Continuation<Response<JsonElement>>() {
+					@Override
+					public void onSuccess(Response<JsonElement> result) {
+						responseFuture.completed(result);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						responseFuture.failed(asException(cause));
+					}
+				});
+
+		return responseFuture;
+	}
+
+	/**
+	 * Registers a request whose response will be delivered to the given
+	 * continuation. If no response arrives in <code>timeoutMillis</code>, the
+	 * entry is removed and the continuation is notified with a
+	 * {@link TransportException}.
+	 */
+	public void prepareResponse(Integer id, final long timeoutMillis,
+			Continuation<Response<JsonElement>> continuation) {
+
+		final PendingRequest pendingRequest = register(id, continuation);
+
+		if (timeoutMillis > 0) {
+			HashedWheelTimer timer = requestsTimer != null ? requestsTimer
+					: getTimer();
+
+			pendingRequest.timeout = timer.newTimeout(new Runnable() {
+				@Override
+				public void run() {
+					expire(pendingRequest, "Timeout of " + timeoutMillis
+							+ " milliseconds waiting from response"
+							+ " to request with id:" + pendingRequest.id);
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+			// Response could have arrived before the timeout was armed
+			if (pendingRequest.completed.get()) {
+				pendingRequest.timeout.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Removes the request with the given id (if any) and notifies its
+	 * continuation with the cause. Used when the request cannot be sent.
+	 */
+	public void cancel(Integer id, Throwable cause) {
+
+		PendingRequest pendingRequest = pendingRequests.remove(id);
+
+		if (pendingRequest != null && pendingRequest.complete()) {
+			pendingRequest.continuation.onError(cause);
+		}
+	}
+
+	/**
+	 * Notifies all the pending requests with the given cause. Used when the
+	 * underlying transport is closed.
+	 */
+	public void closeAllPendingRequests(Throwable cause) {
+		for (Integer id : pendingRequests.keySet()) {
+			cancel(id, cause);
+		}
+	}
+
+	/**
+	 * Returns true if the request with the given id is still waiting for its
+	 * response (it has not expired nor been cancelled).
+	 */
+	public boolean isPending(Integer id) {
+		return pendingRequests.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of requests waiting for their response.
+	 */
+	public int getInFlight() {
+		return pendingRequests.size();
+	}
+
+	/**
+	 * Returns the number of requests expired because their response didn't
+	 * arrive before the deadline.
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * Returns the number of responses received after the deadline of their
+	 * request.
+	 */
+	public long getLateResponses() {
+		return lateResponses.get();
+	}
+
+	/**
+	 * Returns the number of responses received with an id that doesn't
+	 * correspond to any sent request.
+	 */
+	public long getOrphanResponses() {
+		return orphanResponses.get();
+	}
+
+	private void expire(PendingRequest pendingRequest, String message) {
+		if (pendingRequests.remove(pendingRequest.id, pendingRequest)
+				&& pendingRequest.complete()) {
+			timeouts.incrementAndGet();
+			expiredIds.put(pendingRequest.id, Boolean.TRUE);
+			pendingRequest.continuation.onError(new TransportException(message));
+		}
+	}
+
+	private PendingRequest register(Integer id,
+			Continuation<Response<JsonElement>> continuation) {
+
+		Preconditions.checkNotNull(id, "The request id cannot be null");
+
+		if (maxPendingRequests != NO_LIMIT
+				&& pendingRequests.size() >= maxPendingRequests) {
+			throw new TransportException("Can not send a request with the id '"
+					+ id + "'. There are already " + maxPendingRequests
+					+ " requests waiting for a response");
+		}
+
+		PendingRequest pendingRequest = new PendingRequest(id, continuation);
+
+		if (pendingRequests.putIfAbsent(id, pendingRequest) != null) {
 			throw new JsonRpcException("Can not send a request with the id '"
 					+ id + "'. There is already a pending request with this id");
 		}
 
-		return responseFuture;
+		return pendingRequest;
 	}
 
+	private static Exception asException(Throwable cause) {
+		return cause instanceof Exception ? (Exception) cause
+				: new JsonRpcException(cause);
+	}
+
+	private static HashedWheelTimer getTimer() {
+		if (timer == null) {
+			synchronized (PendingRequests.class) {
+				if (timer == null) {
+					timer = new HashedWheelTimer(
+							"jsonrpc-pending-requests-timer",
+							TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+							TIMER_TICKS_PER_WHEEL);
+				}
+			}
+		}
+		return timer;
+	}
 }
@@ -0,0 +1,74 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * Java representation for a JSON-RPC 2.0 batch: several requests or responses
+ * sent in the same message as a JSON array.
+ */
+public class MessageBatch extends Message {
+
+	private final List<Message> messages;
+
+	private final int invalidMessages;
+
+	public MessageBatch(List<? extends Message> messages) {
+		this(messages, 0);
+	}
+
+	/**
+	 * @param messages
+	 *            Valid messages of the batch
+	 * @param invalidMessages
+	 *            Number of elements of the received batch discarded because
+	 *            they are not JSON objects
+	 */
+	public MessageBatch(List<? extends Message> messages, int invalidMessages) {
+		this.messages = Collections
+				.unmodifiableList(new ArrayList<>(messages));
+		this.invalidMessages = invalidMessages;
+	}
+
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	public int getInvalidMessages() {
+		return invalidMessages;
+	}
+
+	public int size() {
+		return messages.size();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for (int i = 0; i < messages.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(messages.get(i).toString());
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+}
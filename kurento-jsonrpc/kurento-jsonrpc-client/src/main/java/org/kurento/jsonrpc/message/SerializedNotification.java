@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.message;
+
+import org.kurento.jsonrpc.JsonUtils;
+
+/**
+ * Notification serialized once to be sent to many sessions. The JSON text
+ * doesn't include the session id, so the same text is valid for all of them.
+ *
+ * Params must not be modified after creating the notification.
+ */
+public final class SerializedNotification {
+
+	private final String method;
+	private final Object params;
+	private final String json;
+
+	public SerializedNotification(String method, Object params) {
+		this.method = method;
+		this.params = params;
+		this.json = JsonUtils.toJson(new Request<>(null, method, params));
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public Object getParams() {
+		return params;
+	}
+
+	/**
+	 * Returns the notification as JSON-RPC text, without session id.
+	 */
+	public String getJson() {
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return json;
+	}
+}
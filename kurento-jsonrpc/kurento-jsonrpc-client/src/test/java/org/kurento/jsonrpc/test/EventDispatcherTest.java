@@ -0,0 +1,172 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.client.EventDispatcher;
+import org.kurento.jsonrpc.internal.client.EventDispatcher.Mode;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonElement;
+
+public class EventDispatcherTest {
+
+	private static final int NUM_KEYS = 10;
+
+	private static final int EVENTS_PER_KEY = 500;
+
+	@Test
+	public void keyedSerialOrderTest() throws InterruptedException {
+
+		EventDispatcher dispatcher = new EventDispatcher(Mode.KEYED_SERIAL);
+
+		final List<List<Integer>> received = new ArrayList<>();
+		for (int i = 0; i < NUM_KEYS; i++) {
+			received.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+
+		final CountDownLatch latch = new CountDownLatch(NUM_KEYS
+				* EVENTS_PER_KEY);
+
+		for (int seq = 0; seq < EVENTS_PER_KEY; seq++) {
+			for (int key = 0; key < NUM_KEYS; key++) {
+
+				final int eventKey = key;
+				final int eventSeq = seq;
+
+				dispatcher.dispatch(createEvent("element" + key),
+						new Runnable() {
+							@Override
+							public void run() {
+								received.get(eventKey).add(eventSeq);
+								latch.countDown();
+							}
+						});
+			}
+		}
+
+		Assert.assertTrue("Not all events dispatched",
+				latch.await(10, TimeUnit.SECONDS));
+
+		for (List<Integer> keyEvents : received) {
+			for (int seq = 0; seq < EVENTS_PER_KEY; seq++) {
+				Assert.assertEquals(Integer.valueOf(seq), keyEvents.get(seq));
+			}
+		}
+
+		Assert.assertEquals(NUM_KEYS * EVENTS_PER_KEY,
+				dispatcher.getDispatchedTasks());
+		Assert.assertEquals(0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void callerThreadTest() {
+
+		EventDispatcher dispatcher = new EventDispatcher(Mode.CALLER_THREAD);
+
+		final Thread caller = Thread.currentThread();
+		final Thread[] executor = new Thread[1];
+
+		dispatcher.dispatch(createEvent("element"), new Runnable() {
+			@Override
+			public void run() {
+				executor[0] = Thread.currentThread();
+			}
+		});
+
+		Assert.assertSame(caller, executor[0]);
+	}
+
+	@Test
+	public void fullExecutorRejectsTasksTest() throws InterruptedException {
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1));
+
+		try {
+			EventDispatcher dispatcher = new EventDispatcher(
+					Mode.KEYED_SERIAL, executor,
+					EventDispatcher.OBJECT_REF_KEY_EXTRACTOR);
+
+			final CountDownLatch blocked = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final CountDownLatch executed = new CountDownLatch(2);
+
+			Runnable task = new Runnable() {
+				@Override
+				public void run() {
+					executed.countDown();
+				}
+			};
+
+			Assert.assertTrue(dispatcher.dispatch((String) null,
+					new Runnable() {
+						@Override
+						public void run() {
+							blocked.countDown();
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					}));
+			Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+			// Fills the queue of the executor
+			Assert.assertTrue(dispatcher.dispatch((String) null, task));
+
+			Assert.assertFalse(dispatcher.dispatch((String) null, task));
+			Assert.assertFalse(dispatcher.dispatch(createEvent("element"),
+					task));
+			Assert.assertEquals(2, dispatcher.getRejectedTasks());
+			Assert.assertEquals(1, dispatcher.getQueueDepth());
+
+			release.countDown();
+			while (!executor.getQueue().isEmpty()) {
+				Thread.sleep(10);
+			}
+
+			// The key of the rejected event can be dispatched again
+			Assert.assertTrue(dispatcher.dispatch(createEvent("element"),
+					task));
+			Assert.assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+			Assert.assertEquals(3, dispatcher.getDispatchedTasks());
+			Assert.assertEquals(3, dispatcher.getLatency().getCount());
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void objectRefKeyTest() {
+
+		Assert.assertEquals("element1",
+				EventDispatcher.OBJECT_REF_KEY_EXTRACTOR
+						.getKey(createEvent("element1")));
+
+		Request<JsonElement> invoke = JsonUtils.fromJsonRequest(
+				"{\"id\":1,\"method\":\"invoke\",\"params\":{\"object\":\"element2\"},\"jsonrpc\":\"2.0\"}",
+				JsonElement.class);
+
+		Assert.assertEquals("element2",
+				EventDispatcher.OBJECT_REF_KEY_EXTRACTOR.getKey(invoke));
+	}
+
+	private Request<JsonElement> createEvent(String objectRef) {
+		return JsonUtils.fromJsonRequest(
+				"{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\",\"params\":{\"value\":{\"object\":\""
+						+ objectRef + "\",\"type\":\"OnIceCandidate\"}}}",
+				JsonElement.class);
+	}
+}
@@ -0,0 +1,211 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.DefaultJsonRpcMetrics;
+import org.kurento.jsonrpc.DefaultJsonRpcMetrics.MethodMetrics;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
+import org.kurento.jsonrpc.internal.MeasuredResponseSender;
+import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class JsonRpcMetricsTest {
+
+	static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+
+			if ("fail".equals(request.getMethod())) {
+				throw new IllegalStateException("Failed");
+			}
+
+			transaction.sendResponse(request.getParams());
+		}
+	}
+
+	@Test
+	public void serverMetricsTest() throws IOException {
+
+		DefaultJsonRpcMetrics metrics = new DefaultJsonRpcMetrics();
+
+		JsonRpcHandlerManager handlerManager = new JsonRpcHandlerManager(
+				new Handler());
+		handlerManager.setMetrics(metrics);
+
+		Session session = new ClientSession("session", null, null);
+
+		final List<Message> responses = new ArrayList<>();
+		ResponseSender rs = new ResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				responses.add(message);
+			}
+		};
+
+		JsonObject params = new JsonObject();
+		params.addProperty("value", "Hello");
+
+		for (int i = 0; i < 10; i++) {
+			handlerManager.handleRequest(session, new Request<JsonElement>(i,
+					"echo", params), 50, rs);
+		}
+		handlerManager.handleRequest(session, new Request<JsonElement>(10,
+				"fail", params), rs);
+		handlerManager.handleRequest(session, new Request<JsonElement>(null,
+				"echo", params), rs);
+
+		MethodMetrics echo = metrics.getMethodMetrics("echo");
+		Assert.assertEquals(11, echo.getCount());
+		Assert.assertEquals(0, echo.getErrorCount());
+		Assert.assertEquals(0, echo.getInFlight());
+		Assert.assertEquals(11, echo.getLatency().getCount());
+		// The size of the notification is not known
+		Assert.assertEquals(10, echo.getRequestSize().getCount());
+
+		MethodMetrics fail = metrics.getMethodMetrics("fail");
+		Assert.assertEquals(1, fail.getCount());
+		Assert.assertEquals(1, fail.getErrorCount());
+
+		handlerManager.handleRequest(session, new Request<JsonElement>(11,
+				"metrics", null), rs);
+
+		@SuppressWarnings("unchecked")
+		Response<JsonElement> response = (Response<JsonElement>) responses
+				.get(responses.size() - 1);
+		JsonObject snapshot = response.getResult().getAsJsonObject();
+		Assert.assertEquals(11, snapshot.getAsJsonObject("methods")
+				.getAsJsonObject("echo").get("count").getAsLong());
+		Assert.assertNull(metrics.getMethodMetrics("metrics"));
+	}
+
+	@Test
+	public void responseSizesTest() throws IOException {
+
+		DefaultJsonRpcMetrics metrics = new DefaultJsonRpcMetrics();
+
+		JsonRpcHandlerManager handlerManager = new JsonRpcHandlerManager(
+				new Handler());
+		handlerManager.setMetrics(metrics);
+
+		Session session = new ClientSession("session", null, null);
+
+		final List<String> sent = new ArrayList<>();
+		MeasuredResponseSender measuredRs = new MeasuredResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+				sendMeasuredResponse(message);
+			}
+
+			@Override
+			public int sendMeasuredResponse(Message message)
+					throws IOException {
+				String json = message.toString();
+				sent.add(json);
+				return json.length();
+			}
+		};
+
+		JsonObject params = new JsonObject();
+		params.addProperty("value", "Hello");
+
+		for (int i = 0; i < 3; i++) {
+			handlerManager.handleRequest(session, new Request<JsonElement>(i,
+					"echo", params), measuredRs);
+		}
+
+		MethodMetrics echo = metrics.getMethodMetrics("echo");
+		Assert.assertEquals(3, echo.getResponseSize().getCount());
+		Assert.assertEquals(sent.get(2).length(), echo.getResponseSize()
+				.getMax());
+
+		// Senders without the size of the responses don't report it
+		handlerManager.handleRequest(session, new Request<JsonElement>(3,
+				"echo", params), new ResponseSender() {
+			@Override
+			public void sendResponse(Message message) throws IOException {
+			}
+		});
+
+		Assert.assertEquals(4, echo.getCount());
+		Assert.assertEquals(3, echo.getResponseSize().getCount());
+	}
+
+	@Test
+	public void clientMetricsTest() throws IOException {
+
+		DefaultJsonRpcMetrics metrics = new DefaultJsonRpcMetrics();
+
+		try (JsonRpcClientLocal client = new JsonRpcClientLocal(new Handler())) {
+
+			client.setMetrics(metrics);
+
+			JsonObject params = new JsonObject();
+			params.addProperty("value", "Hello");
+
+			for (int i = 0; i < 5; i++) {
+				client.sendRequest("echo", params);
+			}
+
+			try {
+				client.sendRequest("fail", params);
+				Assert.fail("Request should fail");
+			} catch (JsonRpcErrorException e) {
+			}
+
+			List<Request<JsonObject>> batch = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				batch.add(new Request<JsonObject>("echo", params));
+			}
+			client.sendBatch(batch);
+		}
+
+		MethodMetrics echo = metrics.getMethodMetrics("echo");
+		Assert.assertEquals(8, echo.getCount());
+		Assert.assertEquals(0, echo.getErrorCount());
+		Assert.assertEquals(0, echo.getInFlight());
+
+		MethodMetrics fail = metrics.getMethodMetrics("fail");
+		Assert.assertEquals(1, fail.getCount());
+		Assert.assertEquals(1, fail.getErrorCount());
+	}
+
+	@Test
+	public void methodsAreBoundedTest() {
+
+		DefaultJsonRpcMetrics metrics = new DefaultJsonRpcMetrics(2);
+
+		for (int i = 0; i < 5; i++) {
+			metrics.requestStarted("method" + i, 10);
+			metrics.requestCompleted("method" + i, 1000, false);
+		}
+
+		Assert.assertEquals(3, metrics.getMethods().size());
+		Assert.assertEquals(3,
+				metrics.getMethodMetrics(DefaultJsonRpcMetrics.OTHER_METHODS)
+						.getCount());
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getMethodMetrics("method0").getCount());
+		Assert.assertEquals(new JsonPrimitive(0L), metrics.getSnapshot()
+				.getAsJsonObject("methods").getAsJsonObject("method0")
+				.get("count"));
+	}
+}
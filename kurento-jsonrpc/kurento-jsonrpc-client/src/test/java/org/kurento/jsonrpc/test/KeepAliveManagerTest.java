@@ -0,0 +1,117 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.KeepAliveManager;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class KeepAliveManagerTest {
+
+	/**
+	 * Client whose transport doesn't support batches. Requests sent
+	 * asynchronously are kept until the test answers them, and synchronous
+	 * requests are not allowed, as they would block the keepAlive thread.
+	 */
+	static class NoBatchClient extends JsonRpcClient {
+
+		final List<Request<? extends Object>> requests = new ArrayList<>();
+		final List<Continuation<Response<JsonElement>>> continuations = new ArrayList<>();
+
+		public NoBatchClient() {
+			rsHelper = new JsonRpcRequestSenderHelper() {
+				@Override
+				protected <P, R> Response<R> internalSendRequest(
+						Request<P> request, Class<R> resultClass)
+						throws IOException {
+					throw new IllegalStateException(
+							"Synchronous request " + request.getMethod());
+				}
+
+				@Override
+				protected void internalSendRequest(
+						Request<? extends Object> request,
+						Class<JsonElement> resultClass,
+						Continuation<Response<JsonElement>> continuation) {
+					requests.add(request);
+					continuations.add(continuation);
+				}
+			};
+		}
+
+		void answer(int index, boolean error) {
+			Integer id = requests.get(index).getId();
+			Response<JsonElement> response = error ? new Response<JsonElement>(
+					id, new ResponseError(40101, "Object not found"))
+					: new Response<JsonElement>(id, new JsonPrimitive("ok"));
+			continuations.get(index).onSuccess(response);
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void connect() throws IOException {
+		}
+	}
+
+	static class TestKeepAliveManager extends KeepAliveManager {
+
+		public TestKeepAliveManager(JsonRpcClient client, int batchSize) {
+			super(client, 60000, Mode.PER_ID_AS_MEDIAPIPELINE, batchSize, 10);
+		}
+
+		public void sendKeepAlivesNow() {
+			sendKeepAlives();
+		}
+	}
+
+	@Test
+	public void batchesAreSentAsynchronouslyWithoutBatchSupport() {
+
+		NoBatchClient client = new NoBatchClient();
+		TestKeepAliveManager keepAliveManager = new TestKeepAliveManager(
+				client, 2);
+
+		for (int i = 0; i < 5; i++) {
+			keepAliveManager.addId("pipeline" + i);
+		}
+
+		try {
+			keepAliveManager.sendKeepAlivesNow();
+
+			// All the keepAlives are sent without waiting for any response
+			Assert.assertEquals(5, client.requests.size());
+			for (Request<? extends Object> request : client.requests) {
+				Assert.assertEquals("keepAlive", request.getMethod());
+				Assert.assertEquals(((JsonObject) request.getParams()).get(
+						"object").getAsString(), request.getSessionId());
+			}
+
+			for (int i = client.requests.size() - 1; i >= 0; i--) {
+				client.answer(i, i == 3);
+			}
+
+			Assert.assertEquals(1, keepAliveManager.getCycleCount());
+			Assert.assertEquals(5, keepAliveManager.getLastCycleKeepAlives());
+			Assert.assertEquals(1, keepAliveManager.getDroppedIdCount());
+			Assert.assertEquals(4, keepAliveManager.getIdsCount());
+
+		} finally {
+			keepAliveManager.stop();
+		}
+	}
+}
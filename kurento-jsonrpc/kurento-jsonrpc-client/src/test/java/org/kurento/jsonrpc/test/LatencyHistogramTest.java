@@ -0,0 +1,53 @@
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesWithBoundedError() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (int i = 1; i <= 100000; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000, histogram.getMax());
+		assertEquals(50000.5, histogram.getMean(), 0.001);
+
+		assertPercentile(50000, histogram.getValueAtPercentile(50));
+		assertPercentile(99000, histogram.getValueAtPercentile(99));
+		assertPercentile(99900, histogram.getValueAtPercentile(99.9));
+		assertEquals(100000, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void smallAndHugeValues() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		histogram.record(-1);
+		histogram.record(3);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(0, histogram.getValueAtPercentile(10));
+		assertEquals(3, histogram.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	private void assertPercentile(long expected, long actual) {
+		assertTrue("Expected " + expected + " but was " + actual,
+				Math.abs(actual - expected) <= expected / 32);
+	}
+}
@@ -0,0 +1,148 @@
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue;
+import org.kurento.jsonrpc.internal.ws.OutboundMessageQueue.MessageWriter;
+
+public class OutboundMessageQueueTest {
+
+	/**
+	 * Writer blocked in the first message until released, so the following
+	 * senders find the queue with a writer and wait for it.
+	 */
+	private static class BlockingWriter implements MessageWriter {
+
+		private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final Map<String, Thread> writers = new ConcurrentHashMap<>();
+		private final List<String> failingMessages = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void write(String message) throws IOException {
+			if (firstWriteStarted.getCount() > 0) {
+				firstWriteStarted.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			if (failingMessages.contains(message)) {
+				throw new IOException("Failed writing " + message);
+			}
+			writers.put(message, Thread.currentThread());
+		}
+	}
+
+	private static Thread send(final OutboundMessageQueue queue,
+			final String message, final AtomicReference<Throwable> error) {
+
+		Thread thread = new Thread("sender-" + message) {
+			@Override
+			public void run() {
+				try {
+					queue.send(message);
+				} catch (Throwable t) {
+					error.set(t);
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private static void awaitQueueDepth(OutboundMessageQueue queue, int depth)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (queue.getQueueDepth() < depth
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(depth, queue.getQueueDepth());
+	}
+
+	@Test
+	public void failedWriteIsReportedToEachSender() throws Exception {
+
+		BlockingWriter writer = new BlockingWriter();
+		writer.failingMessages.add("b");
+		writer.failingMessages.add("c");
+
+		OutboundMessageQueue queue = new OutboundMessageQueue(writer);
+
+		AtomicReference<Throwable> errorA = new AtomicReference<>();
+		AtomicReference<Throwable> errorB = new AtomicReference<>();
+		AtomicReference<Throwable> errorC = new AtomicReference<>();
+
+		Thread a = send(queue, "a", errorA);
+		assertTrue(writer.firstWriteStarted.await(5, TimeUnit.SECONDS));
+
+		Thread b = send(queue, "b", errorB);
+		Thread c = send(queue, "c", errorC);
+		awaitQueueDepth(queue, 2);
+
+		writer.release.countDown();
+		a.join(5000);
+		b.join(5000);
+		c.join(5000);
+
+		assertNull(errorA.get());
+		assertTrue(errorB.get() instanceof IOException);
+		assertTrue(errorC.get() instanceof IOException);
+		assertEquals(1, queue.getSentMessages());
+	}
+
+	@Test
+	public void drainedMessagesPerSenderAreLimited() throws Exception {
+
+		BlockingWriter writer = new BlockingWriter();
+
+		OutboundMessageQueue queue = new OutboundMessageQueue(writer,
+				OutboundMessageQueue.DEFAULT_MAX_QUEUE_SIZE,
+				OutboundMessageQueue.DEFAULT_SEND_TIMEOUT_MILLIS, false,
+				OutboundMessageQueue.DEFAULT_MAX_BATCH_SIZE, 2);
+
+		AtomicReference<Throwable> error = new AtomicReference<>();
+
+		Thread a = send(queue, "a", error);
+		assertTrue(writer.firstWriteStarted.await(5, TimeUnit.SECONDS));
+
+		String[] others = { "b", "c", "d", "e" };
+		Thread[] senders = new Thread[others.length];
+		for (int i = 0; i < others.length; i++) {
+			senders[i] = send(queue, others[i], error);
+		}
+		awaitQueueDepth(queue, others.length);
+
+		writer.release.countDown();
+		a.join(5000);
+		for (Thread sender : senders) {
+			sender.join(5000);
+		}
+
+		assertNull(error.get());
+		assertEquals(5, queue.getSentMessages());
+		assertEquals(0, queue.getQueueDepth());
+
+		int writtenByA = 0;
+		for (Thread thread : writer.writers.values()) {
+			if (thread == a) {
+				writtenByA++;
+			}
+		}
+		assertEquals(2, writtenByA);
+	}
+}
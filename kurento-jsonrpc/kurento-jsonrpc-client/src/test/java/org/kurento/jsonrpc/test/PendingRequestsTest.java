@@ -0,0 +1,137 @@
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+public class PendingRequestsTest {
+
+	@Test
+	public void responseCompletesContinuation() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests();
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 10000);
+
+		assertEquals(1, pendingRequests.getInFlight());
+
+		pendingRequests.handleResponse(new Response<JsonElement>(1,
+				new JsonPrimitive("result")));
+
+		assertEquals("result", future.get(1, TimeUnit.SECONDS).getResult()
+				.getAsString());
+		assertEquals(0, pendingRequests.getInFlight());
+		assertEquals(0, pendingRequests.getOrphanResponses());
+	}
+
+	@Test
+	public void timeoutAndLateResponse() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests();
+
+		final CountDownLatch errorLatch = new CountDownLatch(1);
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+
+		pendingRequests.prepareResponse(1, 200,
+				new Continuation<Response<JsonElement>>() {
+					@Override
+					public void onSuccess(Response<JsonElement> result) {
+						fail("Response not expected");
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						error.set(cause);
+						errorLatch.countDown();
+					}
+				});
+
+		assertTrue(errorLatch.await(5, TimeUnit.SECONDS));
+		assertTrue(error.get() instanceof TransportException);
+		assertEquals(1, pendingRequests.getTimeouts());
+		assertEquals(0, pendingRequests.getInFlight());
+
+		pendingRequests.handleResponse(new Response<JsonElement>(1,
+				new JsonPrimitive("late")));
+		pendingRequests.handleResponse(new Response<JsonElement>(2,
+				new JsonPrimitive("orphan")));
+
+		assertEquals(1, pendingRequests.getLateResponses());
+		assertEquals(1, pendingRequests.getOrphanResponses());
+	}
+
+	@Test
+	public void synchronousTimeout() throws Exception {
+
+		PendingRequests pendingRequests = new PendingRequests();
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 100);
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Timeout expected");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TransportException);
+		}
+	}
+
+	@Test(expected = TransportException.class)
+	public void maxPendingRequests() {
+
+		PendingRequests pendingRequests = new PendingRequests(2);
+
+		pendingRequests.prepareResponse(1);
+		pendingRequests.prepareResponse(2);
+		pendingRequests.prepareResponse(3);
+	}
+
+	@Test
+	public void cancelledTimeoutIsNotFired() throws Exception {
+
+		HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10,
+				TimeUnit.MILLISECONDS, 8);
+
+		final CountDownLatch firedLatch = new CountDownLatch(1);
+		final CountDownLatch cancelledLatch = new CountDownLatch(1);
+
+		Timeout cancelled = timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				cancelledLatch.countDown();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		timer.newTimeout(new Runnable() {
+			@Override
+			public void run() {
+				firedLatch.countDown();
+			}
+		}, 200, TimeUnit.MILLISECONDS);
+
+		assertTrue(cancelled.cancel());
+		assertTrue(firedLatch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, cancelledLatch.getCount());
+		assertEquals(0, timer.getPendingTimeouts());
+
+		timer.stop();
+	}
+}
@@ -0,0 +1,37 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.SerializedNotification;
+
+import com.google.gson.JsonObject;
+
+public class SerializedNotificationTest {
+
+	@Test
+	public void sameTextAsNotificationTest() {
+
+		JsonObject params = new JsonObject();
+		params.addProperty("object", "pipeline/endpoint");
+		params.addProperty("type", "EndOfStream");
+
+		SerializedNotification notification = new SerializedNotification(
+				"onEvent", params);
+
+		Request<JsonObject> request = new Request<>(null, "onEvent", params);
+		request.setSessionId("session");
+
+		// Without session id, so it can be sent to any session
+		Assert.assertEquals(JsonUtils.toJson(request), notification.getJson());
+
+		Request<JsonObject> parsed = JsonUtils.fromJsonRequest(
+				notification.getJson(), JsonObject.class);
+
+		Assert.assertNull(parsed.getId());
+		Assert.assertNull(parsed.getSessionId());
+		Assert.assertEquals("onEvent", parsed.getMethod());
+		Assert.assertEquals(params, parsed.getParams());
+	}
+}
@@ -0,0 +1,123 @@
+package org.kurento.jsonrpc.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+public class StreamingMessageDecodingTest {
+
+	static class Params {
+		String param1;
+	}
+
+	@Test
+	public void requestTest() {
+
+		Message message = JsonUtils
+				.fromJsonMessage("{\"id\":1,\"method\":\"method\",\"params\":{\"param1\":\"Value1\",\"sessionId\":\"xxxxxxx\"},\"jsonrpc\":\"2.0\"}");
+
+		Assert.assertTrue(message instanceof Request);
+
+		@SuppressWarnings("unchecked")
+		Request<JsonElement> request = (Request<JsonElement>) message;
+
+		Assert.assertEquals(Integer.valueOf(1), request.getId());
+		Assert.assertEquals("method", request.getMethod());
+		Assert.assertEquals("xxxxxxx", request.getSessionId());
+
+		JsonObject params = (JsonObject) request.getParams();
+		Assert.assertFalse(params.has("sessionId"));
+		Assert.assertEquals("Value1", params.get("param1").getAsString());
+	}
+
+	@Test
+	public void notificationTest() {
+
+		Message message = JsonUtils
+				.fromJsonMessage("{\"method\":\"onEvent\",\"params\":{\"value\":{\"type\":\"EndOfStream\"}},\"jsonrpc\":\"2.0\"}");
+
+		@SuppressWarnings("unchecked")
+		Request<JsonElement> request = (Request<JsonElement>) message;
+
+		Assert.assertNull(request.getId());
+		Assert.assertNull(request.getSessionId());
+		Assert.assertEquals("onEvent", request.getMethod());
+	}
+
+	@Test
+	public void responseTest() {
+
+		Message message = JsonUtils
+				.fromJsonMessage("{\"jsonrpc\":\"2.0\",\"id\":3,\"unknown\":[1,2],\"result\":{\"value\":\"obj\",\"sessionId\":\"xxxxxxx\"}}");
+
+		Assert.assertTrue(message instanceof Response);
+
+		@SuppressWarnings("unchecked")
+		Response<JsonElement> response = (Response<JsonElement>) message;
+
+		Assert.assertEquals(Integer.valueOf(3), response.getId());
+		Assert.assertEquals("xxxxxxx", response.getSessionId());
+		Assert.assertEquals("obj", ((JsonObject) response.getResult())
+				.get("value").getAsString());
+	}
+
+	@Test
+	public void errorResponseTest() {
+
+		Message message = JsonUtils
+				.fromJsonMessage("{\"jsonrpc\":\"2.0\",\"id\":4,\"error\":{\"code\":-32601,\"message\":\"Method not found\"}}");
+
+		Response<?> response = (Response<?>) message;
+
+		Assert.assertTrue(response.isError());
+		Assert.assertEquals(-32601, response.getError().getCode());
+		Assert.assertEquals("Method not found", response.getError()
+				.getMessage());
+	}
+
+	@Test
+	public void batchTest() {
+
+		Message message = JsonUtils
+				.fromJsonMessage("[{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"a\"},5,{\"jsonrpc\":\"2.0\",\"id\":2,\"result\":true}]");
+
+		Assert.assertTrue(message instanceof MessageBatch);
+
+		MessageBatch batch = (MessageBatch) message;
+
+		Assert.assertEquals(2, batch.size());
+		Assert.assertEquals(1, batch.getInvalidMessages());
+		Assert.assertTrue(batch.getMessages().get(0) instanceof Request);
+		Assert.assertTrue(batch.getMessages().get(1) instanceof Response);
+	}
+
+	@Test
+	public void typedRequestTest() {
+
+		Request<Params> request = JsonUtils.fromJsonRequest(
+				"{\"id\":1,\"method\":\"method\",\"params\":{\"param1\":\"Value1\",\"sessionId\":\"xxxxxxx\"},\"jsonrpc\":\"2.0\"}",
+				Params.class);
+
+		Assert.assertEquals("Value1", request.getParams().param1);
+		Assert.assertEquals("xxxxxxx", request.getSessionId());
+	}
+
+	@Test(expected = JsonRpcException.class)
+	public void responseWithoutResultTest() {
+		JsonUtils.fromJsonMessage("{\"jsonrpc\":\"2.0\",\"id\":1}");
+	}
+
+	@Test(expected = JsonRpcException.class)
+	public void malformedMessageTest() {
+		JsonUtils.fromJsonMessage("{\"jsonrpc\":\"2.0\",\"id\":1,");
+	}
+}
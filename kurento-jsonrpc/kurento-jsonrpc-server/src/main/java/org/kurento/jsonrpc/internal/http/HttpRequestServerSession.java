@@ -0,0 +1,315 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Session of a client connected with HTTP. As the server can't send messages
+ * to the client, requests and notifications are queued until the client
+ * polls for them. Responses of the client arrive in the next poll. The queue
+ * is bounded: requests that don't fit in it fail instead of being queued.
+ */
+public class HttpRequestServerSession extends ServerSession {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HttpRequestServerSession.class);
+
+	/**
+	 * Maximum number of requests and notifications waiting for the client to
+	 * poll them.
+	 */
+	public static final String POLL_QUEUE_SIZE_PROPERTY = "jsonRpcServerSession.pollQueueSize";
+
+	private static final int POLL_QUEUE_SIZE_DEFAULT_VALUE = 1000;
+
+	/**
+	 * A poll waiting for requests to be queued or for its timeout to expire.
+	 */
+	private class PendingPoll implements Runnable {
+
+		private final Continuation<List<Request<? extends Object>>> continuation;
+		private Timeout timeout;
+
+		public PendingPoll(
+				Continuation<List<Request<? extends Object>>> continuation) {
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void run() {
+			synchronized (pollLock) {
+				if (pendingPoll != this) {
+					return;
+				}
+				pendingPoll = null;
+			}
+			respond(Collections.<Request<? extends Object>> emptyList());
+		}
+
+		private void respond(List<Request<? extends Object>> requests) {
+			try {
+				continuation.onSuccess(requests);
+			} catch (Exception e) {
+				log.warn("Exception while responding poll of session {}",
+						getSessionId(), e);
+			}
+		}
+	}
+
+	private final Object pollLock = new Object();
+
+	// Guarded by pollLock
+	private final Queue<Request<? extends Object>> pollQueue = new ArrayDeque<>();
+
+	// Guarded by pollLock
+	private PendingPoll pendingPoll;
+
+	private final PendingRequests pendingRequests = createPendingRequests();
+
+	private final int maxPollQueueSize = PropertiesManager.getProperty(
+			POLL_QUEUE_SIZE_PROPERTY, POLL_QUEUE_SIZE_DEFAULT_VALUE);
+
+	public HttpRequestServerSession(String sessionId, Object registerInfo,
+			SessionsManager sessionsManager, String transportId) {
+
+		super(sessionId, registerInfo, sessionsManager, transportId);
+
+		setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
+
+			@Override
+			protected <P, R> Response<R> internalSendRequest(
+					Request<P> request, Class<R> resultClass)
+					throws IOException {
+				return sendRequestHttp(request, resultClass);
+			}
+
+			@Override
+			protected void internalSendRequest(
+					Request<? extends Object> request,
+					Class<JsonElement> resultClass,
+					Continuation<Response<JsonElement>> continuation) {
+				sendRequestHttp(request, continuation);
+			}
+		});
+	}
+
+	private void sendRequestHttp(Request<? extends Object> request,
+			Continuation<Response<JsonElement>> continuation) {
+
+		if (request.getId() != null) {
+			try {
+				pendingRequests.prepareResponse(request.getId(),
+						getRequestTimeoutInMillis(), new ResponseContinuation(
+								continuation));
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
+			}
+		}
+
+		try {
+			enqueue(request);
+		} catch (TransportException e) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			} else {
+				continuation.onError(e);
+			}
+			return;
+		}
+
+		if (request.getId() == null) {
+			continuation.onSuccess(null);
+		}
+	}
+
+	private <P, R> Response<R> sendRequestHttp(Request<P> request,
+			Class<R> resultClass) {
+
+		Future<Response<JsonElement>> responseFuture = null;
+
+		if (request.getId() != null) {
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					getRequestTimeoutInMillis());
+		}
+
+		try {
+			enqueue(request);
+		} catch (TransportException e) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			}
+			throw e;
+		}
+
+		if (responseFuture == null) {
+			return null;
+		}
+
+		Response<JsonElement> responseJsonObject;
+		try {
+			responseJsonObject = responseFuture.get();
+		} catch (InterruptedException e) {
+			throw new JsonRpcException(
+					"Interrupted while waiting for a response", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TransportException) {
+				// Timeout or session closed while waiting for response
+				throw (TransportException) e.getCause();
+			}
+			throw new JsonRpcException("This exception shouldn't be thrown", e);
+		}
+
+		return MessageUtils.convertResponse(responseJsonObject, resultClass);
+	}
+
+	/**
+	 * Queues the request for the client, responding the pending poll if any.
+	 *
+	 * @throws TransportException
+	 *             if the queue is full because the client is not polling
+	 */
+	private void enqueue(Request<? extends Object> request) {
+
+		PendingPoll poll;
+		List<Request<? extends Object>> requests;
+
+		synchronized (pollLock) {
+			if (pollQueue.size() >= maxPollQueueSize) {
+				log.warn("Poll queue of session {} is full ({} requests). "
+						+ "Rejecting request {}", getSessionId(),
+						pollQueue.size(), request.getMethod());
+				throw new TransportException("Too many requests ("
+						+ pollQueue.size()
+						+ ") waiting for the client to poll them");
+			}
+			pollQueue.add(request);
+			poll = pendingPoll;
+			if (poll == null) {
+				return;
+			}
+			pendingPoll = null;
+			requests = drainPollQueue();
+		}
+
+		poll.timeout.cancel();
+		poll.respond(requests);
+	}
+
+	/**
+	 * Responds with the queued requests as soon as there is any, or with an
+	 * empty list when the timeout expires. Only one poll is held per session:
+	 * a new poll responds the previous one with an empty list.
+	 */
+	@Override
+	public void pollRequests(long timeoutMillis,
+			Continuation<List<Request<? extends Object>>> continuation) {
+
+		PendingPoll poll = new PendingPoll(continuation);
+		PendingPoll replacedPoll = null;
+		List<Request<? extends Object>> requests = null;
+
+		synchronized (pollLock) {
+
+			if (!pollQueue.isEmpty()) {
+
+				requests = drainPollQueue();
+
+			} else {
+
+				try {
+					poll.timeout = getTimeoutService().arm(poll, timeoutMillis,
+							TimeUnit.MILLISECONDS);
+					replacedPoll = pendingPoll;
+					pendingPoll = poll;
+				} catch (IllegalStateException e) {
+					log.warn("Poll of session {} can not be held because the "
+							+ "timeout service is shutdown", getSessionId());
+					requests = Collections.emptyList();
+				}
+			}
+		}
+
+		if (replacedPoll != null) {
+			replacedPoll.timeout.cancel();
+			replacedPoll.respond(Collections
+					.<Request<? extends Object>> emptyList());
+		}
+
+		if (requests != null) {
+			poll.respond(requests);
+		}
+	}
+
+	private List<Request<? extends Object>> drainPollQueue() {
+		List<Request<? extends Object>> requests = new ArrayList<>(pollQueue);
+		pollQueue.clear();
+		return requests;
+	}
+
+	@Override
+	public void handleResponse(Response<JsonElement> response) {
+		pendingRequests.handleResponse(response);
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		PendingPoll poll;
+		synchronized (pollLock) {
+			pollQueue.clear();
+			poll = pendingPoll;
+			pendingPoll = null;
+		}
+
+		if (poll != null) {
+			poll.timeout.cancel();
+			poll.respond(Collections.<Request<? extends Object>> emptyList());
+		}
+
+		try {
+			pendingRequests.closeAllPendingRequests(new TransportException(
+					"Session closed before receiving the response"));
+		} finally {
+			super.close();
+		}
+	}
+}
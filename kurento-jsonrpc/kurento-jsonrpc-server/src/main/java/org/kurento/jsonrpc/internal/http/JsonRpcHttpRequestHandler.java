@@ -15,7 +15,9 @@
 package org.kurento.jsonrpc.internal.http;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -24,55 +26,16 @@ import javax.servlet.http.HttpSession;
 import org.springframework.web.HttpRequestHandler;
 
 import com.google.common.io.CharStreams;
-import com.google.gson.JsonElement;
 
-import org.kurento.jsonrpc.client.Continuation;
-import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
-import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.DeferrableResponseSender;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.message.Message;
-import org.kurento.jsonrpc.message.Request;
-import org.kurento.jsonrpc.message.Response;
 
 public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
-	private final class HttpRequestServerSession extends ServerSession {
-
-		private HttpRequestServerSession(String sessionId, Object registerInfo,
-				SessionsManager sessionsManager, String internalSessionId) {
-
-			super(sessionId, registerInfo, sessionsManager, internalSessionId);
-
-			setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
-
-				@Override
-				protected <P, R> Response<R> internalSendRequest(
-						Request<P> request, Class<R> resultClass)
-						throws IOException {
-					// TODO Poner aquí la cola de mensajes que devolver al
-					// cliente cuando haga pooling
-					return new Response<>();
-				}
-
-				@Override
-				protected void internalSendRequest(
-						Request<? extends Object> request,
-						Class<JsonElement> class1,
-						Continuation<Response<JsonElement>> continuation) {
-					throw new UnsupportedOperationException(
-							"Async client is unavailable");
-				}
-			});
-		}
-
-		@Override
-		public void handleResponse(Response<JsonElement> response) {
-		}
-	}
-
 	private final ProtocolManager protocolManager;
 
 	public JsonRpcHttpRequestHandler(ProtocolManager protocolManager) {
@@ -96,12 +59,8 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 			}
 		};
 
-		ResponseSender responseSender = new ResponseSender() {
-			@Override
-			public void sendResponse(Message message) throws IOException {
-				servletResponse.getWriter().println(message);
-			}
-		};
+		ServletResponseSender responseSender = new ServletResponseSender(
+				servletRequest, servletResponse);
 
 		String internalSessionId = null;
 
@@ -112,6 +71,84 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
 		protocolManager.processMessage(messageJson, factory, responseSender,
 				internalSessionId);
+
+		responseSender.awaitDeferredResponse();
+	}
+
+	/**
+	 * Writes the response in the servlet response. When the response is
+	 * deferred (long polling), the request is put in asynchronous mode, so
+	 * the container thread is released until the response is sent. If the
+	 * container doesn't support it, the container thread waits for the
+	 * response.
+	 */
+	private static class ServletResponseSender implements
+			DeferrableResponseSender {
+
+		private final HttpServletRequest servletRequest;
+		private final HttpServletResponse servletResponse;
+
+		private volatile AsyncContext asyncContext;
+		private volatile CountDownLatch responseSent;
+
+		public ServletResponseSender(HttpServletRequest servletRequest,
+				HttpServletResponse servletResponse) {
+			this.servletRequest = servletRequest;
+			this.servletResponse = servletResponse;
+		}
+
+		@Override
+		public void deferResponse() {
+
+			if (asyncContext != null || responseSent != null) {
+				return;
+			}
+
+			if (servletRequest.isAsyncSupported()) {
+				asyncContext = servletRequest.startAsync();
+				// The protocol manager always responds, at the latest when
+				// the poll timeout expires
+				asyncContext.setTimeout(0);
+			} else {
+				responseSent = new CountDownLatch(1);
+			}
+		}
+
+		@Override
+		public void sendResponse(Message message) throws IOException {
+
+			AsyncContext context = asyncContext;
+
+			if (context == null) {
+				try {
+					servletResponse.getWriter().println(message);
+				} finally {
+					if (responseSent != null) {
+						responseSent.countDown();
+					}
+				}
+				return;
+			}
+
+			try {
+				context.getResponse().getWriter().println(message);
+			} finally {
+				context.complete();
+			}
+		}
+
+		public void awaitDeferredResponse() {
+
+			if (responseSent == null) {
+				return;
+			}
+
+			try {
+				responseSent.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
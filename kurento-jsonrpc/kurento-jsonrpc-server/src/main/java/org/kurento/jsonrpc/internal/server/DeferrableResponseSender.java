@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+
+/**
+ * Sender of a transport whose responses must be sent before the thread
+ * processing the message returns, unless it is told otherwise. This is the
+ * case of HTTP, where the response is written in the servlet response.
+ *
+ * @since 5.1.1
+ */
+public interface DeferrableResponseSender extends ResponseSender {
+
+	/**
+	 * Invoked, in the thread processing the message, before returning without
+	 * having sent the response. The response will be sent later from another
+	 * thread, so the transport must keep the request open until then.
+	 */
+	void deferResponse();
+}
@@ -14,34 +14,41 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_INVALID_REQUEST;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_OVERLOADED;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_RECONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_SUCCESSFUL;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ScheduledFuture;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.SecretGenerator;
 import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcMetrics;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.BatchResponseSender;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.task.TaskRejectedException;
-import org.springframework.scheduling.TaskScheduler;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 
 public class ProtocolManager {
@@ -51,24 +58,57 @@ public class ProtocolManager {
 				SessionsManager sessionsManager);
 	}
 
+	/**
+	 * Maximum time, in milliseconds, a poll request of an HTTP client is held
+	 * waiting for requests from the server.
+	 */
+	public static final String POLL_TIMEOUT_PROPERTY = "jsonRpcServer.pollTimeout";
+
+	private static final int POLL_TIMEOUT_DEFAULT_VALUE = 20000;
+
 	private static final Logger log = LoggerFactory
 			.getLogger(ProtocolManager.class);
 
 	protected SecretGenerator secretGenerator = new SecretGenerator();
 
-	@Autowired
 	private SessionsManager sessionsManager;
 
-	@Autowired
-	@Qualifier("jsonrpcTaskScheduler")
-	private TaskScheduler taskScheduler;
+	private TimeoutService timeoutService;
+
+	@Autowired(required = false)
+	private RequestDispatcher dispatcher;
 
 	private final JsonRpcHandlerManager handlerManager;
 
+	private final long pollTimeout = PropertiesManager.getProperty(
+			POLL_TIMEOUT_PROPERTY, POLL_TIMEOUT_DEFAULT_VALUE);
+
 	public ProtocolManager(JsonRpcHandler<?> handler) {
 		this.handlerManager = new JsonRpcHandlerManager(handler);
 	}
 
+	@Autowired
+	public void setSessionsManager(SessionsManager sessionsManager) {
+		this.sessionsManager = sessionsManager;
+	}
+
+	@Autowired
+	public void setTimeoutService(TimeoutService timeoutService) {
+		this.timeoutService = timeoutService;
+	}
+
+	/**
+	 * Reports per-method metrics of the requests to the registry, and makes
+	 * them available to clients in the
+	 * {@link org.kurento.jsonrpc.internal.JsonRpcConstants#METHOD_METRICS}
+	 * method. Metrics are disabled unless a {@link JsonRpcMetrics} bean is
+	 * declared.
+	 */
+	@Autowired(required = false)
+	public void setMetrics(JsonRpcMetrics metrics) {
+		handlerManager.setMetrics(metrics);
+	}
+
 	/**
 	 * Process incoming message. The response is sent using responseSender. If
 	 * null, the session will be used.
@@ -83,27 +123,137 @@ public class ProtocolManager {
 			ServerSessionFactory factory, ResponseSender responseSender,
 			String internalSessionId) throws IOException {
 
-		JsonObject messagetJsonObject = JsonUtils.fromJson(messageJson,
-				JsonObject.class);
+		Message message = JsonUtils.fromJsonMessage(messageJson);
 
-		if (messagetJsonObject.has(Request.METHOD_FIELD_NAME)) {
-			processRequestMessage(factory, messagetJsonObject, responseSender,
-					internalSessionId);
+		if (message instanceof MessageBatch) {
+			processBatchMessage(factory, (MessageBatch) message,
+					responseSender, internalSessionId);
+		} else if (message instanceof Request) {
+			processRequest(factory, asRequest(message),
+					messageJson.length(), responseSender, internalSessionId);
 		} else {
-			processResponseMessage(messagetJsonObject, internalSessionId);
+			processResponseMessage(asResponse(message), internalSessionId);
+		}
+	}
+
+	/**
+	 * Process a JSON-RPC 2.0 batch. Responses in the batch are processed as
+	 * usual and the responses to the requests in the batch are sent together
+	 * in a single batch.
+	 */
+	private void processBatchMessage(ServerSessionFactory factory,
+			MessageBatch batch, ResponseSender responseSender,
+			String transportId) throws IOException {
+
+		int invalidMessages = batch.getInvalidMessages();
+
+		if (batch.size() == 0 && invalidMessages == 0) {
+			responseSender.sendResponse(new Response<>(null,
+					new ResponseError(ERROR_INVALID_REQUEST,
+							"Invalid request: empty batch")));
+			return;
+		}
+
+		List<Request<JsonElement>> requests = new ArrayList<>();
+		List<Request<JsonElement>> specialRequests = new ArrayList<>();
+
+		for (Message message : batch.getMessages()) {
+
+			if (message instanceof Request) {
+
+				Request<JsonElement> request = asRequest(message);
+
+				if (request.getMethod().equals(METHOD_RECONNECT)
+						|| request.getMethod().equals(
+								Request.POLL_METHOD_NAME)) {
+					specialRequests.add(request);
+				} else {
+					requests.add(request);
+				}
+
+			} else {
+				processResponseMessage(asResponse(message), transportId);
+			}
+		}
+
+		int expectedResponses = invalidMessages + specialRequests.size()
+				+ BatchResponseSender.countExpectedResponses(requests);
+
+		if (expectedResponses == 0) {
+			return;
+		}
+
+		// Responses of the batch can be sent from other threads (parallel or
+		// asynchronous requests, long polling)
+		if (responseSender instanceof DeferrableResponseSender) {
+			((DeferrableResponseSender) responseSender).deferResponse();
+		}
+
+		// The only aggregator of the responses of the batch, including the
+		// ones of the requests processed by the handler
+		BatchResponseSender batchResponseSender = new BatchResponseSender(
+				responseSender, expectedResponses);
+
+		for (int i = 0; i < invalidMessages; i++) {
+			batchResponseSender.sendResponse(new Response<>(null,
+					new ResponseError(ERROR_INVALID_REQUEST,
+							"Invalid request: batch elements must be objects")));
+		}
+
+		for (Request<JsonElement> request : specialRequests) {
+			processRequest(factory, request, 0, batchResponseSender,
+					transportId);
+		}
+
+		// Requests of a batch can belong to different sessions (e.g.
+		// keepAlives of several media pipelines), so each session processes
+		// its own requests
+		for (List<Request<JsonElement>> sessionRequests : groupBySession(
+				requests).values()) {
+
+			ServerSession session = getSession(factory, transportId,
+					sessionRequests.get(0));
+
+			dispatchBatch(session, sessionRequests, batchResponseSender);
+		}
+	}
+
+	private static Map<String, List<Request<JsonElement>>> groupBySession(
+			List<Request<JsonElement>> requests) {
+
+		Map<String, List<Request<JsonElement>>> requestsBySession = new LinkedHashMap<>();
+
+		for (Request<JsonElement> request : requests) {
+			List<Request<JsonElement>> sessionRequests = requestsBySession
+					.get(request.getSessionId());
+			if (sessionRequests == null) {
+				sessionRequests = new ArrayList<>();
+				requestsBySession.put(request.getSessionId(), sessionRequests);
+			}
+			sessionRequests.add(request);
 		}
+
+		return requestsBySession;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Request<JsonElement> asRequest(Message message) {
+		return (Request<JsonElement>) message;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Response<JsonElement> asResponse(Message message) {
+		return (Response<JsonElement>) message;
 	}
 
 	// TODO Unify ServerSessionFactory, ResponseSender and transportId in a
 	// entity "RequestContext" or similar. In this way, there are less
 	// parameters
 	// and the implementation is easier
-	private void processRequestMessage(ServerSessionFactory factory,
-			JsonObject requestJsonObject, ResponseSender responseSender,
-			String transportId) throws IOException {
-
-		Request<JsonElement> request = JsonUtils.fromJsonRequest(
-				requestJsonObject, JsonElement.class);
+	private void processRequest(ServerSessionFactory factory,
+			Request<JsonElement> request, int requestSize,
+			ResponseSender responseSender, String transportId)
+			throws IOException {
 
 		if (request.getMethod().equals(METHOD_RECONNECT)) {
 
@@ -114,9 +264,6 @@ public class ProtocolManager {
 
 			ServerSession session = getSession(factory, transportId, request);
 
-			// TODO, Take out this an put in Http specific handler. The main
-			// reason is to wait for request before responding to the client.
-			// And for no contaminate the ProtocolManager.
 			if (request.getMethod().equals(Request.POLL_METHOD_NAME)) {
 
 				Type collectionType = new TypeToken<List<Response<JsonElement>>>() {
@@ -125,21 +272,135 @@ public class ProtocolManager {
 				List<Response<JsonElement>> responseList = JsonUtils.fromJson(
 						request.getParams(), collectionType);
 
-				for (Response<JsonElement> response : responseList) {
-					session.handleResponse(response);
+				if (responseList != null) {
+					for (Response<JsonElement> response : responseList) {
+						session.handleResponse(response);
+					}
+				}
+
+				// Long polling: the response is held until there is any
+				// request from server to client or the timeout expires,
+				// without blocking the thread of the transport
+				if (responseSender instanceof DeferrableResponseSender) {
+					((DeferrableResponseSender) responseSender).deferResponse();
 				}
 
-				// Wait for some time if there is a request from server to
-				// client
+				final Integer requestId = request.getId();
+				final ResponseSender pollResponseSender = responseSender;
 
-				// TODO Allow send empty responses. Now you have to send at
-				// least an
-				// empty string
-				responseSender.sendResponse(new Response<Object>(request
-						.getId(), Collections.emptyList()));
+				session.pollRequests(pollTimeout,
+						new Continuation<List<Request<? extends Object>>>() {
+
+							@Override
+							public void onSuccess(
+									List<Request<? extends Object>> serverRequests) {
+								sendPollResponse(pollResponseSender,
+										new Response<Object>(requestId,
+												serverRequests));
+							}
+
+							@Override
+							public void onError(Throwable cause) {
+								sendPollResponse(pollResponseSender,
+										new Response<>(requestId, ResponseError
+												.newFromException(cause)));
+							}
+						});
 
 			} else {
-				handlerManager.handleRequest(session, request, responseSender);
+				dispatchRequest(session, request, requestSize, responseSender);
+			}
+		}
+	}
+
+	private void sendPollResponse(ResponseSender responseSender,
+			Response<?> response) {
+		try {
+			responseSender.sendResponse(response);
+		} catch (IOException e) {
+			log.warn("Exception sending response to poll", e);
+		}
+	}
+
+	/**
+	 * Handles the request in the lane of its session if the dispatcher is
+	 * enabled and the transport can respond asynchronously, or in the current
+	 * thread otherwise.
+	 */
+	private void dispatchRequest(final ServerSession session,
+			final Request<JsonElement> request, final int requestSize,
+			final ResponseSender responseSender) throws IOException {
+
+		if (!isDispatched(session)) {
+			handlerManager.handleRequest(session, request, requestSize,
+					responseSender);
+			return;
+		}
+
+		boolean dispatched = dispatcher.dispatch(session.getSessionId(),
+				new Runnable() {
+					@Override
+					public void run() {
+						try {
+							handlerManager.handleRequest(session, request,
+									requestSize, responseSender);
+						} catch (IOException e) {
+							log.warn("Exception processing request " + request,
+									e);
+						}
+					}
+				});
+
+		if (!dispatched) {
+			rejectOverloaded(Collections.singletonList(request),
+					responseSender);
+		}
+	}
+
+	private void dispatchBatch(final ServerSession session,
+			final List<Request<JsonElement>> requests,
+			final BatchResponseSender responseSender) throws IOException {
+
+		if (!isDispatched(session)) {
+			handlerManager.handleBatch(session, requests, responseSender);
+			return;
+		}
+
+		boolean dispatched = dispatcher.dispatch(session.getSessionId(),
+				new Runnable() {
+					@Override
+					public void run() {
+						try {
+							handlerManager.handleBatch(session, requests,
+									responseSender);
+						} catch (IOException e) {
+							log.warn("Exception processing batch", e);
+						}
+					}
+				});
+
+		if (!dispatched) {
+			rejectOverloaded(requests, responseSender);
+		}
+	}
+
+	private boolean isDispatched(ServerSession session) {
+		return dispatcher != null && dispatcher.isEnabled()
+				&& session.isAsyncResponseSupported();
+	}
+
+	private void rejectOverloaded(List<Request<JsonElement>> requests,
+			ResponseSender responseSender) throws IOException {
+
+		log.warn("Rejecting {} requests because the dispatcher is overloaded",
+				requests.size());
+
+		for (Request<JsonElement> request : requests) {
+			if (request.getId() != null) {
+				responseSender.sendResponse(new Response<>(request.getId(),
+						new ResponseError(ERROR_SERVER_OVERLOADED,
+								"Server overloaded: too many requests "
+										+ "waiting to be processed")));
 			}
 		}
 	}
@@ -187,13 +448,12 @@ public class ProtocolManager {
 		} else {
 
 			ServerSession session = sessionsManager.get(sessionId);
-			if (session != null) {
 
-				String oldTransportId = session.getTransportId();
-				session.setTransportId(transportId);
-				sessionsManager.updateTransportId(session, oldTransportId);
+			// If the close timeout fires at the same time, the session is
+			// either reconnected or closed, but not both
+			if (session != null
+					&& sessionsManager.reconnect(session, transportId)) {
 
-				//FIXME: Possible race condition if session is disposed when reconnect method has arrived
 				cancelCloseTimer(session);
 
 				responseSender.sendResponse(new Response<>(sessionId, request
@@ -219,12 +479,9 @@ public class ProtocolManager {
 		return session;
 	}
 
-	private void processResponseMessage(JsonObject messagetJsonObject,
+	private void processResponseMessage(Response<JsonElement> response,
 			String internalSessionId) {
 
-		Response<JsonElement> response = JsonUtils.fromJsonResponse(
-				messagetJsonObject, JsonElement.class);
-
 		ServerSession session = sessionsManager
 				.getByTransportId(internalSessionId);
 
@@ -237,45 +494,52 @@ public class ProtocolManager {
 		final ServerSession session = sessionsManager
 				.getByTransportId(transportId);
 
-		if (session != null) {
+		if (session != null && sessionsManager.disconnect(session)) {
 
 			log.info("Configuring close timeout for session: {}",
 					session.getSessionId());
 
+			// A timer of a previous disconnection could still be armed
+			cancelCloseTimer(session);
+
 			try {
 
-				ScheduledFuture<?> lastStartedTimerFuture = taskScheduler
-						.schedule(
-								new Runnable() {
-									@Override
-									public void run() {
-										closeSession(session, reason);
-									}
-								},
-								new Date(
-										System.currentTimeMillis()
-												+ session
-														.getReconnectionTimeoutInMillis()));
-
-				session.setCloseTimerTask(lastStartedTimerFuture);
-
-			} catch (TaskRejectedException e) {
+				Timeout closeTimer = timeoutService.arm(new Runnable() {
+					@Override
+					public void run() {
+						if (sessionsManager.closeIfDisconnected(session)) {
+							log.info("Closing session {} because it has not "
+									+ "been reconnected",
+									session.getSessionId());
+							handlerManager.afterConnectionClosed(session,
+									reason);
+						}
+					}
+				}, session.getReconnectionTimeoutInMillis(),
+						TimeUnit.MILLISECONDS);
+
+				session.setCloseTimerTask(closeTimer);
+
+			} catch (IllegalStateException e) {
 				log.warn("Close timeout for session {} can not be set "
-						+ "because the scheduler is shutdown",
+						+ "because the timeout service is shutdown",
 						session.getSessionId());
 			}
 		}
 	}
 
 	public void closeSession(ServerSession session, String reason) {
-		log.info("Closing session: {}", session.getSessionId());
-		sessionsManager.remove(session);
-		handlerManager.afterConnectionClosed(session, reason);
+		if (sessionsManager.close(session)) {
+			log.info("Closing session: {}", session.getSessionId());
+			cancelCloseTimer(session);
+			handlerManager.afterConnectionClosed(session, reason);
+		}
 	}
 
 	public void cancelCloseTimer(ServerSession session) {
-		if (session.getCloseTimerTask() != null) {
-			session.getCloseTimerTask().cancel(false);
+		Timeout closeTimer = session.getCloseTimerTask();
+		if (closeTimer != null) {
+			closeTimer.cancel();
 		}
 	}
 
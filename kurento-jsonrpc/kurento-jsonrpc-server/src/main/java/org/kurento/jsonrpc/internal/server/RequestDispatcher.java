@@ -0,0 +1,202 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the requests of the clients out of the I/O threads of the
+ * transports, in a fixed number of lanes. Each lane has a single thread, and
+ * the requests of a session are always executed in the same lane (chosen by
+ * the hash of the session id), so they are handled in order while different
+ * sessions are handled in parallel.
+ *
+ * Each lane has a bounded queue. When it is full, the request is rejected
+ * and the caller answers it with an
+ * {@link org.kurento.jsonrpc.internal.JsonRpcConstants#ERROR_SERVER_OVERLOADED}
+ * error, instead of blocking the transport.
+ *
+ * With zero lanes the dispatcher is disabled, and requests are handled in the
+ * I/O thread as before.
+ *
+ * @since 5.1.1
+ */
+public class RequestDispatcher {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RequestDispatcher.class);
+
+	/**
+	 * Number of lanes. Zero disables the dispatcher.
+	 */
+	public static final String LANES_PROPERTY = "jsonRpcServer.dispatcher.lanes";
+
+	/**
+	 * Maximum number of requests waiting in each lane.
+	 */
+	public static final String QUEUE_SIZE_PROPERTY = "jsonRpcServer.dispatcher.queueSize";
+
+	private static final int LANES_DEFAULT_VALUE = 0;
+
+	private static final int QUEUE_SIZE_DEFAULT_VALUE = 1000;
+
+	/**
+	 * Executor of a lane. Latencies are recorded in microseconds.
+	 */
+	private static class Lane {
+
+		private final ThreadPoolExecutor executor;
+		private final LatencyHistogram queueLatency = new LatencyHistogram();
+		private final LatencyHistogram executionLatency = new LatencyHistogram();
+		private final AtomicLong rejected = new AtomicLong();
+
+		private Lane(final int index, int queueSize) {
+			this.executor = new ThreadPoolExecutor(1, 1, 0,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							queueSize), new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r,
+									"jsonrpc-server-lane-" + index);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+
+		private boolean execute(final Runnable task) {
+
+			final long queuedTime = System.nanoTime();
+
+			try {
+
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						long startTime = System.nanoTime();
+						queueLatency.record(TimeUnit.NANOSECONDS
+								.toMicros(startTime - queuedTime));
+						try {
+							task.run();
+						} catch (Throwable t) {
+							log.error("Exception while dispatching request", t);
+						} finally {
+							executionLatency.record(TimeUnit.NANOSECONDS
+									.toMicros(System.nanoTime() - startTime));
+						}
+					}
+				});
+
+				return true;
+
+			} catch (RejectedExecutionException e) {
+				rejected.incrementAndGet();
+				return false;
+			}
+		}
+	}
+
+	private final Lane[] lanes;
+
+	public RequestDispatcher() {
+		this(PropertiesManager.getProperty(LANES_PROPERTY, LANES_DEFAULT_VALUE),
+				PropertiesManager.getProperty(QUEUE_SIZE_PROPERTY,
+						QUEUE_SIZE_DEFAULT_VALUE));
+	}
+
+	public RequestDispatcher(int numLanes, int queueSize) {
+
+		if (numLanes < 0 || queueSize <= 0) {
+			throw new IllegalArgumentException("Invalid lanes (" + numLanes
+					+ ") or queue size (" + queueSize + ")");
+		}
+
+		this.lanes = new Lane[numLanes];
+		for (int i = 0; i < numLanes; i++) {
+			lanes[i] = new Lane(i, queueSize);
+		}
+	}
+
+	public boolean isEnabled() {
+		return lanes.length > 0;
+	}
+
+	/**
+	 * Queues the task in the lane of the session. Returns false if the queue
+	 * of the lane is full or the dispatcher has been shutdown, and then the
+	 * task will not be executed.
+	 */
+	public boolean dispatch(String sessionId, Runnable task) {
+		return lanes[getLaneIndex(sessionId)].execute(task);
+	}
+
+	public int getLaneIndex(String sessionId) {
+		int hash = sessionId != null ? sessionId.hashCode() : 0;
+		// Spread the bits, as session ids can have similar hashes
+		hash ^= (hash >>> 16);
+		return (hash & Integer.MAX_VALUE) % lanes.length;
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Returns the number of requests waiting in the queue of the lane.
+	 */
+	public int getQueueSize(int lane) {
+		return lanes[lane].executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the number of requests rejected because the queue of the lane
+	 * was full.
+	 */
+	public long getRejectedCount(int lane) {
+		return lanes[lane].rejected.get();
+	}
+
+	/**
+	 * Returns the histogram of the time, in microseconds, the requests have
+	 * waited in the queue of the lane.
+	 */
+	public LatencyHistogram getQueueLatency(int lane) {
+		return lanes[lane].queueLatency;
+	}
+
+	/**
+	 * Returns the histogram of the time, in microseconds, spent handling the
+	 * requests of the lane.
+	 */
+	public LatencyHistogram getExecutionLatency(int lane) {
+		return lanes[lane].executionLatency;
+	}
+
+	public void shutdown() {
+		for (Lane lane : lanes) {
+			lane.executor.shutdown();
+		}
+	}
+}
@@ -15,32 +15,159 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public abstract class ServerSession extends AbstractSession {
 
+	/**
+	 * Lifecycle of a session. Transitions are made by the
+	 * {@link SessionsManager}.
+	 */
+	public enum State {
+		/**
+		 * The session has a transport connected.
+		 */
+		ACTIVE,
+		/**
+		 * The transport has been closed and the session is waiting for the
+		 * client to reconnect before the reconnection timeout.
+		 */
+		DISCONNECTED,
+		/**
+		 * The session has been closed and can't be reconnected.
+		 */
+		CLOSED
+	}
+
+	/**
+	 * Executes the continuation out of the transport thread that receives the
+	 * response, so it can send new requests synchronously without blocking the
+	 * reception of their responses.
+	 */
+	protected static class ResponseContinuation implements
+			Continuation<Response<JsonElement>> {
+
+		private final Continuation<Response<JsonElement>> continuation;
+
+		public ResponseContinuation(
+				Continuation<Response<JsonElement>> continuation) {
+			this.continuation = continuation;
+		}
+
+		@Override
+		public void onSuccess(final Response<JsonElement> response) {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						continuation.onSuccess(response);
+					} catch (Exception e) {
+						log.error("Exception while processing response", e);
+					}
+				}
+			});
+		}
+
+		@Override
+		public void onError(final Throwable cause) {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					continuation.onError(cause);
+				}
+			});
+		}
+
+		private void execute(Runnable task) {
+			try {
+				getContinuationsExecutor().execute(task);
+			} catch (RejectedExecutionException e) {
+				log.warn("Continuations queue is full. Failing continuation "
+						+ "with an overload error");
+				try {
+					continuation.onError(new JsonRpcException(
+							"Server overloaded: too many pending continuations",
+							e));
+				} catch (Exception e2) {
+					log.error("Exception while processing overload error", e2);
+				}
+			}
+		}
+	}
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ServerSession.class);
+
+	public static final String REQUEST_TIMEOUT_PROPERTY = "jsonRpcServerSession.requestTimeout";
+
+	private static final long REQUEST_TIMEOUT_DEFAULT_VALUE = 60000;
+
+	/**
+	 * Number of threads executing the continuations of the requests sent to
+	 * the clients, shared by all the sessions.
+	 */
+	public static final String CONTINUATION_THREADS_PROPERTY = "jsonRpcServer.continuationThreads";
+
+	/**
+	 * Maximum number of continuations waiting for a thread. When full, new
+	 * continuations are rejected and fail with an overload error instead of
+	 * running in the thread that received the response, which could block the
+	 * transport while they send new requests.
+	 */
+	public static final String CONTINUATION_QUEUE_SIZE_PROPERTY = "jsonRpcServer.continuationQueueSize";
+
+	private static final int CONTINUATION_THREADS_DEFAULT_VALUE = Math.max(4,
+			Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final int CONTINUATION_QUEUE_SIZE_DEFAULT_VALUE = 10000;
+
+	private static volatile Executor continuationsExecutor;
+
+	private static volatile TimeoutService defaultTimeoutService;
+
 	private final SessionsManager sessionsManager;
 	private JsonRpcRequestSenderHelper rsHelper;
-	private String transportId;
-	private ScheduledFuture<?> closeTimerTask;
+	private volatile String transportId;
+	private volatile Timeout closeTimerTask;
+
+	private final AtomicReference<State> state = new AtomicReference<>(
+			State.ACTIVE);
 
 	private volatile ConcurrentMap<String, Object> attributes;
 
 	// TODO Make this configurable
 	private long reconnectionTimeoutInMillis = 10000;
 
+	private long requestTimeoutInMillis = PropertiesManager.getProperty(
+			REQUEST_TIMEOUT_PROPERTY, (int) REQUEST_TIMEOUT_DEFAULT_VALUE);
+
 	public ServerSession(String sessionId, Object registerInfo,
 			SessionsManager sessionsManager, String transportId) {
 
@@ -52,6 +179,116 @@ public abstract class ServerSession extends AbstractSession {
 
 	public abstract void handleResponse(Response<JsonElement> response);
 
+	/**
+	 * Creates the table of requests sent to the client, expired by the
+	 * timeout service of the server if any.
+	 */
+	protected PendingRequests createPendingRequests() {
+		TimeoutService timeoutService = sessionsManager != null ? sessionsManager
+				.getTimeoutService() : null;
+		return timeoutService != null ? timeoutService.createPendingRequests()
+				: new PendingRequests();
+	}
+
+	/**
+	 * Returns the executor of the continuations of the requests sent to the
+	 * clients. Responses are received in transport threads, and continuations
+	 * are executed out of them so they can send new requests synchronously.
+	 * It is bounded in threads and queued tasks, whatever the number of
+	 * sessions.
+	 */
+	protected static Executor getContinuationsExecutor() {
+		if (continuationsExecutor == null) {
+			synchronized (ServerSession.class) {
+				if (continuationsExecutor == null) {
+
+					int threads = PropertiesManager.getProperty(
+							CONTINUATION_THREADS_PROPERTY,
+							CONTINUATION_THREADS_DEFAULT_VALUE);
+
+					int queueSize = PropertiesManager.getProperty(
+							CONTINUATION_QUEUE_SIZE_PROPERTY,
+							CONTINUATION_QUEUE_SIZE_DEFAULT_VALUE);
+
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(
+							threads, threads, 60, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(queueSize),
+							new ThreadFactory() {
+
+								private final AtomicInteger counter = new AtomicInteger();
+
+								@Override
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+											"jsonrpc-server-continuation-"
+													+ counter.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							}, new ThreadPoolExecutor.AbortPolicy());
+
+					executor.allowCoreThreadTimeOut(true);
+					continuationsExecutor = executor;
+				}
+			}
+		}
+		return continuationsExecutor;
+	}
+
+	/**
+	 * Delivers to the continuation the requests queued for the client as soon
+	 * as there is any, or an empty list when the timeout expires. It doesn't
+	 * block the calling thread, so the transport can be released while the
+	 * poll is held. Sessions with a transport that can send messages to the
+	 * client have nothing to deliver.
+	 */
+	public void pollRequests(long timeoutMillis,
+			Continuation<List<Request<? extends Object>>> continuation) {
+		continuation.onSuccess(Collections
+				.<Request<? extends Object>> emptyList());
+	}
+
+	/**
+	 * Returns the timeout service of the server or, for sessions managed out
+	 * of a server configuration, a service shared by all of them.
+	 */
+	protected TimeoutService getTimeoutService() {
+
+		TimeoutService timeoutService = sessionsManager != null ? sessionsManager
+				.getTimeoutService() : null;
+
+		if (timeoutService != null) {
+			return timeoutService;
+		}
+
+		if (defaultTimeoutService == null) {
+			synchronized (ServerSession.class) {
+				if (defaultTimeoutService == null) {
+					defaultTimeoutService = new TimeoutService();
+				}
+			}
+		}
+		return defaultTimeoutService;
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	boolean compareAndSetState(State expected, State newState) {
+		return state.compareAndSet(expected, newState);
+	}
+
+	/**
+	 * Returns true if the transport can send the responses after the message
+	 * carrying the requests has been processed, so requests can be handled in
+	 * other threads. It is false by default, because some transports (like
+	 * plain HTTP) must respond before returning.
+	 */
+	public boolean isAsyncResponseSupported() {
+		return false;
+	}
+
 	public String getTransportId() {
 		return transportId;
 	}
@@ -126,11 +363,11 @@ public abstract class ServerSession extends AbstractSession {
 		rsHelper.sendRequest(request, continuation);
 	}
 
-	public void setCloseTimerTask(ScheduledFuture<?> closeTimerTask) {
+	public void setCloseTimerTask(Timeout closeTimerTask) {
 		this.closeTimerTask = closeTimerTask;
 	}
 
-	public ScheduledFuture<?> getCloseTimerTask() {
+	public Timeout getCloseTimerTask() {
 		return closeTimerTask;
 	}
 
@@ -143,6 +380,18 @@ public abstract class ServerSession extends AbstractSession {
 		return reconnectionTimeoutInMillis;
 	}
 
+	/**
+	 * Sets the time to wait for the response of a request sent from the
+	 * server to the client, in milliseconds.
+	 */
+	public void setRequestTimeout(long requestTimeoutInMillis) {
+		this.requestTimeoutInMillis = requestTimeoutInMillis;
+	}
+
+	public long getRequestTimeoutInMillis() {
+		return requestTimeoutInMillis;
+	}
+
 	@Override
 	public Map<String, Object> getAttributes() {
 		if (attributes == null) {
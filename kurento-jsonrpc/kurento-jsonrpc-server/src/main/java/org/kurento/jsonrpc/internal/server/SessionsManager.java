@@ -14,14 +14,26 @@
  */
 package org.kurento.jsonrpc.internal.server;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.kurento.jsonrpc.internal.server.ServerSession.State;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  * 
- * This class is responsible for storing JSON-RPC sessions using a
- * ConcurrentHashMap.
+ * This class is responsible for storing JSON-RPC sessions, indexed by session
+ * id and by transport id, and for the transitions of their lifecycle
+ * {@link State}.
+ * 
+ * Transitions are made with a compare-and-set of the state of the session, so
+ * when a reconnection and the close timeout of a session happen at the same
+ * time, only one of them wins. Entries of the indexes are removed only if
+ * they still point to the session, and lookups ignore closed sessions and
+ * stale transport ids, so both indexes are seen consistent without locking.
  * 
  * @author Micael Gallego (micael.gallego@gmail.com)
  * @version 1.0.0
@@ -29,13 +41,39 @@ import org.springframework.stereotype.Component;
 @Component
 public class SessionsManager {
 
-	// TODO Review atomic management of two maps
-
 	private final ConcurrentHashMap<String, ServerSession> sessions = new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<String, ServerSession> sessionsByTransportId = new ConcurrentHashMap<>();
 
+	private final Map<State, AtomicInteger> stateCounts = new EnumMap<>(
+			State.class);
+
+	@Autowired(required = false)
+	private TimeoutService timeoutService;
+
+	public SessionsManager() {
+		for (State state : State.values()) {
+			stateCounts.put(state, new AtomicInteger());
+		}
+	}
+
+	/**
+	 * Returns the service expiring the requests sent from the sessions, or
+	 * null if there is none.
+	 */
+	public TimeoutService getTimeoutService() {
+		return timeoutService;
+	}
+
+	public void setTimeoutService(TimeoutService timeoutService) {
+		this.timeoutService = timeoutService;
+	}
+
 	public void put(ServerSession session) {
-		sessions.put(session.getSessionId(), session);
+
+		if (sessions.put(session.getSessionId(), session) != session) {
+			stateCounts.get(session.getState()).incrementAndGet();
+		}
+
 		String transportId = session.getTransportId();
 		if (transportId != null) {
 			sessionsByTransportId.put(transportId, session);
@@ -43,40 +81,174 @@ public class SessionsManager {
 	}
 
 	public ServerSession get(String sessionId) {
-		return sessions.get(sessionId);
+		ServerSession session = sessions.get(sessionId);
+		return session != null && session.getState() != State.CLOSED ? session
+				: null;
 	}
 
 	public ServerSession getByTransportId(String transportId) {
-		return sessionsByTransportId.get(transportId);
+
+		ServerSession session = sessionsByTransportId.get(transportId);
+
+		if (session == null || session.getState() == State.CLOSED
+				|| !transportId.equals(session.getTransportId())) {
+			// Closed or reconnected to other transport
+			return null;
+		}
+
+		return session;
 	}
 
 	public ServerSession removeByTransportId(String transportId) {
-		ServerSession session = sessionsByTransportId.remove(transportId);
+		ServerSession session = getByTransportId(transportId);
 		if (session != null) {
-			sessions.remove(session.getSessionId());
+			close(session);
 		}
 		return session;
 	}
 
 	public ServerSession remove(String sessionId) {
-		ServerSession session = sessions.remove(sessionId);
+		ServerSession session = sessions.get(sessionId);
 		if (session != null) {
-			sessionsByTransportId.remove(session.getTransportId());
+			close(session);
 		}
 		return session;
 	}
 
+	public void remove(ServerSession session) {
+		close(session);
+	}
+
 	public void updateTransportId(ServerSession session, String oldTransportId) {
-		if (oldTransportId != null) {
-			sessionsByTransportId.remove(oldTransportId);
+
+		String transportId = session.getTransportId();
+
+		if (transportId != null) {
+			sessionsByTransportId.put(transportId, session);
 		}
 
-		if (session.getTransportId() != null) {
-			sessionsByTransportId.put(session.getTransportId(), session);
+		if (oldTransportId != null && !oldTransportId.equals(transportId)) {
+			sessionsByTransportId.remove(oldTransportId, session);
+		}
+
+		if (session.getState() == State.CLOSED && transportId != null) {
+			// Closed while updating
+			sessionsByTransportId.remove(transportId, session);
 		}
 	}
 
-	public void remove(ServerSession session) {
-		remove(session.getSessionId());
+	/**
+	 * Marks an active session as waiting for the reconnection of the client,
+	 * because its transport has been closed. Returns false if the session was
+	 * not active.
+	 */
+	public boolean disconnect(ServerSession session) {
+
+		if (!transition(session, State.ACTIVE, State.DISCONNECTED)) {
+			return false;
+		}
+
+		String transportId = session.getTransportId();
+		if (transportId != null) {
+			sessionsByTransportId.remove(transportId, session);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Binds the session to a new transport and marks it as active. Returns
+	 * false if the session has been closed, and then the client has to create
+	 * a new session.
+	 */
+	public boolean reconnect(ServerSession session, String transportId) {
+
+		State state;
+		do {
+			state = session.getState();
+			if (state == State.CLOSED) {
+				return false;
+			}
+		} while (!transition(session, state, State.ACTIVE));
+
+		String oldTransportId = session.getTransportId();
+		session.setTransportId(transportId);
+		updateTransportId(session, oldTransportId);
+
+		return true;
+	}
+
+	/**
+	 * Closes the session, if it has not been closed yet, and removes it from
+	 * both indexes. Returns true if the session has been closed by this call.
+	 */
+	public boolean close(ServerSession session) {
+
+		State state;
+		do {
+			state = session.getState();
+			if (state == State.CLOSED) {
+				return false;
+			}
+		} while (!transition(session, state, State.CLOSED));
+
+		removeFromIndexes(session);
+
+		return true;
+	}
+
+	/**
+	 * Closes the session only if it is still waiting for the reconnection of
+	 * the client. Returns false if it has been reconnected or closed.
+	 */
+	public boolean closeIfDisconnected(ServerSession session) {
+
+		if (!transition(session, State.DISCONNECTED, State.CLOSED)) {
+			return false;
+		}
+
+		removeFromIndexes(session);
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of registered sessions in the given state. Closed
+	 * sessions are counted since the creation of the manager.
+	 */
+	public int getSessionCount(State state) {
+		return stateCounts.get(state).get();
+	}
+
+	public Map<State, Integer> getSessionCounts() {
+		Map<State, Integer> counts = new EnumMap<>(State.class);
+		for (State state : State.values()) {
+			counts.put(state, getSessionCount(state));
+		}
+		return counts;
+	}
+
+	private boolean transition(ServerSession session, State from, State to) {
+
+		if (!session.compareAndSetState(from, to)) {
+			return false;
+		}
+
+		if (from != to && sessions.get(session.getSessionId()) == session) {
+			stateCounts.get(from).decrementAndGet();
+			stateCounts.get(to).incrementAndGet();
+		}
+
+		return true;
+	}
+
+	private void removeFromIndexes(ServerSession session) {
+
+		sessions.remove(session.getSessionId(), session);
+
+		String transportId = session.getTransportId();
+		if (transportId != null) {
+			sessionsByTransportId.remove(transportId, session);
+		}
 	}
 }
@@ -0,0 +1,145 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ */
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.HashedWheelTimer;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+
+/**
+ * Timeouts of the server: close of the sessions whose transport has been
+ * disconnected and expiration of the requests sent to the clients.
+ *
+ * Timeouts are kept in a {@link HashedWheelTimer}, so arming and cancelling
+ * them is O(1) and cancelled timeouts don't stay in memory until their
+ * deadline. This matters when a lot of sessions are disconnected at the same
+ * time and most of them reconnect before the timeout. Expired tasks are
+ * executed in a pool of threads, because closing a session invokes the
+ * handler.
+ *
+ * @since 5.1.1
+ */
+public class TimeoutService {
+
+	/**
+	 * Number of threads executing the expired timeouts.
+	 */
+	public static final String THREADS_PROPERTY = "jsonRpcServer.timeoutService.threads";
+
+	/**
+	 * Precision of the timeouts, in milliseconds.
+	 */
+	public static final String TICK_DURATION_PROPERTY = "jsonRpcServer.timeoutService.tickDuration";
+
+	/**
+	 * Number of buckets of the timer wheel.
+	 */
+	public static final String TICKS_PER_WHEEL_PROPERTY = "jsonRpcServer.timeoutService.ticksPerWheel";
+
+	private static final int THREADS_DEFAULT_VALUE = 1;
+
+	private static final int TICK_DURATION_DEFAULT_VALUE = 100;
+
+	private static final int TICKS_PER_WHEEL_DEFAULT_VALUE = 512;
+
+	private final ExecutorService executor;
+
+	private final HashedWheelTimer timer;
+
+	public TimeoutService() {
+		this(PropertiesManager.getProperty(THREADS_PROPERTY,
+				THREADS_DEFAULT_VALUE), PropertiesManager.getProperty(
+				TICK_DURATION_PROPERTY, TICK_DURATION_DEFAULT_VALUE),
+				PropertiesManager.getProperty(TICKS_PER_WHEEL_PROPERTY,
+						TICKS_PER_WHEEL_DEFAULT_VALUE));
+	}
+
+	public TimeoutService(int threads, long tickDurationMillis,
+			int ticksPerWheel) {
+
+		if (threads <= 0) {
+			throw new IllegalArgumentException(
+					"The number of threads must be greater than 0: " + threads);
+		}
+
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+
+					private final AtomicInteger counter = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r,
+								"jsonrpc-server-timeout-"
+										+ counter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		this.timer = new HashedWheelTimer("jsonrpc-server-timer",
+				tickDurationMillis, TimeUnit.MILLISECONDS, ticksPerWheel,
+				executor);
+	}
+
+	/**
+	 * Executes the task after the given delay, unless the returned timeout is
+	 * cancelled before.
+	 */
+	public Timeout arm(Runnable task, long delay, TimeUnit unit) {
+		return timer.newTimeout(task, delay, unit);
+	}
+
+	/**
+	 * Creates a table of pending requests expired by this service.
+	 */
+	public PendingRequests createPendingRequests() {
+		return new PendingRequests(PendingRequests.NO_LIMIT, timer);
+	}
+
+	/**
+	 * Returns the number of timeouts armed since the service was created.
+	 */
+	public long getArmedCount() {
+		return timer.getScheduledCount();
+	}
+
+	public long getFiredCount() {
+		return timer.getExpiredCount();
+	}
+
+	public long getCancelledCount() {
+		return timer.getCancelledCount();
+	}
+
+	/**
+	 * Returns the number of timeouts neither fired nor cancelled.
+	 */
+	public int getPendingCount() {
+		return timer.getPendingTimeouts();
+	}
+
+	public void shutdown() {
+		timer.stop();
+		executor.shutdown();
+	}
+}
@@ -29,7 +29,9 @@ import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.RequestDispatcher;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.server.TimeoutService;
 import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,8 +41,6 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
-import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
@@ -248,8 +248,13 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 	}
 
 	@Bean(destroyMethod = "shutdown")
-	public TaskScheduler jsonrpcTaskScheduler() {
-		return new ThreadPoolTaskScheduler();
+	public TimeoutService jsonrpcTimeoutService() {
+		return new TimeoutService();
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public RequestDispatcher jsonrpcRequestDispatcher() {
+		return new RequestDispatcher();
 	}
 
 }
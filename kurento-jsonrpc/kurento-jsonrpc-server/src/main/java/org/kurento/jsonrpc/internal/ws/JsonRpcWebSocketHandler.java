@@ -14,6 +14,9 @@
  */
 package org.kurento.jsonrpc.internal.ws;
 
+import java.io.IOException;
+
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
@@ -30,6 +33,16 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 	private static final Logger log = LoggerFactory
 			.getLogger(JsonRpcWebSocketHandler.class);
 
+	public static final String OUTBOUND_QUEUE_SIZE_PROPERTY = "jsonRpcServerSession.outboundQueueSize";
+
+	/**
+	 * If true, messages waiting to be sent are written in a single frame as a
+	 * JSON-RPC batch. Clients must support batches.
+	 */
+	public static final String BATCH_OUTBOUND_MESSAGES_PROPERTY = "jsonRpcServerSession.batchOutboundMessages";
+
+	private static final String OUTBOUND_QUEUE_ATTRIBUTE = "jsonrpc.outboundQueue";
+
 	private final ProtocolManager protocolManager;
 
 	public JsonRpcWebSocketHandler(ProtocolManager protocolManager) {
@@ -44,6 +57,52 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 		// session is established, not when websocket session is established
 		log.info("Client connection stablished from {}",
 				session.getRemoteAddress());
+
+		getOutboundQueue(session);
+	}
+
+	/**
+	 * Returns the queue used to send messages to the given WebSocket session.
+	 * Responses and server-to-client requests share it, so there is only one
+	 * writer per WebSocket session.
+	 */
+	static OutboundMessageQueue getOutboundQueue(
+			final WebSocketSession wsSession) {
+
+		OutboundMessageQueue queue = (OutboundMessageQueue) wsSession
+				.getAttributes().get(OUTBOUND_QUEUE_ATTRIBUTE);
+
+		if (queue == null) {
+			synchronized (wsSession) {
+				queue = (OutboundMessageQueue) wsSession.getAttributes().get(
+						OUTBOUND_QUEUE_ATTRIBUTE);
+				if (queue == null) {
+					queue = new OutboundMessageQueue(
+							new OutboundMessageQueue.MessageWriter() {
+								@Override
+								public void write(String message)
+										throws IOException {
+									if (wsSession.isOpen()) {
+										wsSession.sendMessage(new TextMessage(
+												message));
+									} else {
+										log.error("Trying to send a message to a closed session");
+									}
+								}
+							}, PropertiesManager.getProperty(
+									OUTBOUND_QUEUE_SIZE_PROPERTY,
+									OutboundMessageQueue.DEFAULT_MAX_QUEUE_SIZE),
+							OutboundMessageQueue.DEFAULT_SEND_TIMEOUT_MILLIS,
+							PropertiesManager.getProperty(
+									BATCH_OUTBOUND_MESSAGES_PROPERTY, false),
+							OutboundMessageQueue.DEFAULT_MAX_BATCH_SIZE);
+					wsSession.getAttributes().put(OUTBOUND_QUEUE_ATTRIBUTE,
+							queue);
+				}
+			}
+		}
+
+		return queue;
 	}
 
 	@Override
@@ -16,14 +16,13 @@ package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
 
-import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.MeasuredResponseSender;
 import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
-public final class WebSocketResponseSender implements ResponseSender {
+public final class WebSocketResponseSender implements MeasuredResponseSender {
 
 	private static final Logger log = LoggerFactory
 			.getLogger(WebSocketResponseSender.class);
@@ -36,14 +35,14 @@ public final class WebSocketResponseSender implements ResponseSender {
 
 	@Override
 	public void sendResponse(Message message) throws IOException {
+		sendMeasuredResponse(message);
+	}
+
+	@Override
+	public int sendMeasuredResponse(Message message) throws IOException {
 		String jsonMessage = message.toString();
 		log.debug("<-Res {}", jsonMessage);
-		synchronized (wsSession) {
-			if (wsSession.isOpen()) {
-				wsSession.sendMessage(new TextMessage(jsonMessage));
-			} else {
-				log.error("Trying to send a message to a closed session");
-			}
-		}
+		JsonRpcWebSocketHandler.getOutboundQueue(wsSession).send(jsonMessage);
+		return jsonMessage.length();
 	}
 }
\ No newline at end of file
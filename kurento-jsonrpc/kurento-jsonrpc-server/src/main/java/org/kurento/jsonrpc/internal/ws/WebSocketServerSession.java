@@ -16,12 +16,11 @@ package org.kurento.jsonrpc.internal.ws;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.server.ServerSession;
@@ -29,9 +28,9 @@ import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.SerializedNotification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.google.gson.JsonElement;
@@ -43,9 +42,7 @@ public class WebSocketServerSession extends ServerSession {
 
 	private WebSocketSession wsSession;
 
-	private final PendingRequests pendingRequests = new PendingRequests();
-
-	private ExecutorService execService = Executors.newFixedThreadPool(10);
+	private final PendingRequests pendingRequests = createPendingRequests();
 
 	public WebSocketServerSession(String sessionId, Object registerInfo,
 			SessionsManager sessionsManager, WebSocketSession wsSession) {
@@ -76,23 +73,31 @@ public class WebSocketServerSession extends ServerSession {
 			final Class<JsonElement> resultClass,
 			final Continuation<Response<JsonElement>> continuation) {
 
-		// FIXME: Poor man async implementation.
-		execService.submit(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Response<JsonElement> result = sendRequestWebSocket(
-							request, resultClass);
-					try {
-						continuation.onSuccess(result);
-					} catch (Exception e) {
-						LOG.error("Exception while processing response", e);
-					}
-				} catch (Exception e) {
-					continuation.onError(e);
-				}
+		if (request.getId() != null) {
+			try {
+				pendingRequests.prepareResponse(request.getId(),
+						getRequestTimeoutInMillis(), new ResponseContinuation(
+								continuation));
+			} catch (Exception e) {
+				continuation.onError(e);
+				return;
 			}
-		});
+		}
+
+		try {
+			sendMessage(request);
+		} catch (Exception e) {
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			} else {
+				continuation.onError(e);
+			}
+			return;
+		}
+
+		if (request.getId() == null) {
+			continuation.onSuccess(null);
+		}
 	}
 
 	private <P, R> Response<R> sendRequestWebSocket(Request<P> request,
@@ -101,18 +106,16 @@ public class WebSocketServerSession extends ServerSession {
 		Future<Response<JsonElement>> responseFuture = null;
 
 		if (request.getId() != null) {
-			responseFuture = pendingRequests.prepareResponse(request.getId());
+			responseFuture = pendingRequests.prepareResponse(request.getId(),
+					getRequestTimeoutInMillis());
 		}
 
 		try {
-			synchronized (wsSession) {
-				wsSession
-						.sendMessage(new TextMessage(JsonUtils.toJson(request)));
-			}
+			sendMessage(request);
 		} catch (Exception e) {
-			LOG.error(
-					"Exception while sending message '{}' to websocket with native sessionId '{}': {}",
-					JsonUtils.toJson(request), wsSession.getId(), e);
+			if (request.getId() != null) {
+				pendingRequests.cancel(request.getId(), e);
+			}
 			// TODO Implement retries if possible
 			return null;
 		}
@@ -129,6 +132,10 @@ public class WebSocketServerSession extends ServerSession {
 			throw new JsonRpcException(
 					"Interrupted while waiting for a response", e);
 		} catch (ExecutionException e) {
+			if (e.getCause() instanceof TransportException) {
+				// Timeout or session closed while waiting for response
+				throw (TransportException) e.getCause();
+			}
 			// TODO Is there a better way to handle this?
 			throw new JsonRpcException("This exception shouldn't be thrown", e);
 		}
@@ -136,15 +143,53 @@ public class WebSocketServerSession extends ServerSession {
 		return MessageUtils.convertResponse(responseJsonObject, resultClass);
 	}
 
+	/**
+	 * Sends the serialized text to the client, without serializing the
+	 * notification again for each session.
+	 */
+	@Override
+	public void sendNotification(SerializedNotification notification)
+			throws IOException {
+		sendMessage(notification.getJson());
+	}
+
+	private void sendMessage(Request<? extends Object> request)
+			throws IOException {
+		sendMessage(JsonUtils.toJson(request));
+	}
+
+	private void sendMessage(String jsonMessage) throws IOException {
+
+		try {
+			JsonRpcWebSocketHandler.getOutboundQueue(wsSession).send(
+					jsonMessage);
+		} catch (Exception e) {
+			LOG.error(
+					"Exception while sending message '{}' to websocket with native sessionId '{}': {}",
+					jsonMessage, wsSession.getId(), e);
+			throw e;
+		}
+	}
+
 	@Override
 	public void handleResponse(Response<JsonElement> response) {
 		pendingRequests.handleResponse(response);
 	}
 
+	@Override
+	public boolean isAsyncResponseSupported() {
+		return true;
+	}
+
+	public PendingRequests getPendingRequests() {
+		return pendingRequests;
+	}
+
 	@Override
 	public void close() throws IOException {
 		try {
-			execService.shutdown();
+			pendingRequests.closeAllPendingRequests(new TransportException(
+					"Session closed before receiving the response"));
 			wsSession.close();
 		} finally {
 			super.close();
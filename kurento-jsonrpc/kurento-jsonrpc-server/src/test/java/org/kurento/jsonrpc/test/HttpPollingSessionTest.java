@@ -0,0 +1,186 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+public class HttpPollingSessionTest {
+
+	private static SettableFuture<List<Request<? extends Object>>> poll(
+			ServerSession session, long timeoutMillis) {
+
+		final SettableFuture<List<Request<? extends Object>>> future = SettableFuture
+				.create();
+
+		session.pollRequests(timeoutMillis,
+				new Continuation<List<Request<? extends Object>>>() {
+					@Override
+					public void onSuccess(List<Request<? extends Object>> result) {
+						future.set(result);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						future.setException(cause);
+					}
+				});
+
+		return future;
+	}
+
+	@Test
+	public void notificationIsPolledTest() throws Exception {
+
+		HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), null);
+
+		session.sendNotification("event", "value");
+
+		List<Request<? extends Object>> requests = poll(session, 1000).get(1,
+				TimeUnit.SECONDS);
+
+		Assert.assertEquals(1, requests.size());
+		Assert.assertEquals("event", requests.get(0).getMethod());
+	}
+
+	@Test
+	public void pollWaitsForRequestsTest() throws Exception {
+
+		final HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), null);
+
+		long start = System.nanoTime();
+		Assert.assertTrue(poll(session, 200).get(5, TimeUnit.SECONDS).isEmpty());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start) >= 190);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+					session.sendNotification("event");
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.start();
+
+		// Responds as soon as the notification is queued
+		start = System.nanoTime();
+		Assert.assertEquals(1, poll(session, 5000).get(5, TimeUnit.SECONDS)
+				.size());
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start) < 2000);
+	}
+
+	@Test
+	public void responseInNextPollTest() throws Exception {
+
+		final HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), null);
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Request<? extends Object> request = poll(session, 5000)
+							.get(5, TimeUnit.SECONDS).get(0);
+					session.handleResponse(new Response<JsonElement>(request
+							.getId(), new JsonPrimitive("result")));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.start();
+
+		Assert.assertEquals("result",
+				session.sendRequest("method", String.class));
+	}
+
+	@Test
+	public void pollDoesNotBlockTest() throws Exception {
+
+		HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, new SessionsManager(), null);
+
+		long start = System.nanoTime();
+		SettableFuture<List<Request<? extends Object>>> firstPoll = poll(
+				session, 5000);
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+				- start) < 1000);
+		Assert.assertFalse(firstPoll.isDone());
+
+		// A new poll of the session responds the previous one
+		SettableFuture<List<Request<? extends Object>>> secondPoll = poll(
+				session, 5000);
+		Assert.assertTrue(firstPoll.get(1, TimeUnit.SECONDS).isEmpty());
+
+		session.close();
+		Assert.assertTrue(secondPoll.get(1, TimeUnit.SECONDS).isEmpty());
+	}
+
+	@Test
+	public void fullPollQueueRejectsRequestsTest() throws Exception {
+
+		HttpRequestServerSession session;
+
+		System.setProperty(HttpRequestServerSession.POLL_QUEUE_SIZE_PROPERTY,
+				"2");
+		try {
+			session = new HttpRequestServerSession("session", null,
+					new SessionsManager(), null);
+		} finally {
+			System.clearProperty(
+					HttpRequestServerSession.POLL_QUEUE_SIZE_PROPERTY);
+		}
+
+		session.sendNotification("event1");
+		session.sendNotification("event2");
+
+		try {
+			session.sendNotification("event3");
+			Assert.fail("TransportException expected");
+		} catch (TransportException e) {
+			// Expected
+		}
+
+		final SettableFuture<Throwable> requestError = SettableFuture.create();
+		session.sendRequest("method", (JsonObject) null,
+				new Continuation<JsonElement>() {
+					@Override
+					public void onSuccess(JsonElement result) {
+						requestError.set(null);
+					}
+
+					@Override
+					public void onError(Throwable cause) {
+						requestError.set(cause);
+					}
+				});
+
+		Assert.assertTrue(requestError.get(5, TimeUnit.SECONDS)
+				instanceof TransportException);
+
+		// The queue accepts requests again once polled
+		Assert.assertEquals(2, poll(session, 1000).get(1, TimeUnit.SECONDS)
+				.size());
+		session.sendNotification("event4");
+		Assert.assertEquals(1, poll(session, 1000).get(1, TimeUnit.SECONDS)
+				.size());
+	}
+}
@@ -0,0 +1,225 @@
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageBatch;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonObject;
+
+public class ProtocolManagerBatchTest {
+
+	static class EchoHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+		private final boolean parallel;
+
+		EchoHandler(boolean parallel) {
+			this.parallel = parallel;
+		}
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			transaction.sendResponse(request.getParams());
+		}
+
+		@Override
+		public boolean isParallelBatchSafe() {
+			return parallel;
+		}
+	}
+
+	static class SessionHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+		@Override
+		public void handleRequest(Transaction transaction,
+				Request<JsonObject> request) throws Exception {
+			JsonObject result = new JsonObject();
+			result.addProperty("handledBy", transaction.getSession()
+					.getSessionId());
+			transaction.sendResponse(result);
+		}
+	}
+
+	static class CollectingResponseSender implements ResponseSender {
+
+		private final List<Message> messages = new ArrayList<>();
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		@Override
+		public synchronized void sendResponse(Message message)
+				throws IOException {
+			messages.add(message);
+			latch.countDown();
+		}
+
+		MessageBatch awaitBatch() throws InterruptedException {
+			Assert.assertTrue("No response sent",
+					latch.await(5, TimeUnit.SECONDS));
+			synchronized (this) {
+				Assert.assertEquals(1, messages.size());
+				Assert.assertTrue(messages.get(0) instanceof MessageBatch);
+				return (MessageBatch) messages.get(0);
+			}
+		}
+	}
+
+	private static final ServerSessionFactory SESSION_FACTORY = new ServerSessionFactory() {
+		@Override
+		public ServerSession createSession(String sessionId,
+				Object registerInfo, SessionsManager sessionsManager) {
+			return new HttpRequestServerSession(sessionId, registerInfo,
+					sessionsManager, "transport");
+		}
+	};
+
+	private ProtocolManager createProtocolManager(boolean parallel) {
+		ProtocolManager protocolManager = new ProtocolManager(new EchoHandler(
+				parallel));
+		protocolManager.setSessionsManager(new SessionsManager());
+		return protocolManager;
+	}
+
+	private static String request(Integer id, String method, int value) {
+		return "{\"jsonrpc\":\"2.0\","
+				+ (id != null ? "\"id\":" + id + "," : "") + "\"method\":\""
+				+ method + "\",\"params\":{\"value\":" + value + "}}";
+	}
+
+	@Test
+	public void mixedBatchTest() throws Exception {
+
+		ProtocolManager protocolManager = createProtocolManager(false);
+		CollectingResponseSender rs = new CollectingResponseSender();
+
+		String batch = "[" + request(1, "echo", 1) + ",2,"
+				+ request(null, "echo", 2) + ","
+				+ request(3, JsonRpcConstants.METHOD_RECONNECT, 3) + ",\"x\","
+				+ request(4, "echo", 4) + "]";
+
+		protocolManager.processMessage(batch, SESSION_FACTORY, rs, "transport");
+
+		List<Message> responses = rs.awaitBatch().getMessages();
+
+		// Two invalid elements, the reconnection and two echoes
+		Assert.assertEquals(5, responses.size());
+
+		int invalid = 0;
+		Map<Integer, Response<?>> responsesById = new HashMap<>();
+
+		for (Message message : responses) {
+			Assert.assertTrue(message instanceof Response);
+			Response<?> response = (Response<?>) message;
+			if (response.getId() == null) {
+				Assert.assertEquals(JsonRpcConstants.ERROR_INVALID_REQUEST,
+						response.getError().getCode());
+				invalid++;
+			} else {
+				responsesById.put(response.getId(), response);
+			}
+		}
+
+		Assert.assertEquals(2, invalid);
+		Assert.assertEquals(1, ((JsonObject) responsesById.get(1).getResult())
+				.get("value").getAsInt());
+		Assert.assertEquals(4, ((JsonObject) responsesById.get(4).getResult())
+				.get("value").getAsInt());
+		// Reconnection without session id
+		Assert.assertNotNull(responsesById.get(3).getError());
+	}
+
+	@Test
+	public void singleRequestBatchIsNotNestedTest() throws Exception {
+
+		ProtocolManager protocolManager = createProtocolManager(false);
+		CollectingResponseSender rs = new CollectingResponseSender();
+
+		protocolManager.processMessage("[" + request(1, "echo", 1) + "]",
+				SESSION_FACTORY, rs, "transport");
+
+		List<Message> responses = rs.awaitBatch().getMessages();
+
+		Assert.assertEquals(1, responses.size());
+		Assert.assertTrue(responses.get(0) instanceof Response);
+		Assert.assertEquals(1, (int) ((Response<?>) responses.get(0)).getId());
+	}
+
+	@Test
+	public void parallelBatchTest() throws Exception {
+
+		ProtocolManager protocolManager = createProtocolManager(true);
+		CollectingResponseSender rs = new CollectingResponseSender();
+
+		int numRequests = 30;
+		StringBuilder batch = new StringBuilder("[");
+		for (int i = 0; i < numRequests; i++) {
+			if (i > 0) {
+				batch.append(',');
+			}
+			batch.append(request(i, "echo", i));
+		}
+		batch.append(']');
+
+		protocolManager.processMessage(batch.toString(), SESSION_FACTORY, rs,
+				"transport");
+
+		Assert.assertEquals(numRequests, rs.awaitBatch().getMessages().size());
+	}
+
+	@Test
+	public void batchWithSeveralSessionsTest() throws Exception {
+
+		SessionsManager sessionsManager = new SessionsManager();
+		ProtocolManager protocolManager = new ProtocolManager(
+				new SessionHandler());
+		protocolManager.setSessionsManager(sessionsManager);
+
+		for (String sessionId : new String[] { "session1", "session2" }) {
+			sessionsManager.put(SESSION_FACTORY.createSession(sessionId, null,
+					sessionsManager));
+		}
+
+		String batch = "[" + sessionRequest(1, "session1") + ","
+				+ sessionRequest(2, "session2") + ","
+				+ sessionRequest(3, "session1") + "]";
+
+		CollectingResponseSender rs = new CollectingResponseSender();
+		protocolManager.processMessage(batch, SESSION_FACTORY, rs, "transport");
+
+		Map<Integer, String> sessionsById = new HashMap<>();
+		for (Message message : rs.awaitBatch().getMessages()) {
+			Response<?> response = (Response<?>) message;
+			sessionsById.put(response.getId(), ((JsonObject) response
+					.getResult()).get("handledBy").getAsString());
+		}
+
+		Assert.assertEquals("session1", sessionsById.get(1));
+		Assert.assertEquals("session2", sessionsById.get(2));
+		Assert.assertEquals("session1", sessionsById.get(3));
+	}
+
+	private static String sessionRequest(int id, String sessionId) {
+		return "{\"jsonrpc\":\"2.0\",\"id\":" + id
+				+ ",\"method\":\"keepAlive\",\"params\":{\"sessionId\":\""
+				+ sessionId + "\"}}";
+	}
+}
@@ -0,0 +1,117 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.RequestDispatcher;
+
+public class RequestDispatcherTest {
+
+	private RequestDispatcher dispatcher;
+
+	@After
+	public void teardown() {
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void requestsOfSessionAreOrderedTest() throws Exception {
+
+		dispatcher = new RequestDispatcher(4, 1000);
+
+		final int numSessions = 10;
+		final int numRequests = 100;
+
+		final List<List<Integer>> handled = new ArrayList<>();
+		for (int i = 0; i < numSessions; i++) {
+			handled.add(Collections.synchronizedList(new ArrayList<Integer>()));
+		}
+
+		final CountDownLatch done = new CountDownLatch(numSessions
+				* numRequests);
+
+		for (int r = 0; r < numRequests; r++) {
+			for (int s = 0; s < numSessions; s++) {
+				final List<Integer> sessionHandled = handled.get(s);
+				final int request = r;
+				Assert.assertTrue(dispatcher.dispatch("session" + s,
+						new Runnable() {
+							@Override
+							public void run() {
+								sessionHandled.add(request);
+								done.countDown();
+							}
+						}));
+			}
+		}
+
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		for (List<Integer> sessionHandled : handled) {
+			for (int r = 0; r < numRequests; r++) {
+				Assert.assertEquals(r, (int) sessionHandled.get(r));
+			}
+		}
+
+		long executed = 0;
+		for (int lane = 0; lane < dispatcher.getLaneCount(); lane++) {
+			executed += dispatcher.getExecutionLatency(lane).getCount();
+		}
+		Assert.assertEquals(numSessions * numRequests, executed);
+	}
+
+	@Test
+	public void fullLaneRejectsRequestsTest() throws Exception {
+
+		dispatcher = new RequestDispatcher(1, 2);
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		Runnable blockingTask = new Runnable() {
+			@Override
+			public void run() {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+			}
+		};
+
+		Assert.assertTrue(dispatcher.dispatch("session", blockingTask));
+		Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+		Assert.assertTrue(dispatcher.dispatch("session", task));
+		Assert.assertTrue(dispatcher.dispatch("session", task));
+		Assert.assertFalse(dispatcher.dispatch("session", task));
+
+		Assert.assertEquals(2, dispatcher.getQueueSize(0));
+		Assert.assertEquals(1, dispatcher.getRejectedCount(0));
+
+		release.countDown();
+	}
+
+	@Test
+	public void disabledDispatcherTest() {
+
+		dispatcher = new RequestDispatcher(0, 1);
+
+		Assert.assertFalse(dispatcher.isEnabled());
+	}
+}
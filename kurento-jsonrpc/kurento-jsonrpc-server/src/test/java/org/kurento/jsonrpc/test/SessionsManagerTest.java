@@ -0,0 +1,130 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.ServerSession.State;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+
+public class SessionsManagerTest {
+
+	private ServerSession createSession(SessionsManager sessionsManager,
+			String sessionId, String transportId) {
+
+		ServerSession session = new HttpRequestServerSession(sessionId, null,
+				sessionsManager, transportId);
+		sessionsManager.put(session);
+		return session;
+	}
+
+	@Test
+	public void lifecycleTest() {
+
+		SessionsManager sessionsManager = new SessionsManager();
+		ServerSession session = createSession(sessionsManager, "session",
+				"transport1");
+
+		Assert.assertEquals(1, sessionsManager.getSessionCount(State.ACTIVE));
+
+		Assert.assertTrue(sessionsManager.disconnect(session));
+		Assert.assertEquals(State.DISCONNECTED, session.getState());
+		Assert.assertNull(sessionsManager.getByTransportId("transport1"));
+		Assert.assertSame(session, sessionsManager.get("session"));
+		Assert.assertEquals(0, sessionsManager.getSessionCount(State.ACTIVE));
+		Assert.assertEquals(1,
+				sessionsManager.getSessionCount(State.DISCONNECTED));
+
+		Assert.assertTrue(sessionsManager.reconnect(session, "transport2"));
+		Assert.assertEquals(State.ACTIVE, session.getState());
+		Assert.assertSame(session,
+				sessionsManager.getByTransportId("transport2"));
+		Assert.assertEquals(1, sessionsManager.getSessionCount(State.ACTIVE));
+
+		// Timer of the previous disconnection
+		Assert.assertFalse(sessionsManager.closeIfDisconnected(session));
+
+		Assert.assertTrue(sessionsManager.close(session));
+		Assert.assertFalse(sessionsManager.close(session));
+		Assert.assertNull(sessionsManager.get("session"));
+		Assert.assertNull(sessionsManager.getByTransportId("transport2"));
+		Assert.assertFalse(sessionsManager.reconnect(session, "transport3"));
+		Assert.assertNull(sessionsManager.getByTransportId("transport3"));
+
+		Assert.assertEquals(0, sessionsManager.getSessionCount(State.ACTIVE));
+		Assert.assertEquals(1, sessionsManager.getSessionCount(State.CLOSED));
+	}
+
+	@Test
+	public void staleTransportIdTest() {
+
+		SessionsManager sessionsManager = new SessionsManager();
+		ServerSession session = createSession(sessionsManager, "session",
+				"transport1");
+
+		// Client reconnects before the close of the old transport is noticed
+		Assert.assertTrue(sessionsManager.reconnect(session, "transport2"));
+
+		Assert.assertNull(sessionsManager.getByTransportId("transport1"));
+		Assert.assertSame(session,
+				sessionsManager.getByTransportId("transport2"));
+	}
+
+	@Test
+	public void reconnectRacesWithCloseTest() throws Exception {
+
+		final SessionsManager sessionsManager = new SessionsManager();
+
+		for (int i = 0; i < 1000; i++) {
+
+			final ServerSession session = createSession(sessionsManager,
+					"session" + i, "transport" + i);
+			sessionsManager.disconnect(session);
+
+			final String newTransportId = "newTransport" + i;
+			final CountDownLatch start = new CountDownLatch(1);
+			final AtomicBoolean reconnected = new AtomicBoolean();
+
+			Thread reconnectThread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					reconnected.set(sessionsManager.reconnect(session,
+							newTransportId));
+				}
+			};
+			reconnectThread.start();
+
+			start.countDown();
+			boolean closed = sessionsManager.closeIfDisconnected(session);
+			reconnectThread.join();
+
+			Assert.assertTrue("Session " + i + " reconnected and closed",
+					closed != reconnected.get());
+
+			if (closed) {
+				Assert.assertEquals(State.CLOSED, session.getState());
+				Assert.assertNull(sessionsManager
+						.getByTransportId(newTransportId));
+				Assert.assertNull(sessionsManager.get(session.getSessionId()));
+			} else {
+				Assert.assertEquals(State.ACTIVE, session.getState());
+				Assert.assertSame(session,
+						sessionsManager.getByTransportId(newTransportId));
+			}
+		}
+
+		Assert.assertEquals(1000,
+				sessionsManager.getSessionCount(State.ACTIVE)
+						+ sessionsManager.getSessionCount(State.CLOSED));
+		Assert.assertEquals(0,
+				sessionsManager.getSessionCount(State.DISCONNECTED));
+	}
+}
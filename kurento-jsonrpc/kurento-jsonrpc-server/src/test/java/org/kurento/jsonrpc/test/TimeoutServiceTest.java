@@ -0,0 +1,134 @@
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.HashedWheelTimer.Timeout;
+import org.kurento.jsonrpc.internal.http.HttpRequestServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.server.TimeoutService;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+public class TimeoutServiceTest {
+
+	private TimeoutService timeoutService;
+
+	@Before
+	public void setup() {
+		timeoutService = new TimeoutService(2, 10, 64);
+	}
+
+	@After
+	public void teardown() {
+		timeoutService.shutdown();
+	}
+
+	@Test
+	public void armAndCancelTest() throws Exception {
+
+		final CountDownLatch fired = new CountDownLatch(1);
+
+		Timeout cancelled = timeoutService.arm(new Runnable() {
+			@Override
+			public void run() {
+				Assert.fail("Cancelled timeout should not be fired");
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		timeoutService.arm(new Runnable() {
+			@Override
+			public void run() {
+				fired.countDown();
+			}
+		}, 100, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(cancelled.cancel());
+		Assert.assertTrue(fired.await(5, TimeUnit.SECONDS));
+
+		Thread.sleep(200);
+
+		Assert.assertEquals(2, timeoutService.getArmedCount());
+		Assert.assertEquals(1, timeoutService.getFiredCount());
+		Assert.assertEquals(1, timeoutService.getCancelledCount());
+		Assert.assertEquals(0, timeoutService.getPendingCount());
+	}
+
+	@Test
+	public void slowTaskDoesNotDelayOthersTest() throws Exception {
+
+		final CountDownLatch slowTaskRunning = new CountDownLatch(1);
+		final CountDownLatch fired = new CountDownLatch(1);
+
+		timeoutService.arm(new Runnable() {
+			@Override
+			public void run() {
+				slowTaskRunning.countDown();
+				try {
+					Thread.sleep(2000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(slowTaskRunning.await(5, TimeUnit.SECONDS));
+
+		timeoutService.arm(new Runnable() {
+			@Override
+			public void run() {
+				fired.countDown();
+			}
+		}, 10, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(fired.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void requestTimeoutTest() throws Exception {
+
+		PendingRequests pendingRequests = timeoutService
+				.createPendingRequests();
+
+		Future<Response<JsonElement>> future = pendingRequests
+				.prepareResponse(1, 50);
+
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			Assert.fail("Request should be expired");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof TransportException);
+		}
+
+		Assert.assertEquals(1, timeoutService.getFiredCount());
+	}
+
+	@Test
+	public void sessionUsesTimeoutServiceTest() throws Exception {
+
+		SessionsManager sessionsManager = new SessionsManager();
+		sessionsManager.setTimeoutService(timeoutService);
+
+		HttpRequestServerSession session = new HttpRequestServerSession(
+				"session", null, sessionsManager, null);
+		session.setRequestTimeout(50);
+
+		try {
+			session.sendRequest("method");
+			Assert.fail("Request should be expired");
+		} catch (TransportException e) {
+			// Expected
+		}
+
+		Assert.assertEquals(1, timeoutService.getArmedCount());
+	}
+}